@@ -1333,8 +1333,7 @@ public class GameMain extends Game {
 
                             AbstractBoundingVolume boundingVolume
                                     = sceneManager.getPlayer(this.playerId).getBoundingVolumeCopy(0);
-                            boundingVolume.min = boundingVolume.min.add(newPosition);
-                            boundingVolume.max = boundingVolume.max.add(newPosition);
+                            boundingVolume.translate(newPosition.getX(), newPosition.getY(), newPosition.getZ());
                             GameObject temp = new GameObject(this.playerId);
                             temp.setBoundingVolume(0, boundingVolume);
                             //TODO: alter when implemented for a compound mesh.
@@ -0,0 +1,111 @@
+/*
+ * This file is part of the PathFinder program. This is a simple program that
+ * serves as a testbed for steering behaviors, pathFinding, and maze generation
+ * algorithms. The program features a JogAmp-based graphical component, to
+ * visualize the graph to traverse, the found (if one exists) path and the
+ * traversed nodes.
+ *
+ * The program also includes a loader for Collada 1.4 models and HOG2
+ * Pathfinding Benchmarks, available at <http://www.movingai.com/benchmarks/>.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.demo.test;
+
+import com.sun.management.ThreadMXBean;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.util.logging.Level.INFO;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.AABB;
+import jot.math.geometry.bounding.BoundingSphere;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a microbenchmark, in the terminal, of the bytes
+ * allocated and the time taken per move of a game object with an AABB and a
+ * bounding sphere.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class MoveTests {
+
+    static final Logger log = getLogger("MoveTests");
+
+    private static final int WARMUP_MOVES = 1000000;
+    private static final int MOVES = 10000000;
+
+    /**
+     * Tests method.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        log.setLevel(INFO);
+
+        GameObject object = new GameObject("MoveTests");
+        object.setBoundingVolume(0, new AABB(new Vector3D(-1, -1, -1), new Vector3D(1, 1, 1)));
+        object.getBoundingVolumes().add(new BoundingSphere(new Vector3D(-1, -1, -1), new Vector3D(1, 1, 1)));
+
+        //The positions are created beforehand, as a caller of setPosition does.
+        Vector3D[] positions = new Vector3D[1024];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Vector3D(i, -i, i / 2.);
+        }
+        Vector3D update = new Vector3D(.001, 0, -.001);
+
+        ThreadMXBean bean = (ThreadMXBean) getThreadMXBean();
+        long thread = currentThread().getId();
+        for (int i = 0; i < WARMUP_MOVES; i++) {
+            object.setPosition(positions[i & 1023]);
+            object.updatePosition(update);
+        }
+
+        long bytes = bean.getThreadAllocatedBytes(thread);
+        long time = nanoTime();
+        for (int i = 0; i < MOVES; i++) {
+            object.setPosition(positions[i & 1023]);
+        }
+        time = nanoTime() - time;
+        bytes = bean.getThreadAllocatedBytes(thread) - bytes;
+        log.info(format("setPosition: %.1f bytes, %.1f ns per move",
+                (double) bytes / MOVES, (double) time / MOVES));
+        if (bytes > 0) {
+            log.warning("setPosition allocates!");
+        }
+
+        //Each update allocates only the new translation, as a Vector3D is
+        //immutable, the bounding volumes are updated in place.
+        bytes = bean.getThreadAllocatedBytes(thread);
+        time = nanoTime();
+        for (int i = 0; i < MOVES; i++) {
+            object.updatePosition(update);
+        }
+        time = nanoTime() - time;
+        bytes = bean.getThreadAllocatedBytes(thread) - bytes;
+        log.info(format("updatePosition: %.1f bytes, %.1f ns per move",
+                (double) bytes / MOVES, (double) time / MOVES));
+
+        log.info(format("Final extents: %s %s", object.getBoundingVolume(0).getMin(),
+                object.getBoundingVolume(0).getMax()));
+    }
+}
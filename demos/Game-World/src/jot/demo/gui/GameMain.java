@@ -1195,8 +1195,7 @@ public class GameMain extends Game {
                         AbstractBoundingVolume boundingVolume
                                 = this.sceneManager.getPlayer(this.playerId)
                                         .getBoundingVolumeCopy(0);
-                        boundingVolume.min = boundingVolume.min.add(newPosition);
-                        boundingVolume.max = boundingVolume.max.add(newPosition);
+                        boundingVolume.translate(newPosition.getX(), newPosition.getY(), newPosition.getZ());
                         GameObject temp = new GameObject(this.playerId);
                         temp.setBoundingVolume(0, boundingVolume);
                         //TODO: alter when implemented for a compound mesh.
@@ -33,6 +33,7 @@ import static java.lang.Math.toRadians;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import jot.math.sampling.AbstractSampleGenerator;
 import jot.physics.Ray;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_I;
@@ -423,6 +424,24 @@ public abstract class Camera {
         return new Ray(this.position, this.getSampleDirection(x, y));
     }
 
+    /**
+     * Sample a ray through a pixel of the image, jittered within the pixel by
+     * the next two numbers of a sample generator.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @param width of the image.
+     * @param height of the image.
+     * @param generator the sample generator of the current sample.
+     * @return the sampled ray.
+     */
+    public Ray getSampleRay(int x, int y, int width, int height,
+            AbstractSampleGenerator generator) {
+        double dx = generator.next();
+        double dy = generator.next();
+        return this.getSampleRay((x + dx) / width, (y + dy) / height);
+    }
+
     protected double getImagePlaneBoxSideLength() {
         // viewPoint_length * 2 * tan(fov / 2) = side_length
         // where viewPoint_length == 1
@@ -0,0 +1,333 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.gui.camera;
+
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static java.lang.Math.toRadians;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a view frustum, i.e., the left, right, bottom, top,
+ * near and far planes bounding what a camera sees, extracted from its
+ * projection and view matrices, to cull what lies outside of it before
+ * rendering without requiring an OpenGL context.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class Frustum {
+
+    static final Logger log = getLogger("Frustum");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * The result of a test of a volume entirely outside of this frustum.
+     */
+    public static final int OUTSIDE = -1;
+
+    /**
+     * The result of a test of a volume entirely inside of this frustum, i.e.,
+     * the mask of no planes.
+     */
+    public static final int INSIDE = 0;
+
+    /**
+     * The mask of all the planes of this frustum, one bit per plane in the
+     * order left, right, bottom, top, near and far.
+     */
+    public static final int ALL_PLANES = 0x3F;
+
+    //The a, b, c and d of each plane, with ax + by + cz + d >= 0 inside.
+    private final double[] planes;
+    private final double[] clip;
+    private final double[] view;
+
+    /**
+     * Constructor, of a frustum that culls nothing until its planes are set.
+     */
+    public Frustum() {
+        this.planes = new double[24];
+        this.clip = new double[16];
+        this.view = new double[16];
+        for (int i = 0; i < 6; i++) {
+            this.planes[i * 4 + 3] = 1;
+        }
+    }
+
+    /**
+     * Get the planes of this frustum.
+     *
+     * @return the a, b, c and d of the left, right, bottom, top, near and far
+     * planes, with normals pointing inwards, not a copy.
+     */
+    public double[] getPlanes() {
+        return this.planes;
+    }
+
+    /**
+     * Set the planes of this frustum from a matrix taking world coordinates
+     * to clip coordinates, i.e., a projection times a view matrix.
+     *
+     * @param clip the 4x4 matrix, column by column as in OpenGL.
+     */
+    public void setPlanes(double[] clip) {
+        for (int i = 0; i < 3; i++) {
+            //Left, bottom and near are the fourth row plus the x, y or z row,
+            //right, top and far the fourth row minus it.
+            for (int j = 0; j < 4; j++) {
+                this.planes[i * 8 + j] = clip[j * 4 + 3] + clip[j * 4 + i];
+                this.planes[i * 8 + 4 + j] = clip[j * 4 + 3] - clip[j * 4 + i];
+            }
+        }
+        for (int i = 0; i < 24; i += 4) {
+            double length = sqrt(this.planes[i] * this.planes[i]
+                    + this.planes[i + 1] * this.planes[i + 1]
+                    + this.planes[i + 2] * this.planes[i + 2]);
+            if (length > 0) {
+                this.planes[i] /= length;
+                this.planes[i + 1] /= length;
+                this.planes[i + 2] /= length;
+                this.planes[i + 3] /= length;
+            } else {
+                //A degenerate plane, e.g., of a flattening matrix, culls nothing.
+                this.planes[i] = this.planes[i + 1] = this.planes[i + 2] = 0;
+                this.planes[i + 3] = 1;
+            }
+        }
+    }
+
+    /**
+     * Set the planes of this frustum from a projection and a view matrix, e.g.,
+     * the ones of the current OpenGL projection and modelview matrices.
+     *
+     * @param projection the 4x4 projection matrix, column by column as in
+     * OpenGL.
+     * @param view the 4x4 view matrix, column by column as in OpenGL.
+     */
+    public void setPlanes(double[] projection, double[] view) {
+        multiplyMatrix(projection, view, this.clip);
+        this.setPlanes(this.clip);
+    }
+
+    /**
+     * Set the planes of this frustum from a camera, with the same perspective
+     * and look at the game window sets up with it.
+     *
+     * @param camera the camera.
+     * @param zNear the distance to the near plane.
+     * @param zFar the distance to the far plane.
+     * @param position a position to look at (0,0,0) from, with up vector
+     * (0,1,0), or NULL to use the camera position, view point and up vector.
+     */
+    public void setPlanes(Camera camera, double zNear, double zFar, float[] position) {
+        setPerspectiveMatrix(camera.getFieldOfView(), camera.getAspectRatio(),
+                zNear, zFar, this.clip);
+        if (position == null) {
+            Vector3D eye = camera.getPosition();
+            Vector3D center = camera.getViewPoint();
+            Vector3D up = camera.getUpVector();
+            setLookAtMatrix(eye.getX(), eye.getY(), eye.getZ(),
+                    center.getX(), center.getY(), center.getZ(),
+                    up.getX(), up.getY(), up.getZ(), this.view);
+        } else {
+            setLookAtMatrix(position[0], position[1], position[2],
+                    0, 0, 0,
+                    0, 1, 0, this.view);
+        }
+        this.setPlanes(this.clip, this.view);
+    }
+
+    /**
+     * Test a sphere against the planes of a given mask of this frustum.
+     *
+     * @param x the x coordinate of the sphere center.
+     * @param y the y coordinate of the sphere center.
+     * @param z the z coordinate of the sphere center.
+     * @param radius the sphere radius.
+     * @param mask the planes to test, e.g., ALL_PLANES, or the ones an
+     * enclosing volume crosses.
+     * @return OUTSIDE if the sphere is entirely outside of one of the planes,
+     * otherwise the mask of the tested planes the sphere crosses, i.e., INSIDE
+     * if none.
+     */
+    public int testSphere(double x, double y, double z, double radius, int mask) {
+        int crossed = INSIDE;
+        for (int i = 0; i < 6; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            double distance = this.planes[i * 4] * x + this.planes[i * 4 + 1] * y
+                    + this.planes[i * 4 + 2] * z + this.planes[i * 4 + 3];
+            if (distance < -radius) {
+                return OUTSIDE;
+            }
+            if (distance < radius) {
+                crossed |= 1 << i;
+            }
+        }
+        return crossed;
+    }
+
+    /**
+     * Test an axis aligned box against the planes of a given mask of this
+     * frustum.
+     *
+     * @param minX the minimum x coordinate of the box.
+     * @param minY the minimum y coordinate of the box.
+     * @param minZ the minimum z coordinate of the box.
+     * @param maxX the maximum x coordinate of the box.
+     * @param maxY the maximum y coordinate of the box.
+     * @param maxZ the maximum z coordinate of the box.
+     * @param mask the planes to test, e.g., ALL_PLANES, or the ones an
+     * enclosing volume crosses.
+     * @return OUTSIDE if the box is entirely outside of one of the planes,
+     * otherwise the mask of the tested planes the box crosses, i.e., INSIDE if
+     * none.
+     */
+    public int testBox(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ, int mask) {
+        int crossed = INSIDE;
+        for (int i = 0; i < 6; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            double a = this.planes[i * 4];
+            double b = this.planes[i * 4 + 1];
+            double c = this.planes[i * 4 + 2];
+            double d = this.planes[i * 4 + 3];
+            //The corner furthest along the plane normal, then the nearest one.
+            if (a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY)
+                    + c * (c > 0 ? maxZ : minZ) + d < 0) {
+                return OUTSIDE;
+            }
+            if (a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY)
+                    + c * (c > 0 ? minZ : maxZ) + d < 0) {
+                crossed |= 1 << i;
+            }
+        }
+        return crossed;
+    }
+
+    /**
+     * Set a matrix to a perspective projection, as gluPerspective does.
+     *
+     * @param fovy the field of view, in degrees, in the y direction.
+     * @param aspect the aspect ratio, i.e., width divided by height.
+     * @param zNear the distance to the near plane.
+     * @param zFar the distance to the far plane.
+     * @param m the 4x4 matrix to set, column by column as in OpenGL.
+     */
+    public static void setPerspectiveMatrix(double fovy, double aspect,
+            double zNear, double zFar, double[] m) {
+        double f = 1 / tan(toRadians(fovy) / 2);
+        for (int i = 0; i < 16; i++) {
+            m[i] = 0;
+        }
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (zFar + zNear) / (zNear - zFar);
+        m[11] = -1;
+        m[14] = 2 * zFar * zNear / (zNear - zFar);
+    }
+
+    /**
+     * Set a matrix to a viewing transformation, as gluLookAt does.
+     *
+     * @param eyeX the x coordinate of the eye.
+     * @param eyeY the y coordinate of the eye.
+     * @param eyeZ the z coordinate of the eye.
+     * @param centerX the x coordinate of the point looked at.
+     * @param centerY the y coordinate of the point looked at.
+     * @param centerZ the z coordinate of the point looked at.
+     * @param upX the x coordinate of the up vector.
+     * @param upY the y coordinate of the up vector.
+     * @param upZ the z coordinate of the up vector.
+     * @param m the 4x4 matrix to set, column by column as in OpenGL.
+     */
+    public static void setLookAtMatrix(double eyeX, double eyeY, double eyeZ,
+            double centerX, double centerY, double centerZ,
+            double upX, double upY, double upZ, double[] m) {
+        double fX = centerX - eyeX;
+        double fY = centerY - eyeY;
+        double fZ = centerZ - eyeZ;
+        double length = sqrt(fX * fX + fY * fY + fZ * fZ);
+        if (length > 0) {
+            fX /= length;
+            fY /= length;
+            fZ /= length;
+        }
+        //side = forward x up, then up = side x forward.
+        double sX = fY * upZ - fZ * upY;
+        double sY = fZ * upX - fX * upZ;
+        double sZ = fX * upY - fY * upX;
+        length = sqrt(sX * sX + sY * sY + sZ * sZ);
+        if (length > 0) {
+            sX /= length;
+            sY /= length;
+            sZ /= length;
+        }
+        double uX = sY * fZ - sZ * fY;
+        double uY = sZ * fX - sX * fZ;
+        double uZ = sX * fY - sY * fX;
+
+        m[0] = sX;
+        m[1] = uX;
+        m[2] = -fX;
+        m[3] = 0;
+        m[4] = sY;
+        m[5] = uY;
+        m[6] = -fY;
+        m[7] = 0;
+        m[8] = sZ;
+        m[9] = uZ;
+        m[10] = -fZ;
+        m[11] = 0;
+        m[12] = -(sX * eyeX + sY * eyeY + sZ * eyeZ);
+        m[13] = -(uX * eyeX + uY * eyeY + uZ * eyeZ);
+        m[14] = fX * eyeX + fY * eyeY + fZ * eyeZ;
+        m[15] = 1;
+    }
+
+    /**
+     * Multiply two 4x4 matrices, i.e., m = a b.
+     *
+     * @param a the left matrix, column by column as in OpenGL.
+     * @param b the right matrix, column by column as in OpenGL.
+     * @param m the matrix to set, column by column as in OpenGL, neither a nor
+     * b.
+     */
+    public static void multiplyMatrix(double[] a, double[] b, double[] m) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                m[column * 4 + row] = a[row] * b[column * 4]
+                        + a[4 + row] * b[column * 4 + 1]
+                        + a[8 + row] * b[column * 4 + 2]
+                        + a[12 + row] * b[column * 4 + 3];
+            }
+        }
+    }
+}
@@ -24,7 +24,9 @@ import com.jogamp.opengl.util.texture.Texture;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import jot.math.geometry.bounding.TriangleBVH;
 import jot.math.geometry.shape.Triangle;
+import jot.math.geometry.support.HullSupport;
 import jot.physics.Material;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
@@ -49,6 +51,44 @@ public abstract class Mesh implements Node {
      */
     public abstract Vector3D getMinVertex();
 
+    /**
+     * Get the convex hull of the vertexes of this mesh, computed once when the
+     * vertexes are set, e.g., for narrow phase collision detection.
+     *
+     * @return the support mapping of the convex hull of this mesh, in the space
+     * of this mesh, or NULL if it has no vertexes.
+     */
+    public abstract HullSupport getHull();
+
+    /**
+     * Test if this mesh is convex, i.e., if its convex hull stands for it in
+     * narrow phase collision detection, tested once when first required. The
+     * triangles of a concave mesh, e.g., a level, are tested instead.
+     *
+     * @return TRUE if this mesh is closed and every triangle of it lies on the
+     * boundary of its convex hull, or if it has no triangles, FALSE otherwise.
+     */
+    public abstract boolean isConvex();
+
+    /**
+     * Get the bounding volume hierarchy of the triangles of this mesh, built
+     * once when first required, e.g., for narrow phase collision detection
+     * against concave meshes or picking.
+     *
+     * @return the bounding volume hierarchy of the triangles of this mesh, in
+     * the space of this mesh, or NULL if it has no vertexes.
+     */
+    public abstract TriangleBVH getTriangleBVH();
+
+    /**
+     * Set the bounding volume hierarchy of the triangles of this mesh, e.g.,
+     * one serialized with the mesh, to avoid building it again.
+     *
+     * @param triangleBVH the bounding volume hierarchy of the triangles of
+     * this mesh, in the space of this mesh.
+     */
+    public abstract void setTriangleBVH(TriangleBVH triangleBVH);
+
     /**
      * Get all textureCoords values as a string, i.e., convert the texture data
      * buffer into a string.
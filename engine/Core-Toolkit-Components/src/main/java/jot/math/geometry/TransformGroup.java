@@ -23,7 +23,7 @@ package jot.math.geometry;
 import static com.jogamp.opengl.GL.GL_LINES;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
-import static java.lang.String.format;
+import static java.lang.System.arraycopy;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -31,9 +31,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import static jot.math.geometry.Transformations.multiplyAffineMatrix;
 import static jot.math.geometry.Transformations.rotateX;
 import static jot.math.geometry.Transformations.rotateY;
 import static jot.math.geometry.Transformations.rotateZ;
+import static jot.math.geometry.Transformations.setAffineMatrix;
 import jot.math.geometry.bounding.AABB;
 import jot.math.geometry.bounding.AbstractBoundingVolume;
 import static jot.math.geometry.bounding.AbstractBoundingVolume.BoundingVolumeType.AABB;
@@ -100,6 +102,27 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     protected final ConcurrentLinkedQueue<Node> children;
 
+    /**
+     * The transformation of this transformGroup relative to its parent, and
+     * to the world, column by column as in OpenGL, each recomputed only when
+     * read after it changed.
+     */
+    private double[] localMatrix = new double[16];
+    private double[] worldMatrix = new double[16];
+    private volatile boolean isLocalMatrixDirty = true;
+    private volatile boolean isWorldMatrixDirty = true;
+
+    /**
+     * The transformGroup this transformGroup was last added to, if any.
+     */
+    private TransformGroup parent;
+
+    /**
+     * Whether this transformGroup, and all below it, was last found outside
+     * of the view frustum, and so is not rendered.
+     */
+    private volatile boolean isCulled;
+
     /**
      * Constructor.
      */
@@ -177,14 +200,20 @@ public class TransformGroup implements Cloneable, Node, Transformable {
         this.boundingVolumes.stream()
                 .filter(bv -> bv != null)
                 .forEach(bv -> {
-                    log.info(bv.max.toString());
-                    log.info(bv.min.toString());
-                    log.info(bv.max0.toString());
-                    log.info(bv.min0.toString());
+                    log.info(bv.getMax().toString());
+                    log.info(bv.getMin().toString());
+                    log.info(bv.getMax0().toString());
+                    log.info(bv.getMin0().toString());
                     log.info("");
                 });
 
-        return (TransformGroup) super.clone();
+        TransformGroup clone = (TransformGroup) super.clone();
+        clone.localMatrix = new double[16];
+        clone.worldMatrix = new double[16];
+        clone.isLocalMatrixDirty = true;
+        clone.isWorldMatrixDirty = true;
+        clone.isCulled = false;
+        return clone;
     }
 
     /**
@@ -224,6 +253,10 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     @Override
     public void render(GL2 gl) {
+        if (this.isCulled) {
+            return;
+        }
+
         if (!this.boundingVolumes.isEmpty()) {
             this.boundingVolumes.stream()
                     .filter(bv -> bv != null && bv.isRenderable())
@@ -263,8 +296,8 @@ public class TransformGroup implements Cloneable, Node, Transformable {
 
                                     gl.glBegin(GL_LINES);
                                     {
-                                        gl.glVertex3d(bv.min.getX(), bv.min.getY(), bv.min.getZ());
-                                        gl.glVertex3d(bv.max.getX(), bv.max.getY(), bv.max.getZ());
+                                        gl.glVertex3d(bv.minX, bv.minY, bv.minZ);
+                                        gl.glVertex3d(bv.maxX, bv.maxY, bv.maxZ);
                                     }
                                     gl.glEnd();
 
@@ -318,19 +351,11 @@ public class TransformGroup implements Cloneable, Node, Transformable {
 
         gl.glPushMatrix();
         {
-            gl.glTranslated(this.translation.getX(), this.translation.getY(), this.translation.getZ());
-            if (this.rotation.getX() != 0) {
-                gl.glRotated(this.rotation.getX(), 1, 0, 0);
-            }
-            if (this.rotation.getY() != 0) {
-                gl.glRotated(this.rotation.getY(), 0, 1, 0);
-            }
-            if (this.rotation.getZ() != 0) {
-                gl.glRotated(this.rotation.getZ(), 0, 0, 1);
-            }
-            gl.glScaled(this.scaling.getX(), this.scaling.getY(), this.scaling.getZ());
+            gl.glMultMatrixd(this.getLocalMatrix(), 0);
 
-            this.children.stream().forEach(child -> child.render(gl));
+            for (Node child : this.children) {
+                child.render(gl);
+            }
         }
         gl.glPopMatrix();
     }
@@ -418,32 +443,14 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     @Override
     public void setTranslation(Vector3D translation) {
-        this.pastTranslation = new Vector3D(this.translation.toArray());
+        this.pastTranslation = this.translation;
         this.translation = translation;
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .map(boundingVolume -> {
-                        log.info(format("%s %s",
-                                boundingVolume.max.toString(),
-                                boundingVolume.min.toString()));
-                        return boundingVolume;
-                    })
-                    .map(boundingVolume -> {
-                        boundingVolume.max = new Vector3D(
-                                boundingVolume.max0.toArray()).add(translation);
-                        return boundingVolume;
-                    })
-                    .map(boundingVolume -> {
-                        boundingVolume.min = new Vector3D(
-                                boundingVolume.min0.toArray()).add(translation);
-                        return boundingVolume;
-                    })
-                    .forEachOrdered(boundingVolume -> {
-                        log.info(format("%s %s\n",
-                                boundingVolume.max.toString(),
-                                boundingVolume.min.toString()));
-                    });
+        this.invalidateMatrix();
+        double x = translation.getX(), y = translation.getY(), z = translation.getZ();
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                boundingVolume.setTranslation(x, y, z);
+            }
         }
     }
 
@@ -501,6 +508,7 @@ public class TransformGroup implements Cloneable, Node, Transformable {
         }
 
         this.rotation = new Vector3D(x, y, z);
+        this.invalidateMatrix();
     }
 
     /**
@@ -550,47 +558,46 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             x -= 360;
         }
         this.rotation = new Vector3D(x, this.rotation.getY(), this.rotation.getZ());
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered(boundingVolume -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateX(this.rotation.getX(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateX(this.rotation.getX(), this.translation, boundingVolume.max0);
-                            boundingVolume.min0 = rotateX(this.rotation.getX(), this.translation, boundingVolume.min0);
-                            boundingVolume.max0 = rotateX(this.rotation.getX(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min0 = boundingVolume.min0.subtract(min);
-                            boundingVolume.max0 = boundingVolume.max0.subtract(max);
-                            boundingVolume.min = boundingVolume.min.subtract(boundingVolume.min0);
-                            boundingVolume.max = boundingVolume.max.subtract(boundingVolume.max0);
-                            boundingVolume.min0 = min;
-                            boundingVolume.max0 = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMax0()));
+                    boundingVolume.setMin0(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax0(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin0(boundingVolume.getMin0().subtract(min));
+                    boundingVolume.setMax0(boundingVolume.getMax0().subtract(max));
+                    boundingVolume.setMin(boundingVolume.getMin().subtract(boundingVolume.getMin0()));
+                    boundingVolume.setMax(boundingVolume.getMax().subtract(boundingVolume.getMax0()));
+                    boundingVolume.setMin0(min);
+                    boundingVolume.setMax0(max);
+                }
+            }
         }
     }
 
@@ -609,47 +616,46 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             y -= 360;
         }
         this.rotation = new Vector3D(this.rotation.getX(), y, this.rotation.getZ());
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered(boundingVolume -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateY(this.rotation.getY(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateY(this.rotation.getY(), this.translation, boundingVolume.max0);
-                            boundingVolume.min0 = rotateY(this.rotation.getY(), this.translation, boundingVolume.min0);
-                            boundingVolume.max0 = rotateY(this.rotation.getY(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min0 = boundingVolume.min0.subtract(min);
-                            boundingVolume.max0 = boundingVolume.max0.subtract(max);
-                            boundingVolume.min = boundingVolume.min.subtract(boundingVolume.min0);
-                            boundingVolume.max = boundingVolume.max.subtract(boundingVolume.max0);
-                            boundingVolume.min0 = min;
-                            boundingVolume.max0 = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMax0()));
+                    boundingVolume.setMin0(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax0(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin0(boundingVolume.getMin0().subtract(min));
+                    boundingVolume.setMax0(boundingVolume.getMax0().subtract(max));
+                    boundingVolume.setMin(boundingVolume.getMin().subtract(boundingVolume.getMin0()));
+                    boundingVolume.setMax(boundingVolume.getMax().subtract(boundingVolume.getMax0()));
+                    boundingVolume.setMin0(min);
+                    boundingVolume.setMax0(max);
+                }
+            }
         }
     }
 
@@ -668,47 +674,46 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             z -= 360;
         }
         this.rotation = new Vector3D(this.rotation.getX(), this.rotation.getY(), z);
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered(boundingVolume -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.max0);
-                            boundingVolume.min0 = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.min0);
-                            boundingVolume.max0 = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min0 = boundingVolume.min0.subtract(min);
-                            boundingVolume.max0 = boundingVolume.max0.subtract(max);
-                            boundingVolume.min = boundingVolume.min.subtract(boundingVolume.min0);
-                            boundingVolume.max = boundingVolume.max.subtract(boundingVolume.max0);
-                            boundingVolume.min0 = min;
-                            boundingVolume.max0 = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMax0()));
+                    boundingVolume.setMin0(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax0(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin0(boundingVolume.getMin0().subtract(min));
+                    boundingVolume.setMax0(boundingVolume.getMax0().subtract(max));
+                    boundingVolume.setMin(boundingVolume.getMin().subtract(boundingVolume.getMin0()));
+                    boundingVolume.setMax(boundingVolume.getMax().subtract(boundingVolume.getMax0()));
+                    boundingVolume.setMin0(min);
+                    boundingVolume.setMax0(max);
+                }
+            }
         }
     }
 
@@ -726,6 +731,7 @@ public class TransformGroup implements Cloneable, Node, Transformable {
     @Override
     public void setScaling(Vector3D scaling) {
         this.scaling = scaling;
+        this.invalidateMatrix();
     }
 
     /**
@@ -733,6 +739,11 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     @Override
     public boolean addChild(Node node) {
+        if (node instanceof TransformGroup) {
+            TransformGroup group = (TransformGroup) node;
+            group.parent = this;
+            group.invalidateWorldMatrix(true);
+        }
         return this.children.add(node);
     }
 
@@ -741,6 +752,11 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     @Override
     public boolean removeChild(Node node) {
+        if (node instanceof TransformGroup && ((TransformGroup) node).parent == this) {
+            TransformGroup group = (TransformGroup) node;
+            group.parent = null;
+            group.invalidateWorldMatrix(true);
+        }
         return this.children.remove(node);
         //return children.remove((Node) child);
     }
@@ -783,6 +799,98 @@ public class TransformGroup implements Cloneable, Node, Transformable {
         return this.children.iterator();
     }
 
+    /**
+     * Get the transformGroup this transformGroup was last added to.
+     *
+     * @return the parent of this transformGroup, or NULL if none.
+     */
+    public TransformGroup getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Get whether this transformGroup, and all below it, was last found
+     * outside of the view frustum.
+     *
+     * @return TRUE if this transformGroup is not rendered, FALSE otherwise.
+     */
+    public boolean isCulled() {
+        return this.isCulled;
+    }
+
+    /**
+     * Set whether this transformGroup, and all below it, was last found
+     * outside of the view frustum, and so is not rendered.
+     *
+     * @param isCulled TRUE to skip rendering this transformGroup, FALSE
+     * otherwise.
+     */
+    public void setCulled(boolean isCulled) {
+        this.isCulled = isCulled;
+    }
+
+    /**
+     * Get the transformation of this transformGroup relative to its parent,
+     * i.e., its translation, rotations around x, y and z, in degrees, and
+     * scaling, as when rendering it, recomputed only if any changed.
+     *
+     * @return the 4x4 matrix, column by column as in OpenGL, not a copy.
+     */
+    public double[] getLocalMatrix() {
+        if (this.isLocalMatrixDirty) {
+            setAffineMatrix(this.translation, this.rotation, this.scaling, this.localMatrix);
+            this.isLocalMatrixDirty = false;
+        }
+        return this.localMatrix;
+    }
+
+    /**
+     * Get the transformation of this transformGroup to the world, i.e., the
+     * one of its parent followed by its own, recomputed only if either
+     * changed, so that a deep hierarchy only pays for what moved.
+     *
+     * @return the 4x4 matrix, column by column as in OpenGL, not a copy.
+     */
+    public double[] getWorldMatrix() {
+        if (this.isWorldMatrixDirty) {
+            TransformGroup group = this.parent;
+            if (group == null) {
+                arraycopy(this.getLocalMatrix(), 0, this.worldMatrix, 0, 16);
+            } else {
+                multiplyAffineMatrix(group.getWorldMatrix(), this.getLocalMatrix(), this.worldMatrix);
+            }
+            this.isWorldMatrixDirty = false;
+        }
+        return this.worldMatrix;
+    }
+
+    /**
+     * Mark the transformation of this transformGroup as changed, and with it
+     * the one to the world of this transformGroup and of all below it.
+     */
+    protected void invalidateMatrix() {
+        this.isLocalMatrixDirty = true;
+        this.invalidateWorldMatrix(false);
+    }
+
+    /**
+     * Mark the transformation to the world of this transformGroup and of all
+     * below it as changed. Since a transformation to the world is only
+     * recomputed after the one of the parent, the ones below an already
+     * changed transformGroup are already changed too, unless forced.
+     */
+    private void invalidateWorldMatrix(boolean isForced) {
+        if (this.isWorldMatrixDirty && !isForced) {
+            return;
+        }
+        this.isWorldMatrixDirty = true;
+        for (Node child : this.children) {
+            if (child instanceof TransformGroup) {
+                ((TransformGroup) child).invalidateWorldMatrix(false);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -810,15 +918,14 @@ public class TransformGroup implements Cloneable, Node, Transformable {
      */
     @Override
     public void updateTranslation(Vector3D update) {
-        this.pastTranslation = new Vector3D(this.translation.toArray());
+        this.pastTranslation = this.translation;
         this.translation = this.translation.add(update);
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(bv -> bv != null)
-                    .forEach(bv -> {
-                        bv.min = bv.min.add(update);
-                        bv.max = bv.max.add(update);
-                    });
+        this.invalidateMatrix();
+        double x = update.getX(), y = update.getY(), z = update.getZ();
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                boundingVolume.translate(x, y, z);
+            }
         }
     }
 
@@ -837,41 +944,40 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             x -= 360;
         }
         this.rotation = new Vector3D(x, this.rotation.getY(), this.rotation.getZ());
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered(boundingVolume -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateX(this.rotation.getX(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateX(this.rotation.getX(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min = min;
-                            boundingVolume.max = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateX(this.rotation.getX(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateX(this.rotation.getX(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin(min);
+                    boundingVolume.setMax(max);
+                }
+            }
         }
     }
 
@@ -890,41 +996,40 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             y -= 360;
         }
         this.rotation = new Vector3D(this.rotation.getX(), y, this.rotation.getZ());
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered((boundingVolume) -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateY(this.rotation.getY(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateY(this.rotation.getY(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min = min;
-                            boundingVolume.max = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateY(this.rotation.getY(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateY(this.rotation.getY(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin(min);
+                    boundingVolume.setMax(max);
+                }
+            }
         }
     }
 
@@ -943,41 +1048,40 @@ public class TransformGroup implements Cloneable, Node, Transformable {
             z -= 360;
         }
         this.rotation = new Vector3D(this.rotation.getX(), this.rotation.getY(), z);
-
-        if (!this.boundingVolumes.isEmpty()) {
-            this.boundingVolumes.stream()
-                    .filter(boundingVolume -> boundingVolume != null)
-                    .forEachOrdered(boundingVolume -> {
-                        if (boundingVolume.boundingVolumeType != AABB) {
-                            boundingVolume.min = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.min0);
-                            boundingVolume.max = rotateZ(this.rotation.getZ(), this.translation, boundingVolume.max0);
-                        } else {
-                            Vector3D v1 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.toArray()));
-                            Vector3D v2 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v3 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v4 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.min0.getX(), boundingVolume.max0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v5 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v6 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.min0.getY(), boundingVolume.max0.getZ()));
-                            Vector3D v7 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.getX(), boundingVolume.max0.getY(), boundingVolume.min0.getZ()));
-                            Vector3D v8 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
-                                    boundingVolume.max0.toArray()));
-
-                            Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
-                                    this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
-                            Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
-                                    this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
-
-                            boundingVolume.min = min;
-                            boundingVolume.max = max;
-                        }
-                    });
+        this.invalidateMatrix();
+
+        for (AbstractBoundingVolume boundingVolume : this.boundingVolumes) {
+            if (boundingVolume != null) {
+                if (boundingVolume.boundingVolumeType != AABB) {
+                    boundingVolume.setMin(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMin0()));
+                    boundingVolume.setMax(rotateZ(this.rotation.getZ(), this.translation, boundingVolume.getMax0()));
+                } else {
+                    Vector3D v1 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.getMin0().toArray()));
+                    Vector3D v2 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v3 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v4 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.minX0, boundingVolume.maxY0, boundingVolume.maxZ0));
+                    Vector3D v5 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.minZ0));
+                    Vector3D v6 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.minY0, boundingVolume.maxZ0));
+                    Vector3D v7 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.maxX0, boundingVolume.maxY0, boundingVolume.minZ0));
+                    Vector3D v8 = rotateZ(this.rotation.getZ(), this.translation, new Vector3D(
+                            boundingVolume.getMax0().toArray()));
+
+                    Vector3D min = this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(this.getMin(
+                            this.getMin(v1, v2), v3), v4), v5), v6), v7), v8);
+                    Vector3D max = this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(this.getMax(
+                            this.getMax(v1, v2), v3), v4), v5), v6), v7), v8);
+
+                    boundingVolume.setMin(min);
+                    boundingVolume.setMax(max);
+                }
+            }
         }
     }
 }
@@ -20,6 +20,7 @@
  */
 package jot.math.geometry;
 
+import static java.lang.Double.isNaN;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
@@ -27,8 +28,6 @@ import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
-import static org.apache.commons.math3.linear.MatrixUtils.createRealMatrix;
-import org.apache.commons.math3.linear.RealMatrix;
 
 /**
  * Class that implements geometric transformations given a vector, i.e.,shear,
@@ -104,15 +103,11 @@ public class Transformations {
      * @return the value of v after rotated.
      */
     public static Vector3D rotateX(double rotation, Vector3D translation, Vector3D v) {
-        double[][] rotationMatrix = {
-            {1, 0, 0, 0},
-            {0, cos(toRadians(rotation)), -sin(toRadians(rotation)), 0},
-            {0, sin(toRadians(rotation)), cos(toRadians(rotation)), 0},
-            {0, 0, 0, 1}};
-
-        RealMatrix matrix = createRealMatrix(rotationMatrix);
-
-        return rotateXYZ(translation, v, matrix);
+        double c = cos(toRadians(rotation)), s = sin(toRadians(rotation));
+        return new Vector3D(
+                v.getX() + translation.getX(),
+                c * v.getY() - s * v.getZ() + translation.getY(),
+                s * v.getY() + c * v.getZ() + translation.getZ());
     }
 
     /**
@@ -124,15 +119,11 @@ public class Transformations {
      * @return the value of v after rotated.
      */
     public static Vector3D rotateY(double rotation, Vector3D translation, Vector3D v) {
-        double[][] rotationMatrix = {
-            {cos(toRadians(rotation)), 0, sin(toRadians(rotation)), 0},
-            {0, 1, 0, 0},
-            {-sin(toRadians(rotation)), 0, cos(toRadians(rotation)), 0},
-            {0, 0, 0, 1}};
-
-        RealMatrix matrix = createRealMatrix(rotationMatrix);
-
-        return rotateXYZ(translation, v, matrix);
+        double c = cos(toRadians(rotation)), s = sin(toRadians(rotation));
+        return new Vector3D(
+                c * v.getX() + s * v.getZ() + translation.getX(),
+                v.getY() + translation.getY(),
+                -s * v.getX() + c * v.getZ() + translation.getZ());
     }
 
     /**
@@ -144,56 +135,11 @@ public class Transformations {
      * @return the value of v after rotated.
      */
     public static Vector3D rotateZ(double rotation, Vector3D translation, Vector3D v) {
-        double[][] rotationMatrix = {
-            {cos(toRadians(rotation)), -sin(toRadians(rotation)), 0, 0},
-            {sin(toRadians(rotation)), cos(toRadians(rotation)), 0, 0},
-            {0, 0, 1, 0},
-            {0, 0, 0, 1}};
-
-        RealMatrix matrix = createRealMatrix(rotationMatrix);
-
-        return rotateXYZ(translation, v, matrix);
-    }
-
-    /**
-     * Initialize all matrixes common to all XYZ rotations for a given vector v
-     * and returns the value of v rotated in either XYZ.
-     *
-     * @param translation in the XYZ axis.
-     * @param v the vector to rotate around the XYZ axis.
-     * @param m3 the rotation matrix.
-     * @return the value of v after rotated in either XYZ.
-     */
-    private static Vector3D rotateXYZ(Vector3D translation, Vector3D v, RealMatrix m3) {
-        double[][] matrix0 = {
-            {v.getX(), 0, 0, 0},
-            {v.getY(), 0, 0, 0},
-            {v.getZ(), 0, 0, 0},
-            {1, 0, 0, 0}};
-        double[][] matrix1 = {
-            {1, 0, 0, translation.getX()},
-            {0, 1, 0, translation.getY()},
-            {0, 0, 1, translation.getZ()},
-            {0, 0, 0, 1}};
-        double[][] matrix2 = {
-            {1, 0, 0, -translation.getX()},
-            {0, 1, 0, -translation.getY()},
-            {0, 0, 1, -translation.getZ()},
-            {0, 0, 0, 1}};
-        double[][] matrix4 = {
-            {1, 0, 0, translation.getX()},
-            {0, 1, 0, translation.getY()},
-            {0, 0, 1, translation.getZ()},
-            {0, 0, 0, 1}};
-
-        RealMatrix m0 = createRealMatrix(matrix0);
-        RealMatrix m1 = createRealMatrix(matrix1);
-        RealMatrix m2 = createRealMatrix(matrix2);
-        RealMatrix m4 = createRealMatrix(matrix4);
-
-        m4 = m4.multiply(m3.multiply(m2.multiply(m1.multiply(m0))));
-
-        return new Vector3D(m4.getEntry(0, 0), m4.getEntry(1, 0), m4.getEntry(2, 0));
+        double c = cos(toRadians(rotation)), s = sin(toRadians(rotation));
+        return new Vector3D(
+                c * v.getX() - s * v.getY() + translation.getX(),
+                s * v.getX() + c * v.getY() + translation.getY(),
+                v.getZ() + translation.getZ());
     }
 
     /**
@@ -205,22 +151,8 @@ public class Transformations {
      * @return the transformed vector.
      */
     public static Vector3D scale(Vector3D v, Vector3D offset) {
-        double[][] matrix = {
-            {v.getX(), 0, 0, 0},
-            {v.getY(), 0, 0, 0},
-            {v.getZ(), 0, 0, 0},
-            {1, 0, 0, 0}};
-        double[][] scalingMatrix = {
-            {offset.getX(), 0, 0, 0},
-            {0, offset.getY(), 0, 0},
-            {0, 0, offset.getZ(), 0},
-            {0, 0, 0, 1}};
-
-        RealMatrix m0 = createRealMatrix(matrix);
-        RealMatrix m1 = createRealMatrix(scalingMatrix);
-        RealMatrix m2 = m1.multiply(m0);
-
-        return new Vector3D(m2.getEntry(0, 0), m2.getEntry(1, 0), m2.getEntry(2, 0));
+        return new Vector3D(v.getX() * offset.getX(), v.getY() * offset.getY(),
+                v.getZ() * offset.getZ());
     }
 
     /**
@@ -234,22 +166,110 @@ public class Transformations {
      * @return the transformed vector.
      */
     public static Vector3D translate(Vector3D v, Vector3D offset) {
-        double[][] matrix = {
-            {v.getX(), 0, 0, 0},
-            {v.getY(), 0, 0, 0},
-            {v.getZ(), 0, 0, 0},
-            {1, 0, 0, 0}};
-        double[][] translationMatrix = {
-            {1, 0, 0, offset.getX()},
-            {0, 1, 0, offset.getY()},
-            {0, 0, 1, offset.getZ()},
-            {0, 0, 0, 1}};
+        return new Vector3D(v.getX() + offset.getX(), v.getY() + offset.getY(),
+                v.getZ() + offset.getZ());
+    }
+
+    /**
+     * Store the affine transformation of a translation, rotations around x, y
+     * and z, in degrees, and scaling, applied to a vector in the reverse
+     * order, as when rendering a transformGroup.
+     *
+     * @param translation the translation.
+     * @param rotation the rotations around x, y and z, in degrees.
+     * @param scaling the scaling.
+     * @param m where to store the 4x4 matrix, column by column as in OpenGL.
+     */
+    public static void setAffineMatrix(Vector3D translation, Vector3D rotation,
+            Vector3D scaling, double[] m) {
+        double ca = cos(toRadians(rotation.getX())), sa = sin(toRadians(rotation.getX()));
+        double cb = cos(toRadians(rotation.getY())), sb = sin(toRadians(rotation.getY()));
+        double cc = cos(toRadians(rotation.getZ())), sc = sin(toRadians(rotation.getZ()));
+        double sx = scaling.getX(), sy = scaling.getY(), sz = scaling.getZ();
 
-        RealMatrix m0 = createRealMatrix(matrix);
-        RealMatrix m1 = createRealMatrix(translationMatrix);
-        RealMatrix m2 = m1.multiply(m0);
+        //T Rx Ry Rz S
+        m[0] = cb * cc * sx;
+        m[1] = (ca * sc + sa * sb * cc) * sx;
+        m[2] = (sa * sc - ca * sb * cc) * sx;
+        m[3] = 0;
+        m[4] = -cb * sc * sy;
+        m[5] = (ca * cc - sa * sb * sc) * sy;
+        m[6] = (sa * cc + ca * sb * sc) * sy;
+        m[7] = 0;
+        m[8] = sb * sz;
+        m[9] = -sa * cb * sz;
+        m[10] = ca * cb * sz;
+        m[11] = 0;
+        m[12] = translation.getX();
+        m[13] = translation.getY();
+        m[14] = translation.getZ();
+        m[15] = 1;
+    }
 
-        return new Vector3D(m2.getEntry(0, 0), m2.getEntry(1, 0), m2.getEntry(2, 0));
+    /**
+     * Multiply two affine transformations, i.e., 4x4 matrices whose last row
+     * is 0, 0, 0, 1.
+     *
+     * @param a the first matrix, column by column as in OpenGL.
+     * @param b the second matrix, applied to a vector before the first one.
+     * @param m where to store a times b, column by column, which may be b but
+     * not a.
+     */
+    public static void multiplyAffineMatrix(double[] a, double[] b, double[] m) {
+        for (int j = 0; j < 16; j += 4) {
+            double x = b[j], y = b[j + 1], z = b[j + 2], w = b[j + 3];
+            m[j] = a[0] * x + a[4] * y + a[8] * z + a[12] * w;
+            m[j + 1] = a[1] * x + a[5] * y + a[9] * z + a[13] * w;
+            m[j + 2] = a[2] * x + a[6] * y + a[10] * z + a[14] * w;
+            m[j + 3] = w;
+        }
+    }
+
+    /**
+     * Invert an affine transformation, i.e., a 4x4 matrix whose last row is 0,
+     * 0, 0, 1.
+     *
+     * @param m the matrix, column by column as in OpenGL.
+     * @param inverse where to store the inverse of m, column by column, which
+     * may be m.
+     * @return TRUE if m is invertible, FALSE otherwise, leaving inverse
+     * unchanged.
+     */
+    public static boolean invertAffineMatrix(double[] m, double[] inverse) {
+        //The inverse of the linear part is its adjugate over its determinant
+        double c0 = m[5] * m[10] - m[6] * m[9];
+        double c1 = m[2] * m[9] - m[1] * m[10];
+        double c2 = m[1] * m[6] - m[2] * m[5];
+        double determinant = m[0] * c0 + m[4] * c1 + m[8] * c2;
+        if (determinant == 0 || isNaN(determinant)) {
+            return false;
+        }
+        double f = 1 / determinant;
+        double a0 = c0 * f, a1 = c1 * f, a2 = c2 * f;
+        double a4 = (m[6] * m[8] - m[4] * m[10]) * f;
+        double a5 = (m[0] * m[10] - m[2] * m[8]) * f;
+        double a6 = (m[2] * m[4] - m[0] * m[6]) * f;
+        double a8 = (m[4] * m[9] - m[5] * m[8]) * f;
+        double a9 = (m[1] * m[8] - m[0] * m[9]) * f;
+        double a10 = (m[0] * m[5] - m[1] * m[4]) * f;
+        double tx = m[12], ty = m[13], tz = m[14];
+        inverse[0] = a0;
+        inverse[1] = a1;
+        inverse[2] = a2;
+        inverse[3] = 0;
+        inverse[4] = a4;
+        inverse[5] = a5;
+        inverse[6] = a6;
+        inverse[7] = 0;
+        inverse[8] = a8;
+        inverse[9] = a9;
+        inverse[10] = a10;
+        inverse[11] = 0;
+        inverse[12] = -(a0 * tx + a4 * ty + a8 * tz);
+        inverse[13] = -(a1 * tx + a5 * ty + a9 * tz);
+        inverse[14] = -(a2 * tx + a6 * ty + a10 * tz);
+        inverse[15] = 1;
+        return true;
     }
 
     /**
@@ -59,10 +59,10 @@ public class AABB extends AbstractBoundingVolume {
      */
     public AABB(Vector3D min, Vector3D max) {
         this.Id = "AABB";
-        this.min = new Vector3D(min.toArray());
-        this.max = new Vector3D(max.toArray());
-        this.min0 = new Vector3D(min.toArray());
-        this.max0 = new Vector3D(max.toArray());
+        this.setMin(min);
+        this.setMax(max);
+        this.setMin0(min);
+        this.setMax0(max);
         this.boundingVolumeType = AABB;
         this.material = new Material();
     }
@@ -76,16 +76,16 @@ public class AABB extends AbstractBoundingVolume {
     public AABB(AbstractBoundingVolume boundingVolume) {
         if (boundingVolume != null) {
             this.Id = boundingVolume.Id;
-            this.min = new Vector3D(boundingVolume.min.toArray());
-            this.max = new Vector3D(boundingVolume.max.toArray());
-            this.min0 = new Vector3D(boundingVolume.min0.toArray());
-            this.max0 = new Vector3D(boundingVolume.max0.toArray());
+            this.setMin(boundingVolume.getMin());
+            this.setMax(boundingVolume.getMax());
+            this.setMin0(boundingVolume.getMin0());
+            this.setMax0(boundingVolume.getMax0());
         } else {
             this.Id = "AABB";
-            this.min = ZERO;
-            this.max = ZERO;
-            this.min0 = ZERO;
-            this.max0 = ZERO;
+            this.setMin(ZERO);
+            this.setMax(ZERO);
+            this.setMin0(ZERO);
+            this.setMax0(ZERO);
         }
         this.boundingVolumeType = AABB;
         this.material = new Material();
@@ -106,15 +106,15 @@ public class AABB extends AbstractBoundingVolume {
     @Override
     public boolean intersectsRay(Ray ray) {
         //TODO: test for achievable values!!!!!!
-        float tmin = (float) ((this.min.getX() - ray.getOrigin().getX()) / ray.getDirection().getX());
-        float tmax = (float) ((this.max.getX() - ray.getOrigin().getX()) / ray.getDirection().getX());
+        float tmin = (float) ((this.minX - ray.getOrigin().getX()) / ray.getDirection().getX());
+        float tmax = (float) ((this.maxX - ray.getOrigin().getX()) / ray.getDirection().getX());
         if (tmin > tmax) {
             float aux = tmin;
             tmin = tmax;
             tmax = aux;
         }
-        float tymin = (float) ((this.min.getY() - ray.getOrigin().getY()) / ray.getDirection().getY());
-        float tymax = (float) ((this.max.getY() - ray.getOrigin().getY()) / ray.getDirection().getY());
+        float tymin = (float) ((this.minY - ray.getOrigin().getY()) / ray.getDirection().getY());
+        float tymax = (float) ((this.maxY - ray.getOrigin().getY()) / ray.getDirection().getY());
         if (tymin > tymax) {
             float aux = tymin;
             tymin = tymax;
@@ -129,8 +129,8 @@ public class AABB extends AbstractBoundingVolume {
         if (tymax < tmax) {
             tmax = tymax;
         }
-        float tzmin = (float) ((this.min.getZ() - ray.getOrigin().getZ()) / ray.getDirection().getZ());
-        float tzmax = (float) ((this.max.getZ() - ray.getOrigin().getZ()) / ray.getDirection().getZ());
+        float tzmin = (float) ((this.minZ - ray.getOrigin().getZ()) / ray.getDirection().getZ());
+        float tzmax = (float) ((this.maxZ - ray.getOrigin().getZ()) / ray.getDirection().getZ());
         if (tzmin > tzmax) {
             float aux = tzmin;
             tzmin = tzmax;
@@ -164,34 +164,34 @@ public class AABB extends AbstractBoundingVolume {
     public boolean isCollide(AbstractBoundingVolume otherBoundingVolume) {
         //AABB with AABB collision test.
         if (otherBoundingVolume.boundingVolumeType == AABB) {
-            return this != otherBoundingVolume && otherBoundingVolume.max.getX() > this.min.getX()
-                    && otherBoundingVolume.min.getX() < this.max.getX()
-                    && otherBoundingVolume.max.getY() > this.min.getY()
-                    && otherBoundingVolume.min.getY() < this.max.getY()
-                    && otherBoundingVolume.max.getZ() > this.min.getZ()
-                    && otherBoundingVolume.min.getZ() < this.max.getZ();
+            return this != otherBoundingVolume && otherBoundingVolume.maxX > this.minX
+                    && otherBoundingVolume.minX < this.maxX
+                    && otherBoundingVolume.maxY > this.minY
+                    && otherBoundingVolume.minY < this.maxY
+                    && otherBoundingVolume.maxZ > this.minZ
+                    && otherBoundingVolume.minZ < this.maxZ;
         }
 
         if (otherBoundingVolume.boundingVolumeType == OBB) {
             ArrayList<Vector3D> simplex1 = new ArrayList<>();
-            simplex1.add(new Vector3D(this.min.toArray()));
-            simplex1.add(new Vector3D(this.min.getX(), this.max.getY(), this.min.getZ()));
-            simplex1.add(new Vector3D(this.min.getX(), this.min.getY(), this.max.getZ()));
-            simplex1.add(new Vector3D(this.min.getX(), this.max.getY(), this.max.getZ()));
-            simplex1.add(new Vector3D(this.max.getX(), this.min.getY(), this.min.getZ()));
-            simplex1.add(new Vector3D(this.max.getX(), this.min.getY(), this.max.getZ()));
-            simplex1.add(new Vector3D(this.max.getX(), this.max.getY(), this.min.getZ()));
-            simplex1.add(new Vector3D(this.max.toArray()));
+            simplex1.add(new Vector3D(this.getMin().toArray()));
+            simplex1.add(new Vector3D(this.minX, this.maxY, this.minZ));
+            simplex1.add(new Vector3D(this.minX, this.minY, this.maxZ));
+            simplex1.add(new Vector3D(this.minX, this.maxY, this.maxZ));
+            simplex1.add(new Vector3D(this.maxX, this.minY, this.minZ));
+            simplex1.add(new Vector3D(this.maxX, this.minY, this.maxZ));
+            simplex1.add(new Vector3D(this.maxX, this.maxY, this.minZ));
+            simplex1.add(new Vector3D(this.getMax().toArray()));
 
             ArrayList<Vector3D> simplex2 = new ArrayList<>();
-            simplex2.add(new Vector3D(otherBoundingVolume.min.toArray()));
-            simplex2.add(new Vector3D(otherBoundingVolume.min.getX(), otherBoundingVolume.max.getY(), otherBoundingVolume.min.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.min.getX(), otherBoundingVolume.min.getY(), otherBoundingVolume.max.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.min.getX(), otherBoundingVolume.max.getY(), otherBoundingVolume.max.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.max.getX(), otherBoundingVolume.min.getY(), otherBoundingVolume.min.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.max.getX(), otherBoundingVolume.min.getY(), otherBoundingVolume.max.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.max.getX(), otherBoundingVolume.max.getY(), otherBoundingVolume.min.getZ()));
-            simplex2.add(new Vector3D(otherBoundingVolume.max.toArray()));
+            simplex2.add(new Vector3D(otherBoundingVolume.getMin().toArray()));
+            simplex2.add(new Vector3D(otherBoundingVolume.minX, otherBoundingVolume.maxY, otherBoundingVolume.minZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.minX, otherBoundingVolume.minY, otherBoundingVolume.maxZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.minX, otherBoundingVolume.maxY, otherBoundingVolume.maxZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.maxX, otherBoundingVolume.minY, otherBoundingVolume.minZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.maxX, otherBoundingVolume.minY, otherBoundingVolume.maxZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.maxX, otherBoundingVolume.maxY, otherBoundingVolume.minZ));
+            simplex2.add(new Vector3D(otherBoundingVolume.getMax().toArray()));
 
             return this != otherBoundingVolume && BodiesIntersect(simplex1, simplex2);
         }
@@ -239,41 +239,41 @@ public class AABB extends AbstractBoundingVolume {
         {
             gl.glBegin(GL_LINES);
             {
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.min.getZ());
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.min.getZ());
+                gl.glVertex3d(this.minX, this.minY, this.minZ);
+                gl.glVertex3d(this.maxX, this.minY, this.minZ);
 
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.min.getZ());
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.min.getZ());
+                gl.glVertex3d(this.maxX, this.minY, this.minZ);
+                gl.glVertex3d(this.maxX, this.maxY, this.minZ);
 
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.min.getZ());
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.min.getZ());
+                gl.glVertex3d(this.maxX, this.maxY, this.minZ);
+                gl.glVertex3d(this.minX, this.maxY, this.minZ);
 
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.min.getZ());
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.min.getZ());
+                gl.glVertex3d(this.minX, this.maxY, this.minZ);
+                gl.glVertex3d(this.minX, this.minY, this.minZ);
 
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.min.getZ());
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.max.getZ());
+                gl.glVertex3d(this.minX, this.minY, this.minZ);
+                gl.glVertex3d(this.minX, this.minY, this.maxZ);
 
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.max.getZ());
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.max.getZ());
+                gl.glVertex3d(this.minX, this.minY, this.maxZ);
+                gl.glVertex3d(this.minX, this.maxY, this.maxZ);
 
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.max.getZ());
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.min.getZ());
+                gl.glVertex3d(this.minX, this.maxY, this.maxZ);
+                gl.glVertex3d(this.minX, this.maxY, this.minZ);
 
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.min.getZ());
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.max.getZ());
+                gl.glVertex3d(this.maxX, this.minY, this.minZ);
+                gl.glVertex3d(this.maxX, this.minY, this.maxZ);
 
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.max.getZ());
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.max.getZ());
+                gl.glVertex3d(this.maxX, this.minY, this.maxZ);
+                gl.glVertex3d(this.maxX, this.maxY, this.maxZ);
 
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.max.getZ());
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.min.getZ());
+                gl.glVertex3d(this.maxX, this.maxY, this.maxZ);
+                gl.glVertex3d(this.maxX, this.maxY, this.minZ);
 
-                gl.glVertex3d(this.min.getX(), this.min.getY(), this.max.getZ());
-                gl.glVertex3d(this.max.getX(), this.min.getY(), this.max.getZ());
+                gl.glVertex3d(this.minX, this.minY, this.maxZ);
+                gl.glVertex3d(this.maxX, this.minY, this.maxZ);
 
-                gl.glVertex3d(this.min.getX(), this.max.getY(), this.max.getZ());
-                gl.glVertex3d(this.max.getX(), this.max.getY(), this.max.getZ());
+                gl.glVertex3d(this.minX, this.maxY, this.maxZ);
+                gl.glVertex3d(this.maxX, this.maxY, this.maxZ);
             }
             gl.glEnd();
         }
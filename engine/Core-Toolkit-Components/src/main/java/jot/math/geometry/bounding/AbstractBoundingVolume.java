@@ -51,9 +51,19 @@ public abstract class AbstractBoundingVolume implements Renderable, Node {
     public BoundingVolumeType boundingVolumeType;
 
     /**
-     * This bounding volume current and initial minimum and maximum.
+     * This bounding volume current minimum and maximum coordinates, updated in
+     * place as its transform group moves.
      */
-    public Vector3D min, max, min0, max0;
+    public double minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * This bounding volume initial minimum and maximum coordinates.
+     */
+    public double minX0, minY0, minZ0, maxX0, maxY0, maxZ0;
+
+    //The current and initial minimum and maximum as vectors, created only
+    //when requested after the coordinates changed.
+    private Vector3D min, max, min0, max0;
 
     /**
      * The bounding volume identifier.
@@ -102,15 +112,156 @@ public abstract class AbstractBoundingVolume implements Renderable, Node {
         this.material.setRenderable(renderBoundingVolume);
     }
 
+    /**
+     * Get the current minimum of this bounding volume.
+     *
+     * @return the current minimum of this bounding volume.
+     */
+    public Vector3D getMin() {
+        Vector3D v = this.min;
+        if (isStale(v, this.minX, this.minY, this.minZ)) {
+            v = this.min = new Vector3D(this.minX, this.minY, this.minZ);
+        }
+        return v;
+    }
+
+    /**
+     * Set the current minimum of this bounding volume.
+     *
+     * @param min the current minimum of this bounding volume.
+     */
+    public void setMin(Vector3D min) {
+        this.minX = min.getX();
+        this.minY = min.getY();
+        this.minZ = min.getZ();
+        this.min = min;
+    }
+
+    /**
+     * Get the current maximum of this bounding volume.
+     *
+     * @return the current maximum of this bounding volume.
+     */
+    public Vector3D getMax() {
+        Vector3D v = this.max;
+        if (isStale(v, this.maxX, this.maxY, this.maxZ)) {
+            v = this.max = new Vector3D(this.maxX, this.maxY, this.maxZ);
+        }
+        return v;
+    }
+
+    /**
+     * Set the current maximum of this bounding volume.
+     *
+     * @param max the current maximum of this bounding volume.
+     */
+    public void setMax(Vector3D max) {
+        this.maxX = max.getX();
+        this.maxY = max.getY();
+        this.maxZ = max.getZ();
+        this.max = max;
+    }
+
+    /**
+     * Get the initial minimum of this bounding volume.
+     *
+     * @return the initial minimum of this bounding volume.
+     */
+    public Vector3D getMin0() {
+        Vector3D v = this.min0;
+        if (isStale(v, this.minX0, this.minY0, this.minZ0)) {
+            v = this.min0 = new Vector3D(this.minX0, this.minY0, this.minZ0);
+        }
+        return v;
+    }
+
+    /**
+     * Set the initial minimum of this bounding volume.
+     *
+     * @param min0 the initial minimum of this bounding volume.
+     */
+    public void setMin0(Vector3D min0) {
+        this.minX0 = min0.getX();
+        this.minY0 = min0.getY();
+        this.minZ0 = min0.getZ();
+        this.min0 = min0;
+    }
+
+    /**
+     * Get the initial maximum of this bounding volume.
+     *
+     * @return the initial maximum of this bounding volume.
+     */
+    public Vector3D getMax0() {
+        Vector3D v = this.max0;
+        if (isStale(v, this.maxX0, this.maxY0, this.maxZ0)) {
+            v = this.max0 = new Vector3D(this.maxX0, this.maxY0, this.maxZ0);
+        }
+        return v;
+    }
+
+    /**
+     * Set the initial maximum of this bounding volume.
+     *
+     * @param max0 the initial maximum of this bounding volume.
+     */
+    public void setMax0(Vector3D max0) {
+        this.maxX0 = max0.getX();
+        this.maxY0 = max0.getY();
+        this.maxZ0 = max0.getZ();
+        this.max0 = max0;
+    }
+
+    /**
+     * Set the current minimum and maximum of this bounding volume to the
+     * initial ones offset by a given translation, in place.
+     *
+     * @param x the translation x coordinate.
+     * @param y the translation y coordinate.
+     * @param z the translation z coordinate.
+     */
+    public void setTranslation(double x, double y, double z) {
+        this.minX = this.minX0 + x;
+        this.minY = this.minY0 + y;
+        this.minZ = this.minZ0 + z;
+        this.maxX = this.maxX0 + x;
+        this.maxY = this.maxY0 + y;
+        this.maxZ = this.maxZ0 + z;
+    }
+
+    /**
+     * Translate the current minimum and maximum of this bounding volume, in
+     * place, e.g., to test a copy of it at a future position.
+     *
+     * @param x the translation x coordinate.
+     * @param y the translation y coordinate.
+     * @param z the translation z coordinate.
+     */
+    public void translate(double x, double y, double z) {
+        this.minX += x;
+        this.minY += y;
+        this.minZ += z;
+        this.maxX += x;
+        this.maxY += y;
+        this.maxZ += z;
+    }
+
+    /**
+     * Test if a vector, created from some coordinates, no longer holds them.
+     */
+    private static boolean isStale(Vector3D v, double x, double y, double z) {
+        return v == null || v.getX() != x || v.getY() != y || v.getZ() != z;
+    }
+
     /**
      * Calculate the barycentre between max and min.
      *
      * @return the barycentre between max and min.
      */
     public Vector3D barycentre() {
-        return new Vector3D((this.max.getX() + this.min.getX()) / 2,
-                (this.max.getY() + this.min.getY()) / 2,
-                (this.max.getZ() + this.min.getZ()) / 2);
+        return new Vector3D((this.maxX + this.minX) / 2,
+                (this.maxY + this.minY) / 2,
+                (this.maxZ + this.minZ) / 2);
     }
 
     /**
@@ -119,7 +270,7 @@ public abstract class AbstractBoundingVolume implements Renderable, Node {
      * @return half the distance between min and max.
      */
     public float halfDistance() {
-        return (float) getDistance(this.barycentre(), this.max);
+        return (float) getDistance(this.barycentre(), this.getMax());
     }
 
     /**
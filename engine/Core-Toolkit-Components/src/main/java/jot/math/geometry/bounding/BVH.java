@@ -0,0 +1,739 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.bounding;
+
+import static java.lang.Double.NEGATIVE_INFINITY;
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.lang.System.arraycopy;
+import java.io.Serializable;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Class that implements a static Bounding Volume Hierarchy (BVH) over the axis
+ * aligned bounds of a set of primitives. The hierarchy is built top-down with
+ * the binned Surface Area Heuristic (SAH) and stored as flat node arrays, so
+ * that traversal does not allocate.
+ *
+ * Primitives are identified by their index in the bounds array given at
+ * construction, and tested against rays through a {@link PrimitiveVisitor},
+ * or against boxes and spheres through a {@link OverlapVisitor}.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class BVH implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Logger log = getLogger("BVH");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Number of bins used to evaluate the SAH along each axis.
+     */
+    private static final int BINS = 16;
+
+    /**
+     * Maximum number of primitives a leaf may hold when splitting is still
+     * cheaper according to the SAH.
+     */
+    private static final int MAX_LEAF_PRIMITIVES = 4;
+
+    /**
+     * Estimated costs of traversing an inner node and of intersecting a
+     * primitive.
+     */
+    private static final double TRAVERSAL_COST = 1, INTERSECTION_COST = 1;
+
+    /**
+     * Per thread traversal stacks, shared by every BVH, so that nested
+     * traversals (e.g., a BVH visitor traversing another BVH) are possible.
+     */
+    private static final ThreadLocal<TraversalStack> STACKS
+            = ThreadLocal.withInitial(TraversalStack::new);
+
+    /**
+     * Node bounds, six values per node, i.e., minimum XYZ then maximum XYZ.
+     */
+    private double[] nodeBounds;
+
+    /**
+     * For inner nodes the index of the right child (the left child always
+     * follows its parent), for leaf nodes the index of the first primitive.
+     */
+    private int[] nodeOffsets;
+
+    /**
+     * Number of primitives of each node, 0 for inner nodes.
+     */
+    private int[] nodeCounts;
+
+    /**
+     * Split axis of each inner node, used to visit the nearest child first.
+     */
+    private byte[] nodeAxes;
+
+    /**
+     * The primitives indices, ordered so that each leaf references a
+     * contiguous range.
+     */
+    private final int[] primitives;
+
+    private int nodesCount;
+
+    /**
+     * Constructor, builds the hierarchy.
+     *
+     * @param primitivesBounds the bounds of each primitive, six values per
+     * primitive, i.e., minimum XYZ then maximum XYZ.
+     * @param primitivesCount the number of primitives.
+     */
+    public BVH(double[] primitivesBounds, int primitivesCount) {
+        this.primitives = new int[primitivesCount];
+        for (int i = 0; i < primitivesCount; i++) {
+            this.primitives[i] = i;
+        }
+
+        int maxNodes = primitivesCount > 0 ? 2 * primitivesCount - 1 : 0;
+        this.nodeBounds = new double[6 * maxNodes];
+        this.nodeOffsets = new int[maxNodes];
+        this.nodeCounts = new int[maxNodes];
+        this.nodeAxes = new byte[maxNodes];
+
+        if (primitivesCount > 0) {
+            new Builder(primitivesBounds, primitivesCount).build(0, primitivesCount);
+        }
+        this.trim();
+
+        if (log.getLevel() == INFO) {
+            log.info(format("BVH built with %d nodes for %d primitives.",
+                    this.nodesCount, primitivesCount));
+        }
+    }
+
+    /**
+     * Get the number of nodes in the hierarchy.
+     *
+     * @return the number of nodes in the hierarchy.
+     */
+    public int getNodesCount() {
+        return this.nodesCount;
+    }
+
+    /**
+     * Get the number of primitives in the hierarchy.
+     *
+     * @return the number of primitives in the hierarchy.
+     */
+    public int getPrimitivesCount() {
+        return this.primitives.length;
+    }
+
+    /**
+     * Get the bounds of the whole hierarchy.
+     *
+     * @param bounds array where to store the minimum XYZ then maximum XYZ
+     * coordinates, starting at offset.
+     * @param offset the index of bounds where to start storing.
+     * @return true if the hierarchy is not empty, false otherwise.
+     */
+    public boolean getBounds(double[] bounds, int offset) {
+        if (this.nodesCount == 0) {
+            return false;
+        }
+        arraycopy(this.nodeBounds, 0, bounds, offset, 6);
+        return true;
+    }
+
+    /**
+     * Refit the hierarchy to new primitive bounds, keeping its topology, e.g.,
+     * after some primitives moved. Much cheaper than rebuilding, although
+     * the hierarchy quality degrades when primitives move far from where
+     * they were when it was built.
+     *
+     * @param primitivesBounds the bounds of each primitive, six values per
+     * primitive, i.e., minimum XYZ then maximum XYZ.
+     */
+    public void refit(double[] primitivesBounds) {
+        //Children are always stored after their parent
+        for (int node = this.nodesCount - 1; node >= 0; node--) {
+            int nb = 6 * node;
+            if (this.nodeCounts[node] > 0) {
+                int first = this.nodeOffsets[node];
+                arraycopy(primitivesBounds, 6 * this.primitives[first], this.nodeBounds, nb, 6);
+                for (int i = first + 1; i < first + this.nodeCounts[node]; i++) {
+                    this.union(nb, primitivesBounds, 6 * this.primitives[i]);
+                }
+            } else {
+                arraycopy(this.nodeBounds, 6 * (node + 1), this.nodeBounds, nb, 6);
+                this.union(nb, this.nodeBounds, 6 * this.nodeOffsets[node]);
+            }
+        }
+    }
+
+    /**
+     * Grow the bounds of a node to enclose the box stored at offset.
+     */
+    private void union(int nb, double[] box, int offset) {
+        for (int k = 0; k < 3; k++) {
+            this.nodeBounds[nb + k] = min(this.nodeBounds[nb + k], box[offset + k]);
+            this.nodeBounds[nb + k + 3] = max(this.nodeBounds[nb + k + 3], box[offset + k + 3]);
+        }
+    }
+
+    /**
+     * Traverse the hierarchy with a ray, visiting every primitive whose leaf
+     * bounds are crossed by the ray within [tMin, tMax], nearest nodes first.
+     * Each visit may shorten tMax, pruning farther nodes.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @param visitor the primitive visitor.
+     * @return the value of tMax after all visits, i.e., the closest accepted
+     * hit or the provided tMax if none.
+     */
+    public double intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, PrimitiveVisitor visitor) {
+        if (this.nodesCount == 0) {
+            return tMax;
+        }
+
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        TraversalStack stack = STACKS.get();
+        int base = stack.size;
+        stack.push(0);
+
+        while (stack.size > base) {
+            int node = stack.nodes[--stack.size];
+            if (!this.intersectsNode(node, ox, oy, oz, ix, iy, iz, tMin, tMax)) {
+                continue;
+            }
+
+            int count = this.nodeCounts[node];
+            if (count > 0) {
+                int first = this.nodeOffsets[node];
+                for (int i = first; i < first + count; i++) {
+                    tMax = visitor.visit(this.primitives[i], tMax);
+                }
+            } else {
+                int axis = this.nodeAxes[node];
+                boolean negative = axis == 0 ? ix < 0 : axis == 1 ? iy < 0 : iz < 0;
+                if (negative) {
+                    stack.push(node + 1);
+                    stack.push(this.nodeOffsets[node]);
+                } else {
+                    stack.push(this.nodeOffsets[node]);
+                    stack.push(node + 1);
+                }
+            }
+        }
+        return tMax;
+    }
+
+    /**
+     * Traverse the hierarchy with a ray, stopping at the first primitive that
+     * occludes it within [tMin, tMax], i.e., a any-hit query.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @param test the primitive occlusion test.
+     * @return TRUE if any primitive occludes the ray, FALSE otherwise.
+     */
+    public boolean occluded(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, OcclusionTest test) {
+        if (this.nodesCount == 0) {
+            return false;
+        }
+
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        TraversalStack stack = STACKS.get();
+        int base = stack.size;
+        stack.push(0);
+
+        while (stack.size > base) {
+            int node = stack.nodes[--stack.size];
+            if (!this.intersectsNode(node, ox, oy, oz, ix, iy, iz, tMin, tMax)) {
+                continue;
+            }
+
+            int count = this.nodeCounts[node];
+            if (count > 0) {
+                int first = this.nodeOffsets[node];
+                for (int i = first; i < first + count; i++) {
+                    if (test.occludes(this.primitives[i], tMax)) {
+                        stack.size = base;
+                        return true;
+                    }
+                }
+            } else {
+                stack.push(this.nodeOffsets[node]);
+                stack.push(node + 1);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traverse the hierarchy with an axis aligned box, visiting every
+     * primitive whose leaf bounds overlap the box, until the visitor asks to
+     * stop.
+     *
+     * @param bounds the minimum XYZ then maximum XYZ coordinates of the box,
+     * starting at offset.
+     * @param offset the index of bounds where the box starts.
+     * @param visitor the primitive visitor.
+     * @return TRUE if the visitor stopped the traversal, FALSE otherwise.
+     */
+    public boolean overlap(double[] bounds, int offset, OverlapVisitor visitor) {
+        if (this.nodesCount == 0) {
+            return false;
+        }
+
+        TraversalStack stack = STACKS.get();
+        int base = stack.size;
+        stack.push(0);
+
+        while (stack.size > base) {
+            int node = stack.nodes[--stack.size];
+            int b = 6 * node;
+            if (this.nodeBounds[b] > bounds[offset + 3] || this.nodeBounds[b + 3] < bounds[offset]
+                    || this.nodeBounds[b + 1] > bounds[offset + 4] || this.nodeBounds[b + 4] < bounds[offset + 1]
+                    || this.nodeBounds[b + 2] > bounds[offset + 5] || this.nodeBounds[b + 5] < bounds[offset + 2]) {
+                continue;
+            }
+
+            if (this.visit(node, stack, visitor)) {
+                stack.size = base;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traverse the hierarchy with a sphere, visiting every primitive whose
+     * leaf bounds overlap the sphere, until the visitor asks to stop.
+     *
+     * @param cx the sphere center X coordinate.
+     * @param cy the sphere center Y coordinate.
+     * @param cz the sphere center Z coordinate.
+     * @param radius the sphere radius.
+     * @param visitor the primitive visitor.
+     * @return TRUE if the visitor stopped the traversal, FALSE otherwise.
+     */
+    public boolean overlap(double cx, double cy, double cz, double radius,
+            OverlapVisitor visitor) {
+        if (this.nodesCount == 0) {
+            return false;
+        }
+
+        double radius2 = radius * radius;
+        TraversalStack stack = STACKS.get();
+        int base = stack.size;
+        stack.push(0);
+
+        while (stack.size > base) {
+            int node = stack.nodes[--stack.size];
+            int b = 6 * node;
+            double x = max(this.nodeBounds[b], min(cx, this.nodeBounds[b + 3])) - cx;
+            double y = max(this.nodeBounds[b + 1], min(cy, this.nodeBounds[b + 4])) - cy;
+            double z = max(this.nodeBounds[b + 2], min(cz, this.nodeBounds[b + 5])) - cz;
+            if (x * x + y * y + z * z > radius2) {
+                continue;
+            }
+
+            if (this.visit(node, stack, visitor)) {
+                stack.size = base;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visit the primitives of a leaf node, or push the children of a inner
+     * node.
+     *
+     * @return TRUE if the visitor asked to stop, FALSE otherwise.
+     */
+    private boolean visit(int node, TraversalStack stack, OverlapVisitor visitor) {
+        int count = this.nodeCounts[node];
+        if (count > 0) {
+            int first = this.nodeOffsets[node];
+            for (int i = first; i < first + count; i++) {
+                if (!visitor.visit(this.primitives[i])) {
+                    return true;
+                }
+            }
+        } else {
+            stack.push(this.nodeOffsets[node]);
+            stack.push(node + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Slab test of a ray against the bounds of a node.
+     *
+     * @return true if the ray crosses the node bounds within [tMin, tMax],
+     * false otherwise.
+     */
+    private boolean intersectsNode(int node,
+            double ox, double oy, double oz,
+            double ix, double iy, double iz,
+            double tMin, double tMax) {
+        int b = 6 * node;
+        double near = tMin, far = tMax, t0, t1, swap;
+
+        t0 = (this.nodeBounds[b] - ox) * ix;
+        t1 = (this.nodeBounds[b + 3] - ox) * ix;
+        if (t0 > t1) {
+            swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        if (t0 > near) {
+            near = t0;
+        }
+        if (t1 < far) {
+            far = t1;
+        }
+
+        t0 = (this.nodeBounds[b + 1] - oy) * iy;
+        t1 = (this.nodeBounds[b + 4] - oy) * iy;
+        if (t0 > t1) {
+            swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        if (t0 > near) {
+            near = t0;
+        }
+        if (t1 < far) {
+            far = t1;
+        }
+
+        t0 = (this.nodeBounds[b + 2] - oz) * iz;
+        t1 = (this.nodeBounds[b + 5] - oz) * iz;
+        if (t0 > t1) {
+            swap = t0;
+            t0 = t1;
+            t1 = swap;
+        }
+        if (t0 > near) {
+            near = t0;
+        }
+        if (t1 < far) {
+            far = t1;
+        }
+
+        return near <= far;
+    }
+
+    /**
+     * Release the unused tail of the node arrays.
+     */
+    private void trim() {
+        if (this.nodesCount < this.nodeCounts.length) {
+            double[] bounds = new double[6 * this.nodesCount];
+            int[] offsets = new int[this.nodesCount];
+            int[] counts = new int[this.nodesCount];
+            byte[] axes = new byte[this.nodesCount];
+            arraycopy(this.nodeBounds, 0, bounds, 0, bounds.length);
+            arraycopy(this.nodeOffsets, 0, offsets, 0, this.nodesCount);
+            arraycopy(this.nodeCounts, 0, counts, 0, this.nodesCount);
+            arraycopy(this.nodeAxes, 0, axes, 0, this.nodesCount);
+            this.nodeBounds = bounds;
+            this.nodeOffsets = offsets;
+            this.nodeCounts = counts;
+            this.nodeAxes = axes;
+        }
+    }
+
+    /**
+     * Half of the surface area of the box stored at offset.
+     */
+    private static double halfArea(double[] bounds, int offset) {
+        double x = bounds[offset + 3] - bounds[offset];
+        double y = bounds[offset + 4] - bounds[offset + 1];
+        double z = bounds[offset + 5] - bounds[offset + 2];
+        return x * y + y * z + z * x;
+    }
+
+    /**
+     * Interface that a ray primitive test must implement to be used while
+     * traversing a BVH.
+     */
+    public interface PrimitiveVisitor {
+
+        /**
+         * Test the ray being traversed against a primitive.
+         *
+         * @param primitive the index of the primitive.
+         * @param tMax the closest hit distance found so far.
+         * @return the distance of the hit if the primitive is hit closer than
+         * tMax, tMax otherwise.
+         */
+        double visit(int primitive, double tMax);
+    }
+
+    /**
+     * Interface that a ray primitive any-hit test must implement to be used
+     * while traversing a BVH.
+     */
+    public interface OcclusionTest {
+
+        /**
+         * Test if the ray being traversed hits a primitive.
+         *
+         * @param primitive the index of the primitive.
+         * @param tMax the maximum ray distance to consider.
+         * @return TRUE if the primitive is hit closer than tMax, FALSE
+         * otherwise.
+         */
+        boolean occludes(int primitive, double tMax);
+    }
+
+    /**
+     * Interface that a box or sphere primitive test must implement to be used
+     * while traversing a BVH.
+     */
+    public interface OverlapVisitor {
+
+        /**
+         * Visit a primitive whose bounds overlap the box or sphere being
+         * traversed.
+         *
+         * @param primitive the index of the primitive.
+         * @return TRUE to keep traversing, FALSE to stop.
+         */
+        boolean visit(int primitive);
+    }
+
+    /**
+     * Growable stack of node indices.
+     */
+    private static class TraversalStack {
+
+        int[] nodes = new int[64];
+        int size;
+
+        void push(int node) {
+            if (this.size == this.nodes.length) {
+                int[] grown = new int[2 * this.nodes.length];
+                arraycopy(this.nodes, 0, grown, 0, this.size);
+                this.nodes = grown;
+            }
+            this.nodes[this.size++] = node;
+        }
+    }
+
+    /**
+     * Binned SAH builder, holds the scratch data needed only while building.
+     */
+    private class Builder {
+
+        private final double[] bounds;
+        private final double[] centroids;
+        private final int[] binCounts = new int[BINS];
+        private final double[] binBounds = new double[6 * BINS];
+        private final double[] rightAreas = new double[BINS];
+        private final double[] sweep = new double[6];
+        private final double[] scratch = new double[6];
+
+        Builder(double[] primitivesBounds, int primitivesCount) {
+            this.bounds = primitivesBounds;
+            this.centroids = new double[3 * primitivesCount];
+            for (int i = 0; i < primitivesCount; i++) {
+                for (int k = 0; k < 3; k++) {
+                    this.centroids[3 * i + k] = 0.5
+                            * (primitivesBounds[6 * i + k] + primitivesBounds[6 * i + k + 3]);
+                }
+            }
+        }
+
+        /**
+         * Recursively build the subtree of the primitives in [first, first +
+         * count).
+         *
+         * @return the index of the subtree root node.
+         */
+        int build(int first, int count) {
+            int node = BVH.this.nodesCount++;
+            int nb = 6 * node;
+            double[] cb = this.scratch;
+            reset(BVH.this.nodeBounds, nb);
+            reset(cb, 0);
+            for (int i = first; i < first + count; i++) {
+                int p = BVH.this.primitives[i];
+                grow(BVH.this.nodeBounds, nb, this.bounds, 6 * p);
+                for (int k = 0; k < 3; k++) {
+                    double c = this.centroids[3 * p + k];
+                    if (c < cb[k]) {
+                        cb[k] = c;
+                    }
+                    if (c > cb[k + 3]) {
+                        cb[k + 3] = c;
+                    }
+                }
+            }
+
+            if (count <= 1) {
+                return this.leaf(node, first, count);
+            }
+
+            //Find the cheapest split plane among the bins of every axis
+            int bestAxis = -1, bestSplit = -1;
+            double bestCost = POSITIVE_INFINITY;
+            double cmin0 = 0, cscale0 = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                double cmin = cb[axis], extent = cb[axis + 3] - cmin;
+                if (!(extent > 0)) {
+                    continue;
+                }
+                double cscale = BINS * (1 - 1e-9) / extent;
+
+                for (int b = 0; b < BINS; b++) {
+                    this.binCounts[b] = 0;
+                    reset(this.binBounds, 6 * b);
+                }
+                for (int i = first; i < first + count; i++) {
+                    int p = BVH.this.primitives[i];
+                    int b = bin(this.centroids[3 * p + axis], cmin, cscale);
+                    this.binCounts[b]++;
+                    grow(this.binBounds, 6 * b, this.bounds, 6 * p);
+                }
+
+                //Sweep from the right accumulating areas
+                double[] acc = this.sweep;
+                reset(acc, 0);
+                int rightCount = 0;
+                for (int b = BINS - 1; b > 0; b--) {
+                    rightCount += this.binCounts[b];
+                    if (this.binCounts[b] > 0) {
+                        grow(acc, 0, this.binBounds, 6 * b);
+                    }
+                    this.rightAreas[b] = rightCount > 0 ? rightCount * halfArea(acc, 0) : 0;
+                }
+
+                //Sweep from the left evaluating each split
+                reset(acc, 0);
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; b++) {
+                    leftCount += this.binCounts[b];
+                    if (this.binCounts[b] > 0) {
+                        grow(acc, 0, this.binBounds, 6 * b);
+                    }
+                    if (leftCount == 0 || leftCount == count) {
+                        continue;
+                    }
+                    double cost = leftCount * halfArea(acc, 0) + this.rightAreas[b + 1];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = b;
+                        cmin0 = cmin;
+                        cscale0 = cscale;
+                    }
+                }
+            }
+
+            double area = halfArea(BVH.this.nodeBounds, nb);
+            double splitCost = TRAVERSAL_COST + INTERSECTION_COST
+                    * (area > 0 ? bestCost / area : count);
+            if (bestAxis == -1
+                    || (count <= MAX_LEAF_PRIMITIVES && splitCost >= count * INTERSECTION_COST)) {
+                return this.leaf(node, first, count);
+            }
+
+            //Partition the primitives in place around the split plane
+            int i = first, j = first + count - 1;
+            while (i <= j) {
+                int p = BVH.this.primitives[i];
+                if (bin(this.centroids[3 * p + bestAxis], cmin0, cscale0) <= bestSplit) {
+                    i++;
+                } else {
+                    BVH.this.primitives[i] = BVH.this.primitives[j];
+                    BVH.this.primitives[j--] = p;
+                }
+            }
+            int leftCount = i - first;
+            if (leftCount == 0 || leftCount == count) {
+                leftCount = count / 2;
+            }
+
+            BVH.this.nodeCounts[node] = 0;
+            BVH.this.nodeAxes[node] = (byte) bestAxis;
+            this.build(first, leftCount);
+            BVH.this.nodeOffsets[node] = this.build(first + leftCount, count - leftCount);
+            return node;
+        }
+
+        private int leaf(int node, int first, int count) {
+            BVH.this.nodeOffsets[node] = first;
+            BVH.this.nodeCounts[node] = count;
+            return node;
+        }
+
+        private int bin(double centroid, double cmin, double cscale) {
+            int b = (int) ((centroid - cmin) * cscale);
+            return b < 0 ? 0 : b >= BINS ? BINS - 1 : b;
+        }
+
+        private void reset(double[] box, int offset) {
+            box[offset] = box[offset + 1] = box[offset + 2] = POSITIVE_INFINITY;
+            box[offset + 3] = box[offset + 4] = box[offset + 5] = NEGATIVE_INFINITY;
+        }
+
+        private void grow(double[] box, int offset, double[] other, int otherOffset) {
+            for (int k = 0; k < 3; k++) {
+                if (other[otherOffset + k] < box[offset + k]) {
+                    box[offset + k] = other[otherOffset + k];
+                }
+                if (other[otherOffset + k + 3] > box[offset + k + 3]) {
+                    box[offset + k + 3] = other[otherOffset + k + 3];
+                }
+            }
+        }
+    }
+}
@@ -65,10 +65,10 @@ public class BoundingSphere extends AbstractBoundingVolume {
      */
     public BoundingSphere(Vector3D min, Vector3D max) {
         this.Id = "BoundingSphere";
-        this.min = new Vector3D(min.toArray());
-        this.max = new Vector3D(max.toArray());
-        this.min0 = new Vector3D(min.toArray());
-        this.max0 = new Vector3D(max.toArray());
+        this.setMin(min);
+        this.setMax(max);
+        this.setMin0(min);
+        this.setMax0(max);
         this.boundingVolumeType = SPHERE;
         this.glu = new GLU();
         this.material = new Material();
@@ -83,16 +83,16 @@ public class BoundingSphere extends AbstractBoundingVolume {
     public BoundingSphere(AbstractBoundingVolume boundingVolume) {
         if (boundingVolume != null) {
             this.Id = boundingVolume.Id;
-            this.min = new Vector3D(boundingVolume.min.toArray());
-            this.max = new Vector3D(boundingVolume.max.toArray());
-            this.min0 = new Vector3D(boundingVolume.min0.toArray());
-            this.max0 = new Vector3D(boundingVolume.max0.toArray());
+            this.setMin(boundingVolume.getMin());
+            this.setMax(boundingVolume.getMax());
+            this.setMin0(boundingVolume.getMin0());
+            this.setMax0(boundingVolume.getMax0());
         } else {
             this.Id = "BoundingSphere";
-            this.min = ZERO;
-            this.max = ZERO;
-            this.min0 = ZERO;
-            this.max0 = ZERO;
+            this.setMin(ZERO);
+            this.setMax(ZERO);
+            this.setMin0(ZERO);
+            this.setMax0(ZERO);
         }
         this.boundingVolumeType = SPHERE;
         this.glu = new GLU();
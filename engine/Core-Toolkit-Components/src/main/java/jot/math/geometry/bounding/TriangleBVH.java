@@ -0,0 +1,346 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.bounding;
+
+import java.io.Serializable;
+import static java.lang.System.arraycopy;
+import jot.math.geometry.Mesh;
+import jot.math.geometry.bounding.BVH.OcclusionTest;
+import jot.math.geometry.bounding.BVH.OverlapVisitor;
+import jot.math.geometry.bounding.BVH.PrimitiveVisitor;
+import jot.math.geometry.shape.PackedTriangles;
+import jot.physics.HitRecord;
+
+/**
+ * Class that implements a static Bounding Volume Hierarchy (BVH) over the
+ * triangles of a polygon mesh, built once in the mesh coordinates, i.e., in
+ * object space, so that it never needs to be refitted as the mesh moves.
+ *
+ * It answers sphere, box, segment and ray queries against the exact triangles
+ * of concave meshes, e.g., levels, in logarithmic time. Queries in world
+ * coordinates must first be transformed into the mesh coordinates, e.g., by
+ * the inverse of the transformation of the mesh. Queries do not allocate, as
+ * each keeps its parameters in a per thread query state, and may run
+ * concurrently, as the hierarchy is never changed.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class TriangleBVH implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Per thread query states, one per nested query, e.g., a visitor of a
+     * hierarchy querying another.
+     */
+    private static final ThreadLocal<QueryStack> QUERIES = ThreadLocal.withInitial(QueryStack::new);
+
+    /**
+     * The visitor that stops at the first triangle found.
+     */
+    private static final OverlapVisitor STOP = triangle -> false;
+
+    private final PackedTriangles triangles;
+    private final BVH bvh;
+
+    /**
+     * Constructor, builds the hierarchy over the triangles of a polygon mesh.
+     *
+     * @param mesh a polygon mesh.
+     */
+    public TriangleBVH(Mesh mesh) {
+        this(new PackedTriangles(mesh));
+    }
+
+    /**
+     * Constructor, builds the hierarchy over a set of triangles.
+     *
+     * @param triangles the triangles.
+     */
+    public TriangleBVH(PackedTriangles triangles) {
+        this.triangles = triangles;
+        this.bvh = new BVH(triangles.getBounds(), triangles.getTrianglesCount());
+    }
+
+    /**
+     * Get the triangles of the hierarchy.
+     *
+     * @return the triangles of the hierarchy.
+     */
+    public PackedTriangles getTriangles() {
+        return this.triangles;
+    }
+
+    /**
+     * Get the number of triangles in the hierarchy.
+     *
+     * @return the number of triangles in the hierarchy.
+     */
+    public int getTrianglesCount() {
+        return this.triangles.getTrianglesCount();
+    }
+
+    /**
+     * Get the bounds of the whole hierarchy.
+     *
+     * @param bounds array where to store the minimum XYZ then maximum XYZ
+     * coordinates, starting at offset.
+     * @param offset the index of bounds where to start storing.
+     * @return true if the hierarchy is not empty, false otherwise.
+     */
+    public boolean getBounds(double[] bounds, int offset) {
+        return this.bvh.getBounds(bounds, offset);
+    }
+
+    /**
+     * Visit every triangle that intersects a sphere, until the visitor asks
+     * to stop.
+     *
+     * @param cx the sphere center X coordinate.
+     * @param cy the sphere center Y coordinate.
+     * @param cz the sphere center Z coordinate.
+     * @param radius the sphere radius.
+     * @param visitor the triangle visitor.
+     * @return TRUE if the visitor stopped the query, FALSE otherwise.
+     */
+    public boolean querySphere(double cx, double cy, double cz, double radius,
+            OverlapVisitor visitor) {
+        QueryStack queries = QUERIES.get();
+        Query query = queries.push(this.triangles, visitor);
+        query.setSphere(cx, cy, cz, radius * radius);
+        try {
+            return this.bvh.overlap(cx, cy, cz, radius, query);
+        } finally {
+            queries.pop();
+        }
+    }
+
+    /**
+     * Test if any triangle intersects a sphere.
+     *
+     * @param cx the sphere center X coordinate.
+     * @param cy the sphere center Y coordinate.
+     * @param cz the sphere center Z coordinate.
+     * @param radius the sphere radius.
+     * @return TRUE if any triangle intersects the sphere, FALSE otherwise.
+     */
+    public boolean intersectsSphere(double cx, double cy, double cz, double radius) {
+        return this.querySphere(cx, cy, cz, radius, STOP);
+    }
+
+    /**
+     * Visit every triangle that intersects a axis aligned box, until the
+     * visitor asks to stop.
+     *
+     * @param bounds the minimum XYZ then maximum XYZ coordinates of the box,
+     * starting at offset.
+     * @param offset the index of bounds where the box starts.
+     * @param visitor the triangle visitor.
+     * @return TRUE if the visitor stopped the query, FALSE otherwise.
+     */
+    public boolean queryBox(double[] bounds, int offset, OverlapVisitor visitor) {
+        QueryStack queries = QUERIES.get();
+        Query query = queries.push(this.triangles, visitor);
+        query.setBox(bounds, offset);
+        try {
+            return this.bvh.overlap(bounds, offset, query);
+        } finally {
+            queries.pop();
+        }
+    }
+
+    /**
+     * Test if any triangle intersects a axis aligned box.
+     *
+     * @param bounds the minimum XYZ then maximum XYZ coordinates of the box,
+     * starting at offset.
+     * @param offset the index of bounds where the box starts.
+     * @return TRUE if any triangle intersects the box, FALSE otherwise.
+     */
+    public boolean intersectsBox(double[] bounds, int offset) {
+        return this.queryBox(bounds, offset, STOP);
+    }
+
+    /**
+     * Find the closest triangle hit by a ray, on either side.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store t, u, v, the triangle index and normal
+     * of the closest hit, left unchanged if none.
+     * @return TRUE if the ray hits any triangle within (0, tMax), FALSE
+     * otherwise.
+     */
+    public boolean intersectRay(double ox, double oy, double oz,
+            double dx, double dy, double dz, double tMax, HitRecord hit) {
+        QueryStack queries = QUERIES.get();
+        Query query = queries.push(this.triangles, null);
+        query.setRay(ox, oy, oz, dx, dy, dz, hit);
+        try {
+            return this.bvh.intersect(ox, oy, oz, dx, dy, dz, 0, tMax, query) < tMax;
+        } finally {
+            queries.pop();
+        }
+    }
+
+    /**
+     * Find the triangle hit by a segment closest to its start, on either side.
+     *
+     * @param x0 the segment start X coordinate.
+     * @param y0 the segment start Y coordinate.
+     * @param z0 the segment start Z coordinate.
+     * @param x1 the segment end X coordinate.
+     * @param y1 the segment end Y coordinate.
+     * @param z1 the segment end Z coordinate.
+     * @param hit record where to store t, as a fraction of the segment, u, v,
+     * the triangle index and normal of the closest hit, left unchanged if
+     * none.
+     * @return TRUE if the segment hits any triangle, FALSE otherwise.
+     */
+    public boolean intersectSegment(double x0, double y0, double z0,
+            double x1, double y1, double z1, HitRecord hit) {
+        return this.intersectRay(x0, y0, z0, x1 - x0, y1 - y0, z1 - z0, 1, hit);
+    }
+
+    /**
+     * Test if a segment hits any triangle, e.g., for line of sight queries.
+     *
+     * @param x0 the segment start X coordinate.
+     * @param y0 the segment start Y coordinate.
+     * @param z0 the segment start Z coordinate.
+     * @param x1 the segment end X coordinate.
+     * @param y1 the segment end Y coordinate.
+     * @param z1 the segment end Z coordinate.
+     * @return TRUE if the segment hits any triangle, FALSE otherwise.
+     */
+    public boolean intersectsSegment(double x0, double y0, double z0,
+            double x1, double y1, double z1) {
+        double dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+        QueryStack queries = QUERIES.get();
+        Query query = queries.push(this.triangles, null);
+        query.setRay(x0, y0, z0, dx, dy, dz, query.scratchHit);
+        try {
+            return this.bvh.occluded(x0, y0, z0, dx, dy, dz, 0, 1, query);
+        } finally {
+            queries.pop();
+        }
+    }
+
+    /**
+     * The parameters of a query, which tests the triangles whose bounds
+     * overlap the sphere, box or ray being traversed.
+     */
+    private static class Query implements OverlapVisitor, PrimitiveVisitor, OcclusionTest {
+
+        PackedTriangles triangles;
+        OverlapVisitor visitor;
+        boolean isSphere;
+        double cx, cy, cz, radius2;
+        double[] bounds;
+        int offset;
+        double ox, oy, oz, dx, dy, dz;
+        HitRecord hit;
+        final HitRecord scratchHit = new HitRecord();
+
+        void setSphere(double cx, double cy, double cz, double radius2) {
+            this.isSphere = true;
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+            this.radius2 = radius2;
+        }
+
+        void setBox(double[] bounds, int offset) {
+            this.isSphere = false;
+            this.bounds = bounds;
+            this.offset = offset;
+        }
+
+        void setRay(double ox, double oy, double oz,
+                double dx, double dy, double dz, HitRecord hit) {
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+            this.hit = hit;
+        }
+
+        @Override
+        public boolean visit(int triangle) {
+            boolean isOverlapping = this.isSphere
+                    ? this.triangles.getDistance2(triangle, this.cx, this.cy, this.cz) <= this.radius2
+                    : this.triangles.overlaps(triangle, this.bounds, this.offset);
+            return !isOverlapping || this.visitor.visit(triangle);
+        }
+
+        @Override
+        public double visit(int triangle, double tMax) {
+            return this.occludes(triangle, tMax) ? this.hit.t : tMax;
+        }
+
+        @Override
+        public boolean occludes(int triangle, double tMax) {
+            return this.triangles.intersect(triangle, this.ox, this.oy, this.oz,
+                    this.dx, this.dy, this.dz, 0, tMax, this.hit, false);
+        }
+    }
+
+    /**
+     * Growable stack of the query states of a thread.
+     */
+    private static class QueryStack {
+
+        Query[] queries = new Query[4];
+        int size;
+
+        Query push(PackedTriangles triangles, OverlapVisitor visitor) {
+            if (this.size == this.queries.length) {
+                Query[] grown = new Query[2 * this.queries.length];
+                arraycopy(this.queries, 0, grown, 0, this.size);
+                this.queries = grown;
+            }
+            Query query = this.queries[this.size];
+            if (query == null) {
+                query = this.queries[this.size] = new Query();
+            }
+            this.size++;
+            query.triangles = triangles;
+            query.visitor = visitor;
+            return query;
+        }
+
+        void pop() {
+            //Drop the references, not to keep meshes or visitors alive
+            Query query = this.queries[--this.size];
+            query.triangles = null;
+            query.visitor = null;
+            query.bounds = null;
+            query.hit = null;
+        }
+    }
+}
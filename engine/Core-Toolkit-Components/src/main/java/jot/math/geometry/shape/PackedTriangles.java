@@ -0,0 +1,539 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.shape;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.lang.System.arraycopy;
+import java.io.Serializable;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.function.UnaryOperator;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.Mesh;
+import jot.physics.HitRecord;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a packed, structure of arrays, triangle store. For
+ * each triangle it keeps vertex v0, edges v0v1 and v0v2, and the unit face
+ * normal, in primitive arrays, and intersects rays, points and boxes against
+ * them without allocating.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class PackedTriangles implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Logger log = getLogger("PackedTriangles");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * The tolerance to test ray-triangle intersection.
+     */
+    private static final double EPS = 1e-8;
+
+    private double[] v0x, v0y, v0z;
+    private double[] e1x, e1y, e1z;
+    private double[] e2x, e2y, e2z;
+    private double[] nx, ny, nz;
+    private int trianglesCount;
+
+    /**
+     * Constructor, creates a empty store.
+     *
+     * @param capacity the initial number of triangles the store can hold.
+     */
+    public PackedTriangles(int capacity) {
+        this.allocate(max(capacity, 1));
+    }
+
+    /**
+     * Constructor, packs the triangles of a polygon mesh.
+     *
+     * @param mesh a polygon mesh.
+     */
+    public PackedTriangles(Mesh mesh) {
+        this(mesh, null);
+    }
+
+    /**
+     * Constructor, packs the triangles of a polygon mesh, read directly from
+     * its vertex and index buffers. Polygons with more than three vertexes are
+     * split into triangle fans.
+     *
+     * @param mesh a polygon mesh.
+     * @param transform to apply to each vertex, or null to keep the mesh
+     * coordinates.
+     */
+    public PackedTriangles(Mesh mesh, UnaryOperator<Vector3D> transform) {
+        FloatBuffer vertices = mesh.getVertices();
+        IntBuffer indices = mesh.getVertexIndices();
+        int verticesSize = mesh.getVerticesSize();
+        int indexStride = max(mesh.getIndexStride(), 3);
+        int verticesCount = vertices == null ? 0 : vertices.limit() / verticesSize;
+        int indicesCount = indices == null ? verticesCount : indices.limit();
+        int polygonsCount = indicesCount / indexStride;
+
+        this.allocate(max(polygonsCount * (indexStride - 2), 1));
+        if (vertices == null) {
+            return;
+        }
+
+        //Convert each vertex once, transformed if required
+        double[] points = new double[3 * verticesCount];
+        for (int i = 0; i < verticesCount; i++) {
+            double x = vertices.get(i * verticesSize);
+            double y = vertices.get(i * verticesSize + 1);
+            double z = verticesSize > 2 ? vertices.get(i * verticesSize + 2) : 0;
+            if (transform != null) {
+                Vector3D p = transform.apply(new Vector3D(x, y, z));
+                x = p.getX();
+                y = p.getY();
+                z = p.getZ();
+            }
+            points[3 * i] = x;
+            points[3 * i + 1] = y;
+            points[3 * i + 2] = z;
+        }
+
+        for (int p = 0; p < polygonsCount; p++) {
+            int first = p * indexStride;
+            int i0 = indices == null ? first : indices.get(first);
+            for (int k = 1; k < indexStride - 1; k++) {
+                int i1 = indices == null ? first + k : indices.get(first + k);
+                int i2 = indices == null ? first + k + 1 : indices.get(first + k + 1);
+                this.add(points[3 * i0], points[3 * i0 + 1], points[3 * i0 + 2],
+                        points[3 * i1], points[3 * i1 + 1], points[3 * i1 + 2],
+                        points[3 * i2], points[3 * i2 + 1], points[3 * i2 + 2]);
+            }
+        }
+    }
+
+    /**
+     * Add a triangle to the store.
+     *
+     * @param x0 vertex 0 X coordinate.
+     * @param y0 vertex 0 Y coordinate.
+     * @param z0 vertex 0 Z coordinate.
+     * @param x1 vertex 1 X coordinate.
+     * @param y1 vertex 1 Y coordinate.
+     * @param z1 vertex 1 Z coordinate.
+     * @param x2 vertex 2 X coordinate.
+     * @param y2 vertex 2 Y coordinate.
+     * @param z2 vertex 2 Z coordinate.
+     * @return the index of the added triangle.
+     */
+    public int add(double x0, double y0, double z0,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2) {
+        if (this.trianglesCount == this.v0x.length) {
+            this.grow(2 * this.v0x.length);
+        }
+        int i = this.trianglesCount++;
+        this.v0x[i] = x0;
+        this.v0y[i] = y0;
+        this.v0z[i] = z0;
+        this.e1x[i] = x1 - x0;
+        this.e1y[i] = y1 - y0;
+        this.e1z[i] = z1 - z0;
+        this.e2x[i] = x2 - x0;
+        this.e2y[i] = y2 - y0;
+        this.e2z[i] = z2 - z0;
+
+        double cx = this.e1y[i] * this.e2z[i] - this.e1z[i] * this.e2y[i];
+        double cy = this.e1z[i] * this.e2x[i] - this.e1x[i] * this.e2z[i];
+        double cz = this.e1x[i] * this.e2y[i] - this.e1y[i] * this.e2x[i];
+        double length = sqrt(cx * cx + cy * cy + cz * cz);
+        if (length > 0) {
+            cx /= length;
+            cy /= length;
+            cz /= length;
+        }
+        this.nx[i] = cx;
+        this.ny[i] = cy;
+        this.nz[i] = cz;
+        return i;
+    }
+
+    /**
+     * Get the number of triangles in the store.
+     *
+     * @return the number of triangles in the store.
+     */
+    public int getTrianglesCount() {
+        return this.trianglesCount;
+    }
+
+    /**
+     * Get the axis aligned bounds of a triangle.
+     *
+     * @param triangle the index of the triangle.
+     * @param bounds array where to store the minimum XYZ then maximum XYZ
+     * coordinates, starting at offset.
+     * @param offset the index of bounds where to start storing.
+     */
+    public void getBounds(int triangle, double[] bounds, int offset) {
+        int i = triangle;
+        double x = this.v0x[i], y = this.v0y[i], z = this.v0z[i];
+        bounds[offset] = x + min(0, min(this.e1x[i], this.e2x[i]));
+        bounds[offset + 1] = y + min(0, min(this.e1y[i], this.e2y[i]));
+        bounds[offset + 2] = z + min(0, min(this.e1z[i], this.e2z[i]));
+        bounds[offset + 3] = x + max(0, max(this.e1x[i], this.e2x[i]));
+        bounds[offset + 4] = y + max(0, max(this.e1y[i], this.e2y[i]));
+        bounds[offset + 5] = z + max(0, max(this.e1z[i], this.e2z[i]));
+    }
+
+    /**
+     * Get the bounds of every triangle, six values per triangle, as required
+     * to build a BVH.
+     *
+     * @return the bounds of every triangle.
+     */
+    public double[] getBounds() {
+        double[] bounds = new double[6 * this.trianglesCount];
+        for (int i = 0; i < this.trianglesCount; i++) {
+            this.getBounds(i, bounds, 6 * i);
+        }
+        return bounds;
+    }
+
+    /**
+     * Get a vertex of a triangle.
+     *
+     * @param triangle the index of the triangle.
+     * @param vertex the vertex of the triangle, 0, 1 or 2.
+     * @param point array where to store the XYZ coordinates, starting at
+     * offset.
+     * @param offset the index of point where to start storing.
+     */
+    public void getVertex(int triangle, int vertex, double[] point, int offset) {
+        int i = triangle;
+        point[offset] = this.v0x[i];
+        point[offset + 1] = this.v0y[i];
+        point[offset + 2] = this.v0z[i];
+        if (vertex == 1) {
+            point[offset] += this.e1x[i];
+            point[offset + 1] += this.e1y[i];
+            point[offset + 2] += this.e1z[i];
+        } else if (vertex == 2) {
+            point[offset] += this.e2x[i];
+            point[offset + 1] += this.e2y[i];
+            point[offset + 2] += this.e2z[i];
+        }
+    }
+
+    /**
+     * Intersect a ray with a triangle, using the algorithm of the paper "Fast
+     * Minimum Storage Ray Triangle Intersection" by Tomas Möller {@literal &}
+     * Ben Trumbore. Triangles facing away from the ray are not hit.
+     *
+     * @param triangle the index of the triangle.
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store t, u, v, the triangle index and normal
+     * if the triangle is hit, left unchanged otherwise.
+     * @return TRUE if the ray hits the triangle within (tMin, tMax), FALSE
+     * otherwise.
+     */
+    public boolean intersect(int triangle,
+            double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        return this.intersect(triangle, ox, oy, oz, dx, dy, dz, tMin, tMax, hit, true);
+    }
+
+    /**
+     * Intersect a ray with a triangle, using the algorithm of the paper "Fast
+     * Minimum Storage Ray Triangle Intersection" by Tomas Möller {@literal &}
+     * Ben Trumbore.
+     *
+     * @param triangle the index of the triangle.
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store t, u, v, the triangle index and normal
+     * if the triangle is hit, left unchanged otherwise.
+     * @param isBackFaceCulled TRUE if triangles facing away from the ray are
+     * not hit, FALSE if both sides of the triangles are hit, e.g., for
+     * collision and picking queries.
+     * @return TRUE if the ray hits the triangle within (tMin, tMax), FALSE
+     * otherwise.
+     */
+    public boolean intersect(int triangle,
+            double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit, boolean isBackFaceCulled) {
+        int i = triangle;
+        double ax = this.e1x[i], ay = this.e1y[i], az = this.e1z[i];
+        double bx = this.e2x[i], by = this.e2y[i], bz = this.e2z[i];
+
+        if (isBackFaceCulled && this.nx[i] * dx + this.ny[i] * dy + this.nz[i] * dz > 0) {
+            return false;
+        }
+
+        //pvec = d x e2
+        double px = dy * bz - dz * by;
+        double py = dz * bx - dx * bz;
+        double pz = dx * by - dy * bx;
+
+        //if determinant is near zero, ray lies in plane of triangle
+        double det = ax * px + ay * py + az * pz;
+        if (det > -EPS && det < EPS) {
+            return false;
+        }
+        double invDet = 1 / det;
+
+        //distance from vertex 0 to ray origin
+        double tx = ox - this.v0x[i];
+        double ty = oy - this.v0y[i];
+        double tz = oz - this.v0z[i];
+
+        double u = (tx * px + ty * py + tz * pz) * invDet;
+        if (u < 0 || u > 1) {
+            return false;
+        }
+
+        //qvec = tvec x e1
+        double qx = ty * az - tz * ay;
+        double qy = tz * ax - tx * az;
+        double qz = tx * ay - ty * ax;
+
+        double v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < 0 || u + v > 1) {
+            return false;
+        }
+
+        double t = (bx * qx + by * qy + bz * qz) * invDet;
+        if (!(t > tMin && t < tMax)) {
+            return false;
+        }
+
+        hit.t = t;
+        hit.u = u;
+        hit.v = v;
+        hit.primitive = i;
+        hit.nx = this.nx[i];
+        hit.ny = this.ny[i];
+        hit.nz = this.nz[i];
+        return true;
+    }
+
+    /**
+     * Get the squared distance from a point to a triangle, through the point
+     * of the triangle closest to it, found as in section 5.1.5 of the book
+     * "Real-Time Collision Detection" by Christer Ericson.
+     *
+     * @param triangle the index of the triangle.
+     * @param px the point X coordinate.
+     * @param py the point Y coordinate.
+     * @param pz the point Z coordinate.
+     * @return the squared distance from the point to the triangle.
+     */
+    public double getDistance2(int triangle, double px, double py, double pz) {
+        int i = triangle;
+        double abx = this.e1x[i], aby = this.e1y[i], abz = this.e1z[i];
+        double acx = this.e2x[i], acy = this.e2y[i], acz = this.e2z[i];
+        double apx = px - this.v0x[i], apy = py - this.v0y[i], apz = pz - this.v0z[i];
+
+        //Vertex region of A
+        double d1 = abx * apx + aby * apy + abz * apz;
+        double d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0 && d2 <= 0) {
+            return apx * apx + apy * apy + apz * apz;
+        }
+
+        //Vertex region of B
+        double bpx = apx - abx, bpy = apy - aby, bpz = apz - abz;
+        double d3 = abx * bpx + aby * bpy + abz * bpz;
+        double d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0 && d4 <= d3) {
+            return bpx * bpx + bpy * bpy + bpz * bpz;
+        }
+
+        //Edge region of AB
+        double vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            return distance2(apx, apy, apz, abx, aby, abz, d1 / (d1 - d3), 0, 0, 0, 0);
+        }
+
+        //Vertex region of C
+        double cpx = apx - acx, cpy = apy - acy, cpz = apz - acz;
+        double d5 = abx * cpx + aby * cpy + abz * cpz;
+        double d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0 && d5 <= d6) {
+            return cpx * cpx + cpy * cpy + cpz * cpz;
+        }
+
+        //Edge region of AC
+        double vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            return distance2(apx, apy, apz, acx, acy, acz, d2 / (d2 - d6), 0, 0, 0, 0);
+        }
+
+        //Edge region of BC
+        double va = d3 * d6 - d5 * d4;
+        if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+            double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            return distance2(bpx, bpy, bpz, acx - abx, acy - aby, acz - abz, w, 0, 0, 0, 0);
+        }
+
+        //Face region, unless the triangle is degenerate
+        double sum = va + vb + vc;
+        if (!(sum > 0)) {
+            return min(distance2(apx, apy, apz, abx, aby, abz, clamp(d1, abx, aby, abz), 0, 0, 0, 0),
+                    min(distance2(apx, apy, apz, acx, acy, acz, clamp(d2, acx, acy, acz), 0, 0, 0, 0),
+                            distance2(bpx, bpy, bpz, acx - abx, acy - aby, acz - abz,
+                                    clamp(d4 - d3, acx - abx, acy - aby, acz - abz), 0, 0, 0, 0)));
+        }
+        return distance2(apx, apy, apz, abx, aby, abz, vb / sum, acx, acy, acz, vc / sum);
+    }
+
+    /**
+     * Test if a triangle overlaps an axis aligned box, with the separating
+     * axis test of the paper "Fast 3D Triangle-Box Overlap Testing" by Tomas
+     * Akenine-Möller. Touching counts as overlapping.
+     *
+     * @param triangle the index of the triangle.
+     * @param bounds the minimum XYZ then maximum XYZ coordinates of the box,
+     * starting at offset.
+     * @param offset the index of bounds where the box starts.
+     * @return TRUE if the triangle overlaps the box, FALSE otherwise.
+     */
+    public boolean overlaps(int triangle, double[] bounds, int offset) {
+        int i = triangle;
+        double hx = 0.5 * (bounds[offset + 3] - bounds[offset]);
+        double hy = 0.5 * (bounds[offset + 4] - bounds[offset + 1]);
+        double hz = 0.5 * (bounds[offset + 5] - bounds[offset + 2]);
+
+        //Move the box center to the origin
+        double ax = this.v0x[i] - (bounds[offset] + hx);
+        double ay = this.v0y[i] - (bounds[offset + 1] + hy);
+        double az = this.v0z[i] - (bounds[offset + 2] + hz);
+        double bx = ax + this.e1x[i], by = ay + this.e1y[i], bz = az + this.e1z[i];
+        double cx = ax + this.e2x[i], cy = ay + this.e2y[i], cz = az + this.e2z[i];
+
+        //Box face normals, i.e., the triangle bounds against the box
+        if (min(ax, min(bx, cx)) > hx || max(ax, max(bx, cx)) < -hx
+                || min(ay, min(by, cy)) > hy || max(ay, max(by, cy)) < -hy
+                || min(az, min(bz, cz)) > hz || max(az, max(bz, cz)) < -hz) {
+            return false;
+        }
+
+        //Triangle plane
+        double nx = this.e1y[i] * this.e2z[i] - this.e1z[i] * this.e2y[i];
+        double ny = this.e1z[i] * this.e2x[i] - this.e1x[i] * this.e2z[i];
+        double nz = this.e1x[i] * this.e2y[i] - this.e1y[i] * this.e2x[i];
+        double d = nx * ax + ny * ay + nz * az;
+        double r = hx * abs(nx) + hy * abs(ny) + hz * abs(nz);
+        if (d > r || d < -r) {
+            return false;
+        }
+
+        //Cross products of the box axes with the triangle edges
+        return !(separates(0, -this.e1z[i], this.e1y[i], ax, ay, az, cx, cy, cz, hx, hy, hz)
+                || separates(this.e1z[i], 0, -this.e1x[i], ax, ay, az, cx, cy, cz, hx, hy, hz)
+                || separates(-this.e1y[i], this.e1x[i], 0, ax, ay, az, cx, cy, cz, hx, hy, hz)
+                || separates(0, -this.e2z[i], this.e2y[i], ax, ay, az, bx, by, bz, hx, hy, hz)
+                || separates(this.e2z[i], 0, -this.e2x[i], ax, ay, az, bx, by, bz, hx, hy, hz)
+                || separates(-this.e2y[i], this.e2x[i], 0, ax, ay, az, bx, by, bz, hx, hy, hz)
+                || separates(0, -(cz - bz), cy - by, ax, ay, az, bx, by, bz, hx, hy, hz)
+                || separates(cz - bz, 0, -(cx - bx), ax, ay, az, bx, by, bz, hx, hy, hz)
+                || separates(-(cy - by), cx - bx, 0, ax, ay, az, bx, by, bz, hx, hy, hz));
+    }
+
+    /**
+     * Test if an axis separates a triangle, given by two of its vertexes as
+     * the third projects onto the axis as one of them, from a box centered at
+     * the origin.
+     */
+    private static boolean separates(double x, double y, double z,
+            double ax, double ay, double az, double bx, double by, double bz,
+            double hx, double hy, double hz) {
+        double p0 = x * ax + y * ay + z * az, p1 = x * bx + y * by + z * bz;
+        double r = hx * abs(x) + hy * abs(y) + hz * abs(z);
+        return min(p0, p1) > r || max(p0, p1) < -r;
+    }
+
+    /**
+     * Clamp the projection of a point onto an edge to the parameter of the
+     * closest point of the edge, in [0, 1].
+     */
+    private static double clamp(double projection, double ex, double ey, double ez) {
+        double length2 = ex * ex + ey * ey + ez * ez;
+        return length2 > 0 ? max(0, min(1, projection / length2)) : 0;
+    }
+
+    /**
+     * Get the squared length of p - s * e - t * f.
+     */
+    private static double distance2(double px, double py, double pz,
+            double ex, double ey, double ez, double s,
+            double fx, double fy, double fz, double t) {
+        double x = px - s * ex - t * fx, y = py - s * ey - t * fy, z = pz - s * ez - t * fz;
+        return x * x + y * y + z * z;
+    }
+
+    private void allocate(int capacity) {
+        this.v0x = new double[capacity];
+        this.v0y = new double[capacity];
+        this.v0z = new double[capacity];
+        this.e1x = new double[capacity];
+        this.e1y = new double[capacity];
+        this.e1z = new double[capacity];
+        this.e2x = new double[capacity];
+        this.e2y = new double[capacity];
+        this.e2z = new double[capacity];
+        this.nx = new double[capacity];
+        this.ny = new double[capacity];
+        this.nz = new double[capacity];
+    }
+
+    private void grow(int capacity) {
+        double[][] old = {this.v0x, this.v0y, this.v0z, this.e1x, this.e1y, this.e1z,
+            this.e2x, this.e2y, this.e2z, this.nx, this.ny, this.nz};
+        this.allocate(capacity);
+        double[][] grown = {this.v0x, this.v0y, this.v0z, this.e1x, this.e1y, this.e1z,
+            this.e2x, this.e2y, this.e2z, this.nx, this.ny, this.nz};
+        for (int k = 0; k < old.length; k++) {
+            arraycopy(old[k], 0, grown[k], 0, this.trianglesCount);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+/**
+ * Abstract class that every support mapping must extend, i.e., a convex
+ * shape described by the point of the shape farthest along any direction, as
+ * the GJK and EPA algorithms require.
+ *
+ * Support mappings write their points into arrays given by the caller, and
+ * can be reset in place, so that testing convex shapes allocates nothing.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public abstract class AbstractSupportMapping {
+
+    /**
+     * Get the point of this shape farthest along a given direction.
+     *
+     * @param dx the x coordinate of the direction, which need not be unit
+     * length.
+     * @param dy the y coordinate of the direction.
+     * @param dz the z coordinate of the direction.
+     * @param support array where to store the x, y and z coordinates of the
+     * farthest point.
+     * @param offset the index of support where to start storing.
+     */
+    public abstract void getSupport(double dx, double dy, double dz, double[] support, int offset);
+
+    /**
+     * Get a point inside this shape, e.g., its center, from which GJK starts
+     * looking for the origin.
+     *
+     * @param center array where to store the x, y and z coordinates of the
+     * point.
+     * @param offset the index of center where to start storing.
+     */
+    public abstract void getCenter(double[] center, int offset);
+}
@@ -0,0 +1,454 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.sort;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Class that implements the computation of the vertices of the convex hull of
+ * a set of points, e.g., the vertices of a mesh, by the quickhull algorithm,
+ * i.e., each point outside the hull is kept in the outside set of a face it
+ * sees, and the farthest point of a outside set is added to the hull, removing
+ * the faces it sees and closing the hole with faces to it, among which the
+ * outside sets of the removed faces are split.
+ *
+ * Points closer to the hull than a millionth of the size of the set are
+ * considered inside. Flat sets, e.g., a quad, get the vertices of their
+ * polygon hull instead.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class ConvexHull {
+
+    static final Logger log = getLogger("ConvexHull");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private static final double TOLERANCE = 1e-6;
+
+    /**
+     * Get the vertices of the convex hull of a set of points.
+     *
+     * @param points the coordinates of the points, the first 3 of each stride
+     * being x, y and z.
+     * @param stride the number of coordinates of each point, at least 3.
+     * @return the x, y and z coordinates of each vertex of the hull.
+     */
+    public static double[] getVertices(float[] points, int stride) {
+        int n = points.length / stride;
+        double[] p = new double[3 * n];
+        for (int i = 0; i < n; i++) {
+            p[3 * i] = points[i * stride];
+            p[3 * i + 1] = points[i * stride + 1];
+            p[3 * i + 2] = points[i * stride + 2];
+        }
+        return getVertices(p, n);
+    }
+
+    /**
+     * Get the vertices of the convex hull of a set of points.
+     *
+     * @param p the x, y and z coordinates of each point.
+     * @param n the number of points.
+     * @return the x, y and z coordinates of each vertex of the hull.
+     */
+    public static double[] getVertices(double[] p, int n) {
+        if (n == 0) {
+            return new double[0];
+        }
+
+        //The two extreme points farthest apart
+        int[] extremes = new int[6];
+        for (int i = 1; i < n; i++) {
+            for (int k = 0; k < 3; k++) {
+                if (p[3 * i + k] < p[3 * extremes[k] + k]) {
+                    extremes[k] = i;
+                }
+                if (p[3 * i + k] > p[3 * extremes[k + 3] + k]) {
+                    extremes[k + 3] = i;
+                }
+            }
+        }
+        int a = 0, b = 0;
+        double size = 0;
+        for (int k = 0; k < 3; k++) {
+            double distance = distance(p, extremes[k], extremes[k + 3]);
+            if (distance > size) {
+                size = distance;
+                a = extremes[k];
+                b = extremes[k + 3];
+            }
+        }
+        double tolerance = TOLERANCE * max(size, Double.MIN_NORMAL);
+        if (size <= tolerance) {
+            return copyOf(p, 3);
+        }
+
+        //The point farthest from their line, and the one farthest from the plane
+        double[] n1 = new double[4];
+        int c = -1;
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            normal(p, a, b, i, n1);
+            double length = sqrt(n1[0] * n1[0] + n1[1] * n1[1] + n1[2] * n1[2]);
+            if (length > area) {
+                area = length;
+                c = i;
+            }
+        }
+        if (area <= tolerance * size) {
+            return select(p, new int[]{a, b}, 2);
+        }
+        normal(p, a, b, c, n1);
+        int d = -1;
+        double height = 0;
+        for (int i = 0; i < n; i++) {
+            double distance = abs(n1[0] * (p[3 * i] - p[3 * a]) + n1[1] * (p[3 * i + 1] - p[3 * a + 1])
+                    + n1[2] * (p[3 * i + 2] - p[3 * a + 2])) / area;
+            if (distance > height) {
+                height = distance;
+                d = i;
+            }
+        }
+        if (height <= tolerance) {
+            return getPolygonVertices(p, n, a, n1);
+        }
+        return new Hull(p, a, b, c, d, tolerance).build(n);
+    }
+
+    /**
+     * Get the vertices of the polygon hull of a flat set of points, by the
+     * monotone chain algorithm in the plane of the points.
+     */
+    private static double[] getPolygonVertices(double[] p, int n, int origin, double[] normal) {
+        //A base of the plane
+        double nx = normal[0], ny = normal[1], nz = normal[2];
+        double ux, uy, uz;
+        if (abs(nx) < abs(ny) && abs(nx) < abs(nz)) {
+            ux = 0;
+            uy = nz;
+            uz = -ny;
+        } else if (abs(ny) < abs(nz)) {
+            ux = -nz;
+            uy = 0;
+            uz = nx;
+        } else {
+            ux = ny;
+            uy = -nx;
+            uz = 0;
+        }
+        double vx = ny * uz - nz * uy, vy = nz * ux - nx * uz, vz = nx * uy - ny * ux;
+
+        final double[] uv = new double[2 * n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            double x = p[3 * i] - p[3 * origin], y = p[3 * i + 1] - p[3 * origin + 1], z = p[3 * i + 2] - p[3 * origin + 2];
+            uv[2 * i] = x * ux + y * uy + z * uz;
+            uv[2 * i + 1] = x * vx + y * vy + z * vz;
+            order[i] = i;
+        }
+        sort(order, (i, j) -> uv[2 * i] != uv[2 * j]
+                ? Double.compare(uv[2 * i], uv[2 * j]) : Double.compare(uv[2 * i + 1], uv[2 * j + 1]));
+
+        int[] chain = new int[2 * n];
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int start = count;
+            for (int k = 0; k < n; k++) {
+                int i = order[pass == 0 ? k : n - 1 - k];
+                while (count >= start + 2 && turn(uv, chain[count - 2], chain[count - 1], i) <= 0) {
+                    count--;
+                }
+                chain[count++] = i;
+            }
+            //The last point is the first of the other chain
+            count--;
+        }
+        return select(p, chain, count);
+    }
+
+    /**
+     * Get the z coordinate of the cross product of the vectors from the plane
+     * point i to the points j and k.
+     */
+    private static double turn(double[] uv, int i, int j, int k) {
+        return (uv[2 * j] - uv[2 * i]) * (uv[2 * k + 1] - uv[2 * i + 1])
+                - (uv[2 * j + 1] - uv[2 * i + 1]) * (uv[2 * k] - uv[2 * i]);
+    }
+
+    private static double distance(double[] p, int i, int j) {
+        double dx = p[3 * j] - p[3 * i], dy = p[3 * j + 1] - p[3 * i + 1], dz = p[3 * j + 2] - p[3 * i + 2];
+        return sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Store the normal of the triangle of the points i, j and k, not
+     * normalized.
+     */
+    private static void normal(double[] p, int i, int j, int k, double[] normal) {
+        double ax = p[3 * j] - p[3 * i], ay = p[3 * j + 1] - p[3 * i + 1], az = p[3 * j + 2] - p[3 * i + 2];
+        double bx = p[3 * k] - p[3 * i], by = p[3 * k + 1] - p[3 * i + 1], bz = p[3 * k + 2] - p[3 * i + 2];
+        normal[0] = ay * bz - az * by;
+        normal[1] = az * bx - ax * bz;
+        normal[2] = ax * by - ay * bx;
+    }
+
+    private static double[] select(double[] p, int[] indices, int count) {
+        double[] vertices = new double[3 * count];
+        for (int i = 0; i < count; i++) {
+            vertices[3 * i] = p[3 * indices[i]];
+            vertices[3 * i + 1] = p[3 * indices[i] + 1];
+            vertices[3 * i + 2] = p[3 * indices[i] + 2];
+        }
+        return vertices;
+    }
+
+    /**
+     * Class that implements the faces of a hull being built, the normal and
+     * offset of each face pointing away from a point inside the hull.
+     */
+    private static final class Hull {
+
+        private final double[] p;
+        private final double tolerance;
+        private final double cx, cy, cz;
+        private int[] faces = new int[3 * 64];
+        private double[] planes = new double[4 * 64];
+        private int[] outside = new int[64];
+        private int faceCount;
+        private int[] next;
+        private int[] edges = new int[2 * 64];
+        private int edgeCount;
+
+        /**
+         * Constructor of the tetrahedron of 4 points of the set.
+         */
+        Hull(double[] p, int a, int b, int c, int d, double tolerance) {
+            this.p = p;
+            this.tolerance = tolerance;
+            this.cx = (p[3 * a] + p[3 * b] + p[3 * c] + p[3 * d]) / 4;
+            this.cy = (p[3 * a + 1] + p[3 * b + 1] + p[3 * c + 1] + p[3 * d + 1]) / 4;
+            this.cz = (p[3 * a + 2] + p[3 * b + 2] + p[3 * c + 2] + p[3 * d + 2]) / 4;
+            this.addFace(a, b, c);
+            this.addFace(a, c, d);
+            this.addFace(a, d, b);
+            this.addFace(b, d, c);
+        }
+
+        /**
+         * Add the points of the set outside this hull to it.
+         *
+         * @return the vertices of the final hull.
+         */
+        double[] build(int n) {
+            double[] p = this.p;
+            //The outside sets are lists linked by the next point of each point
+            this.next = new int[n];
+            for (int i = 0; i < n; i++) {
+                this.assign(i, 0);
+            }
+
+            int f;
+            while ((f = this.getOutsideFace()) >= 0) {
+                //The farthest point of the outside set
+                int eye = -1;
+                double height = 0;
+                for (int i = this.outside[f]; i >= 0; i = this.next[i]) {
+                    double distance = this.getDistance(f, i);
+                    if (distance > height) {
+                        height = distance;
+                        eye = i;
+                    }
+                }
+
+                //Remove the faces it sees, keeping their edges and outside sets
+                int orphans = -1;
+                this.edgeCount = 0;
+                for (int g = 0; g < this.faceCount; g++) {
+                    if (this.getDistance(g, eye) > this.tolerance) {
+                        for (int e = 0; e < 3; e++) {
+                            this.addEdge(this.faces[3 * g + e], this.faces[3 * g + (e + 1) % 3]);
+                        }
+                        for (int i = this.outside[g], j; i >= 0; i = j) {
+                            j = this.next[i];
+                            this.next[i] = orphans;
+                            orphans = i;
+                        }
+                        this.removeFace(g--);
+                    }
+                }
+
+                //Close the hole and split the outside sets among the new faces
+                int first = this.faceCount;
+                for (int e = 0; e < this.edgeCount; e++) {
+                    this.addFace(this.edges[2 * e], this.edges[2 * e + 1], eye);
+                }
+                for (int i = orphans, j; i >= 0; i = j) {
+                    j = this.next[i];
+                    if (i != eye) {
+                        this.assign(i, first);
+                    }
+                }
+            }
+
+            boolean[] isVertex = new boolean[n];
+            int count = 0;
+            for (int k = 0; k < 3 * this.faceCount; k++) {
+                if (!isVertex[this.faces[k]]) {
+                    isVertex[this.faces[k]] = true;
+                    count++;
+                }
+            }
+            int[] vertices = new int[count];
+            count = 0;
+            for (int i = 0; i < n; i++) {
+                if (isVertex[i]) {
+                    vertices[count++] = i;
+                }
+            }
+            return select(p, vertices, count);
+        }
+
+        /**
+         * Add a point to the outside set of the first face from a given one it
+         * sees, if any.
+         */
+        private void assign(int i, int from) {
+            for (int f = from; f < this.faceCount; f++) {
+                if (this.getDistance(f, i) > this.tolerance) {
+                    this.next[i] = this.outside[f];
+                    this.outside[f] = i;
+                    return;
+                }
+            }
+        }
+
+        private int getOutsideFace() {
+            for (int f = 0; f < this.faceCount; f++) {
+                if (this.outside[f] >= 0) {
+                    return f;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Get the signed distance of a point to the plane of a face.
+         */
+        private double getDistance(int f, int i) {
+            double[] plane = this.planes, p = this.p;
+            return plane[4 * f] * p[3 * i] + plane[4 * f + 1] * p[3 * i + 1]
+                    + plane[4 * f + 2] * p[3 * i + 2] - plane[4 * f + 3];
+        }
+
+        /**
+         * Add a face, unless degenerate, wound so that its normal points away
+         * from the inside of the hull.
+         */
+        private void addFace(int a, int b, int c) {
+            double[] plane = this.planes;
+            int f = this.faceCount;
+            if (f == this.faces.length / 3) {
+                this.faces = copyOf(this.faces, 2 * this.faces.length);
+                this.planes = copyOf(this.planes, 2 * this.planes.length);
+                this.outside = copyOf(this.outside, 2 * this.outside.length);
+                plane = this.planes;
+            }
+            double[] p = this.p;
+            double ax = p[3 * b] - p[3 * a], ay = p[3 * b + 1] - p[3 * a + 1], az = p[3 * b + 2] - p[3 * a + 2];
+            double bx = p[3 * c] - p[3 * a], by = p[3 * c + 1] - p[3 * a + 1], bz = p[3 * c + 2] - p[3 * a + 2];
+            double nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+            double length = sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                return;
+            }
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double offset = nx * p[3 * a] + ny * p[3 * a + 1] + nz * p[3 * a + 2];
+            if (nx * this.cx + ny * this.cy + nz * this.cz > offset) {
+                nx = -nx;
+                ny = -ny;
+                nz = -nz;
+                offset = -offset;
+                int swap = b;
+                b = c;
+                c = swap;
+            }
+            plane[4 * f] = nx;
+            plane[4 * f + 1] = ny;
+            plane[4 * f + 2] = nz;
+            plane[4 * f + 3] = offset;
+            this.faces[3 * f] = a;
+            this.faces[3 * f + 1] = b;
+            this.faces[3 * f + 2] = c;
+            this.outside[f] = -1;
+            this.faceCount++;
+        }
+
+        private void removeFace(int f) {
+            int last = --this.faceCount;
+            for (int k = 0; k < 3; k++) {
+                this.faces[3 * f + k] = this.faces[3 * last + k];
+            }
+            for (int k = 0; k < 4; k++) {
+                this.planes[4 * f + k] = this.planes[4 * last + k];
+            }
+            this.outside[f] = this.outside[last];
+        }
+
+        /**
+         * Add a edge of a removed face to the edges of the hole, or remove it
+         * if the face on its other side was removed too.
+         */
+        private void addEdge(int a, int b) {
+            for (int e = 0; e < this.edgeCount; e++) {
+                if (this.edges[2 * e] == b && this.edges[2 * e + 1] == a) {
+                    this.edgeCount--;
+                    this.edges[2 * e] = this.edges[2 * this.edgeCount];
+                    this.edges[2 * e + 1] = this.edges[2 * this.edgeCount + 1];
+                    return;
+                }
+            }
+            if (2 * this.edgeCount == this.edges.length) {
+                this.edges = copyOf(this.edges, 2 * this.edges.length);
+            }
+            this.edges[2 * this.edgeCount] = a;
+            this.edges[2 * this.edgeCount + 1] = b;
+            this.edgeCount++;
+        }
+    }
+
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private ConvexHull() {
+    }
+}
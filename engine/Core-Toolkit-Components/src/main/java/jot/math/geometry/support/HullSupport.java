@@ -0,0 +1,152 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+import static java.util.Arrays.copyOf;
+import java.util.List;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements the support mapping of the convex hull of a set of
+ * points, e.g., the vertices of a mesh, i.e., the point of the set farthest
+ * along each direction.
+ *
+ * The hull needs not be computed, since the farthest point of a set is
+ * always a vertex of its convex hull, but the fewer the points the faster the
+ * support mapping.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class HullSupport extends AbstractSupportMapping {
+
+    private double[] vertices = new double[0];
+    private int count;
+    private double cx, cy, cz;
+
+    /**
+     * Constructor of a empty hull, to be set later.
+     */
+    public HullSupport() {
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param vertices the x, y and z coordinates of each point, not copied.
+     * @param count the number of points.
+     */
+    public HullSupport(double[] vertices, int count) {
+        this.set(vertices, count);
+    }
+
+    /**
+     * Set the points of this hull.
+     *
+     * @param vertices the x, y and z coordinates of each point, not copied.
+     * @param count the number of points.
+     */
+    public final void set(double[] vertices, int count) {
+        this.vertices = vertices;
+        this.count = count;
+        this.updateCenter();
+    }
+
+    /**
+     * Set the points of this hull, copied into a array reused between calls.
+     *
+     * @param points the points.
+     */
+    public void set(List<Vector3D> points) {
+        if (this.vertices.length < 3 * points.size()) {
+            this.vertices = copyOf(this.vertices, 3 * points.size());
+        }
+        for (int i = 0; i < points.size(); i++) {
+            Vector3D point = points.get(i);
+            this.vertices[3 * i] = point.getX();
+            this.vertices[3 * i + 1] = point.getY();
+            this.vertices[3 * i + 2] = point.getZ();
+        }
+        this.count = points.size();
+        this.updateCenter();
+    }
+
+    /**
+     * Get the number of points of this hull.
+     *
+     * @return the number of points.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get the points of this hull.
+     *
+     * @return the x, y and z coordinates of each point, not a copy.
+     */
+    public double[] getVertices() {
+        return this.vertices;
+    }
+
+    private void updateCenter() {
+        this.cx = this.cy = this.cz = 0;
+        for (int i = 0; i < this.count; i++) {
+            this.cx += this.vertices[3 * i];
+            this.cy += this.vertices[3 * i + 1];
+            this.cz += this.vertices[3 * i + 2];
+        }
+        if (this.count > 0) {
+            this.cx /= this.count;
+            this.cy /= this.count;
+            this.cz /= this.count;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getSupport(double dx, double dy, double dz, double[] support, int offset) {
+        double[] v = this.vertices;
+        int best = 0;
+        double bestDot = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 3 * this.count; i += 3) {
+            double dot = v[i] * dx + v[i + 1] * dy + v[i + 2] * dz;
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = i;
+            }
+        }
+        support[offset] = v[best];
+        support[offset + 1] = v[best + 1];
+        support[offset + 2] = v[best + 2];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getCenter(double[] center, int offset) {
+        center[offset] = this.cx;
+        center[offset + 1] = this.cy;
+        center[offset + 2] = this.cz;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Class that implements the support mapping of a sphere.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class SphereSupport extends AbstractSupportMapping {
+
+    private double cx, cy, cz, radius;
+
+    /**
+     * Constructor.
+     *
+     * @param cx the x coordinate of the sphere center.
+     * @param cy the y coordinate of the sphere center.
+     * @param cz the z coordinate of the sphere center.
+     * @param radius the sphere radius.
+     */
+    public SphereSupport(double cx, double cy, double cz, double radius) {
+        this.set(cx, cy, cz, radius);
+    }
+
+    /**
+     * Set the center and radius of this sphere.
+     *
+     * @param cx the x coordinate of the sphere center.
+     * @param cy the y coordinate of the sphere center.
+     * @param cz the z coordinate of the sphere center.
+     * @param radius the sphere radius.
+     */
+    public final void set(double cx, double cy, double cz, double radius) {
+        this.cx = cx;
+        this.cy = cy;
+        this.cz = cz;
+        this.radius = radius;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getSupport(double dx, double dy, double dz, double[] support, int offset) {
+        double length = sqrt(dx * dx + dy * dy + dz * dz);
+        double scale = length > 0 ? this.radius / length : 0;
+        support[offset] = this.cx + dx * scale;
+        support[offset + 1] = this.cy + dy * scale;
+        support[offset + 2] = this.cz + dz * scale;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getCenter(double[] center, int offset) {
+        center[offset] = this.cx;
+        center[offset + 1] = this.cy;
+        center[offset + 2] = this.cz;
+    }
+}
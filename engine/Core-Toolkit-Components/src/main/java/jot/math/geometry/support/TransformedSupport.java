@@ -0,0 +1,125 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+import static java.lang.System.arraycopy;
+
+/**
+ * Class that implements the support mapping of a convex shape under a affine
+ * transformation, e.g., the hull of a mesh in object space placed in the
+ * world by the mesh transformation, without transforming every vertex.
+ *
+ * The direction is taken to the space of the shape by the transpose of the
+ * linear part of the transformation, and the support point of the shape is
+ * taken back by the transformation, which holds for any invertible linear
+ * part, rotations, scales and shears included.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class TransformedSupport extends AbstractSupportMapping {
+
+    private AbstractSupportMapping shape;
+    private final double[] matrix = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    /**
+     * Constructor.
+     *
+     * @param shape the convex shape in its own space.
+     * @param matrix the 4x4 affine transformation from the space of the shape,
+     * column by column as in OpenGL, or NULL for the identity.
+     */
+    public TransformedSupport(AbstractSupportMapping shape, double[] matrix) {
+        this.set(shape, matrix);
+    }
+
+    /**
+     * Set the shape and its transformation.
+     *
+     * @param shape the convex shape in its own space.
+     * @param matrix the 4x4 affine transformation from the space of the shape,
+     * column by column as in OpenGL, or NULL for the identity.
+     */
+    public final void set(AbstractSupportMapping shape, double[] matrix) {
+        this.shape = shape;
+        this.setMatrix(matrix);
+    }
+
+    /**
+     * Get the transformation of the shape.
+     *
+     * @return the 4x4 affine transformation from the space of the shape,
+     * column by column as in OpenGL, not a copy.
+     */
+    public double[] getMatrix() {
+        return this.matrix;
+    }
+
+    /**
+     * Set the transformation of the shape.
+     *
+     * @param matrix the 4x4 affine transformation from the space of the shape,
+     * column by column as in OpenGL, or NULL for the identity.
+     */
+    public final void setMatrix(double[] matrix) {
+        if (matrix == null) {
+            for (int i = 0; i < 16; i++) {
+                this.matrix[i] = i % 5 == 0 ? 1 : 0;
+            }
+        } else {
+            arraycopy(matrix, 0, this.matrix, 0, 16);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getSupport(double dx, double dy, double dz, double[] support, int offset) {
+        double[] m = this.matrix;
+        //Each column of the linear part dotted with the direction
+        this.shape.getSupport(
+                m[0] * dx + m[1] * dy + m[2] * dz,
+                m[4] * dx + m[5] * dy + m[6] * dz,
+                m[8] * dx + m[9] * dy + m[10] * dz,
+                support, offset);
+        this.transform(support, offset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getCenter(double[] center, int offset) {
+        this.shape.getCenter(center, offset);
+        this.transform(center, offset);
+    }
+
+    /**
+     * Transform a point in place, from the space of the shape to the world.
+     */
+    private void transform(double[] result, int offset) {
+        double[] m = this.matrix;
+        double x = result[offset], y = result[offset + 1], z = result[offset + 2];
+        result[offset] = m[0] * x + m[4] * y + m[8] * z + m[12];
+        result[offset + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+        result[offset + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+    }
+}
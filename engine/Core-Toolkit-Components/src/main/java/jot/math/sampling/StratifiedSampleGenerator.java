@@ -0,0 +1,133 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.sampling;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Class that implements a stratified (jittered) sample generator. Each pair of
+ * numbers of a sample falls in its own cell of a grid splitting the pixel,
+ * or of each axis when the number of samples per pixel is not a square, with
+ * a random position within the cell. Cells are shuffled per pixel and per
+ * pair of dimensions, so that dimensions are not correlated. Samples past the
+ * number of samples per pixel, e.g., of later progressive passes, start new
+ * independently shuffled sets of cells.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class StratifiedSampleGenerator extends AbstractSampleGenerator {
+
+    private final int samplesPerPixel;
+    private final int gridSize;
+    private double second;
+
+    /**
+     * Constructor.
+     *
+     * @param samplesPerPixel the number of samples per pixel per pass, i.e.,
+     * the number of cells.
+     * @param seed the seed of the generator.
+     */
+    public StratifiedSampleGenerator(int samplesPerPixel, long seed) {
+        super(seed);
+        if (samplesPerPixel < 1) {
+            throw new IllegalArgumentException("samplesPerPixel must be positive");
+        }
+        this.samplesPerPixel = samplesPerPixel;
+        int size = (int) sqrt(samplesPerPixel);
+        this.gridSize = size * size == samplesPerPixel ? size : 0;
+    }
+
+    /**
+     * Get the number of samples per pixel per pass.
+     *
+     * @return the number of samples per pixel per pass.
+     */
+    public int getSamplesPerPixel() {
+        return this.samplesPerPixel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double next() {
+        int d = this.dimension++;
+        if ((d & 1) == 1) {
+            return this.second;
+        }
+
+        int n = this.samplesPerPixel;
+        int set = this.sampleIndex / n;
+        int index = this.sampleIndex % n;
+        long key = this.hash((long) set << 32 | d >>> 1);
+        double u0 = toUnit(mix(key ^ this.sampleIndex));
+        double u1 = toUnit(mix(mix(key ^ this.sampleIndex)));
+
+        if (this.gridSize > 0) {
+            int cell = permute(index, n, (int) key);
+            this.second = (cell / this.gridSize + u1) / this.gridSize;
+            return (cell % this.gridSize + u0) / this.gridSize;
+        }
+        //Latin hypercube, i.e., one shuffle of the strata per axis
+        this.second = (permute(index, n, (int) (key >>> 32)) + u1) / n;
+        return (permute(index, n, (int) key) + u0) / n;
+    }
+
+    /**
+     * Hashed permutation of [0, length), from Kensler's correlated
+     * multi-jittered sampling.
+     *
+     * @param i the index to permute.
+     * @param length the number of indices.
+     * @param p the permutation key.
+     * @return the permuted index.
+     */
+    static int permute(int i, int length, int p) {
+        int w = length - 1;
+        w |= w >>> 1;
+        w |= w >>> 2;
+        w |= w >>> 4;
+        w |= w >>> 8;
+        w |= w >>> 16;
+        do {
+            i ^= p;
+            i *= 0xe170893d;
+            i ^= p >>> 16;
+            i ^= (i & w) >>> 4;
+            i ^= p >>> 8;
+            i *= 0x0929eb3f;
+            i ^= p >>> 23;
+            i ^= (i & w) >>> 1;
+            i *= 1 | p >>> 27;
+            i *= 0x6935fa69;
+            i ^= (i & w) >>> 11;
+            i *= 0x74dcb303;
+            i ^= (i & w) >>> 2;
+            i *= 0x9e501cc3;
+            i ^= (i & w) >>> 2;
+            i *= 0xc860a3df;
+            i &= w;
+            i ^= i >>> 5;
+        } while ((i & 0xFFFFFFFFL) >= length);
+        return (int) (((i & 0xFFFFFFFFL) + (p & 0xFFFFFFFFL)) % length);
+    }
+}
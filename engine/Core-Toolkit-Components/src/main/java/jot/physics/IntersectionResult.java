@@ -48,6 +48,7 @@ public class IntersectionResult extends AbstractIntersectionResult {
     protected final AbstractRay ray;
     protected double t;
     protected AbstractShape object;
+    protected Vector3D normal;
 
     /**
      * Constructor.
@@ -62,6 +63,20 @@ public class IntersectionResult extends AbstractIntersectionResult {
         this.object = object;
     }
 
+    /**
+     * Constructor, for shapes whose normal cannot be recovered from the
+     * intersection point alone (e.g., triangle meshes).
+     *
+     * @param ray a ray to test.
+     * @param t target of this intersection result.
+     * @param object associated with this intersection result.
+     * @param normal the normal of object at the intersection point.
+     */
+    public IntersectionResult(AbstractRay ray, double t, AbstractShape object, Vector3D normal) {
+        this(ray, t, object);
+        this.normal = normal;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -83,6 +98,9 @@ public class IntersectionResult extends AbstractIntersectionResult {
      */
     @Override
     public Vector3D getNormal() {
+        if (this.normal != null) {
+            return this.normal;
+        }
         return this.object.getNormal(this.getIntersectionPoint());
     }
 
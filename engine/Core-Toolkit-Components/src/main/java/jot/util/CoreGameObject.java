@@ -234,6 +234,42 @@ public abstract class CoreGameObject extends TransformGroup {
      */
     public abstract void updateVelocity(Vector3D update);
 
+    /**
+     * Get if this game object uses continuous collision detection, i.e., is
+     * tested along its whole movement in each step instead of only where it
+     * ends, e.g., so a fast projectile does not pass through a thin wall.
+     *
+     * @return TRUE if this game object uses continuous collision detection,
+     * FALSE otherwise.
+     */
+    public abstract boolean isContinuousCollisionDetection();
+
+    /**
+     * Set if this game object uses continuous collision detection, default
+     * FALSE.
+     *
+     * @param continuousCollisionDetection TRUE if this game object uses
+     * continuous collision detection, FALSE otherwise.
+     */
+    public abstract void setContinuousCollisionDetection(boolean continuousCollisionDetection);
+
+    /**
+     * Get this game object position at the start of the current step, i.e.,
+     * where its continuous collision detection sweep starts.
+     *
+     * @return this game object position at the start of the current step, or
+     * NULL if not set.
+     */
+    public abstract Vector3D getSweepOrigin();
+
+    /**
+     * Set this game object position at the start of the current step.
+     *
+     * @param sweepOrigin this game object position at the start of the
+     * current step, or NULL to test it only where it is.
+     */
+    public abstract void setSweepOrigin(Vector3D sweepOrigin);
+
     @Override
     public CoreGameObject clone() throws CloneNotSupportedException {
         super.clone();
@@ -56,6 +56,11 @@ public class GameObject extends CoreGameObject {
     private Vector3D position;      //PastPosition in Cartesian coordinates.
     private Vector3D pastPosition;  //Previous Position in Cartesian coordinates.
 
+    //Continuous collision detection, from the position at the start of the
+    //current step to the current one.
+    private boolean continuousCollisionDetection;
+    private Vector3D sweepOrigin;
+
     //The attributes of this game object, e.g., for a RPG: health of the game
     //object; level of the game object; available mana of the game object.
     private HashMap<String, Long> attributes;
@@ -300,6 +305,38 @@ public class GameObject extends CoreGameObject {
         this.velocity = this.velocity.add(update);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isContinuousCollisionDetection() {
+        return this.continuousCollisionDetection;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setContinuousCollisionDetection(boolean continuousCollisionDetection) {
+        this.continuousCollisionDetection = continuousCollisionDetection;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Vector3D getSweepOrigin() {
+        return this.sweepOrigin;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSweepOrigin(Vector3D sweepOrigin) {
+        this.sweepOrigin = sweepOrigin;
+    }
+
     @Override
     public GameObject clone() throws CloneNotSupportedException {
         super.clone();
@@ -0,0 +1,177 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Math.sqrt;
+import java.util.Collection;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.AbstractBoundingVolume;
+import static jot.math.geometry.bounding.AbstractBoundingVolume.BoundingVolumeType.SPHERE;
+import static jot.physics.collision.ContinuousCollision.getDisplacement;
+import static jot.physics.collision.ContinuousCollision.isSwept;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Abstract class that every broad phase collision detection structure must
+ * extend, i.e., a structure that, from the axis aligned bounds of the bounding
+ * volumes of a set of game objects, finds the pairs of objects that might
+ * collide, so that only those are tested with the exact bounding volume and
+ * narrow phase tests.
+ *
+ * The bounds of each object are conservative, i.e., whenever the bounding
+ * volumes of two objects collide their bounds overlap, hence a broad phase
+ * never misses a collision the exact tests would detect.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public abstract class AbstractBroadPhase {
+
+    static final Logger log = getLogger("BroadPhase");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Get the conservative axis aligned bounds of the first bounding volume of
+     * a game object.
+     *
+     * Spheres are bounded by twice their radius, since the sphere with box
+     * test of the bounding volumes accepts box corners up to a diameter away
+     * from the center of spheres smaller than the box. Swept game objects are
+     * bounded along their whole movement in the current step.
+     *
+     * @param object the game object.
+     * @param bounds array where to store the minimum x, y and z followed by
+     * the maximum x, y and z.
+     * @param offset the index of bounds where to start storing.
+     */
+    public static void getBounds(GameObject object, double[] bounds, int offset) {
+        AbstractBoundingVolume volume = object.getBoundingVolume(0);
+        if (volume.boundingVolumeType == SPHERE) {
+            double cx = (volume.minX + volume.maxX) / 2;
+            double cy = (volume.minY + volume.maxY) / 2;
+            double cz = (volume.minZ + volume.maxZ) / 2;
+            double dx = volume.maxX - cx;
+            double dy = volume.maxY - cy;
+            double dz = volume.maxZ - cz;
+            double diameter = 2 * sqrt(dx * dx + dy * dy + dz * dz);
+            bounds[offset] = cx - diameter;
+            bounds[offset + 1] = cy - diameter;
+            bounds[offset + 2] = cz - diameter;
+            bounds[offset + 3] = cx + diameter;
+            bounds[offset + 4] = cy + diameter;
+            bounds[offset + 5] = cz + diameter;
+        } else {
+            bounds[offset] = volume.minX;
+            bounds[offset + 1] = volume.minY;
+            bounds[offset + 2] = volume.minZ;
+            bounds[offset + 3] = volume.maxX;
+            bounds[offset + 4] = volume.maxY;
+            bounds[offset + 5] = volume.maxZ;
+        }
+        if (isSwept(object)) {
+            Vector3D displacement = getDisplacement(object);
+            for (int k = 0; k < 3; k++) {
+                double d = k == 0 ? displacement.getX()
+                        : k == 1 ? displacement.getY() : displacement.getZ();
+                if (d > 0) {
+                    bounds[offset + k] -= d;
+                } else {
+                    bounds[offset + k + 3] -= d;
+                }
+            }
+        }
+    }
+
+    /**
+     * Test if two bounds overlap, touching bounds included.
+     *
+     * @param a the first bounds.
+     * @param i the index of the first bounds in a.
+     * @param b the second bounds.
+     * @param j the index of the second bounds in b.
+     * @return TRUE if the bounds overlap, FALSE otherwise.
+     */
+    public static boolean overlap(double[] a, int i, double[] b, int j) {
+        return a[i] <= b[j + 3] && b[j] <= a[i + 3]
+                && a[i + 1] <= b[j + 4] && b[j + 1] <= a[i + 4]
+                && a[i + 2] <= b[j + 5] && b[j + 2] <= a[i + 5];
+    }
+
+    /**
+     * Synchronize this broad phase with a set of game objects, i.e., add the
+     * new ones, drop the missing ones and refresh the bounds of all, e.g.,
+     * once per tick after moving the objects.
+     *
+     * @param objects the game objects.
+     */
+    public abstract void update(Collection<GameObject> objects);
+
+    /**
+     * Remove a game object from this broad phase, e.g., once it is destroyed
+     * between updates.
+     *
+     * @param object the game object to remove.
+     */
+    public abstract void remove(GameObject object);
+
+    /**
+     * Get the number of game objects in this broad phase.
+     *
+     * @return the number of game objects in this broad phase.
+     */
+    public abstract int size();
+
+    /**
+     * Find the game objects whose bounds overlap the bounds of a given game
+     * object, which may or not be in this broad phase.
+     *
+     * @param object the game object to test, never reported itself.
+     * @param candidates collection where to add each game object found once.
+     */
+    public abstract void query(GameObject object, Collection<GameObject> candidates);
+
+    /**
+     * Find all pairs of game objects in this broad phase whose bounds overlap,
+     * each pair once.
+     *
+     * @param visitor invoked with each pair found.
+     */
+    public abstract void findPairs(PairVisitor visitor);
+
+    /**
+     * Visitor of the pairs of game objects found by a broad phase.
+     */
+    public interface PairVisitor {
+
+        /**
+         * Visit a pair of game objects whose bounds overlap.
+         *
+         * @param object1 the first game object.
+         * @param object2 the second game object.
+         */
+        void visit(GameObject object1, GameObject object2);
+    }
+}
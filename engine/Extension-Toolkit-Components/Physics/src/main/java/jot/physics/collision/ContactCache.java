@@ -0,0 +1,437 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Math.abs;
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.Mesh;
+import jot.math.geometry.bounding.AbstractBoundingVolume;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a persistent cache of the contacts between pairs of
+ * game objects, keyed by the ids of each ordered pair, which exploits the
+ * temporal coherence of the narrow phase among ticks.
+ *
+ * The result of a pair is reused as is while, relative to the second game
+ * object, i.e., once the motion of its translation is taken away, every
+ * bounding volume of both game objects and the transformation to the world of
+ * every mesh of them, i.e., of every transform group above each mesh, moved
+ * less than a threshold since it was found, and no mesh rotated or scaled.
+ * Hence a pair that moves as one keeps its result. Otherwise, the pair is
+ * first tested along the axis that last separated it, and only if that no
+ * longer does is the full test run. Pairs
+ * not tested for a given number of ticks, e.g., since their bounding volumes
+ * separated, expire.
+ *
+ * Different pairs may be tested at once by different threads, each pair by
+ * one thread at a time.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class ContactCache {
+
+    static final Logger log = getLogger("ContactCache");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private final ConcurrentHashMap<Key, Contact> contacts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Key> probes = ThreadLocal.withInitial(Key::new);
+    private double motionThreshold = 1e-6;
+    private int maxAge = 1;
+    private volatile long tick;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder warmStarts = new LongAdder();
+    private final LongAdder tests = new LongAdder();
+
+    /**
+     * Test if the meshes of two game objects intersect, reusing or warm
+     * starting from the last result of the pair if possible.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @param narrowPhase the narrow phase of the calling thread.
+     * @return TRUE if the hull of any mesh of the first game object intersects
+     * the hull of any mesh of the second one, or if either has no meshes,
+     * FALSE otherwise.
+     */
+    public boolean intersect(GameObject object1, GameObject object2,
+            NarrowPhase narrowPhase) {
+        this.lookups.increment();
+        Contact contact = this.getContact(object1, object2);
+        boolean hasMeshes = narrowPhase.setShapes(object1, object2);
+        if (contact.isCoherent(object1, object2, narrowPhase, this.motionThreshold)) {
+            this.hits.increment();
+            contact.tick = this.tick;
+            return contact.isIntersecting;
+        }
+        boolean isIntersecting = !hasMeshes || narrowPhase.intersect(contact.axis);
+        if (hasMeshes && narrowPhase.isWarmStarted()) {
+            this.warmStarts.increment();
+        } else {
+            this.tests.increment();
+        }
+        contact.set(object1, object2, narrowPhase, isIntersecting);
+        contact.tick = this.tick;
+        return isIntersecting;
+    }
+
+    /**
+     * Get the position in which the meshes of two intersecting game objects
+     * touch, reusing the last one found for the pair if possible.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @param narrowPhase the narrow phase of the calling thread.
+     * @return the contact point of the deepest penetration of the meshes, or
+     * the position of the second game object if they do not intersect.
+     */
+    public Vector3D getContactPosition(GameObject object1, GameObject object2,
+            NarrowPhase narrowPhase) {
+        this.lookups.increment();
+        Contact contact = this.getContact(object1, object2);
+        boolean hasMeshes = narrowPhase.setShapes(object1, object2);
+        if (contact.position != null
+                && contact.isCoherent(object1, object2, narrowPhase, this.motionThreshold)) {
+            this.hits.increment();
+            contact.tick = this.tick;
+            return contact.position;
+        }
+        this.tests.increment();
+        boolean isIntersecting = hasMeshes && narrowPhase.penetration();
+        contact.set(object1, object2, narrowPhase, isIntersecting);
+        contact.position = isIntersecting ? narrowPhase.getContact()
+                : new Vector3D(object2.getPosition().toArray());
+        contact.tick = this.tick;
+        return contact.position;
+    }
+
+    /**
+     * Start a new tick, expiring the pairs not tested for more than the
+     * maximum age, which must be done by one thread while no pair is tested.
+     */
+    public void advance() {
+        long oldest = ++this.tick - this.maxAge;
+        this.contacts.values().removeIf(contact -> contact.tick < oldest);
+    }
+
+    /**
+     * Remove all the pairs, e.g., when the scene changes.
+     */
+    public void clear() {
+        this.contacts.clear();
+    }
+
+    /**
+     * Get the number of pairs cached.
+     *
+     * @return the number of pairs cached.
+     */
+    public int size() {
+        return this.contacts.size();
+    }
+
+    /**
+     * Set the motion of each bounding volume and mesh relative to the second
+     * game object of a pair below which the result of the pair is reused.
+     *
+     * @param motionThreshold the distance, in world units, default 1e-6.
+     */
+    public void setMotionThreshold(double motionThreshold) {
+        this.motionThreshold = motionThreshold;
+    }
+
+    /**
+     * Set the number of ticks a pair may go untested before it expires.
+     *
+     * @param maxAge the number of ticks, default 1.
+     */
+    public void setMaxAge(int maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Get the number of pairs looked up.
+     *
+     * @return the number of lookups since the counters were last reset.
+     */
+    public long getLookups() {
+        return this.lookups.sum();
+    }
+
+    /**
+     * Get the number of lookups answered by the last result of the pair.
+     *
+     * @return the number of hits since the counters were last reset.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Get the number of tests answered by the last separating axis of the
+     * pair.
+     *
+     * @return the number of warm starts since the counters were last reset.
+     */
+    public long getWarmStarts() {
+        return this.warmStarts.sum();
+    }
+
+    /**
+     * Get the number of full narrow phase tests run.
+     *
+     * @return the number of tests since the counters were last reset.
+     */
+    public long getTests() {
+        return this.tests.sum();
+    }
+
+    /**
+     * Get the fraction of lookups answered by the last result of the pair.
+     *
+     * @return the hit rate, in [0, 1].
+     */
+    public double getHitRate() {
+        long count = this.getLookups();
+        return count == 0 ? 0 : (double) this.getHits() / count;
+    }
+
+    /**
+     * Get the number of full narrow phase tests saved, i.e., the lookups
+     * answered by either the last result or the last separating axis of the
+     * pair.
+     *
+     * @return the number of tests saved since the counters were last reset.
+     */
+    public long getTestsSaved() {
+        return this.getHits() + this.getWarmStarts();
+    }
+
+    /**
+     * Reset the counters.
+     */
+    public void resetCounters() {
+        this.lookups.reset();
+        this.hits.reset();
+        this.warmStarts.reset();
+        this.tests.reset();
+    }
+
+    /**
+     * Get the contact of a pair, adding an empty one if none is cached.
+     */
+    private Contact getContact(GameObject object1, GameObject object2) {
+        Key probe = this.probes.get().set(object1.getId(), object2.getId());
+        Contact contact = this.contacts.get(probe);
+        if (contact == null) {
+            contact = new Contact();
+            Contact old = this.contacts.putIfAbsent(
+                    new Key().set(object1.getId(), object2.getId()), contact);
+            if (old != null) {
+                contact = old;
+            }
+        }
+        return contact;
+    }
+
+    /**
+     * The ids of an ordered pair of game objects, reused to look pairs up.
+     */
+    private static final class Key {
+
+        private String id1, id2;
+
+        private Key set(String id1, String id2) {
+            this.id1 = id1;
+            this.id2 = id2;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.id1.hashCode() + this.id2.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.id1.equals(other.id1) && this.id2.equals(other.id2);
+        }
+    }
+
+    /**
+     * The last result of a pair, with the translation of the second game
+     * object, the extents of the bounding volumes and the meshes and their
+     * transformations it was found for.
+     */
+    private static final class Contact {
+
+        private boolean isValid, isIntersecting;
+        private final double[] axis = new double[3];
+        private Vector3D position;
+        private double[] extents = new double[12];
+        private int extentsCount1, extentsCount2;
+        private Mesh[] meshes = new Mesh[2];
+        private double[] matrices = new double[32];
+        private int count1, count2;
+        private double x2, y2, z2;
+        private final double[] shift = new double[3];
+        private long tick;
+
+        private void set(GameObject object1, GameObject object2,
+                NarrowPhase narrowPhase, boolean isIntersecting) {
+            this.isValid = true;
+            this.isIntersecting = isIntersecting;
+            this.position = null;
+            Vector3D t2 = object2.getTranslation();
+            this.x2 = t2.getX();
+            this.y2 = t2.getY();
+            this.z2 = t2.getZ();
+            this.extentsCount1 = this.setExtents(object1, 0);
+            this.extentsCount2 = this.setExtents(object2, this.extentsCount1) - this.extentsCount1;
+            this.count1 = narrowPhase.getMeshesCount(true);
+            this.count2 = narrowPhase.getMeshesCount(false);
+            int count = this.count1 + this.count2;
+            if (this.meshes.length < count) {
+                this.meshes = new Mesh[2 * count];
+                this.matrices = new double[32 * count];
+            }
+            for (int i = 0; i < count; i++) {
+                boolean isFirst = i < this.count1;
+                int j = isFirst ? i : i - this.count1;
+                this.meshes[i] = narrowPhase.getMesh(isFirst, j);
+                arraycopy(narrowPhase.getMatrix(isFirst, j), 0, this.matrices, 16 * i, 16);
+            }
+        }
+
+        /**
+         * Store the extents of the bounding volumes of a game object from an
+         * index on.
+         *
+         * @return the index after the last extent stored.
+         */
+        private int setExtents(GameObject object, int index) {
+            for (AbstractBoundingVolume volume : object.getBoundingVolumes()) {
+                if (index + 6 > this.extents.length) {
+                    this.extents = copyOf(this.extents, 2 * (index + 6));
+                }
+                this.extents[index++] = volume.minX;
+                this.extents[index++] = volume.minY;
+                this.extents[index++] = volume.minZ;
+                this.extents[index++] = volume.maxX;
+                this.extents[index++] = volume.maxY;
+                this.extents[index++] = volume.maxZ;
+            }
+            return index;
+        }
+
+        private boolean isCoherent(GameObject object1, GameObject object2,
+                NarrowPhase narrowPhase, double motionThreshold) {
+            if (!this.isValid
+                    || this.count1 != narrowPhase.getMeshesCount(true)
+                    || this.count2 != narrowPhase.getMeshesCount(false)) {
+                return false;
+            }
+            //The motion of the pair as one, which is taken away from all
+            Vector3D t2 = object2.getTranslation();
+            double[] shift = this.shift;
+            shift[0] = t2.getX() - this.x2;
+            shift[1] = t2.getY() - this.y2;
+            shift[2] = t2.getZ() - this.z2;
+            if (!this.isExtents(object1, 0, this.extentsCount1, shift, motionThreshold)
+                    || !this.isExtents(object2, this.extentsCount1, this.extentsCount2,
+                            shift, motionThreshold)) {
+                return false;
+            }
+            for (int i = 0; i < this.count1 + this.count2; i++) {
+                boolean isFirst = i < this.count1;
+                int j = isFirst ? i : i - this.count1;
+                if (this.meshes[i] != narrowPhase.getMesh(isFirst, j)
+                        || !isCoherent(this.matrices, 16 * i,
+                                narrowPhase.getMatrix(isFirst, j), shift, motionThreshold)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Test if the bounding volumes of a game object have, once shifted
+         * back, the extents stored from an index on, give or take a
+         * threshold.
+         */
+        private boolean isExtents(GameObject object, int index, int count,
+                double[] shift, double motionThreshold) {
+            int end = index;
+            for (AbstractBoundingVolume volume : object.getBoundingVolumes()) {
+                if (end + 6 > index + count) {
+                    return false;
+                }
+                double[] extents = this.extents;
+                for (int k = 0; k < 2; k++) {
+                    double x = k == 0 ? volume.minX : volume.maxX;
+                    double y = k == 0 ? volume.minY : volume.maxY;
+                    double z = k == 0 ? volume.minZ : volume.maxZ;
+                    if (!(abs(x - shift[0] - extents[end]) <= motionThreshold
+                            && abs(y - shift[1] - extents[end + 1]) <= motionThreshold
+                            && abs(z - shift[2] - extents[end + 2]) <= motionThreshold)) {
+                        return false;
+                    }
+                    end += 3;
+                }
+            }
+            return end == index + count;
+        }
+
+        /**
+         * Test if a transformation neither rotates nor scales other than the
+         * one stored from an index on, and, once shifted back, translates less
+         * than a threshold away.
+         */
+        private static boolean isCoherent(double[] matrices, int offset,
+                double[] m, double[] shift, double motionThreshold) {
+            for (int k = 0; k < 12; k++) {
+                if (k % 4 != 3 && matrices[offset + k] != m[k]) {
+                    return false;
+                }
+            }
+            double x = m[12] - shift[0] - matrices[offset + 12];
+            double y = m[13] - shift[1] - matrices[offset + 13];
+            double z = m[14] - shift[2] - matrices[offset + 14];
+            return x * x + y * y + z * z <= motionThreshold * motionThreshold;
+        }
+    }
+}
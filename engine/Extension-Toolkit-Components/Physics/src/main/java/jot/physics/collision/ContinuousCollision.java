@@ -0,0 +1,355 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.AbstractBoundingVolume;
+import static jot.math.geometry.bounding.AbstractBoundingVolume.BoundingVolumeType.SPHERE;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements continuous collision detection, i.e., finds when two
+ * game objects first touch while moving along a step instead of only testing
+ * where they end, so that fast game objects, e.g., projectiles, do not tunnel
+ * through thin ones, e.g., maze walls, at low tick rates.
+ *
+ * Game objects with continuous collision detection on move in a straight line
+ * from their sweep origin to their current position, all others stay at their
+ * current position. Their first bounding volume is swept, spheres as spheres
+ * and all others as their axis aligned bounds, and the time of impact is
+ * exact for boxes against boxes, spheres against spheres, and spheres against
+ * boxes.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class ContinuousCollision {
+
+    static final Logger log = getLogger("ContinuousCollision");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Test if a game object is swept, i.e., has continuous collision
+     * detection on and a sweep origin.
+     *
+     * @param object the game object.
+     * @return TRUE if the game object is swept, FALSE otherwise.
+     */
+    public static boolean isSwept(GameObject object) {
+        return object.isContinuousCollisionDetection() && object.getSweepOrigin() != null;
+    }
+
+    /**
+     * Get the displacement of a game object along the current step.
+     *
+     * @param object the game object.
+     * @return the displacement from the sweep origin to the current position
+     * if the game object is swept, ZERO otherwise.
+     */
+    public static Vector3D getDisplacement(GameObject object) {
+        return isSwept(object)
+                ? object.getPosition().subtract(object.getSweepOrigin()) : Vector3D.ZERO;
+    }
+
+    /**
+     * Get the time of impact of two game objects, i.e., the fraction of the
+     * current step at which their first bounding volumes first touch.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @return the time of impact in [0, 1], 0 if the bounding volumes already
+     * touched at the start of the step, or POSITIVE_INFINITY if they do not
+     * touch along the step.
+     */
+    public static double getTimeOfImpact(GameObject object1, GameObject object2) {
+        AbstractBoundingVolume volume1 = object1.getBoundingVolume(0);
+        AbstractBoundingVolume volume2 = object2.getBoundingVolume(0);
+        Vector3D d1 = getDisplacement(object1), d2 = getDisplacement(object2);
+
+        //Move both volumes back to the start of the step
+        double[] a = getBounds(volume1, d1), b = getBounds(volume2, d2);
+
+        //Sweep the first volume relative to the second one
+        double dx = d1.getX() - d2.getX(), dy = d1.getY() - d2.getY(), dz = d1.getZ() - d2.getZ();
+        boolean isSphere1 = volume1.boundingVolumeType == SPHERE;
+        boolean isSphere2 = volume2.boundingVolumeType == SPHERE;
+        if (isSphere1 && isSphere2) {
+            return sweepSphere(center(a, 0), center(a, 1), center(a, 2), radius(a),
+                    dx, dy, dz, center(b, 0), center(b, 1), center(b, 2), radius(b));
+        } else if (isSphere1) {
+            return sweepSphere(center(a, 0), center(a, 1), center(a, 2), radius(a),
+                    dx, dy, dz, b, 0);
+        } else if (isSphere2) {
+            return sweepSphere(center(b, 0), center(b, 1), center(b, 2), radius(b),
+                    -dx, -dy, -dz, a, 0);
+        }
+        return sweepBox(a, 0, dx, dy, dz, b, 0);
+    }
+
+    /**
+     * Get the time of impact of a moving box with a still box.
+     *
+     * @param box the minimum XYZ then maximum XYZ coordinates of the moving
+     * box at the start of the step, starting at offset.
+     * @param offset the index of box where the moving box starts.
+     * @param dx the X displacement of the moving box along the step.
+     * @param dy the Y displacement of the moving box along the step.
+     * @param dz the Z displacement of the moving box along the step.
+     * @param other the minimum XYZ then maximum XYZ coordinates of the still
+     * box, starting at otherOffset.
+     * @param otherOffset the index of other where the still box starts.
+     * @return the time of impact in [0, 1], touching boxes included, or
+     * POSITIVE_INFINITY if the boxes do not touch along the step.
+     */
+    public static double sweepBox(double[] box, int offset,
+            double dx, double dy, double dz, double[] other, int otherOffset) {
+        //The boxes overlap on each axis while the displacement lies in [low, high]
+        double enter = 0, exit = 1;
+        for (int k = 0; k < 3; k++) {
+            double low = other[otherOffset + k] - box[offset + k + 3];
+            double high = other[otherOffset + k + 3] - box[offset + k];
+            double d = k == 0 ? dx : k == 1 ? dy : dz;
+            if (d == 0) {
+                if (low > 0 || high < 0) {
+                    return POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            double t0 = low / d, t1 = high / d;
+            enter = max(enter, min(t0, t1));
+            exit = min(exit, max(t0, t1));
+            if (enter > exit) {
+                return POSITIVE_INFINITY;
+            }
+        }
+        return enter;
+    }
+
+    /**
+     * Get the time of impact of a moving sphere with a still sphere.
+     *
+     * @param cx the X coordinate of the moving sphere center at the start of
+     * the step.
+     * @param cy the Y coordinate of the moving sphere center at the start of
+     * the step.
+     * @param cz the Z coordinate of the moving sphere center at the start of
+     * the step.
+     * @param radius the radius of the moving sphere.
+     * @param dx the X displacement of the moving sphere along the step.
+     * @param dy the Y displacement of the moving sphere along the step.
+     * @param dz the Z displacement of the moving sphere along the step.
+     * @param ox the X coordinate of the still sphere center.
+     * @param oy the Y coordinate of the still sphere center.
+     * @param oz the Z coordinate of the still sphere center.
+     * @param otherRadius the radius of the still sphere.
+     * @return the time of impact in [0, 1], touching spheres included, or
+     * POSITIVE_INFINITY if the spheres do not touch along the step.
+     */
+    public static double sweepSphere(double cx, double cy, double cz, double radius,
+            double dx, double dy, double dz,
+            double ox, double oy, double oz, double otherRadius) {
+        return intersectSphere(cx, cy, cz, dx, dy, dz, ox, oy, oz, radius + otherRadius);
+    }
+
+    /**
+     * Get the time of impact of a moving sphere with a still box, i.e., of
+     * the sphere center with the box grown by the sphere radius, whose faces
+     * are the box faces moved out by the radius, whose edges are cylinders and
+     * whose corners are spheres.
+     *
+     * @param cx the X coordinate of the moving sphere center at the start of
+     * the step.
+     * @param cy the Y coordinate of the moving sphere center at the start of
+     * the step.
+     * @param cz the Z coordinate of the moving sphere center at the start of
+     * the step.
+     * @param radius the radius of the moving sphere.
+     * @param dx the X displacement of the moving sphere along the step.
+     * @param dy the Y displacement of the moving sphere along the step.
+     * @param dz the Z displacement of the moving sphere along the step.
+     * @param box the minimum XYZ then maximum XYZ coordinates of the still
+     * box, starting at offset.
+     * @param offset the index of box where the still box starts.
+     * @return the time of impact in [0, 1], touching included, or
+     * POSITIVE_INFINITY if the sphere and the box do not touch along the
+     * step.
+     */
+    public static double sweepSphere(double cx, double cy, double cz, double radius,
+            double dx, double dy, double dz, double[] box, int offset) {
+        double x0 = box[offset], y0 = box[offset + 1], z0 = box[offset + 2];
+        double x1 = box[offset + 3], y1 = box[offset + 4], z1 = box[offset + 5];
+
+        //Already touching at the start of the step
+        double ex = max(x0 - cx, max(0, cx - x1));
+        double ey = max(y0 - cy, max(0, cy - y1));
+        double ez = max(z0 - cz, max(0, cz - z1));
+        if (ex * ex + ey * ey + ez * ez <= radius * radius) {
+            return 0;
+        }
+
+        //Faces
+        double t = min(intersectBox(cx, cy, cz, dx, dy, dz,
+                x0 - radius, y0, z0, x1 + radius, y1, z1),
+                min(intersectBox(cx, cy, cz, dx, dy, dz,
+                        x0, y0 - radius, z0, x1, y1 + radius, z1),
+                        intersectBox(cx, cy, cz, dx, dy, dz,
+                                x0, y0, z0 - radius, x1, y1, z1 + radius)));
+
+        //Edges and corners
+        for (int corner = 0; corner < 8; corner++) {
+            double px = (corner & 1) == 0 ? x0 : x1;
+            double py = (corner & 2) == 0 ? y0 : y1;
+            double pz = (corner & 4) == 0 ? z0 : z1;
+            t = min(t, intersectSphere(cx, cy, cz, dx, dy, dz, px, py, pz, radius));
+            //The edges from the corners at the minimum of each axis
+            if ((corner & 1) == 0) {
+                t = min(t, intersectCylinder(cx, cy, cz, dx, dy, dz, px, py, pz, x1 - x0, 0, 0, radius));
+            }
+            if ((corner & 2) == 0) {
+                t = min(t, intersectCylinder(cx, cy, cz, dx, dy, dz, px, py, pz, 0, y1 - y0, 0, radius));
+            }
+            if ((corner & 4) == 0) {
+                t = min(t, intersectCylinder(cx, cy, cz, dx, dy, dz, px, py, pz, 0, 0, z1 - z0, radius));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Get the first time in [0, 1] at which a moving point is inside a box.
+     */
+    private static double intersectBox(double px, double py, double pz,
+            double dx, double dy, double dz,
+            double x0, double y0, double z0, double x1, double y1, double z1) {
+        double enter = 0, exit = 1;
+        for (int k = 0; k < 3; k++) {
+            double p = k == 0 ? px : k == 1 ? py : pz;
+            double d = k == 0 ? dx : k == 1 ? dy : dz;
+            double low = (k == 0 ? x0 : k == 1 ? y0 : z0) - p;
+            double high = (k == 0 ? x1 : k == 1 ? y1 : z1) - p;
+            if (d == 0) {
+                if (low > 0 || high < 0) {
+                    return POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            double t0 = low / d, t1 = high / d;
+            enter = max(enter, min(t0, t1));
+            exit = min(exit, max(t0, t1));
+            if (enter > exit) {
+                return POSITIVE_INFINITY;
+            }
+        }
+        return enter;
+    }
+
+    /**
+     * Get the first time in [0, 1] at which a moving point is within a given
+     * distance of a still point.
+     */
+    private static double intersectSphere(double px, double py, double pz,
+            double dx, double dy, double dz,
+            double cx, double cy, double cz, double radius) {
+        double mx = px - cx, my = py - cy, mz = pz - cz;
+        double c = mx * mx + my * my + mz * mz - radius * radius;
+        if (c <= 0) {
+            return 0;
+        }
+        double a = dx * dx + dy * dy + dz * dz;
+        double b = mx * dx + my * dy + mz * dz;
+        double discriminant = b * b - a * c;
+        if (b >= 0 || discriminant < 0) {
+            return POSITIVE_INFINITY;
+        }
+        double t = (-b - sqrt(discriminant)) / a;
+        return t <= 1 ? t : POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get the first time in [0, 1] at which a moving point is within a given
+     * distance of a still segment, from its start at (ax, ay, az) to (ax + ex,
+     * ay + ey, az + ez), through the side of the cylinder around it.
+     */
+    private static double intersectCylinder(double px, double py, double pz,
+            double dx, double dy, double dz,
+            double ax, double ay, double az, double ex, double ey, double ez,
+            double radius) {
+        double ee = ex * ex + ey * ey + ez * ez;
+        double mx = px - ax, my = py - ay, mz = pz - az;
+        double md = mx * ex + my * ey + mz * ez, nd = dx * ex + dy * ey + dz * ez;
+        double dd = dx * dx + dy * dy + dz * dz, mn = mx * dx + my * dy + mz * dz;
+        double mm = mx * mx + my * my + mz * mz;
+
+        //Squared distance to the axis times ee is a t^2 + 2 b t + c
+        double a = ee * dd - nd * nd;
+        double b = ee * mn - md * nd;
+        double c = ee * (mm - radius * radius) - md * md;
+        if (ee == 0 || a <= 0) {
+            return POSITIVE_INFINITY;
+        }
+        double discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return POSITIVE_INFINITY;
+        }
+        double t = max(0, (-b - sqrt(discriminant)) / a);
+        double s = md + t * nd;
+        return t <= 1 && (-b + sqrt(discriminant)) / a >= 0 && s >= 0 && s <= ee
+                ? t : POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get the axis aligned bounds of a bounding volume, moved back by a
+     * displacement.
+     */
+    private static double[] getBounds(AbstractBoundingVolume volume, Vector3D displacement) {
+        return new double[]{
+            volume.minX - displacement.getX(),
+            volume.minY - displacement.getY(),
+            volume.minZ - displacement.getZ(),
+            volume.maxX - displacement.getX(),
+            volume.maxY - displacement.getY(),
+            volume.maxZ - displacement.getZ()};
+    }
+
+    private static double center(double[] bounds, int axis) {
+        return (bounds[axis] + bounds[axis + 3]) / 2;
+    }
+
+    private static double radius(double[] bounds) {
+        double x = bounds[3] - bounds[0], y = bounds[4] - bounds[1], z = bounds[5] - bounds[2];
+        return sqrt(x * x + y * y + z * z) / 2;
+    }
+
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private ContinuousCollision() {
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of the JOT game engine i/o framework toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.io.image;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Float.isInfinite;
+import static java.util.Arrays.fill;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.gui.camera.Camera;
+import jot.manager.SceneManager;
+import jot.math.geometry.shape.AbstractRayTracerShape;
+import jot.physics.HitRecord;
+import jot.physics.Ray;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a RayTracer auxiliary buffer, i.e., the normal, depth
+ * and albedo of the first surface seen through the center of each pixel,
+ * which guide the denoiser around geometric and texture edges.
+ *
+ * Pixel coordinates count rows from the bottom up, while the buffers store
+ * rows from the top down, as the FrameBuffer does. Pixels not covering any
+ * surface have a zero normal and albedo, and an infinite depth.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class AuxiliaryBuffer {
+
+    static final Logger log = getLogger("AuxiliaryBuffer");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private final int width, height;
+    private final float[] normals;
+    private final float[] depths;
+    private final float[] albedos;
+    private final ThreadLocal<HitRecord> hits = ThreadLocal.withInitial(HitRecord::new);
+
+    /**
+     * Constructor.
+     *
+     * @param width of the frame.
+     * @param height of the frame.
+     */
+    public AuxiliaryBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.normals = new float[3 * width * height];
+        this.depths = new float[width * height];
+        this.albedos = new float[3 * width * height];
+        this.clear();
+    }
+
+    /**
+     * Get the width of the frame.
+     *
+     * @return the width of the frame.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height of the frame.
+     *
+     * @return the height of the frame.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Trace the ray through the center of a pixel and store the normal,
+     * facing the camera, the distance and the color of the surface hit.
+     *
+     * @param sceneManager the scene to trace.
+     * @param camera the RayTracer camera.
+     * @param x the pixel column.
+     * @param y the pixel row, counting from the bottom row up.
+     */
+    public void capture(SceneManager sceneManager, Camera camera, int x, int y) {
+        HitRecord hit = this.hits.get();
+        Ray ray = camera.getSampleRay((x + .5) / this.width, (y + .5) / this.height);
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        int i = this.getIndex(x, y);
+        if (!sceneManager.intersect(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), POSITIVE_INFINITY, hit)) {
+            this.clear(i);
+            return;
+        }
+
+        double sign = hit.nx * d.getX() + hit.ny * d.getY() + hit.nz * d.getZ() > 0 ? -1 : 1;
+        this.normals[3 * i] = (float) (sign * hit.nx);
+        this.normals[3 * i + 1] = (float) (sign * hit.ny);
+        this.normals[3 * i + 2] = (float) (sign * hit.nz);
+        this.depths[i] = (float) hit.t;
+        Vector3D color = ((AbstractRayTracerShape) hit.object).color;
+        this.albedos[3 * i] = (float) color.getX();
+        this.albedos[3 * i + 1] = (float) color.getY();
+        this.albedos[3 * i + 2] = (float) color.getZ();
+    }
+
+    /**
+     * Get the unit normals of all pixels, row by row from the top row down.
+     *
+     * @return the x, y and z coordinates of the normal of each pixel, not a
+     * copy.
+     */
+    public float[] getNormals() {
+        return this.normals;
+    }
+
+    /**
+     * Get the depths, i.e., the distances from the camera to the surfaces
+     * seen, of all pixels, row by row from the top row down.
+     *
+     * @return the depth of each pixel, not a copy.
+     */
+    public float[] getDepths() {
+        return this.depths;
+    }
+
+    /**
+     * Get the albedos of all pixels, row by row from the top row down.
+     *
+     * @return the red, green and blue albedo of each pixel, not a copy.
+     */
+    public float[] getAlbedos() {
+        return this.albedos;
+    }
+
+    /**
+     * Test if a pixel covers any surface.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row, counting from the bottom row up.
+     * @return true if the pixel covers a surface, false otherwise.
+     */
+    public boolean isCovered(int x, int y) {
+        return !isInfinite(this.depths[this.getIndex(x, y)]);
+    }
+
+    /**
+     * Set all pixels as not covering any surface.
+     */
+    public void clear() {
+        fill(this.normals, 0);
+        fill(this.depths, Float.POSITIVE_INFINITY);
+        fill(this.albedos, 0);
+    }
+
+    private void clear(int i) {
+        fill(this.normals, 3 * i, 3 * i + 3, 0);
+        this.depths[i] = Float.POSITIVE_INFINITY;
+        fill(this.albedos, 3 * i, 3 * i + 3, 0);
+    }
+
+    /**
+     * Get the index of a pixel in the top down buffers.
+     */
+    private int getIndex(int x, int y) {
+        return (this.height - 1 - y) * this.width + x;
+    }
+}
@@ -20,23 +20,31 @@
  */
 package jot.io.image;
 
-import static java.lang.Long.MAX_VALUE;
-import static java.lang.Runtime.getRuntime;
+import java.io.IOException;
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.Math.min;
 import static java.lang.String.format;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import static java.util.concurrent.Executors.newFixedThreadPool;
-import static java.util.concurrent.TimeUnit.DAYS;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.fill;
+import java.util.concurrent.TimeUnit;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import static java.util.logging.Level.ALL;
+import static java.util.logging.Level.INFO;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import jot.gui.camera.Camera;
+import static jot.io.image.AccumulationBuffer.luminance;
+import jot.io.image.ImageWriter.ScanlineWriter;
 import jot.manager.SceneManager;
 import static jot.manager.SceneManager.clamp;
+import jot.math.sampling.AbstractSampleGenerator;
+import jot.math.sampling.SobolSampleGenerator;
 import jot.physics.Ray;
 import jot.physics.Sampler;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
-import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
 
 /**
  * Class that implements a image renderer, i.e., the RayTracer image generator.
@@ -51,27 +59,107 @@ public class ImageRenderer {
         log.setLevel(ALL);
     }
 
-    private static Vector3D combineRadiances(List<Vector3D> radiances) {
-        Vector3D combinedradiance = ZERO;
-        for (Vector3D radiance : radiances) {
-            combinedradiance = combinedradiance.add(radiance);
-        }
-        combinedradiance = combinedradiance.scalarMultiply(1d / radiances.size());
-        return combinedradiance;
+    private static void samplePixel(Sampler sampler, SceneManager sceneManager, int w, int h, int samples, int x, int y) {
+        sampleLoop(sampler, sceneManager, w, h, samples * samples, 0, x, y, sceneManager.frameBuffer, null);
     }
 
-    private static void samplePixel(Sampler sampler, SceneManager sceneManager, int w, int h, int samples, int x, int y) {
-        List<Vector3D> radiances = new ArrayList<>(samples);
-        for (int sy = 0; sy < samples; sy++) {
-            double dy = (double) sy / samples;
-            for (int sx = 0; sx < samples; sx++) {
-                double dx = (double) sx / samples;
-                Ray sampleRay = sceneManager.getCamera("PerspectiveRayTracer").getSampleRay((dx + x) / w, (dy + y) / h);
-                Vector3D radiance = sampler.radiance(sceneManager, sampleRay, 0);
-                radiances.add(new Vector3D(clamp(radiance.getX()), clamp(radiance.getY()), clamp(radiance.getZ())));
-            }
+    private static void accumulatePixel(Sampler sampler, SceneManager sceneManager, int w, int h, int count, int x, int y,
+            AccumulationBuffer buffer) {
+        //Continue the sample sequence of the pixel so that successive passes differ
+        sampleLoop(sampler, sceneManager, w, h, count, buffer.getSamples(x, y), x, y, null, buffer);
+    }
+
+    private static void sampleLoop(Sampler sampler, SceneManager sceneManager, int w, int h,
+            int count, int firstSample, int x, int y, FrameBuffer frameBuffer, AccumulationBuffer buffer) {
+        AbstractSampleGenerator generator = sampler.getSampleGenerator();
+        Camera camera = sceneManager.getCamera("PerspectiveRayTracer");
+        double red = 0, green = 0, blue = 0, luminances = 0, squares = 0;
+        for (int s = 0; s < count; s++) {
+            generator.startSample(x, y, firstSample + s);
+            Ray sampleRay = camera.getSampleRay(x, y, w, h, generator);
+            Vector3D radiance = sampler.radiance(sceneManager, sampleRay, 0);
+            //Accumulate the unclamped radiance, only 8 bit output is clamped
+            double r = radiance.getX();
+            double g = radiance.getY();
+            double b = radiance.getZ();
+            //The noise is estimated as displayed, i.e., clamped
+            double l = luminance(clamp(r), clamp(g), clamp(b));
+            red += r;
+            green += g;
+            blue += b;
+            luminances += l;
+            squares += l * l;
+        }
+        if (buffer != null) {
+            buffer.add(x, y, red, green, blue, luminances, squares, count);
+        } else {
+            frameBuffer.setRadiance(x, y, red / count, green / count, blue / count);
         }
-        sceneManager.image[y][x] = combineRadiances(radiances);
+    }
+
+    private final RenderScheduler scheduler = new RenderScheduler();
+    private Supplier<? extends AbstractSampleGenerator> sampleGenerator
+            = () -> new SobolSampleGenerator(0);
+    private double adaptiveError = 0.05;
+    private final Denoiser denoiser = new Denoiser();
+
+    /**
+     * Default constructor, logs the render progress once per tile.
+     */
+    public ImageRenderer() {
+        this.scheduler.setProgressListener((x0, y0, x1, y1, renderedTiles, tilesCount)
+                -> log.info(format("\rRendering %5.4f%%", 100. * renderedTiles / tilesCount)));
+    }
+
+    /**
+     * Get the tile scheduler of this renderer, e.g., to replace its progress
+     * listener or to cancel a render from another thread.
+     *
+     * @return the tile scheduler of this renderer.
+     */
+    public RenderScheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Set the sample generators to render with, one per worker thread, by
+     * default Sobol sample generators with seed 0. Renders with the same
+     * generators and seed are reproducible.
+     *
+     * @param factory creates the sample generator of each worker thread.
+     */
+    public void setSampleGenerator(Supplier<? extends AbstractSampleGenerator> factory) {
+        this.sampleGenerator = factory;
+    }
+
+    /**
+     * Get the denoiser of this renderer, e.g., to tune its sensitivity.
+     *
+     * @return the denoiser of this renderer.
+     */
+    public Denoiser getDenoiser() {
+        return this.denoiser;
+    }
+
+    /**
+     * Get the error, see AccumulationBuffer.getError, below which pixels are
+     * considered converged when rendering adaptively.
+     *
+     * @return the adaptive sampling error threshold.
+     */
+    public double getAdaptiveError() {
+        return this.adaptiveError;
+    }
+
+    /**
+     * Set the error, see AccumulationBuffer.getError, below which pixels are
+     * considered converged when rendering adaptively. Lower values trade
+     * render time for less noise.
+     *
+     * @param adaptiveError the adaptive sampling error threshold.
+     */
+    public void setAdaptiveError(double adaptiveError) {
+        this.adaptiveError = adaptiveError;
     }
 
     /**
@@ -84,23 +172,273 @@ public class ImageRenderer {
      * @throws Exception
      */
     public void renderImage(SceneManager sceneManager, int w, int h, int samples) throws Exception {
-        ExecutorService executor = newFixedThreadPool(getRuntime().availableProcessors());
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                executor.submit(this.createRowJob(new Sampler(), sceneManager, w, h, samples, x, y));
+        this.renderImage(sceneManager, w, h, samples, 0, MILLISECONDS);
+    }
+
+    /**
+     * Generate the rayTraced image, stopping when the timeout expires.
+     *
+     * @param sceneManager
+     * @param w
+     * @param h
+     * @param samples
+     * @param timeout the maximum time to render, 0 or less for no limit.
+     * @param unit the time unit of timeout.
+     * @return true if the whole image was rendered, false if the render was
+     * cancelled or timed out.
+     * @throws Exception
+     */
+    public boolean renderImage(SceneManager sceneManager, int w, int h, int samples,
+            long timeout, TimeUnit unit) throws Exception {
+        this.scheduler.reset();
+        log.info(format("Rendering (%d spp) %dx%d in %d tiles of %dx%d", samples * samples, w, h,
+                ((w + this.scheduler.getTileSize() - 1) / this.scheduler.getTileSize())
+                * ((h + this.scheduler.getTileSize() - 1) / this.scheduler.getTileSize()),
+                this.scheduler.getTileSize(), this.scheduler.getTileSize()));
+        return this.scheduler.render(w, h, timeout, unit,
+                this.createTileJob(this.createSampler(), sceneManager, w, h, samples));
+    }
+
+    /**
+     * Generate the rayTraced image, streaming each scanline to a image file
+     * as soon as all the tiles covering it are rendered.
+     *
+     * @param sceneManager
+     * @param w
+     * @param h
+     * @param samples
+     * @param timeout the maximum time to render, 0 or less for no limit.
+     * @param unit the time unit of timeout.
+     * @param writer the image file writer, with the same width and height
+     * as the image, closed by the caller.
+     * @return true if the whole image was rendered, false if the render was
+     * cancelled or timed out.
+     * @throws Exception
+     */
+    public boolean renderImage(SceneManager sceneManager, int w, int h, int samples,
+            long timeout, TimeUnit unit, ScanlineWriter writer) throws Exception {
+        this.scheduler.reset();
+        final RenderScheduler.TileRenderer tileJob
+                = this.createTileJob(this.createSampler(), sceneManager, w, h, samples);
+        final AtomicIntegerArray renderedPixels = new AtomicIntegerArray(h);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        boolean finished = this.scheduler.render(w, h, timeout, unit, (x0, y0, x1, y1) -> {
+            tileJob.renderTile(x0, y0, x1, y1);
+            for (int y = y0; y < y1; y++) {
+                if (renderedPixels.addAndGet(y, x1 - x0) == w) {
+                    //Image rows count from the bottom row up, files from the top down
+                    int row = h - 1 - y;
+                    try {
+                        writer.writeScanline(row, sceneManager.frameBuffer.getRadiance(), 3 * w * row);
+                    } catch (IOException ex) {
+                        failure.compareAndSet(null, ex);
+                        this.scheduler.cancel();
+                    }
+                }
+            }
+        });
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return finished;
+    }
+
+    /**
+     * Add one pass of samples x samples jittered samples per pixel to an
+     * accumulation buffer, and update the frame buffer of the scene manager,
+     * of the same size, with the running mean of each pixel.
+     *
+     * @param sceneManager
+     * @param samples
+     * @param buffer the accumulation buffer, which also sets the width and
+     * height of the image.
+     * @return true if the whole pass was rendered, false if the render was
+     * cancelled, in which case only some tiles were accumulated.
+     * @throws Exception
+     */
+    public boolean renderPass(SceneManager sceneManager, int samples,
+            AccumulationBuffer buffer) throws Exception {
+        return this.renderPass(sceneManager, samples, buffer, 0);
+    }
+
+    /**
+     * Add one pass of samples x samples jittered samples to each pixel of a
+     * accumulation buffer that did not converge yet, and update the frame
+     * buffer of the scene manager with the running mean of each pixel.
+     *
+     * @param sceneManager
+     * @param samples
+     * @param buffer the accumulation buffer, which also sets the width and
+     * height of the image.
+     * @param maxError the error, see AccumulationBuffer.getError, below which
+     * pixels with at least samples x samples samples are skipped, 0 to never
+     * skip pixels.
+     * @return true if the whole pass was rendered, false if the render was
+     * cancelled, in which case only some tiles were accumulated.
+     * @throws Exception
+     */
+    public boolean renderPass(SceneManager sceneManager, int samples,
+            AccumulationBuffer buffer, double maxError) throws Exception {
+        this.scheduler.reset();
+        final Sampler sampler = this.createSampler();
+        final FrameBuffer frameBuffer = sceneManager.frameBuffer;
+        final int w = buffer.getWidth(), h = buffer.getHeight();
+        final boolean[] active = new boolean[w * h];
+        if (maxError > 0) {
+            buffer.findActivePixels(active, samples * samples, MAX_VALUE, maxError);
+        } else {
+            fill(active, true);
+        }
+        boolean finished = this.scheduler.render(w, h, 0, MILLISECONDS, (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    if (active[y * w + x]) {
+                        accumulatePixel(sampler, sceneManager, w, h, samples * samples, x, y, buffer);
+                    }
+                    frameBuffer.setRadiance(x, y, buffer.getMean(x, y, 0),
+                            buffer.getMean(x, y, 1), buffer.getMean(x, y, 2));
+                }
+            }
+            frameBuffer.toneMap(x0, y0, x1, y1);
+        });
+        if (finished) {
+            buffer.endPass();
+        }
+        return finished;
+    }
+
+    /**
+     * Generate the rayTraced image adaptively, i.e., in passes over the
+     * pixels that did not converge yet, see AccumulationBuffer.isConverged,
+     * each adding minSamples samples, up to maxSamples samples per pixel.
+     * Flat regions stop after the first pass, leaving the time to the noisy
+     * ones. The samples taken per pixel are kept in the accumulation buffer,
+     * e.g., to export a sample count map with ImageWriter.writeSampleCounts.
+     *
+     * @param sceneManager
+     * @param minSamples the samples per pass, and before testing convergence.
+     * @param maxSamples the maximum samples per pixel.
+     * @param maxError the error, see AccumulationBuffer.getError, below which
+     * a pixel converged.
+     * @param buffer the accumulation buffer, which also sets the width and
+     * height of the image. Samples already in it are kept.
+     * @return true if the whole image was rendered, false if the render was
+     * cancelled.
+     * @throws Exception
+     */
+    public boolean renderAdaptive(SceneManager sceneManager, int minSamples, int maxSamples,
+            double maxError, AccumulationBuffer buffer) throws Exception {
+        this.scheduler.reset();
+        final Sampler sampler = this.createSampler();
+        final FrameBuffer frameBuffer = sceneManager.frameBuffer;
+        final int w = buffer.getWidth(), h = buffer.getHeight();
+        //The pixels to sample are only updated between passes, which keeps renders reproducible
+        final boolean[] active = new boolean[w * h];
+        log.info(format("Rendering adaptively (%d to %d spp, error %g) %dx%d",
+                minSamples, maxSamples, maxError, w, h));
+
+        boolean finished = true;
+        int passes = 0;
+        while (finished && buffer.findActivePixels(active, minSamples, maxSamples, maxError) > 0) {
+            finished = this.scheduler.render(w, h, 0, MILLISECONDS, (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        if (active[y * w + x]) {
+                            accumulatePixel(sampler, sceneManager, w, h,
+                                    min(minSamples, maxSamples - buffer.getSamples(x, y)), x, y, buffer);
+                        }
+                        frameBuffer.setRadiance(x, y, buffer.getMean(x, y, 0),
+                                buffer.getMean(x, y, 1), buffer.getMean(x, y, 2));
+                    }
+                }
+                frameBuffer.toneMap(x0, y0, x1, y1);
+            });
+            passes++;
+        }
+        if (finished) {
+            buffer.endPass();
+        }
+        if (log.isLoggable(INFO)) {
+            long total = 0;
+            for (int count : buffer.getSamples()) {
+                total += count;
             }
+            log.info(format("Adaptive render took %d passes, %.2f spp on average",
+                    passes, total / (double) (w * h)));
         }
-        executor.shutdown();
-        executor.awaitTermination(MAX_VALUE, DAYS);
+        return finished;
+    }
+
+    /**
+     * Capture the normal, depth and albedo of the first surface seen through
+     * each pixel, which guide the denoiser.
+     *
+     * @param sceneManager
+     * @param auxiliaryBuffer the auxiliary buffer, which also sets the width
+     * and height of the image.
+     * @return true if all pixels were captured, false if the render was
+     * cancelled.
+     * @throws Exception
+     */
+    public boolean renderAuxiliary(SceneManager sceneManager, AuxiliaryBuffer auxiliaryBuffer) throws Exception {
+        this.scheduler.reset();
+        final Camera camera = sceneManager.getCamera("PerspectiveRayTracer");
+        return this.scheduler.render(auxiliaryBuffer.getWidth(), auxiliaryBuffer.getHeight(),
+                0, MILLISECONDS, (x0, y0, x1, y1) -> {
+                    for (int y = y0; y < y1; y++) {
+                        for (int x = x0; x < x1; x++) {
+                            auxiliaryBuffer.capture(sceneManager, camera, x, y);
+                        }
+                    }
+                });
     }
 
-    private Runnable createRowJob(final Sampler sampler,
+    /**
+     * Denoise the frame buffer of the scene manager, e.g., after rendering
+     * only a few samples per pixel, and tone map it.
+     *
+     * @param sceneManager
+     * @param auxiliaryBuffer the auxiliary buffer captured for the same
+     * image, see renderAuxiliary.
+     * @return true if the image was denoised, false if the render was
+     * cancelled.
+     */
+    public boolean denoise(SceneManager sceneManager, AuxiliaryBuffer auxiliaryBuffer) {
+        this.scheduler.reset();
+        long beginTime = currentTimeMillis();
+        boolean finished = this.denoiser.denoise(sceneManager.frameBuffer, auxiliaryBuffer, this.scheduler);
+        log.info(format("Denoised in %dms", currentTimeMillis() - beginTime));
+        return finished;
+    }
+
+    /**
+     * Cancel the render in progress, e.g., from a Cancel button. A cancel
+     * that arrives while no render is in progress, e.g., just after one
+     * finished, is discarded as the next render method is called, so it never
+     * cancels a later render. Between the passes of an adaptive render it
+     * cancels the next pass.
+     */
+    public void cancel() {
+        this.scheduler.cancel();
+    }
+
+    private Sampler createSampler() {
+        Sampler sampler = new Sampler();
+        sampler.setSampleGenerator(this.sampleGenerator);
+        return sampler;
+    }
+
+    private RenderScheduler.TileRenderer createTileJob(final Sampler sampler,
             final SceneManager sceneManager,
-            final int w, final int h,
-            final int samples, final int x, final int y) {
-        return () -> {
-            log.info(format("\rRendering (%d spp) %5.4f%%", samples * samples, 100. * (x + h * y) / (w * h)));
-            samplePixel(sampler, sceneManager, w, h, samples, x, y);
+            final int w, final int h, final int samples) {
+        return (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    samplePixel(sampler, sceneManager, w, h, samples, x, y);
+                }
+            }
+            sceneManager.frameBuffer.toneMap(x0, y0, x1, y1);
         };
     }
 }
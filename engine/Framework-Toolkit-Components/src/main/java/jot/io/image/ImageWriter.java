@@ -15,26 +15,36 @@
  * You should have received a copy of the GNU General Public License along with
  * this program. If not, see <http://www.gnu.org/licenses/>.
  *
- * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
  *                  A. Gomes (agomes@it.ubi.pt)
  */
 package jot.io.image;
 
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.FileChannel;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import jot.manager.SceneManager;
 import static jot.manager.SceneManager.increaseBrightness;
 import static jot.manager.SceneManager.toInt;
 
 /**
  * Class that implements a image writer, i.e., that writes to a file the
- * RayTracer image generated.
+ * RayTracer image generated. The file format is chosen by the destination
+ * extension: binary PPM (P6), PFM (linear float HDR) or PNG.
  *
  * @author G. Amador {@literal &} A. Gomes
  */
@@ -50,24 +60,91 @@ public class ImageWriter {
      * Method to write a image to a given file name and path.
      *
      * @param sceneManager
-     * @param destination to write the file to.
+     * @param destination to write the file to, its extension selects the
+     * format.
      * @throws IOException
      * @throws FileNotFoundException
      */
     public static void writeImage(SceneManager sceneManager, File destination) throws IOException, FileNotFoundException {
-        //write ppm header
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(destination))) {
-            //write ppm header
-            bw.write("P3\n" + sceneManager.image.length + " " + sceneManager.image[0].length + "\n" + 255 + "\n");
-
-            for (int y = sceneManager.image.length - 1; y >= 0; y--) {
-                for (int x = 0; x < sceneManager.image[0].length; x++) {
-                    int red = toInt(increaseBrightness(sceneManager.image[y][x].getX()));
-                    int green = toInt(increaseBrightness(sceneManager.image[y][x].getY()));
-                    int blue = toInt(increaseBrightness(sceneManager.image[y][x].getZ()));
-                    bw.write(red + " " + green + " " + blue + " ");
+        FrameBuffer frameBuffer = sceneManager.frameBuffer;
+        writeImage(frameBuffer.getRadiance(), frameBuffer.getWidth(), frameBuffer.getHeight(), destination);
+    }
+
+    /**
+     * Method to write the running mean of a accumulation buffer to a given
+     * file name and path.
+     *
+     * @param buffer the accumulation buffer.
+     * @param destination to write the file to, its extension selects the
+     * format.
+     * @throws IOException
+     */
+    public static void writeImage(AccumulationBuffer buffer, File destination) throws IOException {
+        int width = buffer.getWidth(), height = buffer.getHeight();
+        float[] scanline = new float[3 * width];
+
+        try (ScanlineWriter writer = new ScanlineWriter(destination, width, height)) {
+            for (int row = 0; row < height; row++) {
+                int y = height - 1 - row;
+                for (int x = 0; x < width; x++) {
+                    scanline[3 * x] = (float) buffer.getMean(x, y, 0);
+                    scanline[3 * x + 1] = (float) buffer.getMean(x, y, 1);
+                    scanline[3 * x + 2] = (float) buffer.getMean(x, y, 2);
                 }
-                bw.write("\n");
+                writer.writeScanline(row, scanline, 0);
+            }
+        }
+    }
+
+    /**
+     * Method to write the number of samples of each pixel of a accumulation
+     * buffer to a given file name and path, e.g., to tune adaptive sampling.
+     * PFM files keep the raw counts, other formats scale them so that the
+     * pixel with most samples is white.
+     *
+     * @param buffer the accumulation buffer.
+     * @param destination to write the file to, its extension selects the
+     * format.
+     * @throws IOException
+     */
+    public static void writeSampleCounts(AccumulationBuffer buffer, File destination) throws IOException {
+        int width = buffer.getWidth(), height = buffer.getHeight();
+        float[] scanline = new float[3 * width];
+        int maxSamples = 1;
+        for (int count : buffer.getSamples()) {
+            maxSamples = count > maxSamples ? count : maxSamples;
+        }
+
+        try (ScanlineWriter writer = new ScanlineWriter(destination, width, height)) {
+            float scale = writer.getFormat() == ImageFormat.PFM ? 1 : 1f / maxSamples;
+            for (int row = 0; row < height; row++) {
+                int y = height - 1 - row;
+                for (int x = 0; x < width; x++) {
+                    float value = scale * buffer.getSamples(x, y);
+                    scanline[3 * x] = value;
+                    scanline[3 * x + 1] = value;
+                    scanline[3 * x + 2] = value;
+                }
+                writer.writeScanline(row, scanline, 0);
+            }
+        }
+    }
+
+    /**
+     * Method to write a linear RGB pixel buffer to a given file name and path.
+     *
+     * @param pixels the red, green and blue values of each pixel, row by row
+     * from the top row down.
+     * @param width of the image.
+     * @param height of the image.
+     * @param destination to write the file to, its extension selects the
+     * format.
+     * @throws IOException
+     */
+    public static void writeImage(float[] pixels, int width, int height, File destination) throws IOException {
+        try (ScanlineWriter writer = new ScanlineWriter(destination, width, height)) {
+            for (int row = 0; row < height; row++) {
+                writer.writeScanline(row, pixels, 3 * width * row);
             }
         }
     }
@@ -77,4 +154,297 @@ public class ImageWriter {
      */
     ImageWriter() {
     }
+
+    /**
+     * Types of image files.
+     */
+    public enum ImageFormat {
+
+        /**
+         * Binary (P6) portable pixmap, 8 bits per channel, gamma corrected.
+         */
+        PPM,
+        /**
+         * Portable float map, 32 bits linear float per channel.
+         */
+        PFM,
+        /**
+         * Portable network graphics, 8 bits per channel, gamma corrected.
+         */
+        PNG;
+
+        /**
+         * Get the image format of a file from its extension.
+         *
+         * @param file a given file.
+         * @return the image format of file.
+         * @throws IllegalArgumentException if the extension is not .ppm, .pfm
+         * or .png.
+         */
+        public static ImageFormat of(File file) {
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".ppm")) {
+                return PPM;
+            }
+            if (name.endsWith(".pfm")) {
+                return PFM;
+            }
+            if (name.endsWith(".png")) {
+                return PNG;
+            }
+            throw new IllegalArgumentException("Unsupported image format: " + file.getName());
+        }
+    }
+
+    /**
+     * Class that implements a streaming image file writer, i.e., scanlines
+     * are written as soon as they are available, e.g., as RayTracer tiles
+     * finish. PPM and PFM scanlines are written in place, so they may arrive
+     * in any order and from any thread. PNG scanlines are compressed in order,
+     * so those arriving early are kept until the preceding ones are written.
+     * Scanlines never written are filled with black when the writer is
+     * closed.
+     */
+    public static class ScanlineWriter implements Closeable {
+
+        private static final byte[] PNG_SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        private static final int PNG_CHUNK_SIZE = 1 << 16;
+
+        private final ImageFormat format;
+        private final int width, height;
+        private final FileChannel channel;
+        private final long headerSize;
+        private final int scanlineSize;
+        private final boolean[] written;
+        private final ThreadLocal<ByteBuffer> scanlines;
+
+        private Deflater deflater;
+        private byte[] chunk;
+        private int chunkLength;
+        private float[][] pending;
+        private int nextScanline;
+
+        /**
+         * Constructor, creates the destination file and writes its header.
+         *
+         * @param destination to write the file to, its extension selects the
+         * format.
+         * @param width of the image.
+         * @param height of the image.
+         * @throws IOException
+         */
+        public ScanlineWriter(File destination, int width, int height) throws IOException {
+            this.format = ImageFormat.of(destination);
+            this.width = width;
+            this.height = height;
+            this.written = new boolean[height];
+            this.channel = FileChannel.open(destination.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+
+            ByteBuffer header;
+            switch (this.format) {
+                case PFM:
+                    this.scanlineSize = 12 * width;
+                    header = ByteBuffer.wrap(("PF\n" + width + " " + height + "\n-1.0\n").getBytes(US_ASCII));
+                    break;
+                case PNG:
+                    //filter type byte plus RGB
+                    this.scanlineSize = 1 + 3 * width;
+                    header = ByteBuffer.allocate(PNG_SIGNATURE.length + 25);
+                    header.put(PNG_SIGNATURE);
+                    ByteBuffer ihdr = ByteBuffer.allocate(13);
+                    ihdr.putInt(width).putInt(height).put((byte) 8).put((byte) 2)
+                            .put((byte) 0).put((byte) 0).put((byte) 0);
+                    putChunk(header, "IHDR", ihdr.array(), 13);
+                    header.flip();
+                    this.deflater = new Deflater();
+                    this.chunk = new byte[PNG_CHUNK_SIZE + 12];
+                    this.pending = new float[height][];
+                    break;
+                default:
+                    this.scanlineSize = 3 * width;
+                    header = ByteBuffer.wrap(("P6\n" + width + " " + height + "\n255\n").getBytes(US_ASCII));
+                    break;
+            }
+            this.headerSize = header.remaining();
+            while (header.hasRemaining()) {
+                this.channel.write(header);
+            }
+            this.scanlines = ThreadLocal.withInitial(() -> ByteBuffer.allocate(this.scanlineSize)
+                    .order(this.format == ImageFormat.PFM ? LITTLE_ENDIAN : BIG_ENDIAN));
+        }
+
+        /**
+         * Get the format of the image file.
+         *
+         * @return the format of the image file.
+         */
+        public ImageFormat getFormat() {
+            return this.format;
+        }
+
+        /**
+         * Write a scanline of the image.
+         *
+         * @param row the image row, counting from the top row down.
+         * @param pixels the red, green and blue linear values of the pixels.
+         * @param offset the index in pixels of the red value of the first
+         * pixel of the scanline.
+         * @throws IOException
+         */
+        public void writeScanline(int row, float[] pixels, int offset) throws IOException {
+            synchronized (this.written) {
+                if (this.written[row]) {
+                    throw new IllegalStateException("Scanline " + row + " already written");
+                }
+                this.written[row] = true;
+            }
+
+            if (this.format == ImageFormat.PNG) {
+                this.writePNGScanline(row, pixels, offset);
+                return;
+            }
+
+            ByteBuffer buffer = this.scanlines.get();
+            buffer.clear();
+            long position;
+            if (this.format == ImageFormat.PFM) {
+                //PFM stores the bottom row first
+                position = this.headerSize + (long) (this.height - 1 - row) * this.scanlineSize;
+                for (int i = 0; i < 3 * this.width; i++) {
+                    buffer.putFloat(pixels[offset + i]);
+                }
+            } else {
+                position = this.headerSize + (long) row * this.scanlineSize;
+                for (int i = 0; i < 3 * this.width; i++) {
+                    buffer.put((byte) toInt(increaseBrightness(pixels[offset + i])));
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += this.channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * Fill the scanlines not written with black, finish the file and close
+         * it.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                float[] black = new float[3 * this.width];
+                for (int row = 0; row < this.height; row++) {
+                    boolean missing;
+                    synchronized (this.written) {
+                        missing = !this.written[row];
+                    }
+                    if (missing) {
+                        log.warning("Scanline " + row + " not written, filling it with black.");
+                        this.writeScanline(row, black, 0);
+                    }
+                }
+                if (this.format == ImageFormat.PNG) {
+                    synchronized (this) {
+                        this.deflater.finish();
+                        this.deflate(true);
+                        if (this.chunkLength > 0) {
+                            this.writeChunk("IDAT");
+                        }
+                        this.deflater.end();
+                        this.writeChunk("IEND");
+                    }
+                }
+            } finally {
+                this.channel.close();
+            }
+        }
+
+        /**
+         * Compress the PNG scanlines in order, keeping a copy of those that
+         * arrive before the preceding ones.
+         */
+        private synchronized void writePNGScanline(int row, float[] pixels, int offset) throws IOException {
+            if (row != this.nextScanline) {
+                float[] scanline = new float[3 * this.width];
+                System.arraycopy(pixels, offset, scanline, 0, scanline.length);
+                this.pending[row] = scanline;
+                return;
+            }
+            this.encodePNGScanline(pixels, offset);
+            while (this.nextScanline < this.height && this.pending[this.nextScanline] != null) {
+                float[] scanline = this.pending[this.nextScanline];
+                this.pending[this.nextScanline] = null;
+                this.encodePNGScanline(scanline, 0);
+            }
+        }
+
+        /**
+         * Filter and compress the next PNG scanline.
+         */
+        private void encodePNGScanline(float[] pixels, int offset) throws IOException {
+            //Sub filter, i.e., each byte minus the same channel of the pixel to its left
+            byte[] bytes = this.scanlines.get().array();
+            bytes[0] = 1;
+            int previousRed = 0, previousGreen = 0, previousBlue = 0;
+            for (int x = 0; x < this.width; x++) {
+                int red = toInt(increaseBrightness(pixels[offset + 3 * x]));
+                int green = toInt(increaseBrightness(pixels[offset + 3 * x + 1]));
+                int blue = toInt(increaseBrightness(pixels[offset + 3 * x + 2]));
+                bytes[1 + 3 * x] = (byte) (red - previousRed);
+                bytes[2 + 3 * x] = (byte) (green - previousGreen);
+                bytes[3 + 3 * x] = (byte) (blue - previousBlue);
+                previousRed = red;
+                previousGreen = green;
+                previousBlue = blue;
+            }
+            this.deflater.setInput(bytes, 0, this.scanlineSize);
+            this.deflate(false);
+            this.nextScanline++;
+        }
+
+        /**
+         * Drain the deflater into IDAT chunks, until it needs more input or,
+         * when finishing, until all the compressed data is written.
+         */
+        private void deflate(boolean finish) throws IOException {
+            while (finish ? !this.deflater.finished() : !this.deflater.needsInput()) {
+                this.chunkLength += this.deflater.deflate(this.chunk,
+                        8 + this.chunkLength, PNG_CHUNK_SIZE - this.chunkLength);
+                if (this.chunkLength == PNG_CHUNK_SIZE) {
+                    this.writeChunk("IDAT");
+                }
+            }
+        }
+
+        /**
+         * Write the chunk data gathered so far as a PNG chunk of a given type.
+         */
+        private void writeChunk(String type) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(this.chunk, 0, 12 + this.chunkLength);
+            buffer.putInt(this.chunkLength).put(type.getBytes(US_ASCII));
+            CRC32 crc = new CRC32();
+            crc.update(this.chunk, 4, 4 + this.chunkLength);
+            buffer.position(8 + this.chunkLength);
+            buffer.putInt((int) crc.getValue());
+            buffer.position(0);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+            this.chunkLength = 0;
+        }
+
+        /**
+         * Put a PNG chunk into a buffer.
+         */
+        private static void putChunk(ByteBuffer buffer, String type, byte[] data, int length) {
+            CRC32 crc = new CRC32();
+            byte[] typeBytes = type.getBytes(US_ASCII);
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+            buffer.putInt(length).put(typeBytes).put(data, 0, length).putInt((int) crc.getValue());
+        }
+    }
 }
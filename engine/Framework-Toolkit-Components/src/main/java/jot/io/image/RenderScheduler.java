@@ -0,0 +1,315 @@
+/*
+ * This file is part of the JOT game engine i/o framework toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.io.image;
+
+import static java.lang.Math.min;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.System.nanoTime;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Class that implements a tile based render scheduler. The image is split into
+ * square tiles which are distributed among the worker threads of a work
+ * stealing pool. Progress is reported once per tile, and a render can be
+ * cancelled or bounded by a deadline, in which case the remaining tiles are
+ * skipped. A cancellation requested while no render is in progress is kept
+ * for the next render, so that one requested as a render starts is never
+ * lost, until reset, which ImageRenderer does as each of its renders starts.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class RenderScheduler {
+
+    static final Logger log = getLogger("RenderScheduler");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Default tile width and height, in pixels.
+     */
+    public static final int TILE_SIZE = 16;
+
+    private final int tileSize;
+    private final ForkJoinPool pool;
+    private ProgressListener progressListener;
+
+    /**
+     * The render in progress, if any, whether a cancellation was requested
+     * while none was, and the last render started.
+     */
+    private RenderJob currentJob;
+    private boolean cancelPending;
+    private volatile RenderJob lastJob;
+
+    /**
+     * Default constructor, 16x16 tiles and one worker per available
+     * processor.
+     */
+    public RenderScheduler() {
+        this(TILE_SIZE, getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tileSize the tile width and height, in pixels.
+     * @param parallelism the number of worker threads.
+     */
+    public RenderScheduler(int tileSize, int parallelism) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be positive");
+        }
+        this.tileSize = tileSize;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Set the listener notified each time a tile is rendered.
+     *
+     * @param progressListener the listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Get the tile width and height, in pixels.
+     *
+     * @return the tile width and height, in pixels.
+     */
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    /**
+     * Render a image, blocking until every tile is rendered, the render is
+     * cancelled, or the timeout expires.
+     *
+     * @param width of the image to render.
+     * @param height of the image to render.
+     * @param timeout the maximum time to render, 0 or less for no limit.
+     * @param unit the time unit of timeout.
+     * @param tileRenderer the renderer of each tile.
+     * @return true if all tiles were rendered, false if the render was
+     * cancelled or its deadline expired.
+     */
+    public boolean render(int width, int height,
+            long timeout, TimeUnit unit, TileRenderer tileRenderer) {
+        int tilesX = (width + this.tileSize - 1) / this.tileSize;
+        int tilesY = (height + this.tileSize - 1) / this.tileSize;
+        int tilesCount = tilesX * tilesY;
+
+        boolean hasDeadline = timeout > 0;
+        long deadline = hasDeadline ? nanoTime() + unit.toNanos(timeout) : 0;
+
+        RenderJob job = new RenderJob(width, height, tilesX, tilesCount,
+                hasDeadline, deadline, tileRenderer);
+        synchronized (this) {
+            this.currentJob = job;
+            this.lastJob = job;
+            if (this.cancelPending) {
+                job.cancelled = true;
+                this.cancelPending = false;
+            }
+        }
+        try {
+            this.pool.invoke(new TileJob(job, 0, tilesCount));
+        } finally {
+            synchronized (this) {
+                this.currentJob = null;
+            }
+        }
+
+        log.info(job.isCancelled() ? "Render cancelled." : "Render finished.");
+        return !job.isCancelled();
+    }
+
+    /**
+     * Cancel the render in progress, tiles already being rendered are
+     * finished but no new tiles are started, or the next render if none is in
+     * progress.
+     */
+    public synchronized void cancel() {
+        if (this.currentJob != null) {
+            this.currentJob.cancelled = true;
+        } else {
+            this.cancelPending = true;
+        }
+    }
+
+    /**
+     * Discard a cancellation requested while no render was in progress, so
+     * that the next render is not cancelled by it, e.g., as a render
+     * requested by the user starts.
+     */
+    public synchronized void reset() {
+        this.cancelPending = false;
+    }
+
+    /**
+     * Test if the last render was cancelled, either explicitly or because its
+     * deadline expired.
+     *
+     * @return true if the last render was cancelled, false otherwise.
+     */
+    public boolean isCancelled() {
+        RenderJob job = this.lastJob;
+        return job != null && job.isCancelled();
+    }
+
+    /**
+     * Stop the worker threads, the scheduler cannot render afterwards.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Interface that each tile renderer must implement.
+     */
+    public interface TileRenderer {
+
+        /**
+         * Render the pixels of the tile [x0, x1) x [y0, y1).
+         *
+         * @param x0 the first column of the tile.
+         * @param y0 the first row of the tile.
+         * @param x1 the column after the last one of the tile.
+         * @param y1 the row after the last one of the tile.
+         */
+        void renderTile(int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Interface that each render progress listener must implement.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Invoked, from a worker thread, after each tile is rendered.
+         *
+         * @param x0 the first column of the tile.
+         * @param y0 the first row of the tile.
+         * @param x1 the column after the last one of the tile.
+         * @param y1 the row after the last one of the tile.
+         * @param renderedTiles the number of tiles rendered so far.
+         * @param tilesCount the total number of tiles.
+         */
+        void tileRendered(int x0, int y0, int x1, int y1,
+                int renderedTiles, int tilesCount);
+    }
+
+    /**
+     * State shared by all tiles of a render.
+     */
+    private class RenderJob {
+
+        final int width, height, tilesX, tilesCount;
+        final boolean hasDeadline;
+        final long deadline;
+        final TileRenderer tileRenderer;
+        final ProgressListener progressListener;
+        final AtomicInteger renderedTiles = new AtomicInteger();
+        volatile boolean cancelled;
+        volatile boolean deadlineExpired;
+
+        RenderJob(int width, int height, int tilesX, int tilesCount,
+                boolean hasDeadline, long deadline, TileRenderer tileRenderer) {
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.tilesCount = tilesCount;
+            this.hasDeadline = hasDeadline;
+            this.deadline = deadline;
+            this.tileRenderer = tileRenderer;
+            this.progressListener = RenderScheduler.this.progressListener;
+        }
+
+        boolean isCancelled() {
+            return this.cancelled || this.deadlineExpired;
+        }
+
+        boolean isStopped() {
+            if (this.isCancelled()) {
+                return true;
+            }
+            if (this.hasDeadline && nanoTime() - this.deadline > 0) {
+                this.deadlineExpired = true;
+                return true;
+            }
+            return false;
+        }
+
+        void renderTile(int tile) {
+            if (this.isStopped()) {
+                return;
+            }
+            int size = RenderScheduler.this.tileSize;
+            int x0 = (tile % this.tilesX) * size;
+            int y0 = (tile / this.tilesX) * size;
+            int x1 = min(x0 + size, this.width);
+            int y1 = min(y0 + size, this.height);
+            this.tileRenderer.renderTile(x0, y0, x1, y1);
+
+            int rendered = this.renderedTiles.incrementAndGet();
+            if (this.progressListener != null) {
+                this.progressListener.tileRendered(x0, y0, x1, y1, rendered, this.tilesCount);
+            }
+        }
+    }
+
+    /**
+     * Task rendering a range of tiles, split in halves until a single tile is
+     * left so that idle workers can steal the other half.
+     */
+    private static class TileJob extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RenderJob job;
+        private final int first, last;
+
+        TileJob(RenderJob job, int first, int last) {
+            this.job = job;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.last - this.first == 1) {
+                this.job.renderTile(this.first);
+            } else if (this.last > this.first && !this.job.isStopped()) {
+                int middle = (this.first + this.last) >>> 1;
+                invokeAll(new TileJob(this.job, this.first, middle),
+                        new TileJob(this.job, middle, this.last));
+            }
+        }
+    }
+}
@@ -21,35 +21,55 @@
  */
 package jot.manager;
 
+import static com.jogamp.opengl.GL.GL_RGBA;
+import static com.jogamp.opengl.GL.GL_UNSIGNED_BYTE;
 import com.jogamp.opengl.GL2;
 import static com.jogamp.opengl.GL2ES3.GL_QUADS;
 import static com.jogamp.opengl.GLProfile.getDefault;
 import static com.jogamp.opengl.fixedfunc.GLLightingFunc.GL_LIGHTING;
+import static com.jogamp.opengl.fixedfunc.GLMatrixFunc.GL_MODELVIEW_MATRIX;
+import static com.jogamp.opengl.fixedfunc.GLMatrixFunc.GL_PROJECTION_MATRIX;
 import com.jogamp.opengl.util.texture.Texture;
 import com.jogamp.opengl.util.texture.TextureCoords;
 import com.jogamp.opengl.util.texture.TextureData;
-import static com.jogamp.opengl.util.texture.awt.AWTTextureIO.newTextureData;
-import java.awt.Color;
-import java.awt.image.BufferedImage;
-import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
 import static java.lang.String.format;
+import static java.lang.System.arraycopy;
 import static java.lang.System.currentTimeMillis;
 import static java.lang.System.nanoTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import static java.util.Arrays.asList;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.gui.Game.defaultCamera;
 import static jot.gui.Game.defaultLight;
 import jot.gui.camera.Camera;
+import jot.gui.camera.Frustum;
+import static jot.gui.camera.Frustum.ALL_PLANES;
+import static jot.gui.camera.Frustum.INSIDE;
+import static jot.gui.camera.Frustum.OUTSIDE;
+import jot.io.image.AccumulationBuffer;
+import jot.io.image.AuxiliaryBuffer;
+import jot.io.image.FrameBuffer;
 import jot.io.image.ImageRenderer;
+import jot.math.geometry.Mesh;
 import jot.math.geometry.Node;
 import jot.math.geometry.PolygonMesh;
 import jot.math.geometry.TransformGroup;
@@ -68,15 +88,25 @@ import jot.math.geometry.generators.smoother.AbstractSurface;
 import jot.math.geometry.generators.terrain.AbstractTerrainGenerator;
 import jot.math.geometry.quadrics.CelestialObject;
 import jot.math.geometry.quadrics.SkyDome;
+import jot.math.geometry.shape.AbstractRayTracerShape;
 import jot.math.geometry.shape.AbstractShape;
+import jot.math.geometry.shape.PackedTriangles;
+import jot.math.geometry.shape.RayTracerBVH;
+import jot.math.geometry.shape.RayTracerInstance;
+import static jot.math.geometry.shape.RayTracerBVH.EPS;
+import static jot.math.geometry.shape.RayTracerBVH.isCloserHit;
+import jot.math.geometry.shape.RayTracerMesh;
 import jot.math.geometry.shape.RayTracerPlane;
 import jot.math.geometry.shape.RayTracerSphere;
-import jot.math.geometry.shape.RayTracerTriangle;
 import jot.physics.AbstractRayTracerMaterial;
 import jot.physics.CollisionHandler;
 import static jot.physics.CollisionHandler.checkSkyBoxCollision;
 import static jot.physics.CollisionHandler.checkSkyDomeCollision;
+import static jot.physics.CollisionHandler.findMutableObjectHits;
+import static jot.physics.CollisionHandler.removeFromBroadPhase;
+import static jot.physics.CollisionHandler.updateBroadPhase;
 import jot.physics.Diffuse;
+import jot.physics.HitRecord;
 import jot.physics.IntersectionResult;
 import static jot.physics.IntersectionResult.MISS;
 import static jot.physics.Kinematics.translatePolar;
@@ -84,11 +114,18 @@ import jot.physics.Light;
 import jot.physics.Ray;
 import jot.physics.Refractive;
 import jot.physics.Specular;
+import static jot.physics.collision.ContinuousCollision.getTimeOfImpact;
+import static jot.physics.collision.ContinuousCollision.isSwept;
+import jot.physics.collision.DynamicAABBTree;
+import jot.physics.collision.LooseOctree;
 import static jot.util.CoreOptions.coreOptions;
 import static jot.util.ExtensionPhysicsOptions.extensionPhysicsOptions;
 import static jot.util.FrameworkOptions.frameworkOptions;
 import jot.util.GameObject;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_I;
+import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_J;
+import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_K;
 import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
 
 /**
@@ -187,6 +224,20 @@ public class SceneManager {
      */
     protected ConcurrentHashMap<String, GameObject> immutableObjects = new ConcurrentHashMap<>();
 
+    /**
+     * The tree of the bounds of all immutable objects, to find the ones near
+     * a player or along a ray without going through all of them.
+     */
+    protected DynamicAABBTree immutableObjectsTree = new DynamicAABBTree();
+
+    /**
+     * The loose octree of the bounds of all game objects, to find the ones in
+     * a region, near a point, in view or along a ray without going through
+     * all of them. It is written only by the thread updating the scene, and
+     * may be read by any number of threads in between.
+     */
+    protected LooseOctree gameObjectsTree = new LooseOctree(sceneSize);
+
     protected String localLightId;
     protected String localCameraId;
     protected String localPlayerId;
@@ -196,6 +247,51 @@ public class SceneManager {
 
     protected final int ATTACK_DAMAGE = 10;      //TODO: read from file in constructor
 
+    /**
+     * Number of objects below which a range of objects is updated by a single
+     * thread.
+     */
+    private static final int UPDATE_GRAIN = 16;
+
+    /**
+     * The threads updating the mutable objects, NULL to update them in the
+     * calling thread only.
+     */
+    private ForkJoinPool updatePool = commonPool();
+
+    /**
+     * The hits found by each thread updating the mutable objects, each packed
+     * as the rank of the object hit followed by the rank of the mutable object
+     * that hit it, and all the hits merged in ranks order.
+     */
+    private final ConcurrentLinkedQueue<CommandBuffer> commandBuffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<CommandBuffer> commandBuffer = ThreadLocal.withInitial(() -> {
+        CommandBuffer buffer = new CommandBuffer();
+        this.commandBuffers.add(buffer);
+        return buffer;
+    });
+    private long[] commands = new long[16];
+
+    /**
+     * The view frustum the scene graph is culled against before rendering, and
+     * the OpenGL projection and modelview matrices it is extracted from.
+     */
+    private final Frustum frustum = new Frustum();
+    private final double[] projectionMatrix = new double[16];
+    private final double[] modelviewMatrix = new double[16];
+
+    /**
+     * The transformGroups rendered, and the ones culled with all below them,
+     * by the last culling of the scene graph.
+     */
+    private int visibleCount, culledCount;
+
+    /**
+     * The listener of the game objects destroyed, or players killed, by
+     * mutable objects.
+     */
+    private ScoreListener scoreListener;
+
     private AbstractRayTracerMaterial DIFFUSE;
     private AbstractRayTracerMaterial SPECULAR;
     private AbstractRayTracerMaterial REFRACTIVE;
@@ -203,7 +299,7 @@ public class SceneManager {
     /**
      * RayTracer generated image.
      */
-    public Vector3D[][] image;
+    public FrameBuffer frameBuffer;
 
     /**
      * RayTracer light sources list.
@@ -215,6 +311,35 @@ public class SceneManager {
      */
     public ConcurrentLinkedQueue<AbstractShape> shapes = new ConcurrentLinkedQueue<>();
 
+    /**
+     * RayTracer shapes acceleration structure.
+     */
+    private RayTracerBVH rayTracerBVH;
+
+    /**
+     * RayTracer mesh instance of each game object.
+     */
+    private final IdentityHashMap<GameObject, RayTracerInstance> rayTracerInstances
+            = new IdentityHashMap<>();
+
+    /**
+     * RayTracer image renderer, kept to reuse its worker threads.
+     */
+    private final ImageRenderer imageRenderer = new ImageRenderer();
+
+    /**
+     * RayTracer progressive accumulation buffer, and the shapes version and
+     * camera state it was accumulated with.
+     */
+    private AccumulationBuffer accumulationBuffer;
+    private long shapesVersion, accumulationShapesVersion;
+    private double[] accumulationCameraState;
+
+    /**
+     * RayTracer auxiliary buffer, guiding the denoiser.
+     */
+    private AuxiliaryBuffer auxiliaryBuffer;
+
     /**
      * Constructor, initializes all data structures to players, mutable and
      * immutable objects. Also, loads all textures to further usage in
@@ -244,10 +369,7 @@ public class SceneManager {
         this.SPECULAR = new Specular();
         this.REFRACTIVE = new Refractive(random);
 
-        this.image = new Vector3D[width][];
-        for (int y = 0; y < width; y++) {
-            this.image[y] = new Vector3D[height];
-        }
+        this.frameBuffer = new FrameBuffer(width, height);
     }
 
     /**
@@ -259,6 +381,18 @@ public class SceneManager {
         return this.gameObjects;
     }
 
+    /**
+     * Get the loose octree of all GameObjects, kept up to date as they are
+     * added, removed and moved, e.g., to find the ones near a player, in view,
+     * or that a projectile can hit. It may be queried by several threads at
+     * once, but not while the mutable objects are being updated.
+     *
+     * @return the loose octree of all the gameObjects in the scene.
+     */
+    public LooseOctree getGameObjectsTree() {
+        return this.gameObjectsTree;
+    }
+
     /**
      * Get a specific GameObject given its id.
      *
@@ -337,9 +471,13 @@ public class SceneManager {
      * Set the size of the scene world.
      *
      * @param size common height, width and length of a SkyBox or radius of a
-     * SkyDome.
+     * SkyDome, which must be positive and finite.
+     * @throws IllegalArgumentException if size is not positive and finite.
      */
     public void setSceneSize(float size) {
+        if (!(size > 0 && size < POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException("size must be positive and finite");
+        }
         sceneSize = size;
     }
 
@@ -571,6 +709,8 @@ public class SceneManager {
     public void addImmutableObject(GameObject immutableObject) {
         this.gameObjects.add(immutableObject);
         this.immutableObjects.put(immutableObject.getId(), immutableObject);
+        this.immutableObjectsTree.insert(immutableObject);
+        this.gameObjectsTree.insert(immutableObject);
         this.rootNode.addChild(immutableObject);
     }
 
@@ -583,6 +723,8 @@ public class SceneManager {
     public void removeImmutableObject(GameObject immutableObject) {
         this.gameObjects.remove(immutableObject);
         this.immutableObjects.remove(immutableObject.getId());
+        this.immutableObjectsTree.remove(immutableObject);
+        this.gameObjectsTree.remove(immutableObject);
         this.rootNode.removeChild(immutableObject);
     }
 
@@ -594,6 +736,7 @@ public class SceneManager {
     public void addMutableObject(GameObject mutableObject) {
         this.gameObjects.add(mutableObject);
         this.mutableObjects.add(mutableObject);
+        this.gameObjectsTree.insert(mutableObject);
         this.rootNode.addChild(mutableObject);
     }
 
@@ -606,7 +749,9 @@ public class SceneManager {
     public void removeMutableObject(GameObject mutableObject) {
         this.gameObjects.remove(mutableObject);
         this.mutableObjects.remove(mutableObject);
+        this.gameObjectsTree.remove(mutableObject);
         this.rootNode.removeChild(mutableObject);
+        removeFromBroadPhase(mutableObject);
     }
 
     /**
@@ -617,6 +762,7 @@ public class SceneManager {
     public void addPlayer(GameObject player) {
         this.gameObjects.add(player);
         this.players.put(player.getId(), player);
+        this.gameObjectsTree.insert(player);
         this.rootNode.addChild(player);
     }
 
@@ -628,6 +774,7 @@ public class SceneManager {
     public void removePlayer(GameObject player) {
         this.gameObjects.remove(player);
         this.players.remove(player.getId());
+        this.gameObjectsTree.remove(player);
         this.rootNode.removeChild(player);
     }
 
@@ -1271,7 +1418,6 @@ public class SceneManager {
      *
      * @param gl
      */
-    //TODO: for culling either change this method or render in GameObject and or mesh.  
     public void render(GL2 gl) {
         if (frameworkOptions.get("useRayTracer")) {
             if (localAssetManager.isTexturesNotNull()
@@ -1328,11 +1474,136 @@ public class SceneManager {
             }
 
             if (frameworkOptions.get("showGeometries")) {
+                if (frameworkOptions.get("useFrustumCulling")) {
+                    gl.glGetDoublev(GL_PROJECTION_MATRIX, this.projectionMatrix, 0);
+                    gl.glGetDoublev(GL_MODELVIEW_MATRIX, this.modelviewMatrix, 0);
+                    this.frustum.setPlanes(this.projectionMatrix, this.modelviewMatrix);
+                    this.cull(this.frustum);
+                } else {
+                    this.visibleCount = 0;
+                    this.culledCount = 0;
+                    this.cull(this.rootNode, this.frustum, INSIDE);
+                }
                 this.rootNode.render(gl);
             }
         }
     }
 
+    /**
+     * Cull the gameObjects in the managed scene graph against a view frustum,
+     * so that rendering skips the ones entirely outside of it. Each is tested
+     * by its first bounding volume, in the space of the world, first as a
+     * sphere and then, if an AABB crossing the frustum, as a box. Below a
+     * transformGroup only the planes it crosses are tested, so that nothing
+     * below one entirely inside is tested, and nothing below one entirely
+     * outside is visited. Requires no OpenGL context.
+     *
+     * @param frustum the view frustum, e.g., set from the camera in use.
+     */
+    public void cull(Frustum frustum) {
+        this.visibleCount = 0;
+        this.culledCount = 0;
+        this.rootNode.setCulled(false);
+        this.cull(this.rootNode, frustum, ALL_PLANES);
+    }
+
+    /**
+     * Get the number of transformGroups, i.e., gameObjects and the groups
+     * below them, found inside or crossing the view frustum by the last
+     * culling, i.e., rendered in the last frame.
+     *
+     * @return the number of transformGroups rendered.
+     */
+    public int getVisibleCount() {
+        return this.visibleCount;
+    }
+
+    /**
+     * Get the number of transformGroups, i.e., gameObjects and the groups
+     * below them, found entirely outside of the view frustum by the last
+     * culling, not counting the ones below them, which are not visited.
+     *
+     * @return the number of transformGroups culled.
+     */
+    public int getCulledCount() {
+        return this.culledCount;
+    }
+
+    /**
+     * Cull the transformGroups below a given one against the planes of a view
+     * frustum the given one crosses, if any.
+     */
+    private void cull(TransformGroup group, Frustum frustum, int mask) {
+        Iterator<Node> iterator = group.childIterator();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            if (!(node instanceof TransformGroup)) {
+                continue;
+            }
+            TransformGroup child = (TransformGroup) node;
+            int crossed = mask == INSIDE ? INSIDE : this.testBoundingVolume(child, frustum, mask);
+            if (crossed == OUTSIDE) {
+                child.setCulled(true);
+                this.culledCount++;
+            } else {
+                child.setCulled(false);
+                this.visibleCount++;
+                this.cull(child, frustum, crossed);
+            }
+        }
+    }
+
+    /**
+     * Test the first bounding volume of a transformGroup, which is in the
+     * space of its parent, against the planes of a given mask of a view
+     * frustum.
+     *
+     * @return OUTSIDE, or the mask of the tested planes crossed, all of them
+     * if the bounding volume is not set.
+     */
+    private int testBoundingVolume(TransformGroup group, Frustum frustum, int mask) {
+        AbstractBoundingVolume bv = group.getBoundingVolume(0);
+        if (bv == null || bv.minX0 == bv.maxX0 && bv.minY0 == bv.maxY0 && bv.minZ0 == bv.maxZ0) {
+            //No extents to test, so test what is below it instead.
+            return mask;
+        }
+        double[] m = group.getParent() == null ? null : group.getParent().getWorldMatrix();
+
+        double cx = (bv.minX + bv.maxX) / 2;
+        double cy = (bv.minY + bv.maxY) / 2;
+        double cz = (bv.minZ + bv.maxZ) / 2;
+        double ex = (bv.maxX - bv.minX) / 2;
+        double ey = (bv.maxY - bv.minY) / 2;
+        double ez = (bv.maxZ - bv.minZ) / 2;
+        double radius = sqrt(ex * ex + ey * ey + ez * ez);
+        double x = cx, y = cy, z = cz;
+        if (m != null) {
+            x = m[0] * cx + m[4] * cy + m[8] * cz + m[12];
+            y = m[1] * cx + m[5] * cy + m[9] * cz + m[13];
+            z = m[2] * cx + m[6] * cy + m[10] * cz + m[14];
+            radius *= sqrt(max(m[0] * m[0] + m[1] * m[1] + m[2] * m[2],
+                    max(m[4] * m[4] + m[5] * m[5] + m[6] * m[6],
+                            m[8] * m[8] + m[9] * m[9] + m[10] * m[10])));
+        }
+
+        //The sphere enclosing any bounding volume first, the box only if an AABB.
+        int crossed = frustum.testSphere(x, y, z, radius, mask);
+        if (crossed == OUTSIDE || crossed == INSIDE
+                || bv.boundingVolumeType != AbstractBoundingVolume.BoundingVolumeType.AABB) {
+            return crossed;
+        }
+        if (m != null) {
+            //The world extents of the box are the absolute transformed extents.
+            double wx = abs(m[0]) * ex + abs(m[4]) * ey + abs(m[8]) * ez;
+            double wy = abs(m[1]) * ex + abs(m[5]) * ey + abs(m[9]) * ez;
+            double wz = abs(m[2]) * ex + abs(m[6]) * ey + abs(m[10]) * ez;
+            ex = wx;
+            ey = wy;
+            ez = wz;
+        }
+        return frustum.testBox(x - ex, y - ey, z - ez, x + ex, y + ey, z + ez, crossed);
+    }
+
     /**
      * Dispose all the game content.
      *
@@ -1355,6 +1626,8 @@ public class SceneManager {
         this.immutableObjects.values().stream()
                 .forEach(io -> io.dispose(gl));
         this.immutableObjects.clear();
+        this.immutableObjectsTree = new DynamicAABBTree();
+        this.gameObjectsTree = new LooseOctree(sceneSize);
     }
 
     /**
@@ -1395,51 +1668,74 @@ public class SceneManager {
         this.players.put(newId, player);
     }
 
+    /**
+     * Set the number of threads updating the mutable objects. Each update has
+     * the same result whatever the number of threads.
+     *
+     * @param parallelism the number of threads, 1 to update the mutable
+     * objects in the calling thread only.
+     */
+    public void setUpdateParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        if (this.updatePool != null && this.updatePool != commonPool()) {
+            this.updatePool.shutdown();
+        }
+        this.updatePool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Set the listener told, while updating the mutable objects, of each game
+     * object destroyed, or player killed, by a mutable object.
+     *
+     * @param scoreListener the listener, or NULL for none.
+     */
+    public void setScoreListener(ScoreListener scoreListener) {
+        this.scoreListener = scoreListener;
+    }
+
     /**
      * Update all mutable objects position in the managed scene, if the mutable
      * object life span ends or if it hits some obstacle remove it from the
      * managed scene.
      *
+     * The mutable objects are moved, and then tested against every mutable
+     * object, immutable object and player, by several threads. The hits found
+     * are only applied afterwards, by the calling thread, in the order of the
+     * objects in the scene, so that the result is the same whatever the number
+     * of threads.
+     *
      * @param dt the amount of elapsed game time since the last frame.
      */
-    //TODO: parallelize, translate the SkyBox/SkyDome
+    //TODO: translate the SkyBox/SkyDome
     public void updateMutableObjects(float dt) {
         if (this.mutableObjects != null) {
             log.info(format("Number of mutableObjects %d", this.mutableObjects.size()));
 
             //Update mutable objects position
-            Iterator<GameObject> mutableObjectIterator = this.getAllMutableObjects();
-            log.info(Integer.toString(this.mutableObjects.size()));
-            while (mutableObjectIterator.hasNext()) {
-                GameObject mutableObject = mutableObjectIterator.next();
-                if (mutableObject.getAttribute("health") > 80) {
-                    mutableObject.setAttribute("health", mutableObject.getAttribute("health") - 1);
-
-                    //Store original position              
-                    Vector3D pastPosition = new Vector3D(mutableObject.getPastPosition().toArray());
-                    //System.out.println(pastPosition);
-
-                    //Vector3D newUpdate = translate(ZERO, mutableObject.getVelocity(), (float) mutableObject.getRotation().getY(), 0);
-                    Vector3D newUpdate = translatePolar(pastPosition,
-                            new Vector3D(0, mutableObject.getPosition().getY(), 0),
-                            mutableObject.getVelocity(),
-                            (float) mutableObject.getRotation().getY(),
-                            0, -.98f, (nanoTime() - mutableObject.getT0())
-                            * (float) 10e-9);
-                    //System.out.println(newUpdate + "\n");
-
-                    //perform position update
-                    mutableObject.updatePosition(newUpdate);
-
-                    //keep past position as original position
-                    mutableObject.setPastPosition(pastPosition);
-                    //mutableObject.updatePosition(new Vector3D(pastPosition.toArray());
-                } else {
+            GameObject[] objects = this.mutableObjects.toArray(new GameObject[0]);
+            boolean[] expired = new boolean[objects.length];
+            long time = nanoTime();
+            this.forEach(objects.length,
+                    i -> expired[i] = !this.updateMutableObject(objects[i], time));
+
+            int mutableCount = 0;
+            for (int i = 0; i < objects.length; i++) {
+                if (expired[i]) {
                     log.info("Mutable object was destroyed by time out!");
-                    this.removeMutableObject(mutableObject);
-                    mutableObjectIterator.remove();
+                    this.removeMutableObject(objects[i]);
+                } else {
+                    objects[mutableCount++] = objects[i];
                 }
             }
+
+            //Find which mutable objects are near each other from their new positions
+            updateBroadPhase(this.mutableObjects);
+            //Reinsert the immutable objects moved since, if any
+            this.immutableObjectsTree.update(this.immutableObjects.values());
+            //Move all game objects in the octree, players included, before it is read
+            this.gameObjectsTree.update(this.gameObjects);
 //
 //            //Test for all mutable objects if mutable object hit the scene bounds.
 //            mutableObjectIterator = getAllMutableObjects();
@@ -1451,86 +1747,218 @@ public class SceneManager {
 //                }
 //            }
 //            
-            //Test for all mutable objects if mutable object was hit by mutable objects (such as projectiles).
-            mutableObjectIterator = this.getAllMutableObjects();
-            while (mutableObjectIterator.hasNext()) {
-                GameObject mutableObject = mutableObjectIterator.next();
-                int hits = this.checkMutableObjectMutableObjectCollision(mutableObject);
-                if (hits > 0) {
-                    int newHealth = (int) (mutableObject.getAttribute("health") - hits);
-                    log.info(format("%s got hit. Health is now %d", mutableObject.getId(), newHealth));
-                    if (newHealth <= 0) {
-                        //TODO: Score points here
-                        log.info(format("Mutable object %s was destroyed!", mutableObject.getId()));
-                        this.removeMutableObject(mutableObject);
-                        mutableObjectIterator.remove();
-                    }
+            //Rank the mutable objects, then the immutable objects, then the players
+            GameObject[] immutables = this.immutableObjects.values().toArray(new GameObject[0]);
+            GameObject[] players = this.players.values().toArray(new GameObject[0]);
+            int immutableCount = immutables.length;
+            GameObject[] targets = new GameObject[mutableCount + immutableCount + players.length];
+            arraycopy(objects, 0, targets, 0, mutableCount);
+            arraycopy(immutables, 0, targets, mutableCount, immutableCount);
+            arraycopy(players, 0, targets, mutableCount + immutableCount, players.length);
+            IdentityHashMap<GameObject, Integer> ranks = new IdentityHashMap<>();
+            for (int i = 0; i < mutableCount; i++) {
+                ranks.put(targets[i], i);
+            }
+
+            //Find the mutable objects (such as projectiles) that hit each object
+            int playersRank = mutableCount + immutableCount;
+            this.forEach(targets.length,
+                    i -> this.findHits(targets[i], i, i >= playersRank, ranks));
+
+            this.applyHits(targets, mutableCount, immutableCount, this.mergeHits());
+        }
+    }
+
+    /**
+     * Move a mutable object along its trajectory and shorten its life span.
+     *
+     * @param mutableObject the mutable object.
+     * @param time the current time, in nanoseconds.
+     * @return FALSE if the life span of the mutable object ended, TRUE
+     * otherwise.
+     */
+    private boolean updateMutableObject(GameObject mutableObject, long time) {
+        if (mutableObject.getAttribute("health") <= 80) {
+            return false;
+        }
+        mutableObject.setAttribute("health", mutableObject.getAttribute("health") - 1);
+
+        //Sweep continuous collision detection from the current position
+        if (mutableObject.isContinuousCollisionDetection()) {
+            mutableObject.setSweepOrigin(mutableObject.getPosition());
+        }
+
+        //Store original position              
+        Vector3D pastPosition = new Vector3D(mutableObject.getPastPosition().toArray());
+
+        //Vector3D newUpdate = translate(ZERO, mutableObject.getVelocity(), (float) mutableObject.getRotation().getY(), 0);
+        Vector3D newUpdate = translatePolar(pastPosition,
+                new Vector3D(0, mutableObject.getPosition().getY(), 0),
+                mutableObject.getVelocity(),
+                (float) mutableObject.getRotation().getY(),
+                0, -.98f, (time - mutableObject.getT0())
+                * (float) 10e-9);
+
+        //perform position update
+        mutableObject.updatePosition(newUpdate);
+
+        //keep past position as original position
+        mutableObject.setPastPosition(pastPosition);
+        return true;
+    }
+
+    /**
+     * Find the mutable objects that hit a object, and store in the hits of the
+     * calling thread their ranks.
+     *
+     * @param target the mutable object, immutable object or player to test.
+     * @param rank the rank of the object to test.
+     * @param isPlayer TRUE if the object to test is a player, whose own
+     * projectiles are ignored, FALSE otherwise.
+     * @param ranks the rank of each mutable object.
+     */
+    private void findHits(GameObject target, int rank, boolean isPlayer,
+            IdentityHashMap<GameObject, Integer> ranks) {
+        CommandBuffer buffer = this.commandBuffer.get();
+        buffer.hits.clear();
+        findMutableObjectHits(target, this.mutableObjects, isPlayer, buffer.hits);
+        for (GameObject hit : buffer.hits) {
+            Integer hitRank = ranks.get(hit);
+            if (hitRank != null) {
+                buffer.add((long) rank << 32 | hitRank);
+            }
+        }
+    }
+
+    /**
+     * Merge the hits found by every thread, sorted by the rank of the object
+     * hit and then by the rank of the mutable object that hit it.
+     *
+     * @return the number of hits.
+     */
+    private int mergeHits() {
+        int count = 0;
+        for (CommandBuffer buffer : this.commandBuffers) {
+            if (count + buffer.size > this.commands.length) {
+                this.commands = Arrays.copyOf(this.commands,
+                        max(2 * this.commands.length, count + buffer.size));
+            }
+            arraycopy(buffer.commands, 0, this.commands, count, buffer.size);
+            count += buffer.size;
+            buffer.size = 0;
+        }
+        Arrays.sort(this.commands, 0, count);
+        return count;
+    }
+
+    /**
+     * Apply the merged hits, i.e., remove the mutable objects that hit other
+     * objects and damage the objects hit. Each mutable object only hits the
+     * first object it hit in ranks order, and a mutable object already
+     * removed hits nothing, as if the objects were tested one at a time. A
+     * swept mutable object, i.e., using continuous collision detection, only
+     * hits the object it reaches first along the step.
+     *
+     * @param targets the mutable objects, immutable objects and players, in
+     * ranks order.
+     * @param mutableCount the number of mutable objects.
+     * @param immutableCount the number of immutable objects.
+     * @param count the number of hits.
+     */
+    private void applyHits(GameObject[] targets, int mutableCount,
+            int immutableCount, int count) {
+        boolean[] removed = new boolean[mutableCount];
+        int[] firstHits = null;
+        double[] firstTimes = null;
+        for (int k = 0; k < count; k++) {
+            int rank = (int) (this.commands[k] >>> 32), hitRank = (int) this.commands[k];
+            if (isSwept(targets[hitRank])) {
+                if (firstHits == null) {
+                    firstHits = new int[mutableCount];
+                    firstTimes = new double[mutableCount];
+                    Arrays.fill(firstHits, -1);
+                    Arrays.fill(firstTimes, POSITIVE_INFINITY);
+                }
+                double time = getTimeOfImpact(targets[hitRank], targets[rank]);
+                if (time < firstTimes[hitRank]) {
+                    firstTimes[hitRank] = time;
+                    firstHits[hitRank] = rank;
                 }
             }
+        }
 
-            //Test for all immutable object if immutable object was hit by mutable objects (such as projectiles).
-            Iterator<GameObject> immutableObjectIterator = this.getAllImmutableObjects();
-            while (immutableObjectIterator.hasNext()) {
-                GameObject immutableObject = immutableObjectIterator.next();
-                int hits = this.checkImmutableObjectMutableObjectCollision(immutableObject);
-                if (hits > 0) {
-                    int newHealth = (int) (immutableObject.getAttribute("health") - hits);
-                    log.info(format("%s got hit. Health is now %d", immutableObject.getId(), newHealth));
-                    if (newHealth <= 0) {
-                        //TODO: Score points here
-                        log.info(format("Immutable object %s was destroyed!", immutableObject.getId()));
-                        this.removeImmutableObject(immutableObject);
-                        immutableObjectIterator.remove();
-                    }
+        int k = 0;
+        while (k < count) {
+            int rank = (int) (this.commands[k] >>> 32);
+            int hits = 0;
+            GameObject lastHit = null;
+            for (; k < count && (int) (this.commands[k] >>> 32) == rank; k++) {
+                int hitRank = (int) this.commands[k];
+                if (removed[hitRank] || rank < mutableCount && removed[rank]
+                        || firstHits != null && firstHits[hitRank] >= 0
+                        && firstHits[hitRank] != rank) {
+                    continue;
                 }
+                removed[hitRank] = true;
+                lastHit = targets[hitRank];
+                this.removeMutableObject(lastHit);
+                hits += this.ATTACK_DAMAGE;
+            }
+            if (hits == 0) {
+                continue;
             }
 
-            //Test for all players if player was hit by mutable objects (such as projectiles).
-            Iterator<GameObject> playerIterator = this.getAllPlayers();
-            while (playerIterator.hasNext()) {
-                GameObject player = playerIterator.next();
-                int hits = this.checkPlayerMutableObjectCollision(player);
-                if (hits > 0) {
-                    int newHealth = (int) (player.getAttribute("health") - hits);
-                    log.info(format("%s got hit. Health is now %d", player.getId(), newHealth));
-                    this.getPlayer(player.getId()).setAttribute("health", newHealth);
-                    if (newHealth <= 0) {
-                        //TODO: Score points here
-                        log.info(format("Player %s died!", player.getId()));
-                        this.getPlayer(player.getId()).setAttribute("health", 100);
-                        //removePlayer(player);
-                        //playerIterator.remove();
-                    }
+            GameObject target = targets[rank];
+            int newHealth = (int) (target.getAttribute("health") - hits);
+            log.info(format("%s got hit. Health is now %d", target.getId(), newHealth));
+            if (rank < mutableCount) {
+                //The health of a mutable object is its life span, hence kept
+                if (newHealth <= 0) {
+                    log.info(format("Mutable object %s was destroyed!", target.getId()));
+                    this.score(lastHit, target);
+                    removed[rank] = true;
+                    this.removeMutableObject(target);
+                }
+            } else if (rank < mutableCount + immutableCount) {
+                target.setAttribute("health", newHealth);
+                if (newHealth <= 0) {
+                    log.info(format("Immutable object %s was destroyed!", target.getId()));
+                    this.score(lastHit, target);
+                    this.removeImmutableObject(target);
+                }
+            } else {
+                target.setAttribute("health", newHealth);
+                if (newHealth <= 0) {
+                    log.info(format("Player %s died!", target.getId()));
+                    this.score(lastHit, target);
+                    target.setAttribute("health", 100);
+                    //removePlayer(player);
                 }
             }
+        }
+    }
 
-//        if (mutableObjects != null) {
-//            ConcurrentLinkedQueue<GameObject> aux1 = new ConcurrentLinkedQueue<GameObject>();
-//            final ConcurrentLinkedQueue<GameObject> aux2 = new ConcurrentLinkedQueue<GameObject>();
-//            aux1.addAll(mutableObjects);
-//            aux2.addAll(mutableObjects);
-//            mutableObjects.clear();
-//            for (final GameObject mutableObject : aux1) {
-//                new Thread(new Runnable() {
-//                    @Override
-//                    public void run() {
-//                        if (mutableObject.health < 40) {
-//                            mutableObject.health = mutableObject.health + 1);
-//                            Vector3D newUpdate = translatePolar(ZERO, 0.8f, (float) mutableObject.getRotation().getY(), 0);
-//                            mutableObject.updatePosition(newUpdate);
-//                        } else {
-//                            //iterator.remove();
-//                            aux2.remove(mutableObject);
-//                            rootNode.removeChild(mutableObject);
-//                            log.info(format("MutableObjects %s aged out.", mutableObject.getId()));
-//                        }
-//                    }
-//                }).start();
-//            }
-//            mutableObjects.addAll(aux2);
-//            aux1.clear();
-//            aux2.clear();
-//        }
+    /**
+     * Tell the score listener, if any, that a mutable object destroyed a game
+     * object or killed a player.
+     */
+    private void score(GameObject mutableObject, GameObject target) {
+        if (this.scoreListener != null) {
+            this.scoreListener.scored(mutableObject, target);
+        }
+    }
+
+    /**
+     * Run an action for each index in [0, count), split among the threads
+     * updating the mutable objects.
+     */
+    private void forEach(int count, IntConsumer action) {
+        if (this.updatePool == null || count <= UPDATE_GRAIN) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else {
+            this.updatePool.invoke(new UpdateJob(action, 0, count));
         }
     }
 
@@ -1566,7 +1994,33 @@ public class SceneManager {
      * @return TRUE if collision occurs, FALSE otherwise.
      */
     public boolean checkPlayerImmutableObjectCollision(GameObject player) {
-        return CollisionHandler.checkPlayerImmutableObjectCollision(player, this.immutableObjects);
+        return CollisionHandler.checkPlayerImmutableObjectCollision(player, this.immutableObjectsTree);
+    }
+
+    /**
+     * Get the immutable object in the managed scene a given ray hits first,
+     * e.g., the object under the mouse cursor, by the triangles of its meshes
+     * if narrow phase collision detection is on.
+     *
+     * @param ray the picking ray.
+     * @return the immutable object hit first, NULL if none.
+     */
+    public GameObject pickImmutableObject(Ray ray) {
+        return CollisionHandler.pickImmutableObject(ray, this.immutableObjectsTree);
+    }
+
+    /**
+     * Test if the segment between two points crosses no immutable object in
+     * the managed scene, by the triangles of its meshes if narrow phase
+     * collision detection is on.
+     *
+     * @param from one end of the line of sight, e.g., the eyes of a player.
+     * @param to the other end of the line of sight.
+     * @return TRUE if no immutable object blocks the line of sight, FALSE
+     * otherwise.
+     */
+    public boolean isLineOfSight(Vector3D from, Vector3D to) {
+        return CollisionHandler.isLineOfSight(from, to, this.immutableObjectsTree);
     }
 
     /**
@@ -1612,24 +2066,54 @@ public class SceneManager {
         return false;
     }
 
+    /**
+     * Get the RayTracer image renderer, e.g., to cancel a RayTracer pass from
+     * another thread.
+     *
+     * @return the RayTracer image renderer.
+     */
+    public ImageRenderer getImageRenderer() {
+        return this.imageRenderer;
+    }
+
     /**
      * Perform a RayTracer pass to the scene and generate the corresponding
-     * texture.
+     * texture. If progressive RayTracing is on, each invocation only adds a
+     * pass of samples to the accumulated image, see RayTraceProgressive.
      *
      * @param RAYTRACER_CANVAS_WIDTH
      * @param RAYTRACER_CANVAS_HEIGHT
      * @param samples
      */
     public void RayTrace(int RAYTRACER_CANVAS_WIDTH, int RAYTRACER_CANVAS_HEIGHT, int samples) {
+        if (frameworkOptions.get("useRayTracerProgressive")) {
+            this.RayTraceProgressive(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, samples);
+            return;
+        }
+
+        this.updateRayTracerInstances();
+
         log.info("Performing ray tracing...");
         long beginTime = currentTimeMillis();
 
         log.info(format("Options %dx%d with %d samples", RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, samples * samples));
 
+        this.setupFrameBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+
         //Image create
-        ImageRenderer imageRenderer = new ImageRenderer();
         try {
-            imageRenderer.renderImage(this, RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, samples);
+            if (frameworkOptions.get("useRayTracerAdaptive")) {
+                //Converged pixels stop at a quarter of the samples, noisy ones go up to four times
+                this.setupAccumulationBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+                this.accumulationBuffer.reset();
+                this.accumulationShapesVersion = this.shapesVersion;
+                this.hasRayTracerCameraChanged();
+                this.imageRenderer.renderAdaptive(this, max(4, samples * samples / 4), 4 * samples * samples,
+                        this.imageRenderer.getAdaptiveError(), this.accumulationBuffer);
+            } else {
+                this.imageRenderer.renderImage(this, RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, samples);
+            }
+            this.denoiseRayTracerImage(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
         } catch (Exception ex) {
             log.severe(ex.getMessage());
         }
@@ -1643,18 +2127,146 @@ public class SceneManager {
         long endTime = currentTimeMillis();
         log.info(format("Finished in %dms", endTime - beginTime));
 
-        BufferedImage bufferedImage = new BufferedImage(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, TYPE_INT_ARGB);
-        for (int y = 0; y < this.image.length; y++) {
-            for (int x = 0; x < this.image[0].length; x++) {
-                int red = toInt(increaseBrightness(this.image[y][x].getX()));
-                int green = toInt(increaseBrightness(this.image[y][x].getY()));
-                int blue = toInt(increaseBrightness(this.image[y][x].getZ()));
-                int rgb = new Color(red, green, blue).getRGB();
-                bufferedImage.setRGB(x, this.image.length - y - 1, rgb);
-            }
+        this.updateRayTracerTexture(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+    }
+
+    /**
+     * Perform a progressive RayTracer pass to the scene, i.e., add samples x
+     * samples samples per pixel to the accumulation buffer and generate the
+     * corresponding texture from the running mean. The accumulation restarts
+     * whenever the RayTracer camera, the image size, or the shapes change.
+     *
+     * @param RAYTRACER_CANVAS_WIDTH
+     * @param RAYTRACER_CANVAS_HEIGHT
+     * @param samples
+     */
+    public void RayTraceProgressive(int RAYTRACER_CANVAS_WIDTH, int RAYTRACER_CANVAS_HEIGHT, int samples) {
+        this.updateRayTracerInstances();
+        if (this.setupAccumulationBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT)) {
+            this.accumulationShapesVersion = this.shapesVersion;
+            this.hasRayTracerCameraChanged();
+        } else if (this.hasRayTracerCameraChanged()
+                || this.accumulationShapesVersion != this.shapesVersion) {
+            log.info("RayTracer camera or scene changed, restarting accumulation.");
+            this.accumulationBuffer.reset();
+            this.accumulationShapesVersion = this.shapesVersion;
+        }
+
+        this.setupFrameBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+
+        try {
+            this.imageRenderer.renderPass(this, samples, this.accumulationBuffer,
+                    frameworkOptions.get("useRayTracerAdaptive") ? this.imageRenderer.getAdaptiveError() : 0);
+            this.denoiseRayTracerImage(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+        } catch (Exception ex) {
+            log.severe(ex.getMessage());
+        }
+        this.updateRayTracerTexture(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+    }
+
+    /**
+     * Get the RayTracer accumulation buffer, e.g., to export the samples
+     * taken per pixel with ImageWriter.writeSampleCounts.
+     *
+     * @return the RayTracer accumulation buffer, null if no progressive or
+     * adaptive RayTracing was performed yet.
+     */
+    public AccumulationBuffer getAccumulationBuffer() {
+        return this.accumulationBuffer;
+    }
+
+    /**
+     * Discard the progressive RayTracer accumulated samples, e.g., after
+     * changing materials, which is not detected automatically.
+     */
+    public void resetAccumulation() {
+        if (this.accumulationBuffer != null) {
+            this.accumulationBuffer.reset();
+        }
+    }
+
+    /**
+     * If the RayTracer denoiser is on, capture the auxiliary buffer of the
+     * RayTracer image and denoise the frame buffer with it.
+     *
+     * @param RAYTRACER_CANVAS_WIDTH
+     * @param RAYTRACER_CANVAS_HEIGHT
+     * @throws Exception
+     */
+    private void denoiseRayTracerImage(int RAYTRACER_CANVAS_WIDTH, int RAYTRACER_CANVAS_HEIGHT) throws Exception {
+        if (!frameworkOptions.get("useRayTracerDenoiser")) {
+            return;
+        }
+        if (this.auxiliaryBuffer == null
+                || this.auxiliaryBuffer.getWidth() != RAYTRACER_CANVAS_WIDTH
+                || this.auxiliaryBuffer.getHeight() != RAYTRACER_CANVAS_HEIGHT) {
+            this.auxiliaryBuffer = new AuxiliaryBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+        }
+        if (this.imageRenderer.renderAuxiliary(this, this.auxiliaryBuffer)) {
+            this.imageRenderer.denoise(this, this.auxiliaryBuffer);
+        }
+    }
+
+    /**
+     * (Re)create the RayTracer accumulation buffer if its size differs from
+     * the image to generate.
+     *
+     * @return TRUE if the accumulation buffer was (re)created, FALSE
+     * otherwise.
+     */
+    private boolean setupAccumulationBuffer(int width, int height) {
+        if (this.accumulationBuffer != null
+                && this.accumulationBuffer.getWidth() == width
+                && this.accumulationBuffer.getHeight() == height) {
+            return false;
         }
+        this.accumulationBuffer = new AccumulationBuffer(width, height);
+        return true;
+    }
+
+    /**
+     * Test if the RayTracer camera changed since the last time this method
+     * was invoked.
+     *
+     * @return TRUE if the RayTracer camera changed, FALSE otherwise.
+     */
+    private boolean hasRayTracerCameraChanged() {
+        Camera camera = this.getCamera("PerspectiveRayTracer");
+        double[] state = {
+            camera.getPosition().getX(), camera.getPosition().getY(), camera.getPosition().getZ(),
+            camera.getViewPoint().getX(), camera.getViewPoint().getY(), camera.getViewPoint().getZ(),
+            camera.getUpVector().getX(), camera.getUpVector().getY(), camera.getUpVector().getZ(),
+            camera.getFieldOfView(), camera.getAspectRatio()};
+        boolean changed = !Arrays.equals(state, this.accumulationCameraState);
+        this.accumulationCameraState = state;
+        return changed;
+    }
 
-        TextureData textureData = newTextureData(getDefault(), bufferedImage, true);
+    /**
+     * (Re)create the RayTracer frame buffer if its size differs from the
+     * image to generate.
+     *
+     * @param RAYTRACER_CANVAS_WIDTH
+     * @param RAYTRACER_CANVAS_HEIGHT
+     */
+    private void setupFrameBuffer(int RAYTRACER_CANVAS_WIDTH, int RAYTRACER_CANVAS_HEIGHT) {
+        if (this.frameBuffer.getWidth() != RAYTRACER_CANVAS_WIDTH
+                || this.frameBuffer.getHeight() != RAYTRACER_CANVAS_HEIGHT) {
+            this.frameBuffer = new FrameBuffer(RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT);
+        }
+    }
+
+    /**
+     * Generate the RayTracer texture from the tone mapped pixels of the
+     * RayTracer frame buffer, without copying them.
+     *
+     * @param RAYTRACER_CANVAS_WIDTH
+     * @param RAYTRACER_CANVAS_HEIGHT
+     */
+    private void updateRayTracerTexture(int RAYTRACER_CANVAS_WIDTH, int RAYTRACER_CANVAS_HEIGHT) {
+        TextureData textureData = new TextureData(getDefault(), GL_RGBA,
+                RAYTRACER_CANVAS_WIDTH, RAYTRACER_CANVAS_HEIGHT, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                false, false, true, this.frameBuffer.getPixels(), null);
         if (localAssetManager.isTexturesNotNull()) {
             localAssetManager.setTexture("rayTracerTexture", textureData);
         }
@@ -1712,30 +2324,90 @@ public class SceneManager {
                         new Vector3D(.75, .75, .75), this.DIFFUSE)//Top  
         ));
 
-        //TODO: properly translate, rotate, scale.
-        //Setup all triangles, and quads.        
+        //Setup all triangles, and quads, packed into one object space mesh
+        //per distinct mesh, instanced by every game object using it.
+        IdentityHashMap<Mesh, RayTracerMesh> meshes = new IdentityHashMap<>();
+        this.rayTracerInstances.clear();
         this.gameObjects.stream().forEach(go -> {
-            Vector3D translation = go.getTranslation();
-            Vector3D rotation = go.getRotation();
-            Vector3D scaling = go.getScaling();
-//                Vector3D translation = go.childTranslation();
-//                Vector3D rotation = go.childRotation();
-//                Vector3D scaling = go.childScaling();
-//            System.out.println("Raytracer");
-//            System.out.println(go.getId());
-//            System.out.println(translation);
-//            System.out.println(rotation);
-//            System.out.println(scaling);
-//            System.out.println("");
             //TODO: alter whem implemented for a compound mesh.
-            go.getMeshes().get(0).getTriangles().stream().forEach(simplex -> {
-                Vector3D v0 = this.applyAffineTransformations(simplex.v0, translation, rotation, scaling);
-                Vector3D v1 = this.applyAffineTransformations(simplex.v1, translation, rotation, scaling);
-                Vector3D v2 = this.applyAffineTransformations(simplex.v2, translation, rotation, scaling);
-                this.shapes.add(new RayTracerTriangle(v0, v1, v2,
-                        ZERO, new Vector3D(.75, .75, .75), this.DIFFUSE));
-            });
+            RayTracerMesh mesh = meshes.computeIfAbsent(go.getMeshes().get(0),
+                    m -> new RayTracerMesh(new PackedTriangles(m),
+                            ZERO, new Vector3D(.75, .75, .75), this.DIFFUSE));
+            if (mesh.getTriangles().getTrianglesCount() > 0) {
+                RayTracerInstance instance = new RayTracerInstance(mesh,
+                        this.getRayTracerTransform(go, new double[12]),
+                        ZERO, new Vector3D(.75, .75, .75), this.DIFFUSE);
+                this.rayTracerInstances.put(go, instance);
+                this.shapes.add(instance);
+            }
         });
+
+        this.buildRayTracerBVH();
+    }
+
+    /**
+     * (Re)build the acceleration structure of the shapes list. Must be invoked
+     * whenever shapes are added or removed after setupGeometries2Render.
+     */
+    public void buildRayTracerBVH() {
+        this.rayTracerBVH = new RayTracerBVH(this.shapes);
+        this.shapesVersion++;
+    }
+
+    /**
+     * Update the transforms of the RayTracer mesh instances of the game
+     * objects that moved, refitting the acceleration structure if any did.
+     * The cost depends on the number of game objects, not on their number of
+     * triangles.
+     *
+     * @return TRUE if any game object moved, FALSE otherwise.
+     */
+    public boolean updateRayTracerInstances() {
+        boolean moved = false;
+        double[] transform = new double[12];
+        for (Map.Entry<GameObject, RayTracerInstance> entry : this.rayTracerInstances.entrySet()) {
+            moved |= entry.getValue().setTransform(
+                    this.getRayTracerTransform(entry.getKey(), transform));
+        }
+        if (moved) {
+            if (this.rayTracerBVH != null) {
+                this.rayTracerBVH.refit();
+            }
+            this.shapesVersion++;
+        }
+        return moved;
+    }
+
+    /**
+     * Get the affine transform of a game object, i.e., the one applied by
+     * applyAffineTransformations, as a 3x4 row major matrix.
+     *
+     * @param gameObject a given game object.
+     * @param transform array where to store the 12 values of the transform.
+     * @return transform.
+     */
+    private double[] getRayTracerTransform(GameObject gameObject, double[] transform) {
+        Vector3D translation = gameObject.getTranslation();
+        Vector3D rotation = gameObject.getRotation();
+        Vector3D scaling = gameObject.getScaling();
+        //The images of the origin and of the unit vectors set the matrix
+        Vector3D o = this.applyAffineTransformations(ZERO, translation, rotation, scaling);
+        Vector3D x = this.applyAffineTransformations(PLUS_I, translation, rotation, scaling).subtract(o);
+        Vector3D y = this.applyAffineTransformations(PLUS_J, translation, rotation, scaling).subtract(o);
+        Vector3D z = this.applyAffineTransformations(PLUS_K, translation, rotation, scaling).subtract(o);
+        transform[0] = x.getX();
+        transform[1] = y.getX();
+        transform[2] = z.getX();
+        transform[3] = o.getX();
+        transform[4] = x.getY();
+        transform[5] = y.getY();
+        transform[6] = z.getY();
+        transform[7] = o.getY();
+        transform[8] = x.getZ();
+        transform[9] = y.getZ();
+        transform[10] = z.getZ();
+        transform[11] = o.getZ();
+        return transform;
     }
 
     /**
@@ -1746,16 +2418,111 @@ public class SceneManager {
      * @return the intersection result of ray with all the shapes in the scene.
      */
     public IntersectionResult intersect(Ray ray) {
+        if (frameworkOptions.get("useRayTracerBVH") && this.rayTracerBVH != null) {
+            return this.rayTracerBVH.intersect(ray);
+        }
+
         IntersectionResult t = MISS;
         for (AbstractShape s : this.shapes) {
             IntersectionResult d = s.intersect(ray);
-            if (d.isHit() && d.closerThan(t)) {
+            if (isCloserHit(d, t.getTarget())) {
                 t = d;
             }
         }
         return t;
     }
 
+    /**
+     * For a provided Ray test if any of the shapes in the scene intersects said
+     * ray, storing the closest hit in a reusable record instead of allocating
+     * a intersection result.
+     *
+     * @param ray a provided Ray.
+     * @param hit record where to store the closest hit, reset if none.
+     * @return TRUE if any shape in the scene intersects ray, FALSE otherwise.
+     */
+    public boolean intersect(Ray ray, HitRecord hit) {
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        return this.intersect(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), POSITIVE_INFINITY, hit);
+    }
+
+    /**
+     * For a provided ray, given by its origin and direction coordinates, test
+     * if any of the shapes in the scene intersects said ray closer than tMax,
+     * storing the closest hit in a reusable record.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store the closest hit, reset if none.
+     * @return TRUE if any shape in the scene intersects the ray, FALSE
+     * otherwise.
+     */
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz, double tMax, HitRecord hit) {
+        if (frameworkOptions.get("useRayTracerBVH") && this.rayTracerBVH != null) {
+            return this.rayTracerBVH.intersect(ox, oy, oz, dx, dy, dz, tMax, hit);
+        }
+
+        hit.reset();
+        for (AbstractShape s : this.shapes) {
+            ((AbstractRayTracerShape) s).intersect(ox, oy, oz, dx, dy, dz,
+                    EPS, hit.isHit() ? hit.t : tMax, hit);
+        }
+        return hit.isHit();
+    }
+
+    /**
+     * For a provided Ray test if any of the shapes in the scene blocks said
+     * ray before tMax, i.e., a any hit query that stops at the first blocker
+     * found, for shadow rays.
+     *
+     * @param ray a provided Ray.
+     * @param tMax the maximum ray distance to consider.
+     * @return TRUE if any shape in the scene is hit within (EPS, tMax), FALSE
+     * otherwise.
+     */
+    public boolean occluded(Ray ray, double tMax) {
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        return this.occluded(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), tMax);
+    }
+
+    /**
+     * For a provided ray, given by its origin and direction coordinates, test
+     * if any of the shapes in the scene blocks said ray before tMax.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMax the maximum ray distance to consider.
+     * @return TRUE if any shape in the scene is hit within (EPS, tMax), FALSE
+     * otherwise.
+     */
+    public boolean occluded(double ox, double oy, double oz,
+            double dx, double dy, double dz, double tMax) {
+        if (frameworkOptions.get("useRayTracerBVH") && this.rayTracerBVH != null) {
+            return this.rayTracerBVH.occluded(ox, oy, oz, dx, dy, dz, tMax);
+        }
+
+        for (AbstractShape s : this.shapes) {
+            if (((AbstractRayTracerShape) s).occludes(ox, oy, oz, dx, dy, dz, EPS, tMax)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Apply affine transformations to a given vector.
      *
@@ -1788,4 +2555,68 @@ public class SceneManager {
         return scale(result, scaling);
         //return scale(v, scaling);
     }
+
+    /**
+     * Interface that each score listener must implement.
+     */
+    public interface ScoreListener {
+
+        /**
+         * Invoked, from the thread updating the mutable objects, when a
+         * mutable object destroys a game object or kills a player.
+         *
+         * @param mutableObject the mutable object, e.g., a projectile whose id
+         * starts with the id of the player that shot it.
+         * @param target the game object destroyed or the player killed.
+         */
+        void scored(GameObject mutableObject, GameObject target);
+    }
+
+    /**
+     * Growable buffer of the hits found by a thread.
+     */
+    private static class CommandBuffer {
+
+        final ArrayList<GameObject> hits = new ArrayList<>();
+        long[] commands = new long[16];
+        int size;
+
+        void add(long command) {
+            if (this.size == this.commands.length) {
+                this.commands = Arrays.copyOf(this.commands, 2 * this.size);
+            }
+            this.commands[this.size++] = command;
+        }
+    }
+
+    /**
+     * Task updating a range of objects, split in halves until few objects are
+     * left so that idle threads can steal the other half.
+     */
+    private static class UpdateJob extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient IntConsumer action;
+        private final int first, last;
+
+        UpdateJob(IntConsumer action, int first, int last) {
+            this.action = action;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.last - this.first <= UPDATE_GRAIN) {
+                for (int i = this.first; i < this.last; i++) {
+                    this.action.accept(i);
+                }
+            } else {
+                int middle = (this.first + this.last) >>> 1;
+                invokeAll(new UpdateJob(this.action, this.first, middle),
+                        new UpdateJob(this.action, middle, this.last));
+            }
+        }
+    }
 }
@@ -0,0 +1,262 @@
+/*
+ * This file is part of the JOT game engine geometry framework toolkit
+ * component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.shape;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.String.format;
+import java.util.ArrayList;
+import java.util.Collection;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.BVH;
+import jot.math.geometry.bounding.BVH.OcclusionTest;
+import jot.math.geometry.bounding.BVH.PrimitiveVisitor;
+import jot.physics.HitRecord;
+import jot.physics.IntersectionResult;
+import static jot.physics.IntersectionResult.MISS;
+import jot.physics.Ray;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements the RayTracer scene acceleration structure, i.e., a
+ * SAH built BVH over all bounded shapes (spheres, triangles, meshes and mesh
+ * instances), plus a side list of unbounded shapes (planes) that are always
+ * tested. Over mesh instances, it is the top level of a two level hierarchy,
+ * refitted when instances move.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class RayTracerBVH {
+
+    static final Logger log = getLogger("RayTracerBVH");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Minimum distance along a ray for an intersection to count as a hit.
+     */
+    public static final double EPS = 1e-6;
+
+    private final AbstractRayTracerShape[] boundedShapes;
+    private final AbstractRayTracerShape[] unboundedShapes;
+    private final double[] bounds;
+    private final BVH bvh;
+    private final ThreadLocal<ClosestHitVisitor> closestHitVisitors
+            = ThreadLocal.withInitial(ClosestHitVisitor::new);
+    private final ThreadLocal<HitRecord> hits = ThreadLocal.withInitial(HitRecord::new);
+
+    /**
+     * Constructor, builds the BVH of a collection of shapes.
+     *
+     * @param shapes the shapes of the scene.
+     */
+    public RayTracerBVH(Collection<AbstractShape> shapes) {
+        ArrayList<AbstractRayTracerShape> bounded = new ArrayList<>();
+        ArrayList<AbstractRayTracerShape> unbounded = new ArrayList<>();
+        double[] bounds = new double[6 * shapes.size()];
+
+        for (AbstractShape s : shapes) {
+            if (!(s instanceof AbstractRayTracerShape)) {
+                log.warning(format("Ignoring %s, not a RayTracer shape.", s));
+                continue;
+            }
+            AbstractRayTracerShape shape = (AbstractRayTracerShape) s;
+            if (shape.getBounds(bounds, 6 * bounded.size())) {
+                bounded.add(shape);
+            } else {
+                unbounded.add(shape);
+            }
+        }
+
+        this.boundedShapes = bounded.toArray(new AbstractRayTracerShape[bounded.size()]);
+        this.unboundedShapes = unbounded.toArray(new AbstractRayTracerShape[unbounded.size()]);
+        this.bounds = bounds;
+        this.bvh = new BVH(bounds, this.boundedShapes.length);
+
+        if (log.getLevel() == INFO) {
+            log.info(format("RayTracer BVH: %d bounded shapes, %d unbounded shapes, %d nodes.",
+                    this.boundedShapes.length, this.unboundedShapes.length,
+                    this.bvh.getNodesCount()));
+        }
+    }
+
+    /**
+     * Get the BVH over the bounded shapes.
+     *
+     * @return the BVH over the bounded shapes.
+     */
+    public BVH getBVH() {
+        return this.bvh;
+    }
+
+    /**
+     * Refit the BVH to the current bounds of the bounded shapes, e.g., after
+     * moving some instances, without rebuilding it.
+     */
+    public void refit() {
+        for (int i = 0; i < this.boundedShapes.length; i++) {
+            this.boundedShapes[i].getBounds(this.bounds, 6 * i);
+        }
+        this.bvh.refit(this.bounds);
+    }
+
+    /**
+     * For a provided Ray get the closest intersection with any of the shapes.
+     *
+     * @param ray a provided Ray.
+     * @return the closest intersection result of ray, or MISS.
+     */
+    public IntersectionResult intersect(Ray ray) {
+        HitRecord hit = this.hits.get();
+        if (!this.intersect(ray, hit)) {
+            return MISS;
+        }
+        return new IntersectionResult(ray, hit.t, hit.object,
+                new Vector3D(hit.nx, hit.ny, hit.nz));
+    }
+
+    /**
+     * For a provided Ray get the closest intersection with any of the shapes,
+     * without allocating.
+     *
+     * @param ray a provided Ray.
+     * @param hit record where to store the closest hit, reset if none.
+     * @return TRUE if any shape is hit, FALSE otherwise.
+     */
+    public boolean intersect(Ray ray, HitRecord hit) {
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        return this.intersect(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), POSITIVE_INFINITY, hit);
+    }
+
+    /**
+     * For a provided ray, given by its origin and direction coordinates, get
+     * the closest intersection with any of the shapes closer than tMax,
+     * without allocating.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store the closest hit, reset if none.
+     * @return TRUE if any shape is hit, FALSE otherwise.
+     */
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz, double tMax, HitRecord hit) {
+        hit.reset();
+        for (AbstractRayTracerShape shape : this.unboundedShapes) {
+            if (shape.intersect(ox, oy, oz, dx, dy, dz, EPS, tMax, hit)) {
+                tMax = hit.t;
+            }
+        }
+
+        ClosestHitVisitor visitor = this.closestHitVisitors.get();
+        visitor.set(ox, oy, oz, dx, dy, dz, hit);
+        this.bvh.intersect(ox, oy, oz, dx, dy, dz, EPS, tMax, visitor);
+        visitor.hit = null;
+        return hit.isHit();
+    }
+
+    /**
+     * For a provided ray, given by its origin and direction coordinates, test
+     * if any of the shapes is hit closer than tMax, stopping at the first hit
+     * found.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMax the maximum ray distance to consider.
+     * @return TRUE if any shape is hit within (EPS, tMax), FALSE otherwise.
+     */
+    public boolean occluded(double ox, double oy, double oz,
+            double dx, double dy, double dz, double tMax) {
+        for (AbstractRayTracerShape shape : this.unboundedShapes) {
+            if (shape.occludes(ox, oy, oz, dx, dy, dz, EPS, tMax)) {
+                return true;
+            }
+        }
+
+        ClosestHitVisitor visitor = this.closestHitVisitors.get();
+        visitor.set(ox, oy, oz, dx, dy, dz, null);
+        return this.bvh.occluded(ox, oy, oz, dx, dy, dz, EPS, tMax, visitor);
+    }
+
+    /**
+     * Test if a shape intersection result is a valid hit closer than tMax.
+     *
+     * @param result the shape intersection result.
+     * @param tMax the closest hit distance found so far.
+     * @return true if result is a hit within (EPS, tMax), false otherwise.
+     */
+    public static boolean isCloserHit(IntersectionResult result, double tMax) {
+        return result.isHit() && result.getTarget() > EPS && result.getTarget() < tMax;
+    }
+
+    /**
+     * Per thread ray state used while traversing the BVH, both for closest hit
+     * and for occlusion queries.
+     */
+    private class ClosestHitVisitor implements PrimitiveVisitor, OcclusionTest {
+
+        double ox, oy, oz, dx, dy, dz;
+        HitRecord hit;
+
+        void set(double ox, double oy, double oz,
+                double dx, double dy, double dz, HitRecord hit) {
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+            this.hit = hit;
+        }
+
+        @Override
+        public double visit(int primitive, double tMax) {
+            if (RayTracerBVH.this.boundedShapes[primitive].intersect(
+                    this.ox, this.oy, this.oz, this.dx, this.dy, this.dz,
+                    EPS, tMax, this.hit)) {
+                return this.hit.t;
+            }
+            return tMax;
+        }
+
+        @Override
+        public boolean occludes(int primitive, double tMax) {
+            return RayTracerBVH.this.boundedShapes[primitive].occludes(
+                    this.ox, this.oy, this.oz, this.dx, this.dy, this.dz,
+                    EPS, tMax);
+        }
+    }
+}
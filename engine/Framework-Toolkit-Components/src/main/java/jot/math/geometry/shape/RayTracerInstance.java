@@ -0,0 +1,247 @@
+/*
+ * This file is part of the JOT game engine geometry framework toolkit
+ * component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.shape;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.sqrt;
+import static java.lang.System.arraycopy;
+import java.util.Arrays;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import static jot.math.geometry.shape.AbstractRayTracerShape.Shape.TRIANGLE;
+import static jot.math.geometry.shape.RayTracerBVH.EPS;
+import jot.physics.HitRecord;
+import jot.physics.IntersectionResult;
+import static jot.physics.IntersectionResult.MISS;
+import jot.physics.Material;
+import jot.physics.Ray;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
+
+/**
+ * Class that implements a triangle mesh instance shape, i.e., a mesh, in
+ * object space and possibly shared by several instances, placed in the scene
+ * by an affine transform. Rays are transformed into object space, so moving
+ * an instance only changes its transform, never the mesh nor its BVH.
+ *
+ * Transforms are 3x4 row major matrices, i.e., the 3x3 linear part followed,
+ * in each row, by the translation.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class RayTracerInstance extends AbstractRayTracerShape {
+
+    static final Logger log = getLogger("RayTracerInstance");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * The identity transform.
+     */
+    public static final double[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0};
+
+    private final RayTracerMesh mesh;
+    private final double[] meshBounds = new double[6];
+    private final boolean bounded;
+    private final double[] transform = new double[12];
+    private final double[] inverse = new double[12];
+    private final ThreadLocal<HitRecord> hits = ThreadLocal.withInitial(HitRecord::new);
+
+    /**
+     * Constructor.
+     *
+     * @param mesh the mesh, in object space, to instance.
+     * @param transform the object to world space transform.
+     * @param emission the instance emission.
+     * @param color the instance color.
+     * @param material the instance material.
+     */
+    public RayTracerInstance(RayTracerMesh mesh, double[] transform,
+            Vector3D emission, Vector3D color, Material material) {
+        this.mesh = mesh;
+        this.bounded = mesh.getBounds(this.meshBounds, 0);
+        this.emission = emission;
+        this.color = color;
+        this.material = material;
+        this.shape = TRIANGLE;
+        this.setTransform(transform);
+    }
+
+    /**
+     * Get the instanced mesh.
+     *
+     * @return the instanced mesh, in object space.
+     */
+    public RayTracerMesh getMesh() {
+        return this.mesh;
+    }
+
+    /**
+     * Get the object to world space transform.
+     *
+     * @param transform array where to store the 12 values of the transform.
+     */
+    public void getTransform(double[] transform) {
+        arraycopy(this.transform, 0, transform, 0, 12);
+    }
+
+    /**
+     * Set the object to world space transform. The BVH containing this
+     * instance must be refitted afterwards.
+     *
+     * @param transform the 12 values of the new transform, which must be
+     * invertible.
+     * @return true if the transform changed, false otherwise.
+     */
+    public boolean setTransform(double[] transform) {
+        if (Arrays.equals(this.transform, transform)) {
+            return false;
+        }
+        double a = transform[0], b = transform[1], c = transform[2];
+        double d = transform[4], e = transform[5], f = transform[6];
+        double g = transform[8], h = transform[9], i = transform[10];
+        double det = a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+        if (det == 0) {
+            throw new IllegalArgumentException("The instance transform must be invertible");
+        }
+        arraycopy(transform, 0, this.transform, 0, 12);
+
+        double invDet = 1 / det;
+        double[] m = this.inverse;
+        m[0] = (e * i - f * h) * invDet;
+        m[1] = (c * h - b * i) * invDet;
+        m[2] = (b * f - c * e) * invDet;
+        m[4] = (f * g - d * i) * invDet;
+        m[5] = (a * i - c * g) * invDet;
+        m[6] = (c * d - a * f) * invDet;
+        m[8] = (d * h - e * g) * invDet;
+        m[9] = (b * g - a * h) * invDet;
+        m[10] = (a * e - b * d) * invDet;
+        double tx = transform[3], ty = transform[7], tz = transform[11];
+        m[3] = -(m[0] * tx + m[1] * ty + m[2] * tz);
+        m[7] = -(m[4] * tx + m[5] * ty + m[6] * tz);
+        m[11] = -(m[8] * tx + m[9] * ty + m[10] * tz);
+        return true;
+    }
+
+    /**
+     * Intersect a ray with the instance, in object space. The direction is
+     * transformed but not normalized, hence hit distances are the same in
+     * both spaces, and the normal is taken back to world space by the
+     * inverse transpose of the transform.
+     */
+    @Override
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        double[] m = this.inverse;
+        if (!this.mesh.intersect(
+                m[0] * ox + m[1] * oy + m[2] * oz + m[3],
+                m[4] * ox + m[5] * oy + m[6] * oz + m[7],
+                m[8] * ox + m[9] * oy + m[10] * oz + m[11],
+                m[0] * dx + m[1] * dy + m[2] * dz,
+                m[4] * dx + m[5] * dy + m[6] * dz,
+                m[8] * dx + m[9] * dy + m[10] * dz,
+                tMin, tMax, hit)) {
+            return false;
+        }
+        double nx = m[0] * hit.nx + m[4] * hit.ny + m[8] * hit.nz;
+        double ny = m[1] * hit.nx + m[5] * hit.ny + m[9] * hit.nz;
+        double nz = m[2] * hit.nx + m[6] * hit.ny + m[10] * hit.nz;
+        double length = sqrt(nx * nx + ny * ny + nz * nz);
+        hit.nx = nx / length;
+        hit.ny = ny / length;
+        hit.nz = nz / length;
+        hit.object = this;
+        return true;
+    }
+
+    @Override
+    public boolean occludes(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax) {
+        double[] m = this.inverse;
+        return this.mesh.occludes(
+                m[0] * ox + m[1] * oy + m[2] * oz + m[3],
+                m[4] * ox + m[5] * oy + m[6] * oz + m[7],
+                m[8] * ox + m[9] * oy + m[10] * oz + m[11],
+                m[0] * dx + m[1] * dy + m[2] * dz,
+                m[4] * dx + m[5] * dy + m[6] * dz,
+                m[8] * dx + m[9] * dy + m[10] * dz,
+                tMin, tMax);
+    }
+
+    @Override
+    public IntersectionResult intersect(Ray ray) {
+        HitRecord hit = this.hits.get();
+        hit.reset();
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        if (!this.intersect(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), EPS, POSITIVE_INFINITY, hit)) {
+            return MISS;
+        }
+        return new IntersectionResult(ray, hit.t, this,
+                new Vector3D(hit.nx, hit.ny, hit.nz));
+    }
+
+    /**
+     * Get the world space bounds of the transformed object space bounds of
+     * the mesh.
+     */
+    @Override
+    public boolean getBounds(double[] bounds, int offset) {
+        if (!this.bounded) {
+            return false;
+        }
+        double[] local = this.meshBounds;
+        double[] m = this.transform;
+        for (int k = 0; k < 3; k++) {
+            //Each world axis extent is the sum of the extents of each term
+            double min = m[4 * k + 3], max = m[4 * k + 3];
+            for (int j = 0; j < 3; j++) {
+                double a = m[4 * k + j] * local[j];
+                double b = m[4 * k + j] * local[j + 3];
+                min += a < b ? a : b;
+                max += a < b ? b : a;
+            }
+            bounds[offset + k] = min;
+            bounds[offset + k + 3] = max;
+        }
+        return true;
+    }
+
+    /**
+     * The normal of a mesh instance depends on the triangle hit, hence it is
+     * provided by the intersection result instead.
+     *
+     * @param intersectionPoint the point of a intersection test.
+     * @return ZERO vector.
+     */
+    @Override
+    public Vector3D getNormal(Vector3D intersectionPoint) {
+        return ZERO;
+    }
+}
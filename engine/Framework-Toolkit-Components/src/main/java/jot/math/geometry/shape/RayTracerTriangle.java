@@ -21,10 +21,13 @@
  */
 package jot.math.geometry.shape;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.math.geometry.shape.AbstractRayTracerShape.Shape.TRIANGLE;
+import jot.physics.HitRecord;
 import jot.physics.IntersectionResult;
 import static jot.physics.IntersectionResult.MISS;
 import jot.physics.Material;
@@ -154,6 +157,69 @@ public class RayTracerTriangle extends AbstractRayTracerShape {
         //return new IntersectionResult(ray, t, this);
     }
 
+    @Override
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        double nx = this.normal.getX(), ny = this.normal.getY(), nz = this.normal.getZ();
+        if (nx * dx + ny * dy + nz * dz > 0) {
+            return false;
+        }
+        double ax = this.e1.getX(), ay = this.e1.getY(), az = this.e1.getZ();
+        double bx = this.e2.getX(), by = this.e2.getY(), bz = this.e2.getZ();
+
+        double px = dy * bz - dz * by;
+        double py = dz * bx - dx * bz;
+        double pz = dx * by - dy * bx;
+        double det = ax * px + ay * py + az * pz;
+        if (det > -this.eps && det < this.eps) {
+            return false;
+        }
+        double invDet = 1 / det;
+
+        double tx = ox - this.v0.getX();
+        double ty = oy - this.v0.getY();
+        double tz = oz - this.v0.getZ();
+        double u = (tx * px + ty * py + tz * pz) * invDet;
+        if (u < 0 || u > 1) {
+            return false;
+        }
+
+        double qx = ty * az - tz * ay;
+        double qy = tz * ax - tx * az;
+        double qz = tx * ay - ty * ax;
+        double v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < 0 || u + v > 1) {
+            return false;
+        }
+
+        double t = (bx * qx + by * qy + bz * qz) * invDet;
+        if (!(t > tMin && t < tMax)) {
+            return false;
+        }
+
+        hit.t = t;
+        hit.u = u;
+        hit.v = v;
+        hit.primitive = -1;
+        hit.nx = nx;
+        hit.ny = ny;
+        hit.nz = nz;
+        hit.object = this;
+        return true;
+    }
+
+    @Override
+    public boolean getBounds(double[] bounds, int offset) {
+        bounds[offset] = min(this.v0.getX(), min(this.v1.getX(), this.v2.getX()));
+        bounds[offset + 1] = min(this.v0.getY(), min(this.v1.getY(), this.v2.getY()));
+        bounds[offset + 2] = min(this.v0.getZ(), min(this.v1.getZ(), this.v2.getZ()));
+        bounds[offset + 3] = max(this.v0.getX(), max(this.v1.getX(), this.v2.getX()));
+        bounds[offset + 4] = max(this.v0.getY(), max(this.v1.getY(), this.v2.getY()));
+        bounds[offset + 5] = max(this.v0.getZ(), max(this.v1.getZ(), this.v2.getZ()));
+        return true;
+    }
+
     @Override
     public Vector3D getNormal(Vector3D intersectionPoint) {
         return this.normal;
@@ -45,15 +45,13 @@ public class Refractive extends AbstractRayTracerMaterial {
 
     private final Specular specular = new Specular();
 
-    private final ThreadLocal<Random> random;
-
     /**
      * Constructor.
      *
-     * @param random
+     * @param random no longer used, kept for compatibility, the Russian
+     * roulette draws from the sample generator of the Sampler.
      */
     public Refractive(ThreadLocal<Random> random) {
-        this.random = random;
     }
 
     @Override
@@ -109,7 +107,7 @@ public class Refractive extends AbstractRayTracerMaterial {
         double Tr = 1 - Re;
         if (depth > 2) {
             double P = .25 + .5 * Re;
-            if (this.random.get().nextDouble() < P) { // Russian roulette
+            if (sampler.getSampleGenerator().next() < P) { // Russian roulette
                 Vector3D recursiveReflectionRadiance = sampler
                         .radiance(sceneManager, reflectionRay, depth);
                 double RP = Re / P;
@@ -136,4 +134,87 @@ public class Refractive extends AbstractRayTracerMaterial {
     public boolean isOpaque() {
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDelta() {
+        return true;
+    }
+
+    /**
+     * Glass, i.e., reflection or refraction chosen with probability given by
+     * the Schlick approximation of the Fresnel reflectance.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sample(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double u1, double u2, double u3, double[] scattered) {
+        double refractiveIndexAir = 1;
+        double refractiveIndexGlass = 1.5;
+        double cosN = hit.nx * dx + hit.ny * dy + hit.nz * dz;
+        boolean into = cosN < 0;
+        double s = into ? 1 : -1;
+        double nlx = s * hit.nx, nly = s * hit.ny, nlz = s * hit.nz;
+        double refractiveIndexRatio = into
+                ? refractiveIndexAir / refractiveIndexGlass
+                : refractiveIndexGlass / refractiveIndexAir;
+        double cosI = dx * nlx + dy * nly + dz * nlz;
+        double cos2t = 1 - refractiveIndexRatio * refractiveIndexRatio * (1 - cosI * cosI);
+
+        scattered[3] = shape.color.getX();
+        scattered[4] = shape.color.getY();
+        scattered[5] = shape.color.getZ();
+        scattered[6] = 0;
+
+        //Reflected direction, used on total internal reflection
+        double rx = dx - 2 * cosN * hit.nx;
+        double ry = dy - 2 * cosN * hit.ny;
+        double rz = dz - 2 * cosN * hit.nz;
+        if (cos2t < 0) {
+            scattered[0] = rx;
+            scattered[1] = ry;
+            scattered[2] = rz;
+            return true;
+        }
+
+        double k = s * (cosI * refractiveIndexRatio + sqrt(cos2t));
+        double tx = dx * refractiveIndexRatio - hit.nx * k;
+        double ty = dy * refractiveIndexRatio - hit.ny * k;
+        double tz = dz * refractiveIndexRatio - hit.nz * k;
+        double length = sqrt(tx * tx + ty * ty + tz * tz);
+        tx /= length;
+        ty /= length;
+        tz /= length;
+
+        double a = refractiveIndexGlass - refractiveIndexAir;
+        double b = refractiveIndexGlass + refractiveIndexAir;
+        double R0 = a * a / (b * b);
+        double c = 1 - (into ? -cosI : tx * hit.nx + ty * hit.ny + tz * hit.nz);
+        double Re = R0 + (1 - R0) * pow(c, 5);
+
+        if (u3 < Re) {
+            scattered[0] = rx;
+            scattered[1] = ry;
+            scattered[2] = rz;
+        } else {
+            scattered[0] = tx;
+            scattered[1] = ty;
+            scattered[2] = tz;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean evaluate(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double wx, double wy, double wz, double[] f) {
+        return false;
+    }
 }
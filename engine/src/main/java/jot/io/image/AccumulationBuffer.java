@@ -0,0 +1,308 @@
+/*
+ * This file is part of the JOT game engine i/o framework toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.io.image;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.util.Arrays.fill;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Class that implements a RayTracer accumulation buffer, i.e., per pixel
+ * running sums of radiance samples, of their displayed luminance and its
+ * square, and of the number of samples taken, from which the running mean of
+ * each pixel and the variance of its luminance are obtained.
+ *
+ * The radiance is kept unclamped, e.g., for HDR output, while the luminance
+ * is that of each sample clamped to [0, 1] per channel, as 8 bit output shows
+ * it, so that the noise estimates do not grow with the brightness of pixels
+ * that show as white anyway.
+ *
+ * Distinct pixels may be accumulated concurrently, e.g., one tile per thread.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class AccumulationBuffer {
+
+    static final Logger log = getLogger("AccumulationBuffer");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Get the luminance of a linear RGB color, with the Rec. 709 weights.
+     *
+     * @param red the red radiance.
+     * @param green the green radiance.
+     * @param blue the blue radiance.
+     * @return the luminance of the color.
+     */
+    public static double luminance(double red, double green, double blue) {
+        return 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+    }
+
+    private final int width, height;
+    private final float[] sums;
+    private final float[] luminances;
+    private final float[] squares;
+    private final int[] samples;
+    private int passes;
+
+    /**
+     * Constructor.
+     *
+     * @param width of the image to accumulate.
+     * @param height of the image to accumulate.
+     */
+    public AccumulationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.sums = new float[3 * width * height];
+        this.luminances = new float[width * height];
+        this.squares = new float[width * height];
+        this.samples = new int[width * height];
+    }
+
+    /**
+     * Get the width of the accumulated image.
+     *
+     * @return the width of the accumulated image.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height of the accumulated image.
+     *
+     * @return the height of the accumulated image.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Get the number of passes accumulated since the last reset.
+     *
+     * @return the number of passes accumulated since the last reset.
+     */
+    public int getPasses() {
+        return this.passes;
+    }
+
+    /**
+     * Add the sum of a number of radiance samples to a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @param red the sum of the red radiance of the samples.
+     * @param green the sum of the green radiance of the samples.
+     * @param blue the sum of the blue radiance of the samples.
+     * @param luminances the sum of the luminance of the samples, each clamped
+     * to [0, 1] per channel.
+     * @param squares the sum of the squares of said luminance.
+     * @param count the number of samples.
+     */
+    public void add(int x, int y, double red, double green, double blue,
+            double luminances, double squares, int count) {
+        int i = y * this.width + x;
+        this.sums[3 * i] += red;
+        this.sums[3 * i + 1] += green;
+        this.sums[3 * i + 2] += blue;
+        this.luminances[i] += luminances;
+        this.squares[i] += squares;
+        this.samples[i] += count;
+    }
+
+    /**
+     * Mark the end of a pass over the whole image.
+     */
+    public void endPass() {
+        this.passes++;
+    }
+
+    /**
+     * Get the number of samples accumulated in a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @return the number of samples accumulated in the pixel.
+     */
+    public int getSamples(int x, int y) {
+        return this.samples[y * this.width + x];
+    }
+
+    /**
+     * Get the running mean of a pixel channel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @param channel 0 for red, 1 for green, or 2 for blue.
+     * @return the running mean of the pixel channel, 0 if no samples were
+     * accumulated.
+     */
+    public double getMean(int x, int y, int channel) {
+        int i = y * this.width + x;
+        return this.samples[i] == 0 ? 0 : this.sums[3 * i + channel] / (double) this.samples[i];
+    }
+
+    /**
+     * Get the running mean of the luminance of a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @return the running mean of the pixel luminance, 0 if no samples were
+     * accumulated.
+     */
+    public double getLuminance(int x, int y) {
+        return luminance(this.getMean(x, y, 0), this.getMean(x, y, 1), this.getMean(x, y, 2));
+    }
+
+    /**
+     * Get the running mean of the displayed luminance of a pixel, i.e., of
+     * its samples clamped to [0, 1] per channel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @return the running mean of the pixel displayed luminance, 0 if no
+     * samples were accumulated.
+     */
+    public double getDisplayedLuminance(int x, int y) {
+        int i = y * this.width + x;
+        return this.samples[i] == 0 ? 0 : this.luminances[i] / (double) this.samples[i];
+    }
+
+    /**
+     * Get the sample variance of the displayed luminance of a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @return the unbiased variance of the displayed luminance samples of the
+     * pixel, 0 if less than two samples were accumulated.
+     */
+    public double getVariance(int x, int y) {
+        int i = y * this.width + x;
+        int n = this.samples[i];
+        if (n < 2) {
+            return 0;
+        }
+        double mean = this.getDisplayedLuminance(x, y);
+        double variance = (this.squares[i] - n * mean * mean) / (n - 1);
+        //Rounding may yield tiny negative values for constant pixels
+        return variance > 0 ? variance : 0;
+    }
+
+    /**
+     * Get the error of the running mean of the displayed luminance of a
+     * pixel, i.e., its standard error relative to the square root of the
+     * mean, roughly how noise is perceived after gamma correction. As the
+     * displayed samples are in [0, 1] it never exceeds 1 / sqrt(samples),
+     * however bright the radiance.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @return the relative error of the pixel, POSITIVE_INFINITY if less
+     * than two samples were accumulated, 0 if all samples were black.
+     */
+    public double getError(int x, int y) {
+        int n = this.getSamples(x, y);
+        if (n < 2) {
+            return POSITIVE_INFINITY;
+        }
+        double mean = this.getDisplayedLuminance(x, y);
+        return mean > 0 ? sqrt(this.getVariance(x, y) / (n * mean)) : 0;
+    }
+
+    /**
+     * Test if a pixel converged, i.e., has enough samples and, as a few
+     * samples may agree by chance, a low enough error both in the pixel and
+     * in its 8 neighbors.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @param minSamples the minimum number of samples of a converged pixel.
+     * @param maxError the maximum error, see getError, of a converged pixel.
+     * @return true if the pixel converged, false otherwise.
+     */
+    public boolean isConverged(int x, int y, int minSamples, double maxError) {
+        if (this.getSamples(x, y) < minSamples) {
+            return false;
+        }
+        for (int j = max(y - 1, 0); j <= min(y + 1, this.height - 1); j++) {
+            for (int i = max(x - 1, 0); i <= min(x + 1, this.width - 1); i++) {
+                if (this.getError(i, j) > maxError) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the pixels that still need samples, i.e., that did not converge
+     * nor reach the maximum number of samples.
+     *
+     * @param active where to mark each pixel, row by row from the bottom row
+     * up, true if it needs samples, false otherwise.
+     * @param minSamples the minimum number of samples of a converged pixel.
+     * @param maxSamples the maximum number of samples of a pixel.
+     * @param maxError the maximum error, see getError, of a converged pixel.
+     * @return the number of pixels that still need samples.
+     */
+    public int findActivePixels(boolean[] active, int minSamples, int maxSamples, double maxError) {
+        int count = 0;
+        for (int y = 0; y < this.height; y++) {
+            for (int x = 0; x < this.width; x++) {
+                int i = y * this.width + x;
+                active[i] = this.samples[i] < maxSamples && !this.isConverged(x, y, minSamples, maxError);
+                count += active[i] ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of samples accumulated in each pixel, e.g., to export a
+     * sample count map when tuning adaptive sampling.
+     *
+     * @return the number of samples of each pixel, row by row from the
+     * bottom row up, not a copy.
+     */
+    public int[] getSamples() {
+        return this.samples;
+    }
+
+    /**
+     * Discard all accumulated samples.
+     */
+    public void reset() {
+        fill(this.sums, 0);
+        fill(this.luminances, 0);
+        fill(this.squares, 0);
+        fill(this.samples, 0);
+        this.passes = 0;
+    }
+}
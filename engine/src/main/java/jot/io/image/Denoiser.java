@@ -0,0 +1,205 @@
+/*
+ * This file is part of the JOT game engine i/o framework toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.io.image;
+
+import static java.lang.Float.isInfinite;
+import static java.lang.Math.abs;
+import static java.lang.Math.exp;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Class that implements a edge avoiding à-trous wavelet denoiser, i.e.,
+ * repeated 5x5 B3 spline filters with holes, the step between taps doubling
+ * every iteration, whose taps are weighted down across edges of the color, of
+ * the normals, of the depth and of the albedo of the auxiliary buffer, see
+ * Dammertz et al. 2010.
+ *
+ * The color is divided by the albedo before filtering and multiplied back
+ * afterwards, so that textures and colored surfaces are not blurred together
+ * with the noise. Each iteration filters the frame in parallel, one tile per
+ * task. A denoiser filters one frame at a time.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class Denoiser {
+
+    static final Logger log = getLogger("Denoiser");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private static final float[] KERNEL = {1 / 16f, 1 / 4f, 3 / 8f, 1 / 4f, 1 / 16f};
+
+    private static final float MIN_ALBEDO = 1e-3f;
+
+    private int iterations = 5;
+    private double colorPhi = 1, normalPhi = .1, depthPhi = .1, albedoPhi = .1;
+    private float[] input = new float[0], output = new float[0];
+
+    /**
+     * Get the number of filter iterations, each doubling the filter radius.
+     *
+     * @return the number of filter iterations.
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * Set the number of filter iterations, each doubling the filter radius,
+     * i.e., 5 iterations reach 2 + 4 + 8 + 16 + 32 pixels away.
+     *
+     * @param iterations the number of filter iterations.
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Set the sensitivity of the filter to each edge, the lower the value the
+     * less the filter blurs across differences of said kind.
+     *
+     * @param colorPhi the color sensitivity, halved every iteration as the
+     * color gets less noisy.
+     * @param normalPhi the normals sensitivity.
+     * @param depthPhi the depth sensitivity, relative to the pixel depth.
+     * @param albedoPhi the albedo sensitivity.
+     */
+    public void setSensitivity(double colorPhi, double normalPhi, double depthPhi, double albedoPhi) {
+        this.colorPhi = colorPhi;
+        this.normalPhi = normalPhi;
+        this.depthPhi = depthPhi;
+        this.albedoPhi = albedoPhi;
+    }
+
+    /**
+     * Denoise the radiance of a frame buffer, in place, and tone map it.
+     *
+     * @param frameBuffer the frame buffer to denoise.
+     * @param auxiliaryBuffer the auxiliary buffer of the frame, of the same
+     * width and height.
+     * @param scheduler the tile scheduler to filter with.
+     * @return true if the frame was denoised, false if the filter was
+     * cancelled, in which case the frame buffer is left untouched.
+     */
+    public boolean denoise(FrameBuffer frameBuffer, AuxiliaryBuffer auxiliaryBuffer,
+            RenderScheduler scheduler) {
+        final int w = frameBuffer.getWidth(), h = frameBuffer.getHeight();
+        final float[] radiance = frameBuffer.getRadiance();
+        final float[] albedos = auxiliaryBuffer.getAlbedos();
+        if (this.input.length != radiance.length) {
+            this.input = new float[radiance.length];
+            this.output = new float[radiance.length];
+        }
+
+        //Filter the illumination, i.e., the radiance without the albedo
+        for (int i = 0; i < radiance.length; i++) {
+            this.input[i] = radiance[i] / max(albedos[i], MIN_ALBEDO);
+        }
+        for (int iteration = 0; iteration < this.iterations; iteration++) {
+            final float[] source = this.input, destination = this.output;
+            final int step = 1 << iteration;
+            final double colorSigma = this.colorPhi / (1 << iteration);
+            if (!scheduler.render(w, h, 0, MILLISECONDS, (x0, y0, x1, y1)
+                    -> this.filter(source, destination, auxiliaryBuffer, w, h,
+                            step, colorSigma, x0, y0, x1, y1))) {
+                return false;
+            }
+            this.input = destination;
+            this.output = source;
+        }
+        for (int i = 0; i < radiance.length; i++) {
+            this.input[i] *= max(albedos[i], MIN_ALBEDO);
+        }
+        arraycopy(this.input, 0, radiance, 0, radiance.length);
+        frameBuffer.toneMap(scheduler);
+        return true;
+    }
+
+    /**
+     * Filter the rows [y0, y1) and columns [x0, x1) of the top down buffers.
+     */
+    private void filter(float[] source, float[] destination, AuxiliaryBuffer auxiliaryBuffer,
+            int w, int h, int step, double colorSigma, int x0, int y0, int x1, int y1) {
+        float[] normals = auxiliaryBuffer.getNormals();
+        float[] depths = auxiliaryBuffer.getDepths();
+        float[] albedos = auxiliaryBuffer.getAlbedos();
+        double colorScale = 1 / (colorSigma * colorSigma);
+        double normalScale = 1 / (this.normalPhi * this.normalPhi);
+        double albedoScale = 1 / (this.albedoPhi * this.albedoPhi);
+
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int p = y * w + x;
+                float depth = depths[p];
+                double depthScale = 1 / (this.depthPhi * step * depth);
+                double red = 0, green = 0, blue = 0, weights = 0;
+
+                for (int j = -2; j <= 2; j++) {
+                    //Taps beyond the border are clamped to it
+                    int qy = min(max(y + j * step, 0), h - 1);
+                    for (int i = -2; i <= 2; i++) {
+                        int qx = min(max(x + i * step, 0), w - 1);
+                        int q = qy * w + qx;
+                        double weight = KERNEL[i + 2] * KERNEL[j + 2];
+
+                        if (q != p) {
+                            if (isInfinite(depth) || isInfinite(depths[q])) {
+                                if (depths[q] != depth) {
+                                    continue;
+                                }
+                            } else {
+                                weight *= exp(-distance2(source, p, q) * colorScale
+                                        - distance2(normals, p, q) * normalScale
+                                        - abs(depths[q] - depth) * depthScale
+                                        - distance2(albedos, p, q) * albedoScale);
+                            }
+                        }
+                        red += weight * source[3 * q];
+                        green += weight * source[3 * q + 1];
+                        blue += weight * source[3 * q + 2];
+                        weights += weight;
+                    }
+                }
+                destination[3 * p] = (float) (red / weights);
+                destination[3 * p + 1] = (float) (green / weights);
+                destination[3 * p + 2] = (float) (blue / weights);
+            }
+        }
+    }
+
+    /**
+     * Get the squared distance between the 3 component values of two pixels.
+     */
+    private static double distance2(float[] values, int p, int q) {
+        double dx = values[3 * p] - values[3 * q];
+        double dy = values[3 * p + 1] - values[3 * q + 1];
+        double dz = values[3 * p + 2] - values[3 * q + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
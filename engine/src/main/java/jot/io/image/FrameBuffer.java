@@ -0,0 +1,222 @@
+/*
+ * This file is part of the JOT game engine i/o framework toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.io.image;
+
+import java.nio.ByteBuffer;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.ByteOrder.BIG_ENDIAN;
+import java.nio.IntBuffer;
+import static java.util.Arrays.fill;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import static jot.manager.SceneManager.increaseBrightness;
+import static jot.manager.SceneManager.toInt;
+
+/**
+ * Class that implements a RayTracer frame buffer, i.e., the linear radiance of
+ * each pixel, written directly by the render workers, and its tone mapped,
+ * gamma corrected, 8 bits per channel RGBA version kept in a direct buffer
+ * ready to upload as a texture.
+ *
+ * Pixel coordinates count rows from the bottom up, while both buffers store
+ * rows from the top down, as image files do. Distinct pixels may be written
+ * and tone mapped concurrently, e.g., one tile per thread.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class FrameBuffer {
+
+    static final Logger log = getLogger("FrameBuffer");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private final int width, height;
+    private final float[] radiance;
+    private final ByteBuffer pixels;
+    private final IntBuffer rgba;
+    private volatile double exposure = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param width of the frame.
+     * @param height of the frame.
+     */
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.radiance = new float[3 * width * height];
+        //Big endian ints so that each pixel is stored as R, G, B, A bytes
+        this.pixels = allocateDirect(4 * width * height).order(BIG_ENDIAN);
+        this.rgba = this.pixels.asIntBuffer();
+    }
+
+    /**
+     * Get the width of the frame.
+     *
+     * @return the width of the frame.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height of the frame.
+     *
+     * @return the height of the frame.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Get the exposure, i.e., the factor applied to the radiance before tone
+     * mapping.
+     *
+     * @return the exposure.
+     */
+    public double getExposure() {
+        return this.exposure;
+    }
+
+    /**
+     * Set the exposure, which takes effect on the next tone mapping.
+     *
+     * @param exposure the factor applied to the radiance before tone mapping.
+     */
+    public void setExposure(double exposure) {
+        this.exposure = exposure;
+    }
+
+    /**
+     * Set the linear radiance of a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row, counting from the bottom row up.
+     * @param red the red radiance.
+     * @param green the green radiance.
+     * @param blue the blue radiance.
+     */
+    public void setRadiance(int x, int y, double red, double green, double blue) {
+        int i = 3 * this.getIndex(x, y);
+        this.radiance[i] = (float) red;
+        this.radiance[i + 1] = (float) green;
+        this.radiance[i + 2] = (float) blue;
+    }
+
+    /**
+     * Get the linear radiance of a pixel channel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row, counting from the bottom row up.
+     * @param channel 0 for red, 1 for green, or 2 for blue.
+     * @return the linear radiance of the pixel channel.
+     */
+    public double getRadiance(int x, int y, int channel) {
+        return this.radiance[3 * this.getIndex(x, y) + channel];
+    }
+
+    /**
+     * Get the linear radiance of all pixels, i.e., the red, green and blue
+     * values of each pixel, row by row from the top row down.
+     *
+     * @return the linear radiance of all pixels, not a copy.
+     */
+    public float[] getRadiance() {
+        return this.radiance;
+    }
+
+    /**
+     * Get the tone mapped color of a pixel.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row, counting from the bottom row up.
+     * @return the pixel color packed as 0xRRGGBBAA.
+     */
+    public int getRGBA(int x, int y) {
+        return this.rgba.get(this.getIndex(x, y));
+    }
+
+    /**
+     * Get the tone mapped pixels, 4 bytes (R, G, B, A) per pixel, row by row
+     * from the top row down.
+     *
+     * @return a rewound view of the tone mapped pixels, sharing its content
+     * with this frame buffer.
+     */
+    public ByteBuffer getPixels() {
+        return this.pixels.duplicate();
+    }
+
+    /**
+     * Tone map, i.e., scale by the exposure, clamp and gamma correct, the
+     * pixels of the region [x0, x1) x [y0, y1).
+     *
+     * @param x0 the first column of the region.
+     * @param y0 the first row of the region.
+     * @param x1 the column after the last one of the region.
+     * @param y1 the row after the last one of the region.
+     */
+    public void toneMap(int x0, int y0, int x1, int y1) {
+        double scale = this.exposure;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = this.getIndex(x, y);
+                int red = toInt(increaseBrightness(scale * this.radiance[3 * i]));
+                int green = toInt(increaseBrightness(scale * this.radiance[3 * i + 1]));
+                int blue = toInt(increaseBrightness(scale * this.radiance[3 * i + 2]));
+                this.rgba.put(i, red << 24 | green << 16 | blue << 8 | 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Tone map the whole frame, in parallel, one tile per task, e.g., after
+     * changing the exposure.
+     *
+     * @param scheduler the tile scheduler to tone map with.
+     */
+    public void toneMap(RenderScheduler scheduler) {
+        scheduler.render(this.width, this.height, 0, MILLISECONDS, this::toneMap);
+    }
+
+    /**
+     * Set the radiance of all pixels to black, and their tone mapped colors to
+     * opaque black.
+     */
+    public void clear() {
+        fill(this.radiance, 0);
+        for (int i = 0; i < this.width * this.height; i++) {
+            this.rgba.put(i, 0xFF);
+        }
+    }
+
+    /**
+     * Get the index of a pixel in the top down buffers.
+     */
+    private int getIndex(int x, int y) {
+        return (this.height - 1 - y) * this.width + x;
+    }
+}
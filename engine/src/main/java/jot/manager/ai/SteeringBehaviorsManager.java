@@ -636,8 +636,7 @@ public class SteeringBehaviorsManager extends AbstractSteeringBehaviorsManager {
                 //Translate a copy of the bounding volume of the primaryAgentPlayer, 
                 //as determined by the stearing behavior, into its future position.            
                 AbstractBoundingVolume boundingVolume = primaryAgentPlayer.getBoundingVolumeCopy(0);
-                boundingVolume.min = boundingVolume.min.add(position);
-                boundingVolume.max = boundingVolume.max.add(position);
+                boundingVolume.translate(position.getX(), position.getY(), position.getZ());
 
                 //Create a temporary game object and set its bounding volume to the prior copy.
                 GameObject temp = new GameObject(this.primaryAgent.getId());
@@ -774,8 +773,7 @@ public class SteeringBehaviorsManager extends AbstractSteeringBehaviorsManager {
 //                    position = translate(ZERO, velocity, dt);
 //
 //                    AbstractBoundingVolume boundingVolume = entity.getBoundingVolumeCopy(0);
-//                    boundingVolume.min = boundingVolume.min.add(position);
-//                    boundingVolume.max = boundingVolume.max.add(position);
+//                    boundingVolume.translate(position.getX(), position.getY(), position.getZ());
 //
 //                    //Create a temporary game object and set its bounding volume to the prior copy.
 //                    GameObject temp = new GameObject(entity.getId());
@@ -20,20 +20,27 @@
  */
 package jot.math;
 
-import static java.lang.Math.signum;
-import static java.lang.String.format;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+import static java.lang.System.arraycopy;
 import java.util.ArrayList;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.support.AbstractSupportMapping;
+import jot.math.geometry.support.HullSupport;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
-import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.crossProduct;
-import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.dotProduct;
 
 /**
  * Class that implements the Gilbert-Johnson-Keerthi algorithm for collision
  * detection in 3D, as described in the video lecture at
- * http://mollyrocket.com/849
+ * http://mollyrocket.com/849, and the Expanding Polytope Algorithm, to find
+ * how deep two intersecting convex shapes penetrate each other.
+ *
+ * The shapes are given by their support mappings, and all the state of a
+ * test lives in a context, one per thread unless given, so that shapes may
+ * be tested in parallel without allocating anything.
  *
  * @author G. Amador {@literal &} A. Gomes
  */
@@ -41,15 +48,38 @@ public class GJK {
 
     static final Logger log = getLogger("GJK");
 
-    private static Vector3D Direction;
+    //To prevent infinite loops - if an intersection is not found in 64 rounds, consider there is no intersection.
+    private static final int MAX_ITERATIONS = 64;
+
+    private static final int MAX_EPA_ITERATIONS = 64;
+    private static final int MAX_VERTICES = 4 + MAX_EPA_ITERATIONS;
+    private static final int MAX_FACES = 4 * MAX_VERTICES;
+    private static final int MAX_EDGES = 2 * MAX_VERTICES;
+
+    //Relative to the size of the shapes
+    private static final double EPA_TOLERANCE = 1e-6;
+    private static final double EPSILON = 1e-12;
 
-    //To prevent infinite loops - if an intersection is not found in 20 rounds, consider there is no intersection.
-    private static final int MaxIterations = 20;
+    /**
+     * The vertices of the simplex, A the last one added.
+     */
+    private static final int A = 0, B = 1, C = 2, D = 3;
+
+    private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
 
     static {
         log.setLevel(OFF);
     }
 
+    /**
+     * Get the context of the calling thread.
+     *
+     * @return the context of the calling thread.
+     */
+    public static Context getContext() {
+        return contexts.get();
+    }
+
     /**
      * Given the vertices (in any order) of two convex 3D bodies, calculates
      * whether they intersect.
@@ -59,226 +89,657 @@ public class GJK {
      * @return TRUE if two convex 3D bodies intersect, FALSE otherwise
      */
     public static boolean BodiesIntersect(ArrayList<Vector3D> shape1, ArrayList<Vector3D> shape2) {
-        //For initial point, just take the difference between any two vertices (in this case - the first ones)
-        Vector3D initialPoint = new Vector3D(shape1.get(0).toArray()).subtract(shape2.get(0));
+        Context context = contexts.get();
+        context.hull1.set(shape1);
+        context.hull2.set(shape2);
+        return intersect(context.hull1, context.hull2, context);
+    }
 
-        //Choose a search direction
-        Vector3D S = MaxPointInMinkDiffAlongDir(shape1, shape2, initialPoint);
-        Direction = S.negate();
+    /**
+     * Test if two convex shapes intersect, touching shapes included.
+     *
+     * @param shape1 the first convex shape.
+     * @param shape2 the second convex shape.
+     * @param context the context of the test, which keeps the final simplex.
+     * @return TRUE if the shapes intersect, FALSE otherwise.
+     */
+    public static boolean intersect(AbstractSupportMapping shape1,
+            AbstractSupportMapping shape2, Context context) {
+        Context c = context;
+        double[] w = c.w, d = c.direction;
+
+        //Search first from the center of the second shape to the one of the first
+        shape1.getCenter(c.center, 0);
+        shape2.getCenter(c.center, 3);
+        set(d, 0, c.center[0] - c.center[3], c.center[1] - c.center[4], c.center[2] - c.center[5]);
+        if (dot(d, 0, d, 0) < EPSILON) {
+            set(d, 0, 1, 0, 0);
+        }
+        support(shape1, shape2, c, C);
 
-        //Get the first Minkowski Difference point
-        ArrayList<Vector3D> simplex = new ArrayList<>();
-        simplex.add(S);
+        //Then toward the origin
+        set(d, 0, -w[3 * C], -w[3 * C + 1], -w[3 * C + 2]);
+        if (dot(d, 0, d, 0) < EPSILON * c.getScale(C)) {
+            //The origin is a support point, the shapes touch
+            c.copy(C, A);
+            return c.setEnclosing(1);
+        }
+        support(shape1, shape2, c, B);
+        if (dot(w, 3 * B, d, 0) < 0) {
+            return false;
+        }
 
-        for (int i = 0; i < MaxIterations; i++) {
-            //Get our next simplex point toward the origin.
-            Vector3D A = MaxPointInMinkDiffAlongDir(shape1, shape2, Direction);
+        //Then perpendicular to the segment BC toward the origin
+        sub(c.edge1, 0, w, 3 * C, w, 3 * B);
+        set(c.edge2, 0, -w[3 * B], -w[3 * B + 1], -w[3 * B + 2]);
+        tripleProduct(d, c.edge1, c.edge2, c.edge1);
+        if (dot(d, 0, d, 0) < EPSILON * c.getScale(B)) {
+            //The origin is on the segment, any perpendicular will do
+            cross(d, 0, c.edge1[0], c.edge1[1], c.edge1[2], 1, 0, 0);
+            if (dot(d, 0, d, 0) < EPSILON * c.getScale(B)) {
+                cross(d, 0, c.edge1[0], c.edge1[1], c.edge1[2], 0, 0, -1);
+            }
+        }
 
-            //If we move toward the origin and didn't pass it then we never will and there's no intersection.
-            if (dotProduct(A, Direction) < 0) {
+        int dimension = 2;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            support(shape1, shape2, c, A);
+            if (dot(w, 3 * A, d, 0) < 0) {
+                //We never reach the origin
                 return false;
             }
-
-            //Otherwise we add the new point to the simplex and process it.
-            simplex.add(A);
-
-            //Here we either find a collision or we find the closest feature of
-            //the simplex to the origin, make that the new simplex and update the direction
-            //to move toward the origin from that feature.            
-            log.info(format("GJK: %s", Direction.toString()));
-            if (UpdateSimplexAndDirection(simplex)) {
-                return true;
+            dimension++;
+            if (dimension == 3) {
+                dimension = updateSimplex3(c);
+            } else if (updateSimplex4(c)) {
+                return c.setEnclosing(4);
+            } else {
+                dimension = 3;
+            }
+            if (dot(d, 0, d, 0) < EPSILON * c.getScale(A)) {
+                //The origin is on the simplex, now at B onward
+                return c.setEnclosing(dimension);
             }
-            log.info(format("GJK: %s", Direction.toString()));
-            log.info("");
         }
-
+        log.info("GJK did not converge");
         return false;
     }
 
     /**
-     * Updates the current simplex and the direction in which to look for the
-     * origin. Called DoSimplex in the video lecture.
+     * Test if two convex shapes intersect and, if so, find the depth of the
+     * penetration, the normal along which to separate them, and the deepest
+     * point of each shape inside the other, stored in the context.
      *
-     * @param simplex A list of points in the current simplex. The last point in
-     * the list must be the last point added to the simplex.
-     * @param direction
-     * @return TRUE if an intersection found on this iteration, FALSE otherwise.
+     * The polytope of a curved shape, e.g., a sphere, may run out of vertices
+     * before the depth is found within the tolerance, in which case the
+     * closest face found so far is kept, whose depth is a lower bound of the
+     * real one, e.g., a few percent shallower for nearly concentric spheres.
+     * The context tells if so, see Context.isConverged.
+     *
+     * @param shape1 the first convex shape.
+     * @param shape2 the second convex shape.
+     * @param context the context of the test, where the results are stored.
+     * @return TRUE if the shapes intersect, FALSE otherwise.
      */
-    //@SuppressWarnings({"unchecked"})
-    //@SuppressWarnings({"Unused Assignment"})
-    private static boolean UpdateSimplexAndDirection(ArrayList<Vector3D> simplex) {
-        switch (simplex.size()) {
-            case 2: //if the simplex is a line.
-            {
-                //A is the point added last to the simplex
-                Vector3D A = simplex.get(1);
-                Vector3D B = simplex.get(0);
-                Vector3D AB = B.subtract(A);
-                Vector3D AO = A.negate();
-
-                log.info(format("simplex2: %s", Direction.toString()));
-                if (dotProduct(AB, AO) > 0) {
-                    Direction = crossProduct(crossProduct(AB, AO), AB);
-                } else {
-                    Direction = AO;
-                }
-                log.info(format("simplex2: %s", Direction.toString()));
+    public static boolean penetration(AbstractSupportMapping shape1,
+            AbstractSupportMapping shape2, Context context) {
+        context.isConverged = true;
+        if (!intersect(shape1, shape2, context)) {
+            return false;
+        }
+        Context c = context;
+        double[] w = c.w;
+        int count = c.dimension;
+        if (count == 2 || count == 3) {
+            for (int i = 0; i < count; i++) {
+                c.copy(B + i, A + i);
             }
-            break;
-            case 3: //if the simplex is a triangle.
-            {
-                //A is the point added last to the simplex
-                Vector3D A = simplex.get(2);
-                Vector3D B = simplex.get(1);
-                Vector3D C = simplex.get(0);
-                Vector3D AO = A.negate();
-                Vector3D AB = B.subtract(A);
-                Vector3D AC = C.subtract(A);
-                Vector3D ABC = crossProduct(AB, AC);
-
-                log.info(format("simplex3: %s", Direction.toString()));
-                if (dotProduct(crossProduct(ABC, AC), AO) > 0) {
-                    if (dotProduct(AC, AO) > 0) {
-                        simplex.clear();
-                        simplex.add(C);
-                        simplex.add(A);
-                        Direction = crossProduct(crossProduct(AC, AO), AC);
-                    } else if (dotProduct(AB, AO) > 0) {
-                        simplex.clear();
-                        simplex.add(B);
-                        simplex.add(A);
-                        Direction = crossProduct(crossProduct(AB, AO), AB);
-                    } else {
-                        simplex.clear();
-                        simplex.add(A);
-                        Direction = AO;
-                    }
-                } else if (dotProduct(crossProduct(AB, ABC), AO) > 0) {
-                    if (dotProduct(AB, AO) > 0) {
-                        simplex.clear();
-                        simplex.add(B);
-                        simplex.add(A);
-                        Direction = crossProduct(crossProduct(AB, AO), AB);
-                    } else {
-                        simplex.clear();
-                        simplex.add(A);
-                        Direction = AO;
+        }
+        double scale = 1;
+        for (int i = 0; i < count; i++) {
+            scale = max(scale, c.getScale(i));
+        }
+        double tolerance = EPA_TOLERANCE * sqrt(scale);
+        if (expand(shape1, shape2, c, count, tolerance) < 4) {
+            //The Minkowski difference is flat, the shapes touch
+            c.setTouching();
+            return true;
+        }
+
+        //Start from the tetrahedron enclosing the origin, with outward faces
+        for (int i = 0; i < 3; i++) {
+            c.interior[i] = (w[i] + w[3 + i] + w[6 + i] + w[9 + i]) / 4;
+        }
+        c.vertexCount = 4;
+        c.faceCount = 0;
+        if (!c.addFace(A, B, C) | !c.addFace(A, C, D) | !c.addFace(A, D, B) | !c.addFace(B, D, C)) {
+            c.setTouching();
+            return true;
+        }
+
+        int closest = 0;
+        for (int iteration = 0; iteration < MAX_EPA_ITERATIONS; iteration++) {
+            closest = c.getClosestFace();
+            double distance = c.faceDistances[closest];
+            int p = c.vertexCount++;
+            arraycopy(c.faceNormals, 3 * closest, c.direction, 0, 3);
+            support(shape1, shape2, c, p);
+            if (dot(w, 3 * p, c.direction, 0) - distance < tolerance) {
+                //The new point is no further than the face, the face is the closest
+                c.vertexCount--;
+                break;
+            }
+
+            //Remove the faces the new point sees, keeping the edges of the hole
+            c.edgeCount = 0;
+            for (int f = 0; f < c.faceCount; f++) {
+                int v = c.faceVertices[3 * f];
+                if (c.faceNormals[3 * f] * (w[3 * p] - w[3 * v])
+                        + c.faceNormals[3 * f + 1] * (w[3 * p + 1] - w[3 * v + 1])
+                        + c.faceNormals[3 * f + 2] * (w[3 * p + 2] - w[3 * v + 2]) > 0) {
+                    for (int e = 0; e < 3; e++) {
+                        c.addEdge(c.faceVertices[3 * f + e], c.faceVertices[3 * f + (e + 1) % 3]);
                     }
-                } else if (dotProduct(ABC, AO) > 0) {
-                    //the simplex stays A, B, C
-                    Direction = ABC;
-                } else {
-                    simplex.clear();
-                    simplex.add(B);
-                    simplex.add(C);
-                    simplex.add(A);
-
-                    Direction = ABC.negate();
+                    c.removeFace(f--);
                 }
-                log.info(format("simplex3: %s", Direction.toString()));
             }
-            break;
-            default: //if the simplex is a tetrahedron
-            {
-                //A is the point added last to the simplex
-                Vector3D A = simplex.get(3);
-                Vector3D B = simplex.get(2);
-                Vector3D C = simplex.get(1);
-                Vector3D D = simplex.get(0);
-
-                Vector3D AO = A.negate();
-                Vector3D AB = B.subtract(A);
-                Vector3D AC = C.subtract(A);
-                Vector3D AD = D.subtract(A);
-                Vector3D ABC = crossProduct(AB, AC);
-                Vector3D ACD = crossProduct(AC, AD);
-                Vector3D ADB = crossProduct(AD, AB);
-
-                //the side (positive or negative) of B, C and D relative to the planes of ACD, ADB and ABC respectively
-                int BsideOnACD = (int) signum(dotProduct(ACD, AB));
-                int CsideOnADB = (int) signum(dotProduct(ADB, AC));
-                int DsideOnABC = (int) signum(dotProduct(ABC, AD));
-
-                //whether the origin is on the same side of ACD/ADB/ABC as B, C and D respectively
-                boolean ABsameAsOrigin = signum(dotProduct(ACD, AO)) == BsideOnACD;
-                boolean ACsameAsOrigin = signum(dotProduct(ADB, AO)) == CsideOnADB;
-                boolean ADsameAsOrigin = signum(dotProduct(ABC, AO)) == DsideOnABC;
-
-                log.info(format("simplex4: %s", Direction.toString()));
-                //if the origin is on the same side as all B, C and D, the origin is inside the tetrahedron and thus there is a collision
-                if (ABsameAsOrigin && ACsameAsOrigin && ADsameAsOrigin) {
-                    return true;
-                } //if the origin is not on the side of B relative to ACD
-                else if (!ABsameAsOrigin) {
-                    //B is farthest from the origin among all of the tetrahedron's points, so remove it from the list and go on with the triangle case
-                    simplex.remove(B);
-                    //the new direction is on the other side of ACD, relative to B
-                    Direction = ACD.scalarMultiply(-BsideOnACD);
-
-                } //if the origin is not on the side of C relative to ADB
-                else if (!ACsameAsOrigin) {
-                    //C is farthest from the origin among all of the tetrahedron's points, so remove it from the list and go on with the triangle case
-                    simplex.remove(C);
-                    //the new direction is on the other side of ADB, relative to C                
-                    Direction = ADB.scalarMultiply(-CsideOnADB);
-                } //if the origin is not on the side of D relative to ABC
-                else //if (!ADsameAsOrigin)
-                {
-                    //D is farthest from the origin among all of the tetrahedron's points, so remove it from the list and go on with the triangle case
-                    simplex.remove(D);
-                    //the new direction is on the other side of ABC, relative to D                
-                    Direction = ABC.scalarMultiply(-DsideOnABC);
-                }
-                log.info(format("simplex4: %s", Direction.toString()));
-
-                //go on with the triangle case
-                //TODO: maybe we should restrict the depth of the recursion, just like we restricted the number of iterations in BodiesIntersect?
-                return UpdateSimplexAndDirection(simplex);
+            //Close the hole with faces to the new point
+            for (int e = 0; e < c.edgeCount && c.faceCount < MAX_FACES; e++) {
+                c.addFace(c.edges[2 * e], c.edges[2 * e + 1], p);
+            }
+            if (c.vertexCount == MAX_VERTICES) {
+                //Out of vertices, the depth is only a lower bound
+                log.info("EPA did not converge");
+                c.isConverged = false;
+                closest = c.getClosestFace();
+                break;
             }
         }
+        c.setContact(closest);
+        return true;
+    }
 
-        //no intersection found on this iteration
-        return false;
+    /**
+     * Grow the simplex of the first vertices of the context, which encloses
+     * the origin but may be flat, into a tetrahedron that still encloses it,
+     * adding points of the Minkowski difference off its line or plane.
+     *
+     * @return the number of vertices of the grown simplex, less than 4 if the
+     * Minkowski difference itself is flat around the origin.
+     */
+    private static int expand(AbstractSupportMapping shape1, AbstractSupportMapping shape2,
+            Context c, int count, double tolerance) {
+        double[] w = c.w, d = c.direction, e = c.edge1, n = c.normal1, offset = c.edge2;
+        if (count == 3 && c.getNormal(n) <= tolerance * c.getLongestEdge()) {
+            //Collinear points, keep the farthest apart, which enclose the others
+            double ab = c.getDistance2(A, B), ac = c.getDistance2(A, C), bc = c.getDistance2(B, C);
+            if (ac > ab && ac >= bc) {
+                c.copy(C, B);
+            } else if (bc > ab) {
+                c.copy(C, A);
+            }
+            count = 2;
+        }
+        if (count == 2) {
+            sub(e, 0, w, 3 * B, w, 3 * A);
+            double length = sqrt(dot(e, 0, e, 0));
+            if (length <= tolerance) {
+                return 1;
+            }
+            //Search along the perpendiculars to the segment
+            if (abs(e[0]) <= abs(e[1]) && abs(e[0]) <= abs(e[2])) {
+                cross(n, 0, e[0], e[1], e[2], 1, 0, 0);
+            } else if (abs(e[1]) <= abs(e[2])) {
+                cross(n, 0, e[0], e[1], e[2], 0, 1, 0);
+            } else {
+                cross(n, 0, e[0], e[1], e[2], 0, 0, 1);
+            }
+            for (int i = 0; i < 4 && count == 2; i++) {
+                if (i == 2) {
+                    cross(n, 0, e[0], e[1], e[2], n[0], n[1], n[2]);
+                }
+                double sign = i % 2 == 0 ? 1 : -1;
+                set(d, 0, sign * n[0], sign * n[1], sign * n[2]);
+                support(shape1, shape2, c, C);
+                sub(offset, 0, w, 3 * C, w, 3 * A);
+                cross(c.normal2, 0, offset[0], offset[1], offset[2], e[0], e[1], e[2]);
+                if (sqrt(dot(c.normal2, 0, c.normal2, 0)) > tolerance * length) {
+                    count = 3;
+                }
+            }
+            if (count == 2) {
+                return 2;
+            }
+        }
+        if (count == 3) {
+            //Search along the normal of the triangle, on either side
+            double area = c.getNormal(n);
+            for (int i = 0; i < 2; i++) {
+                double sign = i == 0 ? 1 : -1;
+                set(d, 0, sign * n[0], sign * n[1], sign * n[2]);
+                support(shape1, shape2, c, D);
+                sub(offset, 0, w, 3 * D, w, 3 * A);
+                if (sign * dot(offset, 0, n, 0) > tolerance * area) {
+                    return 4;
+                }
+            }
+            return 3;
+        }
+        return count;
     }
 
     /**
-     * Finds the farthest point along a given direction of the Minkowski
-     * difference of two convex polyhedra. Called Support in the video lecture:
-     * max(D.Ai) - max(-D.Bj)
+     * Update the simplex of the points A, B and C, the triangle case.
      *
-     * @param shape1
-     * @param shape2
-     * @param direction
-     * @return the farthest point along a given direction of the Minkowski
-     * difference of two convex polyhedra.
+     * @return the dimension of the new simplex.
      */
-    private static Vector3D MaxPointInMinkDiffAlongDir(
-            ArrayList<Vector3D> shape1, ArrayList<Vector3D> shape2, Vector3D direction) {
-        Vector3D max = MaxPointAlongDirection(shape1, direction).
-                subtract(MaxPointAlongDirection(shape2, direction.negate()));
+    private static int updateSimplex3(Context c) {
+        double[] w = c.w, d = c.direction;
+        double[] ab = c.edge1, ac = c.edge2, ao = c.toOrigin, n = c.normal1;
+        sub(ab, 0, w, 3 * B, w, 3 * A);
+        sub(ac, 0, w, 3 * C, w, 3 * A);
+        set(ao, 0, -w[3 * A], -w[3 * A + 1], -w[3 * A + 2]);
+        cross(n, 0, ab[0], ab[1], ab[2], ac[0], ac[1], ac[2]);
 
-        return max;
+        //The origin is nearest to the edge AB
+        cross(c.normal2, 0, ab[0], ab[1], ab[2], n[0], n[1], n[2]);
+        if (dot(c.normal2, 0, ao, 0) > 0) {
+            c.copy(A, C);
+            tripleProduct(d, ab, ao, ab);
+            return 2;
+        }
+        //The origin is nearest to the edge AC
+        cross(c.normal2, 0, n[0], n[1], n[2], ac[0], ac[1], ac[2]);
+        if (dot(c.normal2, 0, ao, 0) > 0) {
+            c.copy(A, B);
+            tripleProduct(d, ac, ao, ac);
+            return 2;
+        }
+        //The origin is above the triangle
+        if (dot(n, 0, ao, 0) > 0) {
+            c.copy(C, D);
+            c.copy(B, C);
+            c.copy(A, B);
+            set(d, 0, n[0], n[1], n[2]);
+            return 3;
+        }
+        //The origin is below the triangle
+        c.copy(B, D);
+        c.copy(A, B);
+        set(d, 0, -n[0], -n[1], -n[2]);
+        return 3;
     }
 
     /**
-     * Finds the farthest point along a given direction of a convex polyhedron.
+     * Update the simplex of the points A, B, C and D, the tetrahedron case,
+     * knowing the origin is above BCD and below A. The origin must be clearly in
+     * front of a face, otherwise it would cycle between the faces of a edge it
+     * lies on.
      *
-     * @param shape
-     * @param direction
-     * @return the farthest point along a given direction of a convex
-     * polyhedron.
+     * @return TRUE if the tetrahedron encloses the origin, FALSE otherwise.
      */
-    private static Vector3D MaxPointAlongDirection(ArrayList<Vector3D> shape, Vector3D direction) {
-        Vector3D max = new Vector3D(shape.get(0).toArray());
+    private static boolean updateSimplex4(Context c) {
+        double[] w = c.w, d = c.direction;
+        double[] ab = c.edge1, ac = c.edge2, ad = c.edge3, ao = c.toOrigin, n = c.normal1;
+        sub(ab, 0, w, 3 * B, w, 3 * A);
+        sub(ac, 0, w, 3 * C, w, 3 * A);
+        sub(ad, 0, w, 3 * D, w, 3 * A);
+        set(ao, 0, -w[3 * A], -w[3 * A + 1], -w[3 * A + 2]);
+        double scale = c.getScale(A);
+
+        //The origin is in front of ABC
+        cross(n, 0, ab[0], ab[1], ab[2], ac[0], ac[1], ac[2]);
+        if (isInFront(n, ao, scale)) {
+            c.copy(C, D);
+            c.copy(B, C);
+            c.copy(A, B);
+            set(d, 0, n[0], n[1], n[2]);
+            return false;
+        }
+        //The origin is in front of ACD
+        cross(n, 0, ac[0], ac[1], ac[2], ad[0], ad[1], ad[2]);
+        if (isInFront(n, ao, scale)) {
+            c.copy(A, B);
+            set(d, 0, n[0], n[1], n[2]);
+            return false;
+        }
+        //The origin is in front of ADB
+        cross(n, 0, ad[0], ad[1], ad[2], ab[0], ab[1], ab[2]);
+        if (isInFront(n, ao, scale)) {
+            c.copy(D, C);
+            c.copy(B, D);
+            c.copy(A, B);
+            set(d, 0, n[0], n[1], n[2]);
+            return false;
+        }
+        //The origin is inside the tetrahedron
+        return true;
+    }
+
+    /**
+     * Test if the origin is in front of a face farther than the tolerance.
+     */
+    private static boolean isInFront(double[] normal, double[] toOrigin, double scale) {
+        double side = dot(normal, 0, toOrigin, 0);
+        return side > 0 && side * side > EPSILON * scale * dot(normal, 0, normal, 0);
+    }
 
-        for (Vector3D v : shape) {
-            if (dotProduct(max, direction) < dotProduct(v, direction)) {
-                max = new Vector3D(v.toArray());
+    /**
+     * Store the point of the Minkowski difference of the shapes farthest along
+     * the direction of the context, and the points of each shape it comes
+     * from, as a vertex of the context. Called Support in the video lecture:
+     * max(D.Ai) - max(-D.Bj)
+     */
+    private static void support(AbstractSupportMapping shape1, AbstractSupportMapping shape2,
+            Context c, int vertex) {
+        double[] d = c.direction;
+        int i = 3 * vertex;
+        shape1.getSupport(d[0], d[1], d[2], c.points1, i);
+        shape2.getSupport(-d[0], -d[1], -d[2], c.points2, i);
+        c.w[i] = c.points1[i] - c.points2[i];
+        c.w[i + 1] = c.points1[i + 1] - c.points2[i + 1];
+        c.w[i + 2] = c.points1[i + 2] - c.points2[i + 2];
+    }
+
+    private static void set(double[] r, int i, double x, double y, double z) {
+        r[i] = x;
+        r[i + 1] = y;
+        r[i + 2] = z;
+    }
+
+    private static void sub(double[] r, int k, double[] a, int i, double[] b, int j) {
+        r[k] = a[i] - b[j];
+        r[k + 1] = a[i + 1] - b[j + 1];
+        r[k + 2] = a[i + 2] - b[j + 2];
+    }
+
+    private static double dot(double[] a, int i, double[] b, int j) {
+        return a[i] * b[j] + a[i + 1] * b[j + 1] + a[i + 2] * b[j + 2];
+    }
+
+    private static void cross(double[] r, int i, double ax, double ay, double az,
+            double bx, double by, double bz) {
+        r[i] = ay * bz - az * by;
+        r[i + 1] = az * bx - ax * bz;
+        r[i + 2] = ax * by - ay * bx;
+    }
+
+    /**
+     * Store (a x b) x c.
+     */
+    private static void tripleProduct(double[] r, double[] a, double[] b, double[] c) {
+        double x = a[1] * b[2] - a[2] * b[1];
+        double y = a[2] * b[0] - a[0] * b[2];
+        double z = a[0] * b[1] - a[1] * b[0];
+        cross(r, 0, x, y, z, c[0], c[1], c[2]);
+    }
+
+    /**
+     * Class that implements the state of a GJK and EPA test, i.e., the
+     * simplex, the polytope and the results, so that tests in different
+     * contexts can run in parallel.
+     */
+    public static final class Context {
+
+        private final double[] w = new double[3 * MAX_VERTICES];
+        private final double[] points1 = new double[3 * MAX_VERTICES];
+        private final double[] points2 = new double[3 * MAX_VERTICES];
+        private int vertexCount;
+
+        private final int[] faceVertices = new int[3 * MAX_FACES];
+        private final double[] faceNormals = new double[3 * MAX_FACES];
+        private final double[] faceDistances = new double[MAX_FACES];
+        private int faceCount;
+        private final int[] edges = new int[2 * MAX_EDGES];
+        private int edgeCount;
+
+        private final double[] direction = new double[3], center = new double[6];
+        private final double[] edge1 = new double[3], edge2 = new double[3], edge3 = new double[3];
+        private final double[] toOrigin = new double[3], normal1 = new double[3], normal2 = new double[3];
+        private final HullSupport hull1 = new HullSupport(), hull2 = new HullSupport();
+        private int dimension;
+        private final double[] interior = new double[3];
+
+        private double depth;
+        private final double[] normal = new double[3];
+        private final double[] contact1 = new double[3], contact2 = new double[3];
+        private boolean isConverged = true;
+
+        /**
+         * Test if the last penetration found converged, i.e., if its depth is
+         * within the tolerance of the real one, rather than a lower bound of
+         * it, as when the polytope ran out of vertices, e.g., for curved
+         * shapes.
+         *
+         * @return TRUE if the last penetration converged, FALSE otherwise.
+         */
+        public boolean isConverged() {
+            return this.isConverged;
+        }
+
+        /**
+         * Get the depth of the last penetration found.
+         *
+         * @return the distance the second shape must move along the normal to
+         * stop intersecting the first one, zero if they just touch.
+         */
+        public double getDepth() {
+            return this.depth;
+        }
+
+        /**
+         * Get the normal of the last penetration found.
+         *
+         * @return the x, y and z coordinates of the unit normal, from the
+         * first shape toward the second one, not a copy.
+         */
+        public double[] getNormal() {
+            return this.normal;
+        }
+
+        /**
+         * Get the point of the first shape deepest inside the second one, in
+         * the last penetration found.
+         *
+         * @return the x, y and z coordinates of the point, not a copy.
+         */
+        public double[] getContact1() {
+            return this.contact1;
+        }
+
+        /**
+         * Get the point of the second shape deepest inside the first one, in
+         * the last penetration found.
+         *
+         * @return the x, y and z coordinates of the point, not a copy.
+         */
+        public double[] getContact2() {
+            return this.contact2;
+        }
+
+        /**
+         * Get the last search direction, which after a test that found the
+         * shapes do not intersect is an axis separating them, e.g., to test
+         * them again along it first once they moved a little.
+         *
+         * @return the x, y and z coordinates of the direction, along which
+         * the first shape lies behind the second one, not a copy.
+         */
+        public double[] getDirection() {
+            return this.direction;
+        }
+
+        private double getScale(int vertex) {
+            return max(1, dot(this.w, 3 * vertex, this.w, 3 * vertex));
+        }
+
+        private void copy(int from, int to) {
+            arraycopy(this.w, 3 * from, this.w, 3 * to, 3);
+            arraycopy(this.points1, 3 * from, this.points1, 3 * to, 3);
+            arraycopy(this.points2, 3 * from, this.points2, 3 * to, 3);
+        }
+
+        private double getDistance2(int a, int b) {
+            double dx = this.w[3 * b] - this.w[3 * a];
+            double dy = this.w[3 * b + 1] - this.w[3 * a + 1];
+            double dz = this.w[3 * b + 2] - this.w[3 * a + 2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        private double getLongestEdge() {
+            return sqrt(max(max(this.getDistance2(A, B), this.getDistance2(A, C)), this.getDistance2(B, C)));
+        }
+
+        /**
+         * Store the normal of the triangle ABC, not normalized.
+         *
+         * @return the length of the normal, twice the area of the triangle.
+         */
+        private double getNormal(double[] n) {
+            double[] w = this.w;
+            cross(n, 0, w[3 * B] - w[3 * A], w[3 * B + 1] - w[3 * A + 1], w[3 * B + 2] - w[3 * A + 2],
+                    w[3 * C] - w[3 * A], w[3 * C + 1] - w[3 * A + 1], w[3 * C + 2] - w[3 * A + 2]);
+            return sqrt(dot(n, 0, n, 0));
+        }
+
+        /**
+         * Keep the number of vertices of the simplex enclosing the origin,
+         * from A if 1 or 4, from B otherwise.
+         */
+        private boolean setEnclosing(int dimension) {
+            this.dimension = dimension;
+            return true;
+        }
+
+        /**
+         * Set the results of shapes that touch, or whose penetration is too
+         * thin to be measured, at the first vertex, the normal being the
+         * direction between the centers of the shapes.
+         */
+        private void setTouching() {
+            this.depth = 0;
+            double[] d = this.direction;
+            set(d, 0, this.center[3] - this.center[0], this.center[4] - this.center[1],
+                    this.center[5] - this.center[2]);
+            double length = sqrt(dot(d, 0, d, 0));
+            if (length > 0) {
+                set(this.normal, 0, d[0] / length, d[1] / length, d[2] / length);
+            } else {
+                set(this.normal, 0, 1, 0, 0);
             }
+            arraycopy(this.points1, 3 * A, this.contact1, 0, 3);
+            arraycopy(this.points2, 3 * A, this.contact2, 0, 3);
         }
 
-        return max;
+        /**
+         * Add a face, wound so that its normal points away from the interior
+         * point of the polytope.
+         *
+         * @return FALSE if the face is degenerate, TRUE otherwise.
+         */
+        private boolean addFace(int a, int b, int c) {
+            double[] w = this.w;
+            int f = this.faceCount;
+            double abx = w[3 * b] - w[3 * a], aby = w[3 * b + 1] - w[3 * a + 1], abz = w[3 * b + 2] - w[3 * a + 2];
+            double acx = w[3 * c] - w[3 * a], acy = w[3 * c + 1] - w[3 * a + 1], acz = w[3 * c + 2] - w[3 * a + 2];
+            cross(this.faceNormals, 3 * f, abx, aby, abz, acx, acy, acz);
+            double length = sqrt(dot(this.faceNormals, 3 * f, this.faceNormals, 3 * f));
+            if (length < EPSILON) {
+                return false;
+            }
+            for (int i = 3 * f; i < 3 * f + 3; i++) {
+                this.faceNormals[i] /= length;
+            }
+            double[] p = this.interior;
+            if ((w[3 * a] - p[0]) * this.faceNormals[3 * f]
+                    + (w[3 * a + 1] - p[1]) * this.faceNormals[3 * f + 1]
+                    + (w[3 * a + 2] - p[2]) * this.faceNormals[3 * f + 2] < 0) {
+                int swap = b;
+                b = c;
+                c = swap;
+                for (int i = 3 * f; i < 3 * f + 3; i++) {
+                    this.faceNormals[i] = -this.faceNormals[i];
+                }
+            }
+            double distance = dot(w, 3 * a, this.faceNormals, 3 * f);
+            this.faceVertices[3 * f] = a;
+            this.faceVertices[3 * f + 1] = b;
+            this.faceVertices[3 * f + 2] = c;
+            this.faceDistances[f] = distance;
+            this.faceCount++;
+            return true;
+        }
+
+        private void removeFace(int f) {
+            int last = --this.faceCount;
+            arraycopy(this.faceVertices, 3 * last, this.faceVertices, 3 * f, 3);
+            arraycopy(this.faceNormals, 3 * last, this.faceNormals, 3 * f, 3);
+            this.faceDistances[f] = this.faceDistances[last];
+        }
+
+        /**
+         * Add a edge of a removed face to the edges of the hole, or remove it
+         * if the face on its other side was removed too, as it is then inside
+         * the hole.
+         */
+        private void addEdge(int a, int b) {
+            for (int e = 0; e < this.edgeCount; e++) {
+                if (this.edges[2 * e] == b && this.edges[2 * e + 1] == a) {
+                    this.edgeCount--;
+                    this.edges[2 * e] = this.edges[2 * this.edgeCount];
+                    this.edges[2 * e + 1] = this.edges[2 * this.edgeCount + 1];
+                    return;
+                }
+            }
+            if (this.edgeCount < MAX_EDGES) {
+                this.edges[2 * this.edgeCount] = a;
+                this.edges[2 * this.edgeCount + 1] = b;
+                this.edgeCount++;
+            }
+        }
+
+        private int getClosestFace() {
+            int closest = 0;
+            for (int f = 1; f < this.faceCount; f++) {
+                if (this.faceDistances[f] < this.faceDistances[closest]) {
+                    closest = f;
+                }
+            }
+            return closest;
+        }
+
+        /**
+         * Set the results from the face of the polytope closest to the origin,
+         * the contact points being the points of each shape at the barycentric
+         * coordinates of the projection of the origin on the face.
+         */
+        private void setContact(int f) {
+            double[] w = this.w;
+            int a = 3 * this.faceVertices[3 * f], b = 3 * this.faceVertices[3 * f + 1], c = 3 * this.faceVertices[3 * f + 2];
+            this.depth = max(0, this.faceDistances[f]);
+            arraycopy(this.faceNormals, 3 * f, this.normal, 0, 3);
+
+            double px = this.normal[0] * this.depth, py = this.normal[1] * this.depth, pz = this.normal[2] * this.depth;
+            double v0x = w[b] - w[a], v0y = w[b + 1] - w[a + 1], v0z = w[b + 2] - w[a + 2];
+            double v1x = w[c] - w[a], v1y = w[c + 1] - w[a + 1], v1z = w[c + 2] - w[a + 2];
+            double v2x = px - w[a], v2y = py - w[a + 1], v2z = pz - w[a + 2];
+            double d00 = v0x * v0x + v0y * v0y + v0z * v0z;
+            double d01 = v0x * v1x + v0y * v1y + v0z * v1z;
+            double d11 = v1x * v1x + v1y * v1y + v1z * v1z;
+            double d20 = v2x * v0x + v2y * v0y + v2z * v0z;
+            double d21 = v2x * v1x + v2y * v1y + v2z * v1z;
+            double denominator = d00 * d11 - d01 * d01;
+            double v = 0, u = 0;
+            if (abs(denominator) > EPSILON) {
+                v = (d11 * d20 - d01 * d21) / denominator;
+                u = (d00 * d21 - d01 * d20) / denominator;
+            }
+            double t = 1 - v - u;
+            for (int i = 0; i < 3; i++) {
+                this.contact1[i] = t * this.points1[a + i] + v * this.points1[b + i] + u * this.points1[c + i];
+                this.contact2[i] = t * this.points2[a + i] + v * this.points2[b + i] + u * this.points2[c + i];
+            }
+        }
     }
 
     /**
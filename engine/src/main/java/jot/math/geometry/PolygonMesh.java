@@ -42,14 +42,21 @@ import static com.jogamp.opengl.util.GLBuffers.newDirectGLBuffer;
 import com.jogamp.opengl.util.texture.Texture;
 import static java.lang.Float.NEGATIVE_INFINITY;
 import static java.lang.Float.POSITIVE_INFINITY;
+import static java.lang.Math.sqrt;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import static java.util.Arrays.sort;
+import java.util.Comparator;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.math.geometry.Mesh.PrimitiveType.TRIANGLES;
+import jot.math.geometry.bounding.TriangleBVH;
+import jot.math.geometry.shape.PackedTriangles;
 import jot.math.geometry.shape.Triangle;
+import jot.math.geometry.support.ConvexHull;
+import jot.math.geometry.support.HullSupport;
 import jot.physics.Material;
 import static jot.util.CoreOptions.coreOptions;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
@@ -87,6 +94,9 @@ public class PolygonMesh extends Mesh {
     protected int textureCoordSize;
     protected ArrayList<Material> materials;
     protected Vector3D min, max;
+    protected HullSupport hull;
+    protected TriangleBVH triangleBVH;
+    protected Boolean isConvex;
     protected int primitiveType;
     protected ArrayList<Triangle> triangles;
     protected boolean useDrawElements = true;
@@ -155,6 +165,153 @@ public class PolygonMesh extends Mesh {
         return this.min;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HullSupport getHull() {
+        return this.hull;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConvex() {
+        if (this.isConvex == null) {
+            this.isConvex = this.hull == null || this.hull.getCount() < 4 || this.testConvex();
+        }
+        return this.isConvex;
+    }
+
+    /**
+     * Test if this mesh is closed, and if no triangle of it has vertexes of
+     * its convex hull strictly on both sides of its plane, which a triangle
+     * inside of the hull always has. The triangle BVH of a concave mesh is
+     * built from the same triangles.
+     */
+    private boolean testConvex() {
+        PackedTriangles packedTriangles = new PackedTriangles(this);
+        if (!isClosed(packedTriangles)) {
+            if (this.triangleBVH == null) {
+                this.triangleBVH = new TriangleBVH(packedTriangles);
+            }
+            return false;
+        }
+        double[] hullVertices = this.hull.getVertices();
+        int count = this.hull.getCount();
+        double epsilon = 1e-6 * this.max.distance(this.min);
+        double[] p = new double[9];
+        for (int t = 0; t < packedTriangles.getTrianglesCount(); t++) {
+            packedTriangles.getVertex(t, 0, p, 0);
+            packedTriangles.getVertex(t, 1, p, 3);
+            packedTriangles.getVertex(t, 2, p, 6);
+            double e1x = p[3] - p[0], e1y = p[4] - p[1], e1z = p[5] - p[2];
+            double e2x = p[6] - p[0], e2y = p[7] - p[1], e2z = p[8] - p[2];
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            double length = sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                //A degenerate triangle has no plane
+                continue;
+            }
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = nx * p[0] + ny * p[1] + nz * p[2];
+            boolean isFront = false, isBack = false;
+            for (int i = 0; i < 3 * count; i += 3) {
+                double distance = nx * hullVertices[i] + ny * hullVertices[i + 1]
+                        + nz * hullVertices[i + 2] - d;
+                isFront |= distance > epsilon;
+                isBack |= distance < -epsilon;
+                if (isFront && isBack) {
+                    if (this.triangleBVH == null) {
+                        this.triangleBVH = new TriangleBVH(packedTriangles);
+                    }
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test if every edge of some triangles is shared by another triangle,
+     * i.e., if they enclose a volume, e.g., not an open box whose triangles
+     * all lie on the boundary of its hull. Edges are matched by the positions
+     * of their vertexes, as a vertex may be repeated with other normals.
+     */
+    private static boolean isClosed(PackedTriangles packedTriangles) {
+        int trianglesCount = packedTriangles.getTrianglesCount();
+        double[][] edges = new double[3 * trianglesCount][];
+        double[] p = new double[9];
+        for (int t = 0; t < trianglesCount; t++) {
+            packedTriangles.getVertex(t, 0, p, 0);
+            packedTriangles.getVertex(t, 1, p, 3);
+            packedTriangles.getVertex(t, 2, p, 6);
+            for (int k = 0; k < 3; k++) {
+                int a = 3 * k, b = 3 * ((k + 1) % 3);
+                //The lesser vertex first, so both triangles give the same edge
+                if (compare(p, a, p, b) > 0) {
+                    int swap = a;
+                    a = b;
+                    b = swap;
+                }
+                edges[3 * t + k] = new double[]{p[a], p[a + 1], p[a + 2], p[b], p[b + 1], p[b + 2]};
+            }
+        }
+        Comparator<double[]> order = (e1, e2) -> {
+            int c = compare(e1, 0, e2, 0);
+            return c != 0 ? c : compare(e1, 3, e2, 3);
+        };
+        sort(edges, order);
+        for (int i = 0; i < edges.length;) {
+            int j = i + 1;
+            while (j < edges.length && order.compare(edges[i], edges[j]) == 0) {
+                j++;
+            }
+            if (j - i < 2) {
+                return false;
+            }
+            i = j;
+        }
+        return true;
+    }
+
+    /**
+     * Compare two points lexicographically, by x, then y, then z.
+     */
+    private static int compare(double[] p1, int offset1, double[] p2, int offset2) {
+        for (int k = 0; k < 3; k++) {
+            int c = Double.compare(p1[offset1 + k], p2[offset2 + k]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TriangleBVH getTriangleBVH() {
+        if (this.triangleBVH == null && this.vertices != null && this.verticesSize >= 3) {
+            this.triangleBVH = new TriangleBVH(this);
+        }
+        return this.triangleBVH;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTriangleBVH(TriangleBVH triangleBVH) {
+        this.triangleBVH = triangleBVH;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -279,6 +436,13 @@ public class PolygonMesh extends Mesh {
         }
         this.max = new Vector3D(max_x, max_y, max_z);
         this.min = new Vector3D(min_x, min_y, min_z);
+
+        if (this.verticesSize >= 3) {
+            double[] hullVertices = ConvexHull.getVertices(vertexSet, this.verticesSize);
+            this.hull = new HullSupport(hullVertices, hullVertices.length / 3);
+        }
+        this.triangleBVH = null;
+        this.isConvex = null;
     }
 
     /**
@@ -338,6 +502,7 @@ public class PolygonMesh extends Mesh {
     public void setVertexIndices(int[] vertexIndices) {
         this.vertexIndices = (IntBuffer) newDirectGLBuffer(GL_INT, vertexIndices.length);
         this.vertexIndices.put(vertexIndices);
+        this.triangleBVH = null;
     }
 
     /**
@@ -21,6 +21,9 @@
  */
 package jot.math.geometry.shape;
 
+import jot.physics.HitRecord;
+import jot.physics.IntersectionResult;
+import jot.physics.Ray;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
 /**
@@ -45,6 +48,83 @@ public abstract class AbstractRayTracerShape extends AbstractShape {
      */
     public Shape shape;
 
+    /**
+     * Per thread hit records to use when only the occurrence of a hit
+     * matters.
+     */
+    private static final ThreadLocal<HitRecord> OCCLUSION_HITS
+            = ThreadLocal.withInitial(HitRecord::new);
+
+    /**
+     * Get the axis aligned bounds of the shape.
+     *
+     * @param bounds array where to store the minimum XYZ then maximum XYZ
+     * coordinates, starting at offset.
+     * @param offset the index of bounds where to start storing.
+     * @return true if the shape is bounded, false otherwise (e.g., planes).
+     */
+    public boolean getBounds(double[] bounds, int offset) {
+        return false;
+    }
+
+    /**
+     * Intersect a ray, given by its origin and direction coordinates, with
+     * the shape. Shapes override this method to avoid allocating, the default
+     * implementation delegates on intersect(Ray).
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @param hit record where to store the hit data if the shape is hit, left
+     * unchanged otherwise.
+     * @return TRUE if the ray hits the shape within (tMin, tMax), FALSE
+     * otherwise.
+     */
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        IntersectionResult result = this.intersect(
+                new Ray(new Vector3D(ox, oy, oz), new Vector3D(dx, dy, dz)));
+        if (!result.isHit() || !(result.getTarget() > tMin && result.getTarget() < tMax)) {
+            return false;
+        }
+        Vector3D normal = result.getNormal();
+        hit.t = result.getTarget();
+        hit.u = hit.v = 0;
+        hit.primitive = -1;
+        hit.nx = normal.getX();
+        hit.ny = normal.getY();
+        hit.nz = normal.getZ();
+        hit.object = this;
+        return true;
+    }
+
+    /**
+     * Test if a ray, given by its origin and direction coordinates, hits the
+     * shape within (tMin, tMax), without computing the closest hit.
+     *
+     * @param ox the ray origin X coordinate.
+     * @param oy the ray origin Y coordinate.
+     * @param oz the ray origin Z coordinate.
+     * @param dx the ray direction X coordinate.
+     * @param dy the ray direction Y coordinate.
+     * @param dz the ray direction Z coordinate.
+     * @param tMin the minimum ray distance to consider.
+     * @param tMax the maximum ray distance to consider.
+     * @return TRUE if the ray hits the shape within (tMin, tMax), FALSE
+     * otherwise.
+     */
+    public boolean occludes(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax) {
+        return this.intersect(ox, oy, oz, dx, dy, dz, tMin, tMax, OCCLUSION_HITS.get());
+    }
+
     /**
      * Types of shapes: SPHERE, PLANE, and TRIANGLE.
      */
@@ -0,0 +1,204 @@
+/*
+ * This file is part of the JOT game engine geometry framework toolkit
+ * component. 
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.shape;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.BVH;
+import jot.math.geometry.bounding.BVH.OcclusionTest;
+import jot.math.geometry.bounding.BVH.PrimitiveVisitor;
+import static jot.math.geometry.shape.AbstractRayTracerShape.Shape.TRIANGLE;
+import static jot.math.geometry.shape.RayTracerBVH.EPS;
+import jot.physics.HitRecord;
+import jot.physics.IntersectionResult;
+import static jot.physics.IntersectionResult.MISS;
+import jot.physics.Material;
+import jot.physics.Ray;
+import static jot.util.FrameworkOptions.frameworkOptions;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
+
+/**
+ * Class that implements a triangle mesh shape, i.e., packed triangles with
+ * their own BVH, all sharing the same emission, color and material.
+ *
+ * If useRayTracerBVH is off every triangle is tested instead, as every shape
+ * of the scene is then, so that either path can check the other.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class RayTracerMesh extends AbstractRayTracerShape {
+
+    static final Logger log = getLogger("RayTracerMesh");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private final PackedTriangles triangles;
+    private final BVH bvh;
+    private final ThreadLocal<TriangleVisitor> visitors
+            = ThreadLocal.withInitial(TriangleVisitor::new);
+    private final ThreadLocal<HitRecord> hits = ThreadLocal.withInitial(HitRecord::new);
+
+    /**
+     * Constructor.
+     *
+     * @param triangles the packed triangles of the mesh.
+     * @param emission the mesh emission.
+     * @param color the mesh color.
+     * @param material the mesh material.
+     */
+    public RayTracerMesh(PackedTriangles triangles,
+            Vector3D emission, Vector3D color, Material material) {
+        this.triangles = triangles;
+        this.emission = emission;
+        this.color = color;
+        this.material = material;
+        this.shape = TRIANGLE;
+        this.bvh = new BVH(triangles.getBounds(), triangles.getTrianglesCount());
+    }
+
+    /**
+     * Get the packed triangles of the mesh.
+     *
+     * @return the packed triangles of the mesh.
+     */
+    public PackedTriangles getTriangles() {
+        return this.triangles;
+    }
+
+    @Override
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        TriangleVisitor visitor = this.visitors.get();
+        visitor.set(ox, oy, oz, dx, dy, dz, tMin, hit);
+        if (frameworkOptions.get("useRayTracerBVH")) {
+            this.bvh.intersect(ox, oy, oz, dx, dy, dz, tMin, tMax, visitor);
+        } else {
+            for (int i = 0; i < this.triangles.getTrianglesCount(); i++) {
+                tMax = visitor.visit(i, tMax);
+            }
+        }
+        visitor.hit = null;
+        if (!visitor.found) {
+            return false;
+        }
+        hit.object = this;
+        return true;
+    }
+
+    @Override
+    public boolean occludes(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax) {
+        TriangleVisitor visitor = this.visitors.get();
+        visitor.set(ox, oy, oz, dx, dy, dz, tMin, this.hits.get());
+        boolean occluded = false;
+        if (frameworkOptions.get("useRayTracerBVH")) {
+            occluded = this.bvh.occluded(ox, oy, oz, dx, dy, dz, tMin, tMax, visitor);
+        } else {
+            for (int i = 0; i < this.triangles.getTrianglesCount() && !occluded; i++) {
+                occluded = visitor.occludes(i, tMax);
+            }
+        }
+        visitor.hit = null;
+        return occluded;
+    }
+
+    @Override
+    public IntersectionResult intersect(Ray ray) {
+        HitRecord hit = this.hits.get();
+        hit.reset();
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        if (!this.intersect(o.getX(), o.getY(), o.getZ(),
+                d.getX(), d.getY(), d.getZ(), EPS, POSITIVE_INFINITY, hit)) {
+            return MISS;
+        }
+        return new IntersectionResult(ray, hit.t, this,
+                new Vector3D(hit.nx, hit.ny, hit.nz));
+    }
+
+    @Override
+    public boolean getBounds(double[] bounds, int offset) {
+        return this.bvh.getBounds(bounds, offset);
+    }
+
+    /**
+     * The normal of a mesh depends on the triangle hit, hence it is provided
+     * by the intersection result instead.
+     *
+     * @param intersectionPoint the point of a intersection test.
+     * @return ZERO vector.
+     */
+    @Override
+    public Vector3D getNormal(Vector3D intersectionPoint) {
+        return ZERO;
+    }
+
+    /**
+     * Per thread ray state used while traversing the BVH of the mesh, both
+     * for closest hit and for occlusion queries.
+     */
+    private class TriangleVisitor implements PrimitiveVisitor, OcclusionTest {
+
+        double ox, oy, oz, dx, dy, dz, tMin;
+        HitRecord hit;
+        boolean found;
+
+        void set(double ox, double oy, double oz,
+                double dx, double dy, double dz,
+                double tMin, HitRecord hit) {
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+            this.tMin = tMin;
+            this.hit = hit;
+            this.found = false;
+        }
+
+        @Override
+        public double visit(int primitive, double tMax) {
+            if (RayTracerMesh.this.triangles.intersect(primitive,
+                    this.ox, this.oy, this.oz, this.dx, this.dy, this.dz,
+                    this.tMin, tMax, this.hit)) {
+                this.found = true;
+                return this.hit.t;
+            }
+            return tMax;
+        }
+
+        @Override
+        public boolean occludes(int primitive, double tMax) {
+            return RayTracerMesh.this.triangles.intersect(primitive,
+                    this.ox, this.oy, this.oz, this.dx, this.dy, this.dz,
+                    this.tMin, tMax, this.hit);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.math.geometry.shape.AbstractRayTracerShape.Shape.PLANE;
+import jot.physics.HitRecord;
 import jot.physics.IntersectionResult;
 import static jot.physics.IntersectionResult.MISS;
 import jot.physics.Material;
@@ -77,6 +78,30 @@ public class RayTracerPlane extends AbstractRayTracerShape {
         return new IntersectionResult(ray, (dotProduct(ray.getOrigin(), this.normal) + this.offset) / -denom, this);
     }
 
+    @Override
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        double nx = this.normal.getX(), ny = this.normal.getY(), nz = this.normal.getZ();
+        double denom = nx * dx + ny * dy + nz * dz;
+        if (denom > 0) {
+            return false;
+        }
+        double t = (ox * nx + oy * ny + oz * nz + this.offset) / -denom;
+        if (!(t > tMin && t < tMax)) {
+            return false;
+        }
+
+        hit.t = t;
+        hit.u = hit.v = 0;
+        hit.primitive = -1;
+        hit.nx = nx;
+        hit.ny = ny;
+        hit.nz = nz;
+        hit.object = this;
+        return true;
+    }
+
     @Override
     public Vector3D getNormal(Vector3D intersectionPoint) {
         return this.normal;
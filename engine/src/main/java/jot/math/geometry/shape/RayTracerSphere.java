@@ -26,6 +26,7 @@ import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.math.geometry.shape.AbstractRayTracerShape.Shape.SPHERE;
+import jot.physics.HitRecord;
 import jot.physics.IntersectionResult;
 import static jot.physics.IntersectionResult.MISS;
 import jot.physics.Material;
@@ -98,6 +99,55 @@ public class RayTracerSphere extends AbstractRayTracerShape {
         return new IntersectionResult(ray, tnear, this);
     }
 
+    @Override
+    public boolean intersect(double ox, double oy, double oz,
+            double dx, double dy, double dz,
+            double tMin, double tMax, HitRecord hit) {
+        double vx = this.center.getX() - ox;
+        double vy = this.center.getY() - oy;
+        double vz = this.center.getZ() - oz;
+        double vv = vx * vx + vy * vy + vz * vz;
+        double rr = this.radius * this.radius;
+        if (this.material.isOpaque() && vv < rr) {
+            return false;
+        }
+        double b = vx * dx + vy * dy + vz * dz;
+        double discriminant = b * b - vv + rr;
+        if (discriminant < 0) {
+            return false;
+        }
+        double d = sqrt(discriminant);
+        double tfar = b + d;
+        if (tfar <= this.eps) {
+            return false;
+        }
+        double tnear = b - d;
+        double t = tnear <= this.eps ? tfar : tnear;
+        if (!(t > tMin && t < tMax)) {
+            return false;
+        }
+
+        hit.t = t;
+        hit.u = hit.v = 0;
+        hit.primitive = -1;
+        hit.nx = (ox + t * dx - this.center.getX()) / this.radius;
+        hit.ny = (oy + t * dy - this.center.getY()) / this.radius;
+        hit.nz = (oz + t * dz - this.center.getZ()) / this.radius;
+        hit.object = this;
+        return true;
+    }
+
+    @Override
+    public boolean getBounds(double[] bounds, int offset) {
+        bounds[offset] = this.center.getX() - this.radius;
+        bounds[offset + 1] = this.center.getY() - this.radius;
+        bounds[offset + 2] = this.center.getZ() - this.radius;
+        bounds[offset + 3] = this.center.getX() + this.radius;
+        bounds[offset + 4] = this.center.getY() + this.radius;
+        bounds[offset + 5] = this.center.getZ() + this.radius;
+        return true;
+    }
+
     @Override
     public Vector3D getNormal(Vector3D intersectionPoint) {
         return intersectionPoint.subtract(this.center).normalize();
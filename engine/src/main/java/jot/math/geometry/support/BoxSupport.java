@@ -0,0 +1,132 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.geometry.support;
+
+import static java.lang.System.arraycopy;
+
+/**
+ * Class that implements the support mapping of a box, axis aligned or
+ * oriented by a rotation.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class BoxSupport extends AbstractSupportMapping {
+
+    private double cx, cy, cz, hx, hy, hz;
+    private final double[] rotation = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+
+    /**
+     * Constructor of a axis aligned box.
+     *
+     * @param minX the minimum x coordinate of the box.
+     * @param minY the minimum y coordinate of the box.
+     * @param minZ the minimum z coordinate of the box.
+     * @param maxX the maximum x coordinate of the box.
+     * @param maxY the maximum y coordinate of the box.
+     * @param maxZ the maximum z coordinate of the box.
+     */
+    public BoxSupport(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        this.setBounds(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Set this box as a axis aligned box.
+     *
+     * @param minX the minimum x coordinate of the box.
+     * @param minY the minimum y coordinate of the box.
+     * @param minZ the minimum z coordinate of the box.
+     * @param maxX the maximum x coordinate of the box.
+     * @param maxY the maximum y coordinate of the box.
+     * @param maxZ the maximum z coordinate of the box.
+     */
+    public final void setBounds(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        this.cx = (minX + maxX) / 2;
+        this.cy = (minY + maxY) / 2;
+        this.cz = (minZ + maxZ) / 2;
+        this.hx = (maxX - minX) / 2;
+        this.hy = (maxY - minY) / 2;
+        this.hz = (maxZ - minZ) / 2;
+        this.setRotation(null);
+    }
+
+    /**
+     * Set this box as a oriented box.
+     *
+     * @param cx the x coordinate of the box center.
+     * @param cy the y coordinate of the box center.
+     * @param cz the z coordinate of the box center.
+     * @param hx the half length of the box along its local x axis.
+     * @param hy the half length of the box along its local y axis.
+     * @param hz the half length of the box along its local z axis.
+     * @param rotation the 3x3 rotation matrix of the box, row by row, whose
+     * columns are the box axes, or NULL for a axis aligned box.
+     */
+    public void set(double cx, double cy, double cz, double hx, double hy, double hz,
+            double[] rotation) {
+        this.cx = cx;
+        this.cy = cy;
+        this.cz = cz;
+        this.hx = hx;
+        this.hy = hy;
+        this.hz = hz;
+        this.setRotation(rotation);
+    }
+
+    private void setRotation(double[] rotation) {
+        if (rotation == null) {
+            for (int i = 0; i < 9; i++) {
+                this.rotation[i] = i % 4 == 0 ? 1 : 0;
+            }
+        } else {
+            arraycopy(rotation, 0, this.rotation, 0, 9);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getSupport(double dx, double dy, double dz, double[] support, int offset) {
+        double[] r = this.rotation;
+        //The direction in the box axes, whose signs pick the farthest corner
+        double lx = r[0] * dx + r[3] * dy + r[6] * dz;
+        double ly = r[1] * dx + r[4] * dy + r[7] * dz;
+        double lz = r[2] * dx + r[5] * dy + r[8] * dz;
+        double x = lx < 0 ? -this.hx : this.hx;
+        double y = ly < 0 ? -this.hy : this.hy;
+        double z = lz < 0 ? -this.hz : this.hz;
+        support[offset] = this.cx + r[0] * x + r[1] * y + r[2] * z;
+        support[offset + 1] = this.cy + r[3] * x + r[4] * y + r[5] * z;
+        support[offset + 2] = this.cz + r[6] * x + r[7] * y + r[8] * z;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getCenter(double[] center, int offset) {
+        center[offset] = this.cx;
+        center[offset + 1] = this.cy;
+        center[offset + 2] = this.cz;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.sampling;
+
+/**
+ * Abstract class that each sample generator must implement. A sample
+ * generator provides the random numbers, in [0, 1), used to render a image,
+ * e.g., to jitter camera rays or to sample directions. The numbers of each
+ * camera sample are keyed by its pixel, its index within the pixel and the
+ * seed of the generator, so renders are reproducible regardless of which
+ * thread renders which pixel.
+ *
+ * Generators are stateful, hence each worker thread must use its own.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public abstract class AbstractSampleGenerator {
+
+    /**
+     * The seed of the generator.
+     */
+    protected final long seed;
+
+    /**
+     * The pixel of the current sample.
+     */
+    protected int x, y;
+
+    /**
+     * The index of the current sample within its pixel.
+     */
+    protected int sampleIndex;
+
+    /**
+     * The index of the next number of the current sample.
+     */
+    protected int dimension;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the seed of the generator.
+     */
+    protected AbstractSampleGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the seed of the generator.
+     *
+     * @return the seed of the generator.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Start a new camera sample, which must be invoked before drawing its
+     * numbers.
+     *
+     * @param x the pixel column.
+     * @param y the pixel row.
+     * @param sampleIndex the index of the sample within the pixel, which
+     * should keep increasing over progressive passes.
+     */
+    public void startSample(int x, int y, int sampleIndex) {
+        this.x = x;
+        this.y = y;
+        this.sampleIndex = sampleIndex;
+        this.dimension = 0;
+    }
+
+    /**
+     * Get the next number of the current sample.
+     *
+     * @return the next number of the current sample, in [0, 1).
+     */
+    public abstract double next();
+
+    /**
+     * Hash the seed, the pixel, and a value into a 64 bit key.
+     *
+     * @param value a given value, e.g., a sample index or a dimension.
+     * @return the key.
+     */
+    protected long hash(long value) {
+        long h = mix(this.seed + 0x9E3779B97F4A7C15L);
+        h = mix(h ^ (this.x & 0xFFFFFFFFL | (long) this.y << 32));
+        return mix(h ^ value);
+    }
+
+    /**
+     * SplitMix64 finalizer, i.e., a 64 bit mixing function.
+     *
+     * @param z a given value.
+     * @return the mixed value.
+     */
+    protected static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Convert the 53 high bits of a given value into a number in [0, 1).
+     *
+     * @param bits a given value.
+     * @return a number in [0, 1).
+     */
+    protected static double toUnit(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.sampling;
+
+/**
+ * Class that implements a purely random sample generator, i.e., a xorshift64*
+ * pseudo random number generator seeded at the start of each sample from its
+ * pixel, index and the generator seed.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class RandomSampleGenerator extends AbstractSampleGenerator {
+
+    private long state;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the seed of the generator.
+     */
+    public RandomSampleGenerator(long seed) {
+        super(seed);
+        this.startSample(0, 0, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startSample(int x, int y, int sampleIndex) {
+        super.startSample(x, y, sampleIndex);
+        this.state = this.hash(sampleIndex);
+        if (this.state == 0) {
+            this.state = 0x9E3779B97F4A7C15L;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double next() {
+        this.dimension++;
+        this.state ^= this.state >>> 12;
+        this.state ^= this.state << 25;
+        this.state ^= this.state >>> 27;
+        return toUnit(this.state * 0x2545F4914F6CDD1DL);
+    }
+}
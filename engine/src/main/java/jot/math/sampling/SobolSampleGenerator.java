@@ -0,0 +1,99 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.math.sampling;
+
+import static java.lang.Integer.reverse;
+
+/**
+ * Class that implements a low discrepancy sample generator, i.e., the first
+ * two dimensions of the Sobol sequence padded to any number of dimensions.
+ * Each pair of numbers of a sample is a point of the 2D Sobol sequence, Owen
+ * scrambled and shuffled with hashes keyed by the seed, the pixel and the pair
+ * of dimensions, following Burley's "Practical Hash-based Owen Scrambling".
+ * Any number of samples per pixel is well distributed, and powers of two are
+ * best, which suits progressive rendering.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class SobolSampleGenerator extends AbstractSampleGenerator {
+
+    private double second;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the seed of the generator.
+     */
+    public SobolSampleGenerator(long seed) {
+        super(seed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double next() {
+        int d = this.dimension++;
+        if ((d & 1) == 1) {
+            return this.second;
+        }
+
+        long key = this.hash(d >>> 1);
+        int index = nestedUniformScramble(this.sampleIndex, (int) key);
+        this.second = fixedPointToUnit(nestedUniformScramble(sobol1(index), (int) mix(key)));
+        return fixedPointToUnit(nestedUniformScramble(reverse(index), (int) (key >>> 32)));
+    }
+
+    /**
+     * Second dimension of the Sobol sequence, most significant bit first.
+     */
+    private static int sobol1(int index) {
+        int result = 0;
+        for (int v = 1 << 31; index != 0; index >>>= 1, v ^= v >>> 1) {
+            if ((index & 1) != 0) {
+                result ^= v;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Owen scrambling of a 32 bit fixed point number, most significant bit
+     * first.
+     */
+    private static int nestedUniformScramble(int x, int seed) {
+        x = reverse(x);
+        //Laine and Karras permutation
+        x += seed;
+        x ^= x * 0x6c50b47c;
+        x ^= x * 0xb82f1e52;
+        x ^= x * 0xc7afe638;
+        x ^= x * 0x8d22f6e6;
+        return reverse(x);
+    }
+
+    /**
+     * Convert a 32 bit fixed point number into a number in [0, 1).
+     */
+    private static double fixedPointToUnit(int bits) {
+        return (bits & 0xFFFFFFFFL) * 0x1.0p-32;
+    }
+}
@@ -22,6 +22,7 @@
 package jot.physics;
 
 import jot.manager.SceneManager;
+import jot.math.geometry.shape.AbstractRayTracerShape;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
 /**
@@ -45,4 +46,55 @@ public abstract class AbstractRayTracerMaterial extends Material {
             SceneManager sceneManager,
             Ray ray, int depth,
             IntersectionResult intersection);
+
+    /**
+     * Test if the material only scatters light along discrete directions
+     * (e.g., mirrors and glass), in which case it cannot be evaluated for
+     * arbitrary directions, e.g., towards lights.
+     *
+     * @return TRUE if the material scattering is a delta distribution, FALSE
+     * otherwise.
+     */
+    public abstract boolean isDelta();
+
+    /**
+     * Sample the direction in which an incident ray is scattered at a hit.
+     *
+     * @param shape the shape hit.
+     * @param hit the hit record, with the shape normal at the hit point.
+     * @param dx the incident direction X coordinate.
+     * @param dy the incident direction Y coordinate.
+     * @param dz the incident direction Z coordinate.
+     * @param u1 a uniform random number in [0, 1).
+     * @param u2 a uniform random number in [0, 1).
+     * @param u3 a uniform random number in [0, 1).
+     * @param scattered array where to store the scattered direction XYZ, then
+     * the throughput weight RGB (i.e., BSDF times cosine over pdf), then the
+     * pdf of the direction (0 for delta materials).
+     * @return TRUE if the ray is scattered, FALSE if it is absorbed.
+     */
+    public abstract boolean sample(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double u1, double u2, double u3, double[] scattered);
+
+    /**
+     * Evaluate the scattering of a incident ray at a hit towards a given
+     * direction.
+     *
+     * @param shape the shape hit.
+     * @param hit the hit record, with the shape normal at the hit point.
+     * @param dx the incident direction X coordinate.
+     * @param dy the incident direction Y coordinate.
+     * @param dz the incident direction Z coordinate.
+     * @param wx the scattered direction X coordinate.
+     * @param wy the scattered direction Y coordinate.
+     * @param wz the scattered direction Z coordinate.
+     * @param f array where to store the BSDF times cosine RGB, then the pdf
+     * with which sample picks the scattered direction.
+     * @return TRUE if light is scattered towards the given direction, FALSE
+     * otherwise (always for delta materials).
+     */
+    public abstract boolean evaluate(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double wx, double wy, double wz, double[] f);
 }
@@ -20,6 +20,7 @@
  */
 package jot.physics;
 
+import static java.lang.Double.POSITIVE_INFINITY;
 import static java.lang.String.format;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -30,8 +31,15 @@ import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import static jot.math.Distance.getDistance;
-import static jot.math.GJK.BodiesIntersect;
 import jot.math.geometry.bounding.AbstractBoundingVolume;
+import jot.physics.collision.AbstractBroadPhase;
+import jot.physics.collision.ContactCache;
+import static jot.physics.collision.ContinuousCollision.getTimeOfImpact;
+import static jot.physics.collision.ContinuousCollision.isSwept;
+import jot.physics.collision.DynamicAABBTree;
+import jot.physics.collision.NarrowPhase;
+import jot.physics.collision.SpatialHashGrid;
+import jot.physics.collision.SweepAndPrune;
 import static jot.util.ExtensionPhysicsOptions.extensionPhysicsOptions;
 import jot.util.GameObject;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
@@ -39,7 +47,9 @@ import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
 
 /**
  * Class that implements broad/narrow phase collision detection among each pair
- * of available bounding volumes, and among multiple objects in the scene.
+ * of available bounding volumes, and among multiple objects in the scene. The
+ * mutable objects tested against another object are, if a broad phase is
+ * updated every tick, only the ones near said object.
  *
  * @author G. Amador {@literal &} A. Gomes
  */
@@ -50,15 +60,173 @@ public class CollisionHandler {
     static final Logger log = getLogger("CollisionHandler");
 
     /**
-     * The last position in which a collision with another object in the scene
-     * occurred.
+     * The broad phase of the mutable objects, the collection it was last
+     * updated from, and the candidates of the last query of each thread.
      */
-    public static Vector3D lastCollisionPosition;
+    private static AbstractBroadPhase broadPhase;
+    private static Collection<GameObject> broadPhaseObjects;
+    private static final ThreadLocal<ArrayList<GameObject>> candidates = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * The mutable objects found to hit the last object tested by each thread.
+     */
+    private static final ThreadLocal<ArrayList<GameObject>> hits = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * The candidates of the last query of a tree of immutable objects by each
+     * thread.
+     */
+    private static final ThreadLocal<ArrayList<GameObject>> immutableCandidates = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * The narrow phase of each thread testing collisions.
+     */
+    private static final ThreadLocal<NarrowPhase> narrowPhases = ThreadLocal.withInitial(NarrowPhase::new);
+
+    /**
+     * The contacts of the pairs tested by the narrow phase in the last ticks.
+     */
+    private static final ContactCache contactCache = new ContactCache();
 
     static {
         log.setLevel(OFF);
     }
 
+    /**
+     * Update the broad phase of the mutable objects in the scene, which must
+     * be done after moving them and before testing them for collisions, so
+     * that each test only goes through the mutable objects near the tested
+     * object instead of all of them.
+     *
+     * The broad phase is a sweep and prune if useSweepAndPruneBroadPhase is
+     * on, a spatial hash grid if useSpatialHashBroadPhase is on, none
+     * otherwise.
+     *
+     * @param mutableObjects the mutable objects in the scene, the same
+     * collection later given to the collision tests.
+     */
+    public static void updateBroadPhase(Collection<GameObject> mutableObjects) {
+        contactCache.advance();
+        if (extensionPhysicsOptions.get("useSweepAndPruneBroadPhase")) {
+            if (!(broadPhase instanceof SweepAndPrune)) {
+                broadPhase = new SweepAndPrune();
+            }
+        } else if (extensionPhysicsOptions.get("useSpatialHashBroadPhase")) {
+            if (!(broadPhase instanceof SpatialHashGrid)) {
+                broadPhase = new SpatialHashGrid();
+            }
+        } else {
+            broadPhase = null;
+            broadPhaseObjects = null;
+            return;
+        }
+        broadPhase.update(mutableObjects);
+        broadPhaseObjects = mutableObjects;
+    }
+
+    /**
+     * Remove a mutable object from the broad phase, e.g., when it is removed
+     * from the scene between broad phase updates.
+     *
+     * @param mutableObject the mutable object to remove.
+     */
+    public static void removeFromBroadPhase(GameObject mutableObject) {
+        if (broadPhase != null) {
+            broadPhase.remove(mutableObject);
+        }
+    }
+
+    /**
+     * Get the broad phase of the mutable objects in the scene.
+     *
+     * @return the broad phase of the mutable objects, NULL if broad phase
+     * structures are off or were never updated.
+     */
+    public static AbstractBroadPhase getBroadPhase() {
+        return broadPhase;
+    }
+
+    /**
+     * Get the mutable objects that might collide with a given object, i.e.,
+     * the ones found by the broad phase if it was updated from the given
+     * mutable objects, all of them otherwise.
+     *
+     * @param object the object to test.
+     * @param mutableObjects the mutable objects in the scene.
+     * @return iterator over the mutable objects that might collide.
+     */
+    private static Iterator<GameObject> getCandidates(GameObject object,
+            ConcurrentLinkedQueue<GameObject> mutableObjects) {
+        if (broadPhase == null || broadPhaseObjects != mutableObjects) {
+            return mutableObjects.iterator();
+        }
+        ArrayList<GameObject> objectCandidates = candidates.get();
+        objectCandidates.clear();
+        broadPhase.query(object, objectCandidates);
+        return objectCandidates.iterator();
+    }
+
+    /**
+     * Find the mutable objects in the scene that hit a given object, without
+     * removing them from the scene, so that several objects may be tested at
+     * once by different threads, as long as no mutable object is moved,
+     * added or removed meanwhile.
+     *
+     * If either object is swept, i.e., uses continuous collision detection,
+     * their bounding volumes are tested along the whole step instead, and the
+     * narrow phase is skipped.
+     *
+     * @param object given immutable or mutable object, or player's
+     * GameObject.
+     * @param mutableObjects a linked queue with all the mutable objects in the
+     * scene.
+     * @param isOwnedIgnored TRUE to ignore the mutable objects whose id starts
+     * with the id of the given object, e.g., the projectiles shot by a player,
+     * FALSE to ignore only the ones with the same id.
+     * @param objectHits collection where to add each mutable object found.
+     */
+    public static void findMutableObjectHits(GameObject object,
+            ConcurrentLinkedQueue<GameObject> mutableObjects,
+            boolean isOwnedIgnored, Collection<GameObject> objectHits) {
+        if (extensionPhysicsOptions.get("useBroadPhaseCollisionDetection")) {
+            Iterator<GameObject> it = getCandidates(object, mutableObjects);
+            while (it.hasNext()) {
+                GameObject mutableObject = it.next();
+                if (mutableObject != object
+                        && !(isOwnedIgnored
+                                ? mutableObject.getId().startsWith(object.getId())
+                                : mutableObject.getId().equals(object.getId()))
+                        && (isSwept(object) || isSwept(mutableObject)
+                                ? getTimeOfImpact(object, mutableObject) <= 1
+                                : object.getBoundingVolume(0).isCollide(
+                                        mutableObject.getBoundingVolume(0))
+                                && narrowPhaseCollisionDetection(object, mutableObject))) {
+                    objectHits.add(mutableObject);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove from the scene the mutable objects that hit a given object.
+     *
+     * @return the damage caused by the mutable objects that hit the object.
+     */
+    private static int removeMutableObjectHits(GameObject object,
+            GameObject rootNode,
+            ConcurrentLinkedQueue<GameObject> mutableObjects,
+            boolean isOwnedIgnored, int ATTACK_DAMAGE) {
+        ArrayList<GameObject> objectHits = hits.get();
+        objectHits.clear();
+        findMutableObjectHits(object, mutableObjects, isOwnedIgnored, objectHits);
+        for (GameObject mutableObject : objectHits) {
+            mutableObjects.remove(mutableObject);
+            rootNode.removeChild(mutableObject);
+            removeFromBroadPhase(mutableObject);
+        }
+        return objectHits.size() * ATTACK_DAMAGE;
+    }
+
     /**
      * Test for all mutable objects in the scene if any collides with a
      * transform group from a given immutable object in the scene.
@@ -79,31 +247,12 @@ public class CollisionHandler {
             GameObject rootNode,
             ConcurrentLinkedQueue<GameObject> mutableObjects,
             float sceneSize, int ATTACK_DAMAGE) {
-        if (extensionPhysicsOptions.get("useBroadPhaseCollisionDetection")) {
-            Iterator<GameObject> it = mutableObjects.iterator();
-            int mutableObjectHits = 0;
-            while (it.hasNext()) {
-                boolean didHit = false;
-                GameObject mutableObject = it.next();
-                if (immutableObject.getBoundingVolume(0).isCollide(
-                        mutableObject.getBoundingVolume(0))) {
-                    if (narrowPhaseCollisionDetection(
-                            immutableObject, mutableObject)) {
-                        log.info("Mutable object hit immutable object");
-                        didHit = true;
-                        mutableObjectHits += ATTACK_DAMAGE;
-                    }
-                }
-                if (didHit) {
-                    mutableObjects.remove(mutableObject);
-                    rootNode.removeChild(mutableObject);
-                    it.remove();
-                }
-            }
-            return mutableObjectHits;
+        int mutableObjectHits = removeMutableObjectHits(immutableObject,
+                rootNode, mutableObjects, false, ATTACK_DAMAGE);
+        if (mutableObjectHits > 0) {
+            log.info("Mutable object hit immutable object");
         }
-
-        return 0;
+        return mutableObjectHits;
     }
 
     /**
@@ -125,35 +274,12 @@ public class CollisionHandler {
             GameObject mutableObject1, GameObject rootNode,
             ConcurrentLinkedQueue<GameObject> mutableObjects,
             float sceneSize, int ATTACK_DAMAGE) {
-        if (extensionPhysicsOptions.get("useBroadPhaseCollisionDetection")) {
-            int mutableObjectHits = 0;
-            Iterator<GameObject> it = mutableObjects.iterator();
-            while (it.hasNext()) {
-                boolean didHit = false;
-                GameObject mutableObject2 = it.next();
-                if (mutableObject1.getBoundingVolume(0).isCollide(
-                        mutableObject2.getBoundingVolume(0))
-                        && !mutableObject1.getId().equals(
-                                mutableObject2.getId())) {
-                    if (narrowPhaseCollisionDetection(
-                            mutableObject1, mutableObject2)) {
-                        log.info("Mutable object hit mutable object");
-                        didHit = true;
-                        mutableObjectHits += ATTACK_DAMAGE;
-                    }
-                }
-                if (didHit) {
-                    //mutableObjects.remove(mutableObject1);
-                    //rootNode.removeChild(mutableObject1);
-                    mutableObjects.remove(mutableObject2);
-                    rootNode.removeChild(mutableObject2);
-                    it.remove();
-                }
-            }
-            return mutableObjectHits;
+        int mutableObjectHits = removeMutableObjectHits(mutableObject1,
+                rootNode, mutableObjects, false, ATTACK_DAMAGE);
+        if (mutableObjectHits > 0) {
+            log.info("Mutable object hit mutable object");
         }
-
-        return 0;
+        return mutableObjectHits;
     }
 
     /**
@@ -174,10 +300,35 @@ public class CollisionHandler {
                         activeImmutableObject.getBoundingVolume(0))) {
                     if (narrowPhaseCollisionDetection(
                             player, activeImmutableObject)) {
-                        //TODO: get position in which narrowPhase collision 
-                        //happens. Following only works for broadphase
-                        lastCollisionPosition = new Vector3D(
-                                activeImmutableObject.getPosition().toArray());
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Test if a player collides with any of the immutable objects in the
+     * scene, testing only the ones whose bounds a tree finds overlapping the
+     * player bounds.
+     *
+     * @param player a given player.
+     * @param immutableObjects a tree with all obstacles in the scene.
+     * @return TRUE if collision occurs, FALSE otherwise.
+     */
+    public static boolean checkPlayerImmutableObjectCollision(
+            GameObject player, DynamicAABBTree immutableObjects) {
+        if (extensionPhysicsOptions.get("useBroadPhaseCollisionDetection")) {
+            ArrayList<GameObject> immutables = immutableCandidates.get();
+            immutables.clear();
+            immutableObjects.query(player, immutables);
+            for (GameObject activeImmutableObject : immutables) {
+                if (player.getBoundingVolume(0).isCollide(
+                        activeImmutableObject.getBoundingVolume(0))) {
+                    if (narrowPhaseCollisionDetection(
+                            player, activeImmutableObject)) {
                         return true;
                     }
                 }
@@ -206,31 +357,12 @@ public class CollisionHandler {
             GameObject rootNode,
             ConcurrentLinkedQueue<GameObject> mutableObjects,
             float sceneSize, int ATTACK_DAMAGE) {
-        if (extensionPhysicsOptions.get("useBroadPhaseCollisionDetection")) {
-            Iterator<GameObject> it = mutableObjects.iterator();
-            int mutableObjectHits = 0;
-            while (it.hasNext()) {
-                boolean didHit = false;
-                GameObject mutableObject = it.next();
-                if (player.getBoundingVolume(0).isCollide(
-                        mutableObject.getBoundingVolume(0))
-                        && !mutableObject.getId().startsWith(player.getId())) {
-                    if (narrowPhaseCollisionDetection(player, mutableObject)) {
-                        log.info(format("Mutable object hit player %s", player.getId()));
-                        didHit = true;
-                        mutableObjectHits += ATTACK_DAMAGE;
-                    }
-                }
-                if (didHit) {
-                    mutableObjects.remove(mutableObject);
-                    rootNode.removeChild(mutableObject);
-                    it.remove();
-                }
-            }
-            return mutableObjectHits;
+        int mutableObjectHits = removeMutableObjectHits(player,
+                rootNode, mutableObjects, true, ATTACK_DAMAGE);
+        if (mutableObjectHits > 0) {
+            log.info(format("Mutable object hit player %s", player.getId()));
         }
-
-        return 0;
+        return mutableObjectHits;
     }
 
     /**
@@ -303,57 +435,111 @@ public class CollisionHandler {
      * http://www.codezealot.org/archives/88
      * http://lewisresearchgroup.wikidot.com/gjk-algorithm
      *
+     * The convex hull of each mesh of the game objects is tested, under the
+     * transformations of the game objects and of their transform groups.
+     *
      * @param t1 the first GameObject that contains the mesh to test narrow
      * phase collision with m2.
      * @param t2 the second GameObject that contains the mesh to test narrow
      * phase collision with m1.
-     * @return TRUE if broad phase collision occurs, FALSE otherwise.
+     * @return TRUE if narrow phase collision occurs, or if it is off, FALSE
+     * otherwise.
      */
     private static boolean narrowPhaseCollisionDetection(
             GameObject t1, GameObject t2) {
         if (extensionPhysicsOptions.get("useNarrowPhaseCollisionDetection")) {
-            //FIXME: missing aphine transformations!!!!!
-
-//        ArrayList<ArrayList<Vector3D>> simplexes1 = t1.getMesh().getSimplexes();
-//        ArrayList<ArrayList<Vector3D>> simplexes2 = t2.getMesh().getSimplexes();
-//
-//        System.out.println("testing: " + simplexes1.size());
-//        System.out.println("against: " + simplexes2.size());
-//        System.out.println("");
-//
-//        for (ArrayList<Vector3D> simplex1 : simplexes1) {
-//            for (ArrayList<Vector3D> simplex2 : simplexes2) {
-            ArrayList<Vector3D> simplex1 = new ArrayList<>();
-            simplex1.add(new Vector3D(0, 0, 0));
-            simplex1.add(new Vector3D(1, 0, 0));
-            simplex1.add(new Vector3D(1, 1, 0));
-            simplex1.add(new Vector3D(0, 1, 0));
-            simplex1.add(new Vector3D(0, 0, -1));
-            simplex1.add(new Vector3D(1, 0, -1));
-            simplex1.add(new Vector3D(1, 1, -1));
-            simplex1.add(new Vector3D(0, 1, -1));
-
-            ArrayList<Vector3D> simplex2 = new ArrayList<>();
-            simplex2.add(new Vector3D(0.5, 0, 0));
-            simplex2.add(new Vector3D(1.5, 0, 0));
-            simplex2.add(new Vector3D(1.5, 1, 0));
-            simplex2.add(new Vector3D(0.5, 1, 0));
-            simplex2.add(new Vector3D(0.5, 0, -1));
-            simplex2.add(new Vector3D(1.5, 0, -1));
-            simplex2.add(new Vector3D(1.5, 1, -1));
-            simplex2.add(new Vector3D(0.5, 1, -1));
-            if (BodiesIntersect(simplex1, simplex2)) {
-                //System.out.println("Narrow phase collision detected!!!");
+            if (contactCache.intersect(t1, t2, narrowPhases.get())) {
                 log.info("Narrow phase collision detected!!!");
                 return true;
             }
-//            }
-//        }
             return false;
         }
         return true;
     }
 
+    /**
+     * Get the position in which two colliding game objects touch, i.e., the
+     * contact point of the deepest penetration of their meshes if narrow phase
+     * collision detection is on, the position of the second otherwise.
+     *
+     * The contact is kept per pair, and reused while the pair barely moves.
+     *
+     * @param t1 the first GameObject.
+     * @param t2 the second GameObject.
+     * @return the position of the collision.
+     */
+    public static Vector3D getCollisionPosition(GameObject t1, GameObject t2) {
+        if (extensionPhysicsOptions.get("useNarrowPhaseCollisionDetection")) {
+            return contactCache.getContactPosition(t1, t2, narrowPhases.get());
+        }
+        return new Vector3D(t2.getPosition().toArray());
+    }
+
+    /**
+     * Get the immutable object a ray hits first, e.g., the one under the mouse
+     * cursor, by the triangles of its meshes if narrow phase collision
+     * detection is on, by its bounding volume otherwise.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param immutableObjects the tree of the immutable objects in the scene.
+     * @return the immutable object hit first, NULL if none.
+     */
+    public static GameObject pickImmutableObject(Ray ray, DynamicAABBTree immutableObjects) {
+        if (!extensionPhysicsOptions.get("useNarrowPhaseCollisionDetection")) {
+            return immutableObjects.closestHit(ray, POSITIVE_INFINITY);
+        }
+        NarrowPhase narrowPhase = narrowPhases.get();
+        GameObject[] closest = new GameObject[1];
+        double[] closestDistance = {POSITIVE_INFINITY};
+        immutableObjects.rayCast(ray, POSITIVE_INFINITY, (object, distance) -> {
+            double meshDistance = narrowPhase.getRayDistance(object, ray, closestDistance[0]);
+            if (meshDistance < closestDistance[0]) {
+                closest[0] = object;
+                closestDistance[0] = meshDistance;
+            }
+            return closestDistance[0];
+        });
+        return closest[0];
+    }
+
+    /**
+     * Test if the segment between two points crosses no immutable object, by
+     * the triangles of its meshes if narrow phase collision detection is on,
+     * by its bounding volume otherwise.
+     *
+     * @param from one end of the line of sight, e.g., the eyes of a player.
+     * @param to the other end of the line of sight.
+     * @param immutableObjects the tree of the immutable objects in the scene.
+     * @return TRUE if no immutable object blocks the line of sight, FALSE
+     * otherwise.
+     */
+    public static boolean isLineOfSight(Vector3D from, Vector3D to, DynamicAABBTree immutableObjects) {
+        Ray ray = new Ray(from, to.subtract(from));
+        if (!extensionPhysicsOptions.get("useNarrowPhaseCollisionDetection")) {
+            return !immutableObjects.intersectsRay(ray, 1);
+        }
+        NarrowPhase narrowPhase = narrowPhases.get();
+        boolean[] isBlocked = new boolean[1];
+        immutableObjects.rayCast(ray, 1, (object, distance) -> {
+            if (narrowPhase.intersectsSegment(object, from, to)) {
+                isBlocked[0] = true;
+                return -1;
+            }
+            return 1;
+        });
+        return !isBlocked[0];
+    }
+
+    /**
+     * Get the cache of the contacts of the pairs tested by the narrow phase,
+     * e.g., to tune it or read its counters.
+     *
+     * @return the contact cache.
+     */
+    public static ContactCache getContactCache() {
+        return contactCache;
+    }
+
     /**
      * Don't let anyone instantiate this class.
      */
@@ -30,7 +30,9 @@ import java.util.Random;
 import static java.util.logging.Level.OFF;
 import jot.manager.SceneManager;
 import jot.math.geometry.shape.AbstractRayTracerShape;
+import static jot.math.geometry.shape.RayTracerBVH.EPS;
 import jot.math.geometry.shape.RayTracerSphere;
+import jot.math.sampling.AbstractSampleGenerator;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_I;
 import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.PLUS_J;
@@ -70,7 +72,7 @@ public class Diffuse extends AbstractRayTracerMaterial {
         final Vector3D f = obj.color;
         final Vector3D intersectionPoint = intersection.getIntersectionPoint();
         final Vector3D normal = intersection.getNormal();
-        final Vector3D d = this.sampleAroundNormal(normal);
+        final Vector3D d = this.sampleAroundNormal(normal, sampler.getSampleGenerator());
 
         final Vector3D lightRadiance = this.getLightContribution(sceneManager,
                 intersectionPoint, normal, f);
@@ -93,11 +95,13 @@ public class Diffuse extends AbstractRayTracerMaterial {
                     = light
                     .getNormal(intersectionPoint)
                     .scalarMultiply(-1);
-            final IntersectionResult lightIntersection = sceneManager.intersect(
-                    new Ray(intersectionPoint, intersection2lightDirection));
-            if (lightIntersection.isHit() && lightIntersection.getObject() == light) {
-                final Vector3D light2intersectionDirection
-                        = intersectionPoint.subtract(light.center);
+            final Vector3D light2intersectionDirection
+                    = intersectionPoint.subtract(light.center);
+            final double lightDistance
+                    = light2intersectionDirection.getNorm() - light.radius;
+            if (lightDistance > 0 && !sceneManager.occluded(
+                    new Ray(intersectionPoint, intersection2lightDirection),
+                    lightDistance - EPS)) {
                 final double cos_a_max
                         = sqrt(1 - light.radius * light.radius
                                 / dotProduct(light2intersectionDirection, light2intersectionDirection));
@@ -126,6 +130,20 @@ public class Diffuse extends AbstractRayTracerMaterial {
         return d;
     }
 
+    /**
+     * Sample around a given normal, drawing from a sample generator.
+     *
+     * @param normal a given normal.
+     * @param generator the sample generator of the current sample.
+     * @return the given normal sampling result.
+     */
+    public Vector3D sampleAroundNormal(final Vector3D normal,
+            final AbstractSampleGenerator generator) {
+        final Vector3D sampleCosineHemisphere = this.sampleCosineHemisphere(
+                generator.next(), generator.next());
+        return this.mapUnitZVector3D(sampleCosineHemisphere, normal);
+    }
+
     /**
      * Applies the rotation required from Unit Z to destinations to source.
      */
@@ -144,6 +162,10 @@ public class Diffuse extends AbstractRayTracerMaterial {
     private Vector3D sampleCosineHemisphere() {
         final double u2 = this.random.get().nextDouble();
         final double u1 = this.random.get().nextDouble();
+        return this.sampleCosineHemisphere(u1, u2);
+    }
+
+    private Vector3D sampleCosineHemisphere(final double u1, final double u2) {
         final double theta = 2 * PI * u2;
         final double r = sqrt(u1);
         final double x = r * cos(theta);
@@ -160,4 +182,81 @@ public class Diffuse extends AbstractRayTracerMaterial {
     public boolean isOpaque() {
         return true;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDelta() {
+        return false;
+    }
+
+    /**
+     * Cosine weighted sampling of the hemisphere facing the incident ray.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sample(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double u1, double u2, double u3, double[] scattered) {
+        //Normal facing the incident ray
+        double s = hit.nx * dx + hit.ny * dy + hit.nz * dz < 0 ? 1 : -1;
+        double wx = s * hit.nx, wy = s * hit.ny, wz = s * hit.nz;
+
+        //Orthonormal basis u, v, w
+        double ux, uy, uz;
+        if (abs(wx) > .1) {
+            ux = wz;
+            uy = 0;
+            uz = -wx;
+        } else {
+            ux = 0;
+            uy = -wz;
+            uz = wy;
+        }
+        double length = sqrt(ux * ux + uy * uy + uz * uz);
+        ux /= length;
+        uy /= length;
+        uz /= length;
+        double vx = wy * uz - wz * uy;
+        double vy = wz * ux - wx * uz;
+        double vz = wx * uy - wy * ux;
+
+        double theta = 2 * PI * u1;
+        double r = sqrt(u2);
+        double x = r * cos(theta);
+        double y = r * sin(theta);
+        double z = sqrt(1 - u2);
+
+        scattered[0] = ux * x + vx * y + wx * z;
+        scattered[1] = uy * x + vy * y + wy * z;
+        scattered[2] = uz * x + vz * y + wz * z;
+        scattered[3] = shape.color.getX();
+        scattered[4] = shape.color.getY();
+        scattered[5] = shape.color.getZ();
+        scattered[6] = z / PI;
+        return z > 0;
+    }
+
+    /**
+     * Lambertian BSDF, i.e., color / PI.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean evaluate(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double wx, double wy, double wz, double[] f) {
+        double s = hit.nx * dx + hit.ny * dy + hit.nz * dz < 0 ? 1 : -1;
+        double cosine = s * (hit.nx * wx + hit.ny * wy + hit.nz * wz);
+        if (cosine <= 0) {
+            return false;
+        }
+        f[0] = shape.color.getX() * cosine / PI;
+        f[1] = shape.color.getY() * cosine / PI;
+        f[2] = shape.color.getZ() * cosine / PI;
+        f[3] = cosine / PI;
+        return true;
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the JOT game engine core toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) & 
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import jot.math.geometry.shape.AbstractShape;
+
+/**
+ * Class that implements a mutable ray-shape hit record, meant to be reused
+ * (e.g., one per thread) so that intersection kernels do not allocate.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class HitRecord {
+
+    /**
+     * The distance along the ray of the hit.
+     */
+    public double t;
+
+    /**
+     * The barycentric coordinates of the hit, for triangles.
+     */
+    public double u, v;
+
+    /**
+     * The index of the hit primitive within its shape, -1 if none.
+     */
+    public int primitive;
+
+    /**
+     * The unit normal at the hit point.
+     */
+    public double nx, ny, nz;
+
+    /**
+     * The shape that was hit, null if none.
+     */
+    public AbstractShape object;
+
+    /**
+     * Default constructor, creates a record holding no hit.
+     */
+    public HitRecord() {
+        this.reset();
+    }
+
+    /**
+     * Clear this record, so that it holds no hit.
+     */
+    public void reset() {
+        this.t = POSITIVE_INFINITY;
+        this.u = this.v = 0;
+        this.primitive = -1;
+        this.nx = this.ny = this.nz = 0;
+        this.object = null;
+    }
+
+    /**
+     * Test if this record holds a hit.
+     *
+     * @return TRUE if this record holds a hit, FALSE otherwise.
+     */
+    public boolean isHit() {
+        return this.object != null;
+    }
+}
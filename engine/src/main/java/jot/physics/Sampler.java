@@ -21,15 +21,34 @@
  */
 package jot.physics;
 
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import java.util.function.Supplier;
 import static java.util.logging.Level.OFF;
 import java.util.logging.Logger;
 import static java.util.logging.Logger.getLogger;
 import jot.manager.SceneManager;
+import jot.math.geometry.shape.AbstractRayTracerShape;
+import static jot.math.geometry.shape.RayTracerBVH.EPS;
+import jot.math.geometry.shape.RayTracerSphere;
+import jot.math.sampling.AbstractSampleGenerator;
+import jot.math.sampling.SobolSampleGenerator;
+import static jot.util.FrameworkOptions.frameworkOptions;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import static org.apache.commons.math3.geometry.euclidean.threed.Vector3D.ZERO;
 
 /**
- * Class that implements the RayTracer sampler.
+ * Class that implements the RayTracer sampler. By default radiance is
+ * estimated by a iterative path tracer, with Russian roulette termination and
+ * next event estimation combined with BSDF sampling through multiple
+ * importance sampling. Otherwise each material recursively estimates the
+ * radiance through getBSDF.
  *
  * @author G. Amador {@literal &} A. Gomes
  */
@@ -41,6 +60,92 @@ public class Sampler {
         log.setLevel(OFF);
     }
 
+    private int russianRouletteDepth;
+    private int maxDepth;
+    private final ThreadLocal<PathState> states = ThreadLocal.withInitial(PathState::new);
+    private ThreadLocal<AbstractSampleGenerator> sampleGenerators
+            = ThreadLocal.withInitial(() -> new SobolSampleGenerator(0));
+
+    /**
+     * Default constructor, Russian roulette starts after 3 bounces and paths
+     * are cut after 64 bounces.
+     */
+    public Sampler() {
+        this(3, 64);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param russianRouletteDepth the number of bounces after which paths may
+     * be terminated by Russian roulette.
+     * @param maxDepth the maximum number of bounces of a path.
+     */
+    public Sampler(int russianRouletteDepth, int maxDepth) {
+        this.russianRouletteDepth = russianRouletteDepth;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Get the number of bounces after which paths may be terminated by
+     * Russian roulette.
+     *
+     * @return the number of bounces after which Russian roulette starts.
+     */
+    public int getRussianRouletteDepth() {
+        return this.russianRouletteDepth;
+    }
+
+    /**
+     * Set the number of bounces after which paths may be terminated by
+     * Russian roulette.
+     *
+     * @param russianRouletteDepth the number of bounces after which Russian
+     * roulette starts.
+     */
+    public void setRussianRouletteDepth(int russianRouletteDepth) {
+        this.russianRouletteDepth = russianRouletteDepth;
+    }
+
+    /**
+     * Get the maximum number of bounces of a path.
+     *
+     * @return the maximum number of bounces of a path.
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Set the maximum number of bounces of a path.
+     *
+     * @param maxDepth the maximum number of bounces of a path.
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Get the sample generator of the calling thread, from which all the
+     * random numbers of a radiance estimate are drawn. It must be started at
+     * each camera sample, through startSample.
+     *
+     * @return the sample generator of the calling thread.
+     */
+    public AbstractSampleGenerator getSampleGenerator() {
+        return this.sampleGenerators.get();
+    }
+
+    /**
+     * Set the sample generators to use, one per thread, by default Sobol
+     * sample generators with seed 0.
+     *
+     * @param factory creates the sample generator of each thread.
+     */
+    public void setSampleGenerator(Supplier<? extends AbstractSampleGenerator> factory) {
+        this.sampleGenerators = ThreadLocal.<AbstractSampleGenerator>withInitial(factory);
+    }
+
     /**
      * Method to calculate the radiance/color of a pixel.
      *
@@ -52,6 +157,9 @@ public class Sampler {
      * depth a pixel color, ZERO vector otherwise.
      */
     public Vector3D radiance(SceneManager sceneManager, Ray ray, int depth) {
+        if (frameworkOptions.get("useRayTracerPathTracer")) {
+            return this.pathTrace(sceneManager, ray);
+        }
         if (depth > 5) {
             return ZERO;
         }
@@ -62,4 +170,205 @@ public class Sampler {
         return ((AbstractRayTracerMaterial) intersection.getObject().getMaterial())
                 .getBSDF(this, sceneManager, ray, depth + 1, intersection);
     }
+
+    /**
+     * Iterative path tracer, estimates the radiance along a ray.
+     *
+     * @param sceneManager a copy of the manager scene.
+     * @param ray a provided Ray.
+     * @return the radiance along ray.
+     */
+    public Vector3D pathTrace(SceneManager sceneManager, Ray ray) {
+        PathState state = this.states.get();
+        AbstractSampleGenerator random = this.sampleGenerators.get();
+        HitRecord hit = state.hit;
+        double[] scattered = state.scattered;
+
+        Vector3D o = ray.getOrigin();
+        Vector3D d = ray.getDirection();
+        double ox = o.getX(), oy = o.getY(), oz = o.getZ();
+        double dx = d.getX(), dy = d.getY(), dz = d.getZ();
+        double tr = 1, tg = 1, tb = 1;
+        double lr = 0, lg = 0, lb = 0;
+        boolean deltaBounce = true;
+        double bsdfPdf = 0;
+
+        for (int depth = 0; depth < this.maxDepth; depth++) {
+            if (!sceneManager.intersect(ox, oy, oz, dx, dy, dz, POSITIVE_INFINITY, hit)) {
+                break;
+            }
+            AbstractRayTracerShape shape = (AbstractRayTracerShape) hit.object;
+            double hx = ox + hit.t * dx, hy = oy + hit.t * dy, hz = oz + hit.t * dz;
+
+            //Emission, weighted against next event estimation of the previous hit
+            Vector3D e = shape.emission;
+            if (e.getX() != 0 || e.getY() != 0 || e.getZ() != 0) {
+                double w = 1;
+                if (!deltaBounce && shape instanceof RayTracerSphere
+                        && sceneManager.lightSources.contains(shape)) {
+                    double lightPdf = this.getLightPdf((RayTracerSphere) shape, ox, oy, oz);
+                    w = powerHeuristic(bsdfPdf, lightPdf);
+                }
+                lr += tr * e.getX() * w;
+                lg += tg * e.getY() * w;
+                lb += tb * e.getZ() * w;
+            }
+
+            AbstractRayTracerMaterial material = (AbstractRayTracerMaterial) shape.getMaterial();
+
+            //Next event estimation
+            if (!material.isDelta()) {
+                for (RayTracerSphere light : sceneManager.lightSources) {
+                    if (light == shape) {
+                        continue;
+                    }
+                    this.sampleLight(sceneManager, state, random, shape, material,
+                            light, hx, hy, hz, dx, dy, dz);
+                    lr += tr * state.light[0];
+                    lg += tg * state.light[1];
+                    lb += tb * state.light[2];
+                }
+            }
+
+            //BSDF sampling
+            if (!material.sample(shape, hit, dx, dy, dz,
+                    random.next(), random.next(), random.next(), scattered)) {
+                break;
+            }
+            tr *= scattered[3];
+            tg *= scattered[4];
+            tb *= scattered[5];
+            if (tr == 0 && tg == 0 && tb == 0) {
+                break;
+            }
+            deltaBounce = material.isDelta();
+            bsdfPdf = scattered[6];
+            ox = hx;
+            oy = hy;
+            oz = hz;
+            dx = scattered[0];
+            dy = scattered[1];
+            dz = scattered[2];
+
+            //Russian roulette, its number always drawn to keep dimensions in pairs
+            double roulette = random.next();
+            if (depth + 1 >= this.russianRouletteDepth) {
+                double p = min(max(tr, max(tg, tb)), .95);
+                if (p <= 0 || roulette >= p) {
+                    break;
+                }
+                tr /= p;
+                tg /= p;
+                tb /= p;
+            }
+        }
+        return new Vector3D(lr, lg, lb);
+    }
+
+    /**
+     * Sample a direction towards a sphere light, uniformly within the cone it
+     * subtends, and store its MIS weighted contribution in state.light.
+     */
+    private void sampleLight(SceneManager sceneManager, PathState state,
+            AbstractSampleGenerator random, AbstractRayTracerShape shape,
+            AbstractRayTracerMaterial material, RayTracerSphere light,
+            double hx, double hy, double hz, double dx, double dy, double dz) {
+        double[] contribution = state.light;
+        contribution[0] = contribution[1] = contribution[2] = 0;
+        double u1 = random.next(), u2 = random.next();
+
+        double wx = light.center.getX() - hx;
+        double wy = light.center.getY() - hy;
+        double wz = light.center.getZ() - hz;
+        double distance2 = wx * wx + wy * wy + wz * wz;
+        double radius2 = light.radius * light.radius;
+        if (distance2 <= radius2) {
+            return;
+        }
+        double distance = sqrt(distance2);
+        wx /= distance;
+        wy /= distance;
+        wz /= distance;
+
+        double cosMax = sqrt(1 - radius2 / distance2);
+        double cosTheta = 1 - u1 * (1 - cosMax);
+        double sinTheta = sqrt(max(0, 1 - cosTheta * cosTheta));
+        double phi = 2 * PI * u2;
+
+        double ux, uy, uz;
+        if (abs(wx) > .1) {
+            ux = wz;
+            uy = 0;
+            uz = -wx;
+        } else {
+            ux = 0;
+            uy = -wz;
+            uz = wy;
+        }
+        double length = sqrt(ux * ux + uy * uy + uz * uz);
+        ux /= length;
+        uy /= length;
+        uz /= length;
+        double vx = wy * uz - wz * uy;
+        double vy = wz * ux - wx * uz;
+        double vz = wx * uy - wy * ux;
+
+        double x = sinTheta * cos(phi), y = sinTheta * sin(phi);
+        double lx = ux * x + vx * y + wx * cosTheta;
+        double ly = uy * x + vy * y + wy * cosTheta;
+        double lz = uz * x + vz * y + wz * cosTheta;
+
+        double[] f = state.f;
+        if (!material.evaluate(shape, state.hit, dx, dy, dz, lx, ly, lz, f)) {
+            return;
+        }
+        // Only blockers before the light surface matter, i.e., before the
+        // entry point of the sampled direction into the light sphere
+        double b = (lx * wx + ly * wy + lz * wz) * distance;
+        double lightDistance = b - sqrt(max(0, b * b - distance2 + radius2));
+        if (sceneManager.occluded(hx, hy, hz, lx, ly, lz, lightDistance - EPS)) {
+            return;
+        }
+
+        double lightPdf = 1 / (2 * PI * (1 - cosMax));
+        double w = powerHeuristic(lightPdf, f[3]) / lightPdf;
+        contribution[0] = f[0] * light.emission.getX() * w;
+        contribution[1] = f[1] * light.emission.getY() * w;
+        contribution[2] = f[2] * light.emission.getZ() * w;
+    }
+
+    /**
+     * Get the solid angle pdf with which sampleLight picks a direction
+     * towards a sphere light from a given point.
+     */
+    private double getLightPdf(RayTracerSphere light, double px, double py, double pz) {
+        double wx = light.center.getX() - px;
+        double wy = light.center.getY() - py;
+        double wz = light.center.getZ() - pz;
+        double distance2 = wx * wx + wy * wy + wz * wz;
+        double radius2 = light.radius * light.radius;
+        if (distance2 <= radius2) {
+            return 0;
+        }
+        return 1 / (2 * PI * (1 - sqrt(1 - radius2 / distance2)));
+    }
+
+    /**
+     * Power heuristic MIS weight, with beta 2, of a sampling strategy.
+     */
+    private static double powerHeuristic(double pdf, double otherPdf) {
+        double a = pdf * pdf, b = otherPdf * otherPdf;
+        return a + b > 0 ? a / (a + b) : 0;
+    }
+
+    /**
+     * Per thread path tracer scratch data.
+     */
+    private static class PathState {
+
+        final HitRecord hit = new HitRecord();
+        final double[] scattered = new double[7];
+        final double[] f = new double[4];
+        final double[] light = new double[3];
+    }
 }
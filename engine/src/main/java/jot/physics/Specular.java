@@ -95,4 +95,42 @@ public class Specular extends AbstractRayTracerMaterial {
     public boolean isOpaque() {
         return true;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDelta() {
+        return true;
+    }
+
+    /**
+     * Perfect mirror reflection.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean sample(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double u1, double u2, double u3, double[] scattered) {
+        double cosI = hit.nx * dx + hit.ny * dy + hit.nz * dz;
+        scattered[0] = dx - 2 * cosI * hit.nx;
+        scattered[1] = dy - 2 * cosI * hit.ny;
+        scattered[2] = dz - 2 * cosI * hit.nz;
+        scattered[3] = shape.color.getX();
+        scattered[4] = shape.color.getY();
+        scattered[5] = shape.color.getZ();
+        scattered[6] = 0;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean evaluate(AbstractRayTracerShape shape, HitRecord hit,
+            double dx, double dy, double dz,
+            double wx, double wy, double wz, double[] f) {
+        return false;
+    }
 }
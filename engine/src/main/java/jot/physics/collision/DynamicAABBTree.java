@@ -0,0 +1,731 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.lang.String.format;
+import static java.util.Arrays.copyOf;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.geometry.bounding.AbstractBoundingVolume;
+import static jot.math.geometry.bounding.AbstractBoundingVolume.BoundingVolumeType.SPHERE;
+import jot.physics.Ray;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a dynamic axis aligned bounding box tree, i.e., a
+ * binary tree whose leaves hold the bounds of game objects, fattened by a
+ * ratio of their size, and whose inner nodes hold the union of the bounds of
+ * their children, see Catto's Box2D b2DynamicTree.
+ *
+ * Leaves are inserted next to the node that grows the surface area of the
+ * tree the least, and the tree is kept balanced by rotations, so that
+ * queries and ray casts take logarithmic time. Moving a object only
+ * reinserts its leaf once its bounds leave the fat bounds, hence objects that
+ * barely move cost nothing. Several threads may query the tree at once, each
+ * with a scratch of its own, but not while it is updated.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class DynamicAABBTree extends AbstractBroadPhase {
+
+    static final Logger log = getLogger("DynamicAABBTree");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private static final int NULL = -1;
+
+    /**
+     * Get the distance along a ray to the first bounding volume of a game
+     * object, i.e., to its sphere or to its box.
+     *
+     * @param object the game object.
+     * @param ray the ray.
+     * @param maxDistance the distance beyond which hits are ignored.
+     * @return the distance to the bounding volume, in lengths of the ray
+     * direction, zero if the ray starts inside it, or infinity if the ray
+     * misses it.
+     */
+    public static double getRayDistance(GameObject object, Ray ray, double maxDistance) {
+        AbstractBoundingVolume volume = object.getBoundingVolume(0);
+        Vector3D o = ray.getOrigin(), d = ray.getDirection();
+        if (volume.boundingVolumeType == SPHERE) {
+            double cx = (volume.minX + volume.maxX) / 2 - o.getX();
+            double cy = (volume.minY + volume.maxY) / 2 - o.getY();
+            double cz = (volume.minZ + volume.maxZ) / 2 - o.getZ();
+            double rx = volume.maxX - volume.minX;
+            double ry = volume.maxY - volume.minY;
+            double rz = volume.maxZ - volume.minZ;
+            double r2 = (rx * rx + ry * ry + rz * rz) / 4;
+            double a = d.getX() * d.getX() + d.getY() * d.getY() + d.getZ() * d.getZ();
+            double b = d.getX() * cx + d.getY() * cy + d.getZ() * cz;
+            double c = cx * cx + cy * cy + cz * cz - r2;
+            if (c <= 0) {
+                return 0;
+            }
+            double discriminant = b * b - a * c;
+            if (b <= 0 || discriminant < 0) {
+                return POSITIVE_INFINITY;
+            }
+            double t = (b - sqrt(discriminant)) / a;
+            return t <= maxDistance ? t : POSITIVE_INFINITY;
+        }
+        return getRayDistance(volume.minX, volume.minY, volume.minZ,
+                volume.maxX, volume.maxY, volume.maxZ,
+                o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ(), maxDistance);
+    }
+
+    /**
+     * Test if a distance along a ray is of a hit not beyond a maximum one.
+     */
+    static boolean isHit(double distance, double maxDistance) {
+        return distance < POSITIVE_INFINITY && distance <= maxDistance;
+    }
+
+    /**
+     * Get the distance along a ray to a box, with the slabs test.
+     */
+    static double getRayDistance(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ, double ox, double oy, double oz,
+            double dx, double dy, double dz, double maxDistance) {
+        double near = 0, far = maxDistance;
+        if (dx == 0) {
+            if (ox < minX || ox > maxX) {
+                return POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (minX - ox) / dx, t2 = (maxX - ox) / dx;
+            near = max(near, min(t1, t2));
+            far = min(far, max(t1, t2));
+        }
+        if (dy == 0) {
+            if (oy < minY || oy > maxY) {
+                return POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (minY - oy) / dy, t2 = (maxY - oy) / dy;
+            near = max(near, min(t1, t2));
+            far = min(far, max(t1, t2));
+        }
+        if (dz == 0) {
+            if (oz < minZ || oz > maxZ) {
+                return POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (minZ - oz) / dz, t2 = (maxZ - oz) / dz;
+            near = max(near, min(t1, t2));
+            far = min(far, max(t1, t2));
+        }
+        return near <= far ? near : POSITIVE_INFINITY;
+    }
+
+    private final IdentityHashMap<GameObject, Integer> leaves = new IdentityHashMap<>();
+    private final double fatRatio;
+    private double[] fat = new double[6 * 16];
+    private double[] tight = new double[6 * 16];
+    private int[] parents = new int[16];
+    private int[] children1 = new int[16];
+    private int[] children2 = new int[16];
+    private int[] heights = new int[16];
+    private int[] stamps = new int[16];
+    private GameObject[] objects = new GameObject[16];
+    private int root = NULL, freeNode = NULL, nodeCount, stamp;
+
+    /**
+     * The traversal stack, and the bounds queried, of each thread querying
+     * this tree.
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Constructor, fattening the bounds of each object by a tenth of its size.
+     */
+    public DynamicAABBTree() {
+        this(.1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fatRatio the ratio of the size of each object by which its
+     * bounds are fattened in each direction, the larger the less often moving
+     * objects are reinserted, but the more leaves each query visits.
+     */
+    public DynamicAABBTree(double fatRatio) {
+        this.fatRatio = fatRatio;
+    }
+
+    /**
+     * Insert a game object in this tree, or move it if already inserted.
+     *
+     * @param object the game object to insert.
+     */
+    public void insert(GameObject object) {
+        if (this.leaves.containsKey(object)) {
+            this.move(object);
+            return;
+        }
+        int leaf = this.allocateNode();
+        this.objects[leaf] = object;
+        this.stamps[leaf] = this.stamp;
+        this.leaves.put(object, leaf);
+        getBounds(object, this.tight, 6 * leaf);
+        this.fatten(leaf);
+        this.insertLeaf(leaf);
+    }
+
+    /**
+     * Move a game object in this tree, i.e., refresh its bounds and reinsert
+     * it only if they left its fat bounds, or insert it if not inserted.
+     *
+     * @param object the game object to move.
+     * @return TRUE if the object was reinserted or inserted, FALSE otherwise.
+     */
+    public boolean move(GameObject object) {
+        Integer leaf = this.leaves.get(object);
+        if (leaf == null) {
+            this.insert(object);
+            return true;
+        }
+        this.stamps[leaf] = this.stamp;
+        getBounds(object, this.tight, 6 * leaf);
+        if (this.isContained(this.tight, 6 * leaf, this.fat, 6 * leaf)) {
+            return false;
+        }
+        this.removeLeaf(leaf);
+        this.fatten(leaf);
+        this.insertLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(Collection<GameObject> objects) {
+        this.stamp++;
+        int moved = 0;
+        for (GameObject object : objects) {
+            if (this.move(object)) {
+                moved++;
+            }
+        }
+        //Drop the objects no longer in the collection
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (this.objects[node] != null && this.stamps[node] != this.stamp) {
+                this.remove(this.objects[node]);
+            }
+        }
+        log.info(format("%d objects, %d reinserted, height %d", this.leaves.size(), moved, this.getHeight()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(GameObject object) {
+        Integer leaf = this.leaves.remove(object);
+        if (leaf != null) {
+            this.removeLeaf(leaf);
+            this.freeNode(leaf);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.leaves.size();
+    }
+
+    /**
+     * Get the height of this tree, i.e., the number of edges from the root to
+     * its deepest leaf.
+     *
+     * @return the height of this tree, -1 if empty.
+     */
+    public int getHeight() {
+        return this.root == NULL ? -1 : this.heights[this.root];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void query(GameObject object, Collection<GameObject> candidates) {
+        double[] bounds = this.scratch.get().bounds;
+        getBounds(object, bounds, 0);
+        this.query(bounds, 0, object, candidates);
+    }
+
+    /**
+     * Find the game objects whose bounds overlap a given box.
+     *
+     * @param bounds the minimum x, y and z followed by the maximum x, y and z
+     * of the box.
+     * @param offset the index of the box in bounds.
+     * @param candidates collection where to add each game object found once.
+     */
+    public void query(double[] bounds, int offset, Collection<GameObject> candidates) {
+        this.query(bounds, offset, null, candidates);
+    }
+
+    private void query(double[] bounds, int offset, GameObject ignored,
+            Collection<GameObject> candidates) {
+        if (this.root == NULL) {
+            return;
+        }
+        Scratch scratch = this.scratch.get();
+        int top = 0;
+        scratch.stack[top++] = this.root;
+        while (top > 0) {
+            int node = scratch.stack[--top];
+            if (!overlap(bounds, offset, this.fat, 6 * node)) {
+                continue;
+            }
+            if (this.children1[node] == NULL) {
+                if (this.objects[node] != ignored && overlap(bounds, offset, this.tight, 6 * node)) {
+                    candidates.add(this.objects[node]);
+                }
+            } else {
+                top = this.push(scratch, top, this.children1[node], this.children2[node]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void findPairs(PairVisitor visitor) {
+        if (this.root == NULL) {
+            return;
+        }
+        Scratch scratch = this.scratch.get();
+        for (int leaf = 0; leaf < this.nodeCount; leaf++) {
+            if (this.objects[leaf] == null) {
+                continue;
+            }
+            //Each pair is reported from the leaf of lower index
+            int top = 0;
+            scratch.stack[top++] = this.root;
+            while (top > 0) {
+                int node = scratch.stack[--top];
+                if (!overlap(this.tight, 6 * leaf, this.fat, 6 * node)) {
+                    continue;
+                }
+                if (this.children1[node] == NULL) {
+                    if (node > leaf && overlap(this.tight, 6 * leaf, this.tight, 6 * node)) {
+                        visitor.visit(this.objects[leaf], this.objects[node]);
+                    }
+                } else {
+                    top = this.push(scratch, top, this.children1[node], this.children2[node]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cast a ray through this tree, visiting the game objects whose bounding
+     * volume it hits, the nearest subtrees first.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @param visitor invoked with each object hit, which returns the distance
+     * beyond which further hits are ignored.
+     */
+    public void rayCast(Ray ray, double maxDistance, RayCastVisitor visitor) {
+        if (this.root == NULL) {
+            return;
+        }
+        Vector3D o = ray.getOrigin(), d = ray.getDirection();
+        double ox = o.getX(), oy = o.getY(), oz = o.getZ();
+        double dx = d.getX(), dy = d.getY(), dz = d.getZ();
+        Scratch scratch = this.scratch.get();
+        int top = 0;
+        scratch.stack[top++] = this.root;
+        while (top > 0 && maxDistance >= 0) {
+            int node = scratch.stack[--top];
+            if (!isHit(this.getRayDistance(node, ox, oy, oz, dx, dy, dz, maxDistance), maxDistance)) {
+                continue;
+            }
+            if (this.children1[node] == NULL) {
+                double distance = getRayDistance(this.objects[node], ray, maxDistance);
+                if (isHit(distance, maxDistance)) {
+                    maxDistance = visitor.visit(this.objects[node], distance);
+                }
+            } else {
+                int child1 = this.children1[node], child2 = this.children2[node];
+                //Push the farther child first, so that the nearer is visited first
+                if (this.getRayDistance(child1, ox, oy, oz, dx, dy, dz, maxDistance)
+                        < this.getRayDistance(child2, ox, oy, oz, dx, dy, dz, maxDistance)) {
+                    top = this.push(scratch, top, child2, child1);
+                } else {
+                    top = this.push(scratch, top, child1, child2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the game object whose bounding volume a ray hits first, e.g., to
+     * pick objects.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @return the game object hit first, NULL if none.
+     */
+    public GameObject closestHit(Ray ray, double maxDistance) {
+        GameObject[] closest = new GameObject[1];
+        this.rayCast(ray, maxDistance, (object, distance) -> {
+            closest[0] = object;
+            return distance;
+        });
+        return closest[0];
+    }
+
+    /**
+     * Test if a ray hits the bounding volume of any game object, e.g., to
+     * test the line of sight between two points.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @return TRUE if the ray hits any game object, FALSE otherwise.
+     */
+    public boolean intersectsRay(Ray ray, double maxDistance) {
+        boolean[] hit = new boolean[1];
+        this.rayCast(ray, maxDistance, (object, distance) -> {
+            hit[0] = true;
+            return -1;
+        });
+        return hit[0];
+    }
+
+    private double getRayDistance(int node, double ox, double oy, double oz,
+            double dx, double dy, double dz, double maxDistance) {
+        int i = 6 * node;
+        return getRayDistance(this.fat[i], this.fat[i + 1], this.fat[i + 2],
+                this.fat[i + 3], this.fat[i + 4], this.fat[i + 5],
+                ox, oy, oz, dx, dy, dz, maxDistance);
+    }
+
+    /**
+     * Insert a leaf next to the node whose union with it grows the surface
+     * area of the tree the least.
+     */
+    private void insertLeaf(int leaf) {
+        if (this.root == NULL) {
+            this.root = leaf;
+            this.parents[leaf] = NULL;
+            return;
+        }
+
+        int index = this.root;
+        while (this.children1[index] != NULL) {
+            int child1 = this.children1[index], child2 = this.children2[index];
+            double area = this.getArea(index, index);
+            double combinedArea = this.getArea(index, leaf);
+            //Cost of pairing the leaf with this node
+            double cost = 2 * combinedArea;
+            //Cost of pushing the leaf further down
+            double inheritanceCost = 2 * (combinedArea - area);
+            double cost1 = this.getDescentCost(child1, leaf) + inheritanceCost;
+            double cost2 = this.getDescentCost(child2, leaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+
+        int sibling = index;
+        int oldParent = this.parents[sibling];
+        int newParent = this.allocateNode();
+        this.parents[newParent] = oldParent;
+        this.setUnion(newParent, leaf, sibling);
+        this.heights[newParent] = this.heights[sibling] + 1;
+        if (oldParent != NULL) {
+            if (this.children1[oldParent] == sibling) {
+                this.children1[oldParent] = newParent;
+            } else {
+                this.children2[oldParent] = newParent;
+            }
+        } else {
+            this.root = newParent;
+        }
+        this.children1[newParent] = sibling;
+        this.children2[newParent] = leaf;
+        this.parents[sibling] = newParent;
+        this.parents[leaf] = newParent;
+
+        this.refit(this.parents[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == this.root) {
+            this.root = NULL;
+            return;
+        }
+        int parent = this.parents[leaf];
+        int grandParent = this.parents[parent];
+        int sibling = this.children1[parent] == leaf ? this.children2[parent] : this.children1[parent];
+        if (grandParent != NULL) {
+            if (this.children1[grandParent] == parent) {
+                this.children1[grandParent] = sibling;
+            } else {
+                this.children2[grandParent] = sibling;
+            }
+            this.parents[sibling] = grandParent;
+            this.freeNode(parent);
+            this.refit(grandParent);
+        } else {
+            this.root = sibling;
+            this.parents[sibling] = NULL;
+            this.freeNode(parent);
+        }
+    }
+
+    /**
+     * Balance and update the bounds and heights of a node and its ancestors.
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = this.balance(index);
+            int child1 = this.children1[index], child2 = this.children2[index];
+            this.heights[index] = 1 + max(this.heights[child1], this.heights[child2]);
+            this.setUnion(index, child1, child2);
+            index = this.parents[index];
+        }
+    }
+
+    /**
+     * Rotate the taller child of a node up if its children heights differ by
+     * more than one.
+     *
+     * @return the index of the node now at the place of the given node.
+     */
+    private int balance(int a) {
+        if (this.children1[a] == NULL || this.heights[a] < 2) {
+            return a;
+        }
+        int b = this.children1[a], c = this.children2[a];
+        int balance = this.heights[c] - this.heights[b];
+        if (balance > 1) {
+            int f = this.children1[c], g = this.children2[c];
+            this.rotateUp(a, c);
+            this.children1[c] = a;
+            if (this.heights[f] > this.heights[g]) {
+                this.children2[c] = f;
+                this.children2[a] = g;
+                this.parents[g] = a;
+                this.setUnion(a, b, g);
+                this.setUnion(c, a, f);
+                this.heights[a] = 1 + max(this.heights[b], this.heights[g]);
+                this.heights[c] = 1 + max(this.heights[a], this.heights[f]);
+            } else {
+                this.children2[c] = g;
+                this.children2[a] = f;
+                this.parents[f] = a;
+                this.setUnion(a, b, f);
+                this.setUnion(c, a, g);
+                this.heights[a] = 1 + max(this.heights[b], this.heights[f]);
+                this.heights[c] = 1 + max(this.heights[a], this.heights[g]);
+            }
+            return c;
+        }
+        if (balance < -1) {
+            int d = this.children1[b], e = this.children2[b];
+            this.rotateUp(a, b);
+            this.children1[b] = a;
+            if (this.heights[d] > this.heights[e]) {
+                this.children2[b] = d;
+                this.children1[a] = e;
+                this.parents[e] = a;
+                this.setUnion(a, c, e);
+                this.setUnion(b, a, d);
+                this.heights[a] = 1 + max(this.heights[c], this.heights[e]);
+                this.heights[b] = 1 + max(this.heights[a], this.heights[d]);
+            } else {
+                this.children2[b] = e;
+                this.children1[a] = d;
+                this.parents[d] = a;
+                this.setUnion(a, c, d);
+                this.setUnion(b, a, e);
+                this.heights[a] = 1 + max(this.heights[c], this.heights[d]);
+                this.heights[b] = 1 + max(this.heights[a], this.heights[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Put a child in the place of its parent, and make it the new parent of
+     * its old parent.
+     */
+    private void rotateUp(int parent, int child) {
+        int grandParent = this.parents[parent];
+        this.parents[child] = grandParent;
+        this.parents[parent] = child;
+        if (grandParent != NULL) {
+            if (this.children1[grandParent] == parent) {
+                this.children1[grandParent] = child;
+            } else {
+                this.children2[grandParent] = child;
+            }
+        } else {
+            this.root = child;
+        }
+    }
+
+    /**
+     * Get the cost of descending into a child to pair the leaf with it.
+     */
+    private double getDescentCost(int child, int leaf) {
+        return this.children1[child] == NULL
+                ? this.getArea(child, leaf)
+                : this.getArea(child, leaf) - this.getArea(child, child);
+    }
+
+    /**
+     * Get half the surface area of the union of the fat bounds of two nodes.
+     */
+    private double getArea(int node1, int node2) {
+        int i = 6 * node1, j = 6 * node2;
+        double dx = max(this.fat[i + 3], this.fat[j + 3]) - min(this.fat[i], this.fat[j]);
+        double dy = max(this.fat[i + 4], this.fat[j + 4]) - min(this.fat[i + 1], this.fat[j + 1]);
+        double dz = max(this.fat[i + 5], this.fat[j + 5]) - min(this.fat[i + 2], this.fat[j + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private void setUnion(int node, int node1, int node2) {
+        int k = 6 * node, i = 6 * node1, j = 6 * node2;
+        for (int axis = 0; axis < 3; axis++) {
+            this.fat[k + axis] = min(this.fat[i + axis], this.fat[j + axis]);
+            this.fat[k + axis + 3] = max(this.fat[i + axis + 3], this.fat[j + axis + 3]);
+        }
+    }
+
+    /**
+     * Set the fat bounds of a leaf from its bounds.
+     */
+    private void fatten(int leaf) {
+        int i = 6 * leaf;
+        double size = max(this.tight[i + 3] - this.tight[i],
+                max(this.tight[i + 4] - this.tight[i + 1], this.tight[i + 5] - this.tight[i + 2]));
+        double margin = this.fatRatio * size;
+        for (int axis = 0; axis < 3; axis++) {
+            this.fat[i + axis] = this.tight[i + axis] - margin;
+            this.fat[i + axis + 3] = this.tight[i + axis + 3] + margin;
+        }
+    }
+
+    private boolean isContained(double[] inner, int i, double[] outer, int j) {
+        return outer[j] <= inner[i] && outer[j + 1] <= inner[i + 1] && outer[j + 2] <= inner[i + 2]
+                && inner[i + 3] <= outer[j + 3] && inner[i + 4] <= outer[j + 4]
+                && inner[i + 5] <= outer[j + 5];
+    }
+
+    private int push(Scratch scratch, int top, int node1, int node2) {
+        if (top + 2 > scratch.stack.length) {
+            scratch.stack = copyOf(scratch.stack, 2 * scratch.stack.length);
+        }
+        scratch.stack[top++] = node1;
+        scratch.stack[top++] = node2;
+        return top;
+    }
+
+    private int allocateNode() {
+        int node;
+        if (this.freeNode != NULL) {
+            node = this.freeNode;
+            this.freeNode = this.parents[node];
+        } else {
+            node = this.nodeCount++;
+            if (node == this.parents.length) {
+                int length = 2 * node;
+                this.fat = copyOf(this.fat, 6 * length);
+                this.tight = copyOf(this.tight, 6 * length);
+                this.parents = copyOf(this.parents, length);
+                this.children1 = copyOf(this.children1, length);
+                this.children2 = copyOf(this.children2, length);
+                this.heights = copyOf(this.heights, length);
+                this.stamps = copyOf(this.stamps, length);
+                this.objects = copyOf(this.objects, length);
+            }
+        }
+        this.parents[node] = NULL;
+        this.children1[node] = NULL;
+        this.children2[node] = NULL;
+        this.heights[node] = 0;
+        this.objects[node] = null;
+        return node;
+    }
+
+    /**
+     * Return a node to the free list, chained through the parents.
+     */
+    private void freeNode(int node) {
+        this.objects[node] = null;
+        this.heights[node] = -1;
+        this.parents[node] = this.freeNode;
+        this.freeNode = node;
+    }
+
+    /**
+     * The scratch of a thread querying a tree.
+     */
+    private static class Scratch {
+
+        int[] stack = new int[64];
+        final double[] bounds = new double[6];
+    }
+
+    /**
+     * Visitor of the game objects hit by a ray cast.
+     */
+    public interface RayCastVisitor {
+
+        /**
+         * Visit a game object hit by the ray.
+         *
+         * @param object the game object hit.
+         * @param distance the distance along the ray to the bounding volume of
+         * the object, in lengths of the ray direction.
+         * @return the distance beyond which further hits are ignored, e.g.,
+         * the given distance to look for closer hits only, or a negative value
+         * to stop the cast.
+         */
+        double visit(GameObject object, double distance);
+    }
+}
@@ -0,0 +1,874 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit
+ * component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+import static java.lang.String.format;
+import java.util.ArrayList;
+import static java.util.Arrays.copyOf;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.gui.camera.Frustum;
+import static jot.gui.camera.Frustum.ALL_PLANES;
+import static jot.gui.camera.Frustum.INSIDE;
+import static jot.gui.camera.Frustum.OUTSIDE;
+import jot.math.geometry.bounding.AbstractBoundingVolume;
+import static jot.math.geometry.bounding.AbstractBoundingVolume.BoundingVolumeType.SPHERE;
+import jot.physics.Ray;
+import static jot.physics.collision.DynamicAABBTree.getRayDistance;
+import static jot.physics.collision.DynamicAABBTree.isHit;
+import jot.physics.collision.DynamicAABBTree.RayCastVisitor;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements a loose octree, i.e., an octree whose cells are
+ * loosened to twice their size, so that each game object is held by a single
+ * node, the deepest one whose cell holds its center and is at least as large
+ * as its bounds, see Ulrich's loose octrees in Game Programming Gems.
+ *
+ * Moving a object only relinks it once its center leaves its cell, and nodes
+ * are split on demand and freed once empty, so that scenes of a hundred
+ * thousand objects take little memory and are kept up to date in linear time.
+ * The root cell, centered at the origin, doubles whenever an object falls
+ * outside of it. Boxes, spheres, view frustums, rays and nearest neighbors
+ * are found in logarithmic time for evenly sized objects.
+ *
+ * Queries keep their state on the stack of the calling thread, so that any
+ * number of threads may query the octree at once, e.g., while updating a
+ * frame, but not while it is written, i.e., insert, move, update and remove
+ * are meant to be called by a single thread in a writer phase of their own.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class LooseOctree extends AbstractBroadPhase {
+
+    static final Logger log = getLogger("LooseOctree");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private static final int NULL = -1;
+    private static final int ROOT = 0;
+
+    /**
+     * The deepest level of a node, below which objects share the smallest
+     * cells.
+     */
+    public static final int MAX_DEPTH = 16;
+
+    /**
+     * The largest half size of the root cell, beyond which objects too far or
+     * too large are held by the root.
+     */
+    private static final double MAX_HALF = 1 << 30;
+
+    /**
+     * The octants in the order of the number of axes across which they are
+     * from the first one.
+     */
+    private static final int[] ORDER = {0, 1, 2, 4, 3, 5, 6, 7};
+
+    /**
+     * Get the distance from a point to the first bounding volume of a game
+     * object, i.e., to its sphere or to its box.
+     *
+     * @param object the game object.
+     * @param x the x coordinate of the point.
+     * @param y the y coordinate of the point.
+     * @param z the z coordinate of the point.
+     * @return the distance to the bounding volume, zero if the point is
+     * inside it.
+     */
+    public static double getDistance(GameObject object, double x, double y, double z) {
+        AbstractBoundingVolume volume = object.getBoundingVolume(0);
+        if (volume.boundingVolumeType == SPHERE) {
+            double cx = (volume.minX + volume.maxX) / 2 - x;
+            double cy = (volume.minY + volume.maxY) / 2 - y;
+            double cz = (volume.minZ + volume.maxZ) / 2 - z;
+            double rx = volume.maxX - volume.minX;
+            double ry = volume.maxY - volume.minY;
+            double rz = volume.maxZ - volume.minZ;
+            return max(0, sqrt(cx * cx + cy * cy + cz * cz)
+                    - sqrt(rx * rx + ry * ry + rz * rz) / 2);
+        }
+        return sqrt(getDistance2(volume.minX, volume.minY, volume.minZ,
+                volume.maxX, volume.maxY, volume.maxZ, x, y, z));
+    }
+
+    /**
+     * Get the squared distance from a point to a box.
+     */
+    private static double getDistance2(double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ, double x, double y, double z) {
+        double dx = x < minX ? minX - x : x > maxX ? x - maxX : 0;
+        double dy = y < minY ? minY - y : y > maxY ? y - maxY : 0;
+        double dz = z < minZ ? minZ - z : z > maxZ ? z - maxZ : 0;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    //The cell center and half size, first child, parent, first object and
+    //number of objects below, of each node, children in blocks of eight.
+    private double[] centers = new double[3 * 9];
+    private double[] halves = new double[9];
+    private int[] children = new int[9];
+    private int[] parents = new int[9];
+    private int[] heads = new int[9];
+    private int[] counts = new int[9];
+    private int nodeCount, freeBlock = NULL;
+
+    //The bounds, node, next and previous objects in the node, and update
+    //stamp, of each object.
+    private final IdentityHashMap<GameObject, Integer> slots = new IdentityHashMap<>();
+    private GameObject[] objects = new GameObject[16];
+    private double[] bounds = new double[6 * 16];
+    private int[] nodes = new int[16];
+    private int[] nexts = new int[16];
+    private int[] previous = new int[16];
+    private int[] stamps = new int[16];
+    private int slotCount, freeSlot = NULL, stamp;
+
+    /**
+     * Written last by each change, and read first by each query, so that
+     * queries from other threads see the octree as left by the writer.
+     */
+    private volatile int version;
+
+    /**
+     * Constructor, of an octree whose root cell is 128 wide.
+     */
+    public LooseOctree() {
+        this(128);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param size the width of the root cell, centered at the origin, e.g.,
+     * the size of the scene, doubled whenever an object falls outside of it.
+     * @throws IllegalArgumentException if size is not positive and finite.
+     */
+    public LooseOctree(double size) {
+        if (!(size > 0 && size < POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException("size must be positive and finite");
+        }
+        this.nodeCount = 1;
+        this.halves[ROOT] = size / 2;
+        this.children[ROOT] = NULL;
+        this.parents[ROOT] = NULL;
+        this.heads[ROOT] = NULL;
+    }
+
+    /**
+     * Insert a game object in this octree, or move it if already inserted.
+     *
+     * @param object the game object to insert.
+     */
+    public void insert(GameObject object) {
+        if (this.slots.containsKey(object)) {
+            this.move(object);
+            return;
+        }
+        int slot = this.allocateSlot();
+        this.objects[slot] = object;
+        this.stamps[slot] = this.stamp;
+        this.slots.put(object, slot);
+        getBounds(object, this.bounds, 6 * slot);
+        this.place(slot);
+        this.version++;
+    }
+
+    /**
+     * Move a game object in this octree, i.e., refresh its bounds and relink
+     * it only if its center left its cell or it outgrew it, or insert it if
+     * not inserted.
+     *
+     * @param object the game object to move.
+     * @return TRUE if the object was relinked or inserted, FALSE otherwise.
+     */
+    public boolean move(GameObject object) {
+        Integer slot = this.slots.get(object);
+        if (slot == null) {
+            this.insert(object);
+            return true;
+        }
+        this.stamps[slot] = this.stamp;
+        getBounds(object, this.bounds, 6 * slot);
+        if (this.isFitting(this.nodes[slot], 6 * slot)) {
+            this.version++;
+            return false;
+        }
+        this.unlink(slot);
+        this.place(slot);
+        this.version++;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(Collection<GameObject> objects) {
+        this.stamp++;
+        int moved = 0;
+        for (GameObject object : objects) {
+            if (this.move(object)) {
+                moved++;
+            }
+        }
+        //Drop the objects no longer in the collection
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            if (this.objects[slot] != null && this.stamps[slot] != this.stamp) {
+                this.remove(this.objects[slot]);
+            }
+        }
+        log.info(format("%d objects, %d relinked, %d nodes", this.slots.size(), moved, this.nodeCount));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(GameObject object) {
+        Integer slot = this.slots.remove(object);
+        if (slot != null) {
+            this.unlink(slot);
+            this.freeSlot(slot);
+            this.version++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.slots.size();
+    }
+
+    /**
+     * Remove all game objects from this octree.
+     */
+    public void clear() {
+        this.slots.clear();
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            this.objects[slot] = null;
+        }
+        this.slotCount = 0;
+        this.freeSlot = NULL;
+        this.reset();
+        this.version++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void query(GameObject object, Collection<GameObject> candidates) {
+        double[] box = new double[6];
+        getBounds(object, box, 0);
+        this.acquire();
+        this.query(ROOT, box, 0, object, candidates);
+    }
+
+    /**
+     * Find the game objects whose bounds overlap a given box, e.g., a region
+     * of the scene.
+     *
+     * @param box the minimum x, y and z followed by the maximum x, y and z of
+     * the box.
+     * @param offset the index of the box in box.
+     * @param candidates collection where to add each game object found once.
+     */
+    public void query(double[] box, int offset, Collection<GameObject> candidates) {
+        this.acquire();
+        this.query(ROOT, box, offset, null, candidates);
+    }
+
+    /**
+     * Find the game objects whose first bounding volume is within a given
+     * distance of a point, e.g., the ones near a player.
+     *
+     * @param center the point.
+     * @param radius the distance.
+     * @param candidates collection where to add each game object found once.
+     */
+    public void querySphere(Vector3D center, double radius, Collection<GameObject> candidates) {
+        this.acquire();
+        this.querySphere(ROOT, center.getX(), center.getY(), center.getZ(), radius, candidates);
+    }
+
+    /**
+     * Find the game objects whose bounds are not entirely outside of a view
+     * frustum, e.g., the ones in view.
+     *
+     * @param frustum the view frustum.
+     * @param candidates collection where to add each game object found once.
+     */
+    public void queryFrustum(Frustum frustum, Collection<GameObject> candidates) {
+        this.acquire();
+        this.queryFrustum(ROOT, frustum, ALL_PLANES, candidates);
+    }
+
+    /**
+     * Cast a ray through this octree, visiting the game objects whose bounding
+     * volume it hits, the nearest cells first.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @param visitor invoked with each object hit, which returns the distance
+     * beyond which further hits are ignored.
+     */
+    public void rayCast(Ray ray, double maxDistance, RayCastVisitor visitor) {
+        this.acquire();
+        Vector3D d = ray.getDirection();
+        //Cells are visited in the order of the octants along the direction
+        int order = (d.getX() < 0 ? 1 : 0) | (d.getY() < 0 ? 2 : 0) | (d.getZ() < 0 ? 4 : 0);
+        this.rayCast(ROOT, ray, order, maxDistance, visitor);
+    }
+
+    /**
+     * Get the game object whose bounding volume a ray hits first, e.g., what
+     * a projectile can hit.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @return the game object hit first, NULL if none.
+     */
+    public GameObject closestHit(Ray ray, double maxDistance) {
+        GameObject[] closest = new GameObject[1];
+        this.rayCast(ray, maxDistance, (object, distance) -> {
+            closest[0] = object;
+            return distance;
+        });
+        return closest[0];
+    }
+
+    /**
+     * Test if a ray hits the bounding volume of any game object, e.g., to
+     * test the line of sight between two points.
+     *
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @return TRUE if the ray hits any game object, FALSE otherwise.
+     */
+    public boolean intersectsRay(Ray ray, double maxDistance) {
+        boolean[] hit = new boolean[1];
+        this.rayCast(ray, maxDistance, (object, distance) -> {
+            hit[0] = true;
+            return -1;
+        });
+        return hit[0];
+    }
+
+    /**
+     * Find the game objects whose first bounding volume is nearest to a point.
+     *
+     * @param point the point.
+     * @param k the number of game objects to find at most.
+     * @param maxDistance the distance beyond which game objects are ignored.
+     * @param nearest array where to store the game objects found, nearest
+     * first, at least k long.
+     * @param distances array where to store the distance to each game object
+     * found, at least k long.
+     * @return the number of game objects found, at most k.
+     */
+    public int findNearest(Vector3D point, int k, double maxDistance,
+            GameObject[] nearest, double[] distances) {
+        if (k <= 0) {
+            return 0;
+        }
+        this.acquire();
+        return this.findNearest(ROOT, point.getX(), point.getY(), point.getZ(),
+                k, maxDistance, nearest, distances, 0);
+    }
+
+    /**
+     * Get the game objects whose first bounding volume is nearest to a point,
+     * e.g., the ones nearest to a player.
+     *
+     * @param point the point.
+     * @param k the number of game objects to get at most.
+     * @return the game objects found, nearest first.
+     */
+    public List<GameObject> getNearest(Vector3D point, int k) {
+        GameObject[] nearest = new GameObject[max(k, 0)];
+        int found = this.findNearest(point, k, POSITIVE_INFINITY, nearest, new double[max(k, 0)]);
+        List<GameObject> list = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            list.add(nearest[i]);
+        }
+        return list;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void findPairs(PairVisitor visitor) {
+        this.acquire();
+        //Each pair is reported from the object of lower slot
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            if (this.objects[slot] != null) {
+                this.findPairs(ROOT, slot, visitor);
+            }
+        }
+    }
+
+    /**
+     * Read what was written last, before querying.
+     */
+    private int acquire() {
+        return this.version;
+    }
+
+    private void query(int node, double[] box, int offset, GameObject ignored,
+            Collection<GameObject> candidates) {
+        for (int slot = this.heads[node]; slot != NULL; slot = this.nexts[slot]) {
+            if (this.objects[slot] != ignored && overlap(box, offset, this.bounds, 6 * slot)) {
+                candidates.add(this.objects[slot]);
+            }
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return;
+        }
+        for (int child = block; child < block + 8; child++) {
+            if (this.counts[child] > 0 && this.isOverlapping(child, box, offset)) {
+                this.query(child, box, offset, ignored, candidates);
+            }
+        }
+    }
+
+    private void querySphere(int node, double x, double y, double z, double radius,
+            Collection<GameObject> candidates) {
+        for (int slot = this.heads[node]; slot != NULL; slot = this.nexts[slot]) {
+            int i = 6 * slot;
+            //The bounds enclose the bounding volume, so test them first
+            if (getDistance2(this.bounds[i], this.bounds[i + 1], this.bounds[i + 2],
+                    this.bounds[i + 3], this.bounds[i + 4], this.bounds[i + 5],
+                    x, y, z) <= radius * radius
+                    && getDistance(this.objects[slot], x, y, z) <= radius) {
+                candidates.add(this.objects[slot]);
+            }
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return;
+        }
+        for (int child = block; child < block + 8; child++) {
+            if (this.counts[child] > 0 && this.getDistance2(child, x, y, z) <= radius * radius) {
+                this.querySphere(child, x, y, z, radius, candidates);
+            }
+        }
+    }
+
+    private void queryFrustum(int node, Frustum frustum, int mask,
+            Collection<GameObject> candidates) {
+        for (int slot = this.heads[node]; slot != NULL; slot = this.nexts[slot]) {
+            int i = 6 * slot;
+            if (mask == INSIDE || frustum.testBox(this.bounds[i], this.bounds[i + 1], this.bounds[i + 2],
+                    this.bounds[i + 3], this.bounds[i + 4], this.bounds[i + 5], mask) != OUTSIDE) {
+                candidates.add(this.objects[slot]);
+            }
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return;
+        }
+        for (int child = block; child < block + 8; child++) {
+            if (this.counts[child] == 0) {
+                continue;
+            }
+            //Below a cell only the planes it crosses are tested
+            int crossed = mask;
+            if (mask != INSIDE) {
+                double h = 2 * this.halves[child];
+                double cx = this.centers[3 * child];
+                double cy = this.centers[3 * child + 1];
+                double cz = this.centers[3 * child + 2];
+                crossed = frustum.testBox(cx - h, cy - h, cz - h, cx + h, cy + h, cz + h, mask);
+            }
+            if (crossed != OUTSIDE) {
+                this.queryFrustum(child, frustum, crossed, candidates);
+            }
+        }
+    }
+
+    /**
+     * Cast a ray through a node.
+     *
+     * @return the distance beyond which further hits are ignored, negative to
+     * stop the cast.
+     */
+    private double rayCast(int node, Ray ray, int order, double maxDistance,
+            RayCastVisitor visitor) {
+        Vector3D o = ray.getOrigin(), d = ray.getDirection();
+        double ox = o.getX(), oy = o.getY(), oz = o.getZ();
+        double dx = d.getX(), dy = d.getY(), dz = d.getZ();
+        for (int slot = this.heads[node]; slot != NULL && maxDistance >= 0; slot = this.nexts[slot]) {
+            int i = 6 * slot;
+            if (!isHit(getRayDistance(this.bounds[i], this.bounds[i + 1], this.bounds[i + 2],
+                    this.bounds[i + 3], this.bounds[i + 4], this.bounds[i + 5],
+                    ox, oy, oz, dx, dy, dz, maxDistance), maxDistance)) {
+                continue;
+            }
+            double distance = getRayDistance(this.objects[slot], ray, maxDistance);
+            if (isHit(distance, maxDistance)) {
+                maxDistance = visitor.visit(this.objects[slot], distance);
+            }
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return maxDistance;
+        }
+        for (int j = 0; j < 8 && maxDistance >= 0; j++) {
+            int child = block + (j ^ order);
+            if (this.counts[child] == 0) {
+                continue;
+            }
+            double h = 2 * this.halves[child];
+            double cx = this.centers[3 * child];
+            double cy = this.centers[3 * child + 1];
+            double cz = this.centers[3 * child + 2];
+            if (isHit(getRayDistance(cx - h, cy - h, cz - h, cx + h, cy + h, cz + h,
+                    ox, oy, oz, dx, dy, dz, maxDistance), maxDistance)) {
+                maxDistance = this.rayCast(child, ray, order, maxDistance, visitor);
+            }
+        }
+        return maxDistance;
+    }
+
+    /**
+     * Find the game objects nearest to a point in a node, keeping the ones
+     * found so far sorted by distance.
+     *
+     * @return the number of game objects found so far.
+     */
+    private int findNearest(int node, double x, double y, double z, int k,
+            double maxDistance, GameObject[] nearest, double[] distances, int found) {
+        for (int slot = this.heads[node]; slot != NULL; slot = this.nexts[slot]) {
+            double worst = found == k ? distances[k - 1] : maxDistance;
+            int i = 6 * slot;
+            //The bounds enclose the bounding volume, so test them first
+            if (getDistance2(this.bounds[i], this.bounds[i + 1], this.bounds[i + 2],
+                    this.bounds[i + 3], this.bounds[i + 4], this.bounds[i + 5],
+                    x, y, z) > worst * worst) {
+                continue;
+            }
+            double distance = getDistance(this.objects[slot], x, y, z);
+            if (distance > worst || (found == k && distance == worst)) {
+                continue;
+            }
+            int j = found < k ? found++ : k - 1;
+            for (; j > 0 && distances[j - 1] > distance; j--) {
+                nearest[j] = nearest[j - 1];
+                distances[j] = distances[j - 1];
+            }
+            nearest[j] = this.objects[slot];
+            distances[j] = distance;
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return found;
+        }
+        //The cell of the point first, then the ones across fewer axes
+        int octant = this.getOctant(node, x, y, z);
+        for (int j = 0; j < 8; j++) {
+            int child = block + (ORDER[j] ^ octant);
+            double worst = found == k ? distances[k - 1] : maxDistance;
+            if (this.counts[child] > 0 && this.getDistance2(child, x, y, z) <= worst * worst) {
+                found = this.findNearest(child, x, y, z, k, maxDistance, nearest, distances, found);
+            }
+        }
+        return found;
+    }
+
+    private void findPairs(int node, int slot, PairVisitor visitor) {
+        for (int other = this.heads[node]; other != NULL; other = this.nexts[other]) {
+            if (other > slot && overlap(this.bounds, 6 * slot, this.bounds, 6 * other)) {
+                visitor.visit(this.objects[slot], this.objects[other]);
+            }
+        }
+        int block = this.children[node];
+        if (block == NULL) {
+            return;
+        }
+        for (int child = block; child < block + 8; child++) {
+            if (this.counts[child] > 0 && this.isOverlapping(child, this.bounds, 6 * slot)) {
+                this.findPairs(child, slot, visitor);
+            }
+        }
+    }
+
+    /**
+     * Link an object to the deepest node whose cell holds its center and is
+     * at least as large as its bounds, growing the root if needed.
+     */
+    private void place(int slot) {
+        int i = 6 * slot;
+        if (!this.isFitting(ROOT, i)) {
+            this.grow(slot);
+        }
+        int node = ROOT;
+        if (this.isFitting(ROOT, i)) {
+            double extent = this.getExtent(i);
+            double x = (this.bounds[i] + this.bounds[i + 3]) / 2;
+            double y = (this.bounds[i + 1] + this.bounds[i + 4]) / 2;
+            double z = (this.bounds[i + 2] + this.bounds[i + 5]) / 2;
+            for (int depth = 0; depth < MAX_DEPTH && extent <= this.halves[node] / 2; depth++) {
+                if (this.children[node] == NULL) {
+                    this.split(node);
+                }
+                node = this.children[node] + this.getOctant(node, x, y, z);
+            }
+        }
+        this.link(slot, node);
+    }
+
+    /**
+     * Double the root cell until it holds a given object, or reaches its
+     * largest size, then place all other objects again.
+     */
+    private void grow(int slot) {
+        int i = 6 * slot;
+        double extent = this.getExtent(i);
+        double x = abs(this.bounds[i] + this.bounds[i + 3]) / 2;
+        double y = abs(this.bounds[i + 1] + this.bounds[i + 4]) / 2;
+        double z = abs(this.bounds[i + 2] + this.bounds[i + 5]) / 2;
+        double size = max(x, max(y, max(z, extent)));
+        if (!(size < MAX_HALF)) {
+            //Held by the root, as is any object not finite
+            return;
+        }
+        //Never double from zero, which would never end
+        double half = max(this.halves[ROOT], size / 2);
+        while (half < MAX_HALF && !(x <= half && y <= half && z <= half && extent <= half)) {
+            half *= 2;
+        }
+        if (half == this.halves[ROOT]) {
+            return;
+        }
+        log.info(format("Root grown to %f", 2 * half));
+        this.halves[ROOT] = half;
+        this.reset();
+        for (int other = 0; other < this.slotCount; other++) {
+            if (this.objects[other] != null && other != slot) {
+                this.place(other);
+            }
+        }
+    }
+
+    /**
+     * Remove all nodes but the root, and unlink all objects.
+     */
+    private void reset() {
+        this.nodeCount = 1;
+        this.freeBlock = NULL;
+        this.children[ROOT] = NULL;
+        this.heads[ROOT] = NULL;
+        this.counts[ROOT] = 0;
+    }
+
+    private void link(int slot, int node) {
+        int head = this.heads[node];
+        this.previous[slot] = NULL;
+        this.nexts[slot] = head;
+        if (head != NULL) {
+            this.previous[head] = slot;
+        }
+        this.heads[node] = slot;
+        this.nodes[slot] = node;
+        for (int n = node; n != NULL; n = this.parents[n]) {
+            this.counts[n]++;
+        }
+    }
+
+    /**
+     * Unlink an object from its node, and free the nodes left empty.
+     */
+    private void unlink(int slot) {
+        int node = this.nodes[slot];
+        int previous = this.previous[slot], next = this.nexts[slot];
+        if (previous == NULL) {
+            this.heads[node] = next;
+        } else {
+            this.nexts[previous] = next;
+        }
+        if (next != NULL) {
+            this.previous[next] = previous;
+        }
+        int empty = NULL;
+        for (int n = node; n != NULL; n = this.parents[n]) {
+            if (--this.counts[n] == 0) {
+                empty = n;
+            }
+        }
+        if (empty != NULL) {
+            this.freeChildren(empty);
+        }
+    }
+
+    /**
+     * Test if the cell of a node holds the center of some bounds and is at
+     * least as large as them, i.e., if its loose cell holds them.
+     */
+    private boolean isFitting(int node, int i) {
+        double half = this.halves[node];
+        return abs((this.bounds[i] + this.bounds[i + 3]) / 2 - this.centers[3 * node]) <= half
+                && abs((this.bounds[i + 1] + this.bounds[i + 4]) / 2 - this.centers[3 * node + 1]) <= half
+                && abs((this.bounds[i + 2] + this.bounds[i + 5]) / 2 - this.centers[3 * node + 2]) <= half
+                && this.getExtent(i) <= half;
+    }
+
+    /**
+     * Test if the loose cell of a node overlaps a box.
+     */
+    private boolean isOverlapping(int node, double[] box, int offset) {
+        double h = 2 * this.halves[node];
+        double cx = this.centers[3 * node];
+        double cy = this.centers[3 * node + 1];
+        double cz = this.centers[3 * node + 2];
+        return box[offset] <= cx + h && cx - h <= box[offset + 3]
+                && box[offset + 1] <= cy + h && cy - h <= box[offset + 4]
+                && box[offset + 2] <= cz + h && cz - h <= box[offset + 5];
+    }
+
+    /**
+     * Get the squared distance from a point to the loose cell of a node.
+     */
+    private double getDistance2(int node, double x, double y, double z) {
+        double h = 2 * this.halves[node];
+        double cx = this.centers[3 * node];
+        double cy = this.centers[3 * node + 1];
+        double cz = this.centers[3 * node + 2];
+        return getDistance2(cx - h, cy - h, cz - h, cx + h, cy + h, cz + h, x, y, z);
+    }
+
+    /**
+     * Get the largest half size of some bounds along any axis.
+     */
+    private double getExtent(int i) {
+        return max(this.bounds[i + 3] - this.bounds[i],
+                max(this.bounds[i + 4] - this.bounds[i + 1], this.bounds[i + 5] - this.bounds[i + 2])) / 2;
+    }
+
+    /**
+     * Get the child of a node whose cell holds a point, one bit per axis set
+     * if the point is not below the center along it.
+     */
+    private int getOctant(int node, double x, double y, double z) {
+        return (x >= this.centers[3 * node] ? 1 : 0)
+                | (y >= this.centers[3 * node + 1] ? 2 : 0)
+                | (z >= this.centers[3 * node + 2] ? 4 : 0);
+    }
+
+    private void split(int node) {
+        int block;
+        if (this.freeBlock != NULL) {
+            block = this.freeBlock;
+            this.freeBlock = this.children[block];
+        } else {
+            block = this.nodeCount;
+            this.nodeCount += 8;
+            if (this.nodeCount > this.halves.length) {
+                int length = 2 * this.nodeCount;
+                this.centers = copyOf(this.centers, 3 * length);
+                this.halves = copyOf(this.halves, length);
+                this.children = copyOf(this.children, length);
+                this.parents = copyOf(this.parents, length);
+                this.heads = copyOf(this.heads, length);
+                this.counts = copyOf(this.counts, length);
+            }
+        }
+        double half = this.halves[node] / 2;
+        for (int octant = 0; octant < 8; octant++) {
+            int child = block + octant;
+            this.centers[3 * child] = this.centers[3 * node] + ((octant & 1) != 0 ? half : -half);
+            this.centers[3 * child + 1] = this.centers[3 * node + 1] + ((octant & 2) != 0 ? half : -half);
+            this.centers[3 * child + 2] = this.centers[3 * node + 2] + ((octant & 4) != 0 ? half : -half);
+            this.halves[child] = half;
+            this.children[child] = NULL;
+            this.parents[child] = node;
+            this.heads[child] = NULL;
+            this.counts[child] = 0;
+        }
+        this.children[node] = block;
+    }
+
+    /**
+     * Free the nodes below an empty node, chaining the blocks through the
+     * first child of each.
+     */
+    private void freeChildren(int node) {
+        int block = this.children[node];
+        if (block == NULL) {
+            return;
+        }
+        for (int child = block; child < block + 8; child++) {
+            this.freeChildren(child);
+        }
+        this.children[node] = NULL;
+        this.children[block] = this.freeBlock;
+        this.freeBlock = block;
+    }
+
+    private int allocateSlot() {
+        int slot;
+        if (this.freeSlot != NULL) {
+            slot = this.freeSlot;
+            this.freeSlot = this.nexts[slot];
+        } else {
+            slot = this.slotCount++;
+            if (slot == this.objects.length) {
+                int length = 2 * slot;
+                this.objects = copyOf(this.objects, length);
+                this.bounds = copyOf(this.bounds, 6 * length);
+                this.nodes = copyOf(this.nodes, length);
+                this.nexts = copyOf(this.nexts, length);
+                this.previous = copyOf(this.previous, length);
+                this.stamps = copyOf(this.stamps, length);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Return a slot to the free list, chained through the next objects.
+     */
+    private void freeSlot(int slot) {
+        this.objects[slot] = null;
+        this.nexts[slot] = this.freeSlot;
+        this.freeSlot = slot;
+    }
+}
@@ -0,0 +1,575 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Double.NEGATIVE_INFINITY;
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.arraycopy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.math.GJK;
+import static jot.math.GJK.getContext;
+import jot.math.geometry.Mesh;
+import jot.math.geometry.Node;
+import jot.math.geometry.TransformGroup;
+import static jot.math.geometry.Transformations.invertAffineMatrix;
+import static jot.math.geometry.Transformations.multiplyAffineMatrix;
+import jot.math.geometry.bounding.BVH.OverlapVisitor;
+import jot.math.geometry.bounding.TriangleBVH;
+import jot.math.geometry.shape.PackedTriangles;
+import jot.math.geometry.support.AbstractSupportMapping;
+import jot.math.geometry.support.HullSupport;
+import jot.math.geometry.support.TransformedSupport;
+import jot.physics.HitRecord;
+import jot.physics.Ray;
+import static jot.physics.collision.DynamicAABBTree.isHit;
+import jot.util.GameObject;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+/**
+ * Class that implements narrow phase collision detection between game
+ * objects, testing the convex hulls of their meshes, computed once when each
+ * mesh is loaded, under the translation, rotation and scaling of every
+ * transform group above each mesh, with the Gilbert-Johnson-Keerthi algorithm.
+ * A concave mesh, e.g., a level, is tested by its triangles instead, those of
+ * its triangle BVH that overlap the box around the other hull, so that a game
+ * object may move inside of it. Rays and segments are tested against the
+ * triangle BVH of every mesh, e.g., to pick game objects.
+ *
+ * The transformations are only applied to the support points the algorithm
+ * asks for, and to the box or ray tested against a triangle BVH, so no vertex
+ * is ever transformed. A narrow phase keeps the hulls of the last game objects
+ * tested, hence it must be used by one thread at a time.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class NarrowPhase {
+
+    static final Logger log = getLogger("NarrowPhase");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    private final ArrayList<TransformedSupport> shapes1 = new ArrayList<>();
+    private final ArrayList<TransformedSupport> shapes2 = new ArrayList<>();
+    private final ArrayList<Mesh> meshes1 = new ArrayList<>();
+    private final ArrayList<Mesh> meshes2 = new ArrayList<>();
+    private int count1, count2;
+    private double[][] matrices = new double[4][16];
+
+    private final HullSupport triangle = new HullSupport();
+    private final TransformedSupport triangleShape = new TransformedSupport(this.triangle, null);
+    private final double[] triangleVertices = new double[9];
+    private final double[] inverse = new double[16];
+    private final double[] bounds = new double[6], box = new double[6];
+    private final double[] origin = new double[3], direction = new double[3];
+    private final HitRecord hit = new HitRecord();
+
+    /**
+     * The triangles of the concave mesh being tested, the other shape, its
+     * order and what is looked for, kept while querying its triangle BVH.
+     */
+    private PackedTriangles triangles;
+    private AbstractSupportMapping other;
+    private boolean isFirst, isPenetration;
+    private GJK.Context context;
+    private final OverlapVisitor triangleVisitor = this::testTriangle;
+
+    private double depth;
+    private final double[] normal = new double[3], contact = new double[3];
+    private final double[] support = new double[3];
+    private boolean isWarmStarted, isPenetrating, isConverged;
+
+    /**
+     * Test if the meshes of two game objects intersect.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @return TRUE if the hull, or the triangles if concave, of any mesh of the
+     * first game object intersect the hull, or the triangles, of any mesh of
+     * the second one, or if either has no meshes, as then only their bounding
+     * volumes can tell, FALSE otherwise.
+     */
+    public boolean intersect(GameObject object1, GameObject object2) {
+        if (!this.setShapes(object1, object2)) {
+            return true;
+        }
+        GJK.Context context = getContext();
+        for (int i = 0; i < this.count1; i++) {
+            for (int j = 0; j < this.count2; j++) {
+                if (this.test(i, j, false, context)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Test if the meshes of two game objects intersect, first along an axis
+     * that separated them before, e.g., in the previous tick, which while the
+     * game objects move little still separates them and spares the full test.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @param axis the x, y and z coordinates of the axis along which the
+     * first game object lay behind the second one, or zero if none, where to
+     * store the new one if the meshes are found not to intersect.
+     * @return TRUE if the hull, or the triangles if concave, of any mesh of the
+     * first game object intersect the hull, or the triangles, of any mesh of
+     * the second one, or if either has no meshes, FALSE otherwise.
+     */
+    public boolean intersect(GameObject object1, GameObject object2, double[] axis) {
+        this.isWarmStarted = false;
+        return !this.setShapes(object1, object2) || this.intersect(axis);
+    }
+
+    /**
+     * Test if the meshes last set intersect, first along an axis that
+     * separated them before.
+     *
+     * @param axis the axis along which the first game object lay behind the
+     * second one, or zero if none, where to store the new one if the meshes
+     * are found not to intersect.
+     * @return TRUE if they intersect, FALSE otherwise.
+     */
+    boolean intersect(double[] axis) {
+        this.isWarmStarted = false;
+        if (this.isSeparated(axis)) {
+            this.isWarmStarted = true;
+            return false;
+        }
+        GJK.Context context = getContext();
+        for (int i = 0; i < this.count1; i++) {
+            for (int j = 0; j < this.count2; j++) {
+                if (this.test(i, j, false, context)) {
+                    return true;
+                }
+            }
+        }
+        arraycopy(context.getDirection(), 0, axis, 0, 3);
+        return false;
+    }
+
+    /**
+     * Get if the last warm started test was answered by the given axis alone.
+     *
+     * @return TRUE if the axis still separated the game objects, FALSE
+     * otherwise.
+     */
+    public boolean isWarmStarted() {
+        return this.isWarmStarted;
+    }
+
+    /**
+     * Test if every hull of the first game object lies behind every hull of
+     * the second one along an axis, which then also separates the triangles
+     * inside of the hulls.
+     */
+    private boolean isSeparated(double[] axis) {
+        double dx = axis[0], dy = axis[1], dz = axis[2];
+        if (dx == 0 && dy == 0 && dz == 0) {
+            return false;
+        }
+        double max1 = NEGATIVE_INFINITY, min2 = POSITIVE_INFINITY;
+        for (int i = 0; i < this.count1; i++) {
+            this.shapes1.get(i).getSupport(dx, dy, dz, this.support, 0);
+            max1 = max(max1, this.support[0] * dx + this.support[1] * dy + this.support[2] * dz);
+        }
+        for (int j = 0; j < this.count2; j++) {
+            this.shapes2.get(j).getSupport(-dx, -dy, -dz, this.support, 0);
+            min2 = min(min2, this.support[0] * dx + this.support[1] * dy + this.support[2] * dz);
+        }
+        return max1 < min2;
+    }
+
+    /**
+     * Test if the meshes of two game objects intersect and, if so, find the
+     * deepest penetration among the hulls, or triangles of concave meshes,
+     * that intersect.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @return TRUE if the hull, or the triangles if concave, of any mesh of the
+     * first game object intersect the hull, or the triangles, of any mesh of
+     * the second one, FALSE otherwise or if either has no meshes.
+     */
+    public boolean penetration(GameObject object1, GameObject object2) {
+        this.isPenetrating = false;
+        return this.setShapes(object1, object2) && this.penetration();
+    }
+
+    /**
+     * Test if the meshes last set intersect and, if so, find the deepest
+     * penetration among them.
+     *
+     * @return TRUE if they intersect, FALSE otherwise.
+     */
+    boolean penetration() {
+        this.isPenetrating = false;
+        GJK.Context context = getContext();
+        for (int i = 0; i < this.count1; i++) {
+            for (int j = 0; j < this.count2; j++) {
+                this.test(i, j, true, context);
+            }
+        }
+        return this.isPenetrating;
+    }
+
+    /**
+     * Test if the i-th mesh of the first game object intersects the j-th mesh
+     * of the second one, by the triangles of the first if concave, else by
+     * those of the second if concave, else by their hulls.
+     *
+     * @return TRUE if they intersect, FALSE otherwise, or if looking for the
+     * deepest penetration, which is then kept instead.
+     */
+    private boolean test(int i, int j, boolean isPenetration, GJK.Context context) {
+        TransformedSupport shape1 = this.shapes1.get(i), shape2 = this.shapes2.get(j);
+        Mesh mesh1 = this.meshes1.get(i), mesh2 = this.meshes2.get(j);
+        if (!mesh1.isConvex()) {
+            return this.testTriangles(mesh1, shape1, shape2, true, isPenetration, context);
+        }
+        if (!mesh2.isConvex()) {
+            return this.testTriangles(mesh2, shape2, shape1, false, isPenetration, context);
+        }
+        return this.test(shape1, shape2, isPenetration, context);
+    }
+
+    /**
+     * Test the triangles of a concave mesh that overlap the box around the
+     * hull of the other mesh, in mesh space, against said hull, keeping the
+     * order of the game objects. If the mesh transformation can't be inverted
+     * its hull is tested instead.
+     *
+     * @return TRUE if any triangle intersects the hull, FALSE otherwise, or if
+     * looking for the deepest penetration.
+     */
+    private boolean testTriangles(Mesh mesh, TransformedSupport meshShape,
+            AbstractSupportMapping other, boolean isFirst,
+            boolean isPenetration, GJK.Context context) {
+        if (!invertAffineMatrix(meshShape.getMatrix(), this.inverse)) {
+            return isFirst ? this.test(meshShape, other, isPenetration, context)
+                    : this.test(other, meshShape, isPenetration, context);
+        }
+        this.setBox(other);
+        TriangleBVH bvh = mesh.getTriangleBVH();
+        PackedTriangles triangles = bvh.getTriangles();
+        this.triangleShape.setMatrix(meshShape.getMatrix());
+        this.triangles = triangles;
+        this.other = other;
+        this.isFirst = isFirst;
+        this.isPenetration = isPenetration;
+        this.context = context;
+        try {
+            return bvh.queryBox(this.box, 0, this.triangleVisitor);
+        } finally {
+            this.triangles = null;
+            this.other = null;
+            this.context = null;
+        }
+    }
+
+    /**
+     * Test a triangle of the concave mesh being tested against the other
+     * shape.
+     *
+     * @return FALSE to stop the query, if they intersect and not looking for
+     * the deepest penetration, TRUE otherwise.
+     */
+    private boolean testTriangle(int t) {
+        this.triangles.getVertex(t, 0, this.triangleVertices, 0);
+        this.triangles.getVertex(t, 1, this.triangleVertices, 3);
+        this.triangles.getVertex(t, 2, this.triangleVertices, 6);
+        this.triangle.set(this.triangleVertices, 3);
+        return !(this.isFirst ? this.test(this.triangleShape, this.other, this.isPenetration, this.context)
+                : this.test(this.other, this.triangleShape, this.isPenetration, this.context));
+    }
+
+    /**
+     * Test if two shapes intersect or, if looking for the deepest
+     * penetration, keep theirs if deeper than the deepest found so far.
+     */
+    private boolean test(AbstractSupportMapping shape1, AbstractSupportMapping shape2,
+            boolean isPenetration, GJK.Context context) {
+        if (!isPenetration) {
+            return GJK.intersect(shape1, shape2, context);
+        }
+        if (GJK.penetration(shape1, shape2, context)
+                && (!this.isPenetrating || context.getDepth() > this.depth)) {
+            this.isPenetrating = true;
+            this.isConverged = context.isConverged();
+            this.depth = context.getDepth();
+            arraycopy(context.getNormal(), 0, this.normal, 0, 3);
+            double[] contact1 = context.getContact1(), contact2 = context.getContact2();
+            for (int k = 0; k < 3; k++) {
+                this.contact[k] = (contact1[k] + contact2[k]) / 2;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the box, in the space of the mesh whose inverse transformation was
+     * last computed, around the axis aligned box of a shape in the world.
+     */
+    private void setBox(AbstractSupportMapping shape) {
+        double[] bounds = this.bounds;
+        for (int k = 0; k < 3; k++) {
+            shape.getSupport(k == 0 ? 1 : 0, k == 1 ? 1 : 0, k == 2 ? 1 : 0, this.support, 0);
+            bounds[3 + k] = this.support[k];
+            shape.getSupport(k == 0 ? -1 : 0, k == 1 ? -1 : 0, k == 2 ? -1 : 0, this.support, 0);
+            bounds[k] = this.support[k];
+        }
+        double[] m = this.inverse;
+        for (int k = 0; k < 3; k++) {
+            this.box[k] = POSITIVE_INFINITY;
+            this.box[3 + k] = NEGATIVE_INFINITY;
+        }
+        for (int corner = 0; corner < 8; corner++) {
+            double x = bounds[(corner & 1) == 0 ? 0 : 3];
+            double y = bounds[(corner & 2) == 0 ? 1 : 4];
+            double z = bounds[(corner & 4) == 0 ? 2 : 5];
+            for (int k = 0; k < 3; k++) {
+                double c = m[k] * x + m[4 + k] * y + m[8 + k] * z + m[12 + k];
+                this.box[k] = min(this.box[k], c);
+                this.box[3 + k] = max(this.box[3 + k], c);
+            }
+        }
+    }
+
+    /**
+     * Get the distance along a ray to the triangles of the meshes of a game
+     * object, e.g., to pick it.
+     *
+     * @param object the game object.
+     * @param ray the ray, whose direction need not be unit length.
+     * @param maxDistance the distance beyond which hits are ignored, in
+     * lengths of the ray direction.
+     * @return the distance to the closest triangle hit, in lengths of the ray
+     * direction, or infinity if the ray misses them. If the game object has no
+     * meshes the distance to its first bounding volume.
+     */
+    public double getRayDistance(GameObject object, Ray ray, double maxDistance) {
+        setTransform(null, object, this.matrices[0]);
+        this.count1 = this.addShapes(object, 0, this.shapes1, this.meshes1, 0);
+        if (this.count1 == 0) {
+            return DynamicAABBTree.getRayDistance(object, ray, maxDistance);
+        }
+        Vector3D o = ray.getOrigin(), d = ray.getDirection();
+        double distance = POSITIVE_INFINITY;
+        for (int i = 0; i < this.count1; i++) {
+            if (this.setRay(this.shapes1.get(i), o, d)
+                    && this.meshes1.get(i).getTriangleBVH().intersectRay(
+                            this.origin[0], this.origin[1], this.origin[2],
+                            this.direction[0], this.direction[1], this.direction[2],
+                            min(distance, maxDistance), this.hit)) {
+                distance = this.hit.t;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Test if a segment hits the triangles of the meshes of a game object,
+     * e.g., for line of sight queries.
+     *
+     * @param object the game object.
+     * @param from the segment start.
+     * @param to the segment end.
+     * @return TRUE if the segment hits any triangle, or, if the game object
+     * has no meshes, its first bounding volume, FALSE otherwise.
+     */
+    public boolean intersectsSegment(GameObject object, Vector3D from, Vector3D to) {
+        Ray ray = new Ray(from, to.subtract(from));
+        return isHit(this.getRayDistance(object, ray, 1), 1);
+    }
+
+    /**
+     * Set the origin and direction of a ray in the space of the mesh of a
+     * transformed hull, in which distances along the ray stay the same.
+     *
+     * @return TRUE if the transformation of the mesh can be inverted, FALSE
+     * otherwise.
+     */
+    private boolean setRay(TransformedSupport shape, Vector3D o, Vector3D d) {
+        if (!invertAffineMatrix(shape.getMatrix(), this.inverse)) {
+            return false;
+        }
+        double[] m = this.inverse;
+        for (int k = 0; k < 3; k++) {
+            this.origin[k] = m[k] * o.getX() + m[4 + k] * o.getY() + m[8 + k] * o.getZ() + m[12 + k];
+            this.direction[k] = m[k] * d.getX() + m[4 + k] * d.getY() + m[8 + k] * d.getZ();
+        }
+        return true;
+    }
+
+    /**
+     * Get the depth of the last penetration found.
+     *
+     * @return the distance the second game object must move along the normal
+     * to stop intersecting the first one.
+     */
+    public double getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Test if the depth of the last penetration found converged, see
+     * GJK.Context.isConverged.
+     *
+     * @return TRUE if the depth is within the tolerance of the real one,
+     * FALSE if it is only a lower bound of it, e.g., for curved shapes.
+     */
+    public boolean isConverged() {
+        return this.isConverged;
+    }
+
+    /**
+     * Get the normal of the last penetration found.
+     *
+     * @return the unit normal, from the first game object toward the second.
+     */
+    public Vector3D getNormal() {
+        return new Vector3D(this.normal[0], this.normal[1], this.normal[2]);
+    }
+
+    /**
+     * Get the contact point of the last penetration found.
+     *
+     * @return the point halfway between the deepest points of each game
+     * object inside the other.
+     */
+    public Vector3D getContact() {
+        return new Vector3D(this.contact[0], this.contact[1], this.contact[2]);
+    }
+
+    /**
+     * Set the hulls of the meshes of two game objects, placed in the world,
+     * for the next tests of this narrow phase.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @return TRUE if both game objects have meshes, FALSE otherwise.
+     */
+    boolean setShapes(GameObject object1, GameObject object2) {
+        setTransform(null, object1, this.matrices[0]);
+        this.count1 = this.addShapes(object1, 0, this.shapes1, this.meshes1, 0);
+        setTransform(null, object2, this.matrices[0]);
+        this.count2 = this.addShapes(object2, 0, this.shapes2, this.meshes2, 0);
+        return this.count1 > 0 && this.count2 > 0;
+    }
+
+    /**
+     * Get the number of meshes of a game object last set.
+     *
+     * @param isFirst TRUE for the first game object, FALSE for the second.
+     * @return the number of meshes with a hull.
+     */
+    int getMeshesCount(boolean isFirst) {
+        return isFirst ? this.count1 : this.count2;
+    }
+
+    /**
+     * Get a mesh of a game object last set.
+     *
+     * @param isFirst TRUE for the first game object, FALSE for the second.
+     * @param i the index of the mesh.
+     * @return the mesh.
+     */
+    Mesh getMesh(boolean isFirst, int i) {
+        return (isFirst ? this.meshes1 : this.meshes2).get(i);
+    }
+
+    /**
+     * Get the transformation to the world of a mesh of a game object last
+     * set.
+     *
+     * @param isFirst TRUE for the first game object, FALSE for the second.
+     * @param i the index of the mesh.
+     * @return the transformation, column by column, not a copy.
+     */
+    double[] getMatrix(boolean isFirst, int i) {
+        return (isFirst ? this.shapes1 : this.shapes2).get(i).getMatrix();
+    }
+
+    /**
+     * Add the hulls of the meshes below a transform group, whose
+     * transformation to the world is at the given depth of the stack, and the
+     * meshes themselves.
+     *
+     * @return the number of hulls added so far.
+     */
+    private int addShapes(TransformGroup group, int depth,
+            ArrayList<TransformedSupport> shapes, ArrayList<Mesh> meshes, int count) {
+        Iterator<Node> it = group.childIterator();
+        while (it.hasNext()) {
+            Node child = it.next();
+            if (child instanceof Mesh) {
+                HullSupport hull = ((Mesh) child).getHull();
+                if (hull != null && hull.getCount() > 0) {
+                    if (count == shapes.size()) {
+                        shapes.add(new TransformedSupport(hull, null));
+                        meshes.add(null);
+                    }
+                    meshes.set(count, (Mesh) child);
+                    shapes.get(count++).set(hull, this.matrices[depth]);
+                }
+            } else if (child instanceof TransformGroup) {
+                if (depth + 1 == this.matrices.length) {
+                    double[][] matrices = new double[2 * this.matrices.length][];
+                    arraycopy(this.matrices, 0, matrices, 0, this.matrices.length);
+                    for (int i = this.matrices.length; i < matrices.length; i++) {
+                        matrices[i] = new double[16];
+                    }
+                    this.matrices = matrices;
+                }
+                setTransform(this.matrices[depth], (TransformGroup) child, this.matrices[depth + 1]);
+                count = this.addShapes((TransformGroup) child, depth + 1, shapes, meshes, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Store the transformation of a transform group to the world, i.e., the
+     * one of its parent followed by its own, cached by the transform group.
+     *
+     * @param parent the transformation of the parent to the world, column by
+     * column as in OpenGL, or NULL for the identity.
+     * @param group the transform group.
+     * @param m where to store the transformation, column by column.
+     */
+    static void setTransform(double[] parent, TransformGroup group, double[] m) {
+        double[] local = group.getLocalMatrix();
+        if (parent == null) {
+            arraycopy(local, 0, m, 0, 16);
+        } else {
+            multiplyAffineMatrix(parent, local, m);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Double.POSITIVE_INFINITY;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.exp;
+import static java.lang.Math.floor;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.fill;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.util.GameObject;
+
+/**
+ * Class that implements a uniform grid broad phase, i.e., a spatial hash
+ * mapping each grid cell covered by the bounds of a game object to a bucket,
+ * so that only objects sharing a bucket are paired.
+ *
+ * The grid is rebuilt on every update with a counting sort of the cells of
+ * all objects, in linear time and, once the arrays have grown, without
+ * allocating. Objects covering too many cells, e.g., a floor, are kept aside
+ * and tested against all others. Queries only read the grid, hence several
+ * threads may query it at once, as long as none updates it meanwhile.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class SpatialHashGrid extends AbstractBroadPhase {
+
+    static final Logger log = getLogger("SpatialHashGrid");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * The maximum number of cells an object may cover to be inserted in the
+     * grid instead of being tested against every other object.
+     */
+    public static final int MAX_CELLS = 64;
+
+    /**
+     * The range of the cell coordinates, which keeps infinite or huge bounds
+     * from overflowing.
+     */
+    private static final double MAX_CELL = 1 << 30;
+
+    private final double fixedCellSize;
+    private double cellSize, inverseCellSize;
+
+    private int count;
+    private GameObject[] objects = new GameObject[16];
+    private double[] bounds = new double[6 * 16];
+    private int[] cells = new int[6 * 16];
+    private boolean[] removed = new boolean[16];
+    private final IdentityHashMap<GameObject, Integer> indices = new IdentityHashMap<>();
+
+    private int[] bucketStarts = new int[2];
+    private int[] entries = new int[16];
+    private int mask;
+    private int[] large = new int[16];
+    private int largeCount;
+
+    /**
+     * The bounds queried, and the range of cells they cover, of each thread
+     * querying this grid.
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Constructor, for a grid whose cell size follows the average size of the
+     * objects it holds.
+     */
+    public SpatialHashGrid() {
+        this(0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cellSize the side of the grid cells, 0 or less to follow the
+     * geometric mean of the sizes of the objects.
+     */
+    public SpatialHashGrid(double cellSize) {
+        this.fixedCellSize = cellSize;
+        this.setCellSize(cellSize > 0 ? cellSize : 1);
+    }
+
+    /**
+     * Get the side of the grid cells, as of the last update.
+     *
+     * @return the side of the grid cells.
+     */
+    public double getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(Collection<GameObject> objects) {
+        this.count = 0;
+        this.indices.clear();
+        this.ensureCapacity(objects.size());
+        double logSize = 0;
+        int sized = 0;
+        for (GameObject object : objects) {
+            int i = this.count++;
+            this.objects[i] = object;
+            this.removed[i] = false;
+            this.indices.put(object, i);
+            getBounds(object, this.bounds, 6 * i);
+            double size = max(this.bounds[6 * i + 3] - this.bounds[6 * i],
+                    max(this.bounds[6 * i + 4] - this.bounds[6 * i + 1],
+                            this.bounds[6 * i + 5] - this.bounds[6 * i + 2]));
+            if (size > 0 && size < POSITIVE_INFINITY) {
+                logSize += log(size);
+                sized++;
+            }
+        }
+        //Drop references to objects no longer in the grid
+        fill(this.objects, this.count, this.objects.length, null);
+        if (this.fixedCellSize <= 0 && sized > 0) {
+            //The geometric mean is not dragged up by a few huge objects
+            this.setCellSize(exp(logSize / sized));
+        }
+        this.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(GameObject object) {
+        Integer i = this.indices.remove(object);
+        if (i != null) {
+            this.removed[i] = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.indices.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void query(GameObject object, Collection<GameObject> candidates) {
+        Scratch scratch = this.scratch.get();
+        double[] query = scratch.bounds;
+        int[] range = scratch.range;
+        getBounds(object, query, 0);
+        this.getCells(query, 0, range, 0);
+
+        if (cellCount(range, 0) > MAX_CELLS) {
+            //Cheaper to test every object than every cell
+            for (int i = 0; i < this.count; i++) {
+                if (!this.removed[i] && this.objects[i] != object && overlap(query, 0, this.bounds, 6 * i)) {
+                    candidates.add(this.objects[i]);
+                }
+            }
+            return;
+        }
+
+        for (int iz = range[2]; iz <= range[5]; iz++) {
+            for (int iy = range[1]; iy <= range[4]; iy++) {
+                for (int ix = range[0]; ix <= range[3]; ix++) {
+                    int b = this.hash(ix, iy, iz);
+                    int start = this.bucketStarts[b];
+                    for (int k = start; k < this.bucketStarts[b + 1]; k++) {
+                        int i = this.entries[k];
+                        if ((k > start && this.entries[k - 1] == i)
+                                || this.removed[i] || this.objects[i] == object
+                                || !overlap(query, 0, this.bounds, 6 * i)) {
+                            continue;
+                        }
+                        //Report each object only in the cell of the overlap minimum
+                        if (this.getCell(max(query[0], this.bounds[6 * i])) == ix
+                                && this.getCell(max(query[1], this.bounds[6 * i + 1])) == iy
+                                && this.getCell(max(query[2], this.bounds[6 * i + 2])) == iz) {
+                            candidates.add(this.objects[i]);
+                        }
+                    }
+                }
+            }
+        }
+        for (int l = 0; l < this.largeCount; l++) {
+            int i = this.large[l];
+            if (!this.removed[i] && this.objects[i] != object && overlap(query, 0, this.bounds, 6 * i)) {
+                candidates.add(this.objects[i]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void findPairs(PairVisitor visitor) {
+        for (int b = 0; b <= this.mask; b++) {
+            int start = this.bucketStarts[b], end = this.bucketStarts[b + 1];
+            for (int k = start; k < end; k++) {
+                int i = this.entries[k];
+                //Entries of the same object in a bucket are adjacent
+                if (this.removed[i] || (k > start && this.entries[k - 1] == i)) {
+                    continue;
+                }
+                for (int l = k + 1; l < end; l++) {
+                    int j = this.entries[l];
+                    if (j == i || this.removed[j] || this.entries[l - 1] == j
+                            || !overlap(this.bounds, 6 * i, this.bounds, 6 * j)) {
+                        continue;
+                    }
+                    //Report each pair only in the bucket of the overlap minimum
+                    if (this.hash(this.getCell(max(this.bounds[6 * i], this.bounds[6 * j])),
+                            this.getCell(max(this.bounds[6 * i + 1], this.bounds[6 * j + 1])),
+                            this.getCell(max(this.bounds[6 * i + 2], this.bounds[6 * j + 2]))) == b) {
+                        visitor.visit(this.objects[i], this.objects[j]);
+                    }
+                }
+            }
+        }
+
+        for (int l = 0; l < this.largeCount; l++) {
+            int i = this.large[l];
+            if (this.removed[i]) {
+                continue;
+            }
+            for (int j = 0; j < this.count; j++) {
+                //Pairs of large objects are reported by the first of them
+                if (j == i || this.removed[j] || (this.isLarge(j) && j < i)
+                        || !overlap(this.bounds, 6 * i, this.bounds, 6 * j)) {
+                    continue;
+                }
+                visitor.visit(this.objects[i], this.objects[j]);
+            }
+        }
+    }
+
+    /**
+     * Insert every object in the buckets of the cells it covers, with a
+     * counting sort by bucket.
+     */
+    private void build() {
+        int total = 0;
+        this.largeCount = 0;
+        for (int i = 0; i < this.count; i++) {
+            this.getCells(this.bounds, 6 * i, this.cells, 6 * i);
+            int cellCount = cellCount(this.cells, 6 * i);
+            if (cellCount > MAX_CELLS) {
+                if (this.largeCount == this.large.length) {
+                    this.large = copyOf(this.large, 2 * this.largeCount);
+                }
+                this.large[this.largeCount++] = i;
+            } else {
+                total += cellCount;
+            }
+        }
+
+        //At least twice as many buckets as entries keeps unrelated cells apart
+        int buckets = max(2, highestOneBit(max(1, 2 * total - 1)) << 1);
+        this.mask = buckets - 1;
+        if (this.bucketStarts.length < buckets + 1) {
+            this.bucketStarts = new int[buckets + 1];
+        }
+        if (this.entries.length < total) {
+            this.entries = new int[total];
+        }
+        fill(this.bucketStarts, 0, buckets + 1, 0);
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < this.count; i++) {
+                int[] c = this.cells;
+                int o = 6 * i;
+                if (cellCount(c, o) > MAX_CELLS) {
+                    continue;
+                }
+                for (int iz = c[o + 2]; iz <= c[o + 5]; iz++) {
+                    for (int iy = c[o + 1]; iy <= c[o + 4]; iy++) {
+                        for (int ix = c[o]; ix <= c[o + 3]; ix++) {
+                            int b = this.hash(ix, iy, iz);
+                            if (pass == 0) {
+                                this.bucketStarts[b + 1]++;
+                            } else {
+                                this.entries[this.bucketStarts[b]++] = i;
+                            }
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                //Prefix sums, i.e., the start of each bucket
+                for (int b = 0; b < buckets; b++) {
+                    this.bucketStarts[b + 1] += this.bucketStarts[b];
+                }
+            } else {
+                //Filling moved each start to the next one, shift them back
+                for (int b = buckets; b > 0; b--) {
+                    this.bucketStarts[b] = this.bucketStarts[b - 1];
+                }
+                this.bucketStarts[0] = 0;
+            }
+        }
+        log.info(format("%d objects, %d entries, %d large", this.count, total, this.largeCount));
+    }
+
+    private boolean isLarge(int i) {
+        return cellCount(this.cells, 6 * i) > MAX_CELLS;
+    }
+
+    private void getCells(double[] bounds, int offset, int[] cells, int cellsOffset) {
+        for (int k = 0; k < 6; k++) {
+            cells[cellsOffset + k] = this.getCell(bounds[offset + k]);
+        }
+    }
+
+    private int getCell(double coordinate) {
+        return (int) max(-MAX_CELL, min(MAX_CELL, floor(coordinate * this.inverseCellSize)));
+    }
+
+    /**
+     * Get the number of cells of a cell range, capped to MAX_CELLS + 1.
+     */
+    private static int cellCount(int[] cells, int offset) {
+        long x = cells[offset + 3] - (long) cells[offset] + 1;
+        long y = cells[offset + 4] - (long) cells[offset + 1] + 1;
+        long z = cells[offset + 5] - (long) cells[offset + 2] + 1;
+        if (x > MAX_CELLS || y > MAX_CELLS || z > MAX_CELLS) {
+            return MAX_CELLS + 1;
+        }
+        return (int) min(x * y * z, MAX_CELLS + 1);
+    }
+
+    private int hash(int ix, int iy, int iz) {
+        int h = ix * 73856093 ^ iy * 19349663 ^ iz * 83492791;
+        return (h ^ h >>> 16) & this.mask;
+    }
+
+    private void setCellSize(double cellSize) {
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1 / cellSize;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (this.objects.length < capacity) {
+            int length = max(capacity, 2 * this.objects.length);
+            this.objects = copyOf(this.objects, length);
+            this.bounds = copyOf(this.bounds, 6 * length);
+            this.cells = copyOf(this.cells, 6 * length);
+            this.removed = copyOf(this.removed, length);
+        }
+    }
+
+    /**
+     * The scratch of a thread querying a grid.
+     */
+    private static class Scratch {
+
+        final double[] bounds = new double[6];
+        final int[] range = new int[6];
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * This file is part of the JOT game engine physics extension toolkit component.
+ * Copyright (C) 2014 Gonçalo Amador & Abel Gomes
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * E-mail Contacts: G. Amador (g.n.p.amador@gmail.com) &
+ *                  A. Gomes (agomes@it.ubi.pt)
+ */
+package jot.physics.collision;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import static java.util.logging.Level.OFF;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import jot.util.GameObject;
+
+/**
+ * Class that implements a incremental sweep and prune broad phase, i.e., the
+ * minimum and maximum of the bounds of every game object kept sorted along
+ * each axis between updates, so that pairs start or stop overlapping exactly
+ * when their endpoints swap places.
+ *
+ * As most objects barely move between ticks, the insertion sort that keeps
+ * the axes sorted takes near linear time, and the overlapping pairs are only
+ * touched when they change. Adding many objects at once, e.g., the first
+ * update, sorts and sweeps the axes from scratch instead.
+ *
+ * Listeners are told which pairs started and which stopped overlapping at the
+ * end of each update, pairs that swapped back and forth within an update
+ * included in neither.
+ *
+ * Queries only read the sorted axes, hence several threads may query at once,
+ * as long as none updates them meanwhile.
+ *
+ * @author G. Amador {@literal &} A. Gomes
+ */
+public class SweepAndPrune extends AbstractBroadPhase {
+
+    static final Logger log = getLogger("SweepAndPrune");
+
+    static {
+        log.setLevel(OFF);
+    }
+
+    /**
+     * Get the key of a unordered pair of proxies, scrambled by a odd multiplier
+     * so that the hash codes of the keys of nearby proxies do not collide.
+     */
+    private static long getPairKey(int p, int q) {
+        return ((long) min(p, q) << 32 | max(p, q)) * 0x9E3779B97F4A7C15L;
+    }
+
+    private final IdentityHashMap<GameObject, Integer> proxies = new IdentityHashMap<>();
+    private GameObject[] objects = new GameObject[16];
+    private double[] bounds = new double[6 * 16];
+    private int[] stamps = new int[16];
+    private int[][] partners = new int[16][];
+    private int[] partnerCounts = new int[16];
+    private int[] freeProxies = new int[16];
+    private int[] addedProxies = new int[16];
+    private int freeCount, addedCount, proxyCount, stamp;
+
+    private final int[][] endpoints = {new int[32], new int[32], new int[32]};
+    private int endpointCount;
+    private double maxExtent;
+
+    private final LinkedHashMap<Long, Change> changes = new LinkedHashMap<>();
+    private OverlapListener listener;
+    private int[] sortBuffer = new int[32];
+    private int[] active = new int[16];
+    private int[] activePositions = new int[16];
+
+    /**
+     * Set the listener told which pairs start and stop overlapping.
+     *
+     * @param listener the overlap listener, NULL for none.
+     */
+    public void setOverlapListener(OverlapListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(Collection<GameObject> objects) {
+        this.stamp++;
+        this.addedCount = 0;
+        for (GameObject object : objects) {
+            Integer proxy = this.proxies.get(object);
+            if (proxy == null) {
+                proxy = this.addProxy(object);
+            }
+            this.stamps[proxy] = this.stamp;
+            getBounds(object, this.bounds, 6 * proxy);
+        }
+        //Drop the objects no longer in the collection
+        for (int p = 0; p < this.proxyCount; p++) {
+            if (this.objects[p] != null && this.stamps[p] != this.stamp) {
+                this.removeProxy(p);
+            }
+        }
+
+        this.maxExtent = 0;
+        for (int p = 0; p < this.proxyCount; p++) {
+            if (this.objects[p] != null) {
+                this.maxExtent = max(this.maxExtent, this.bounds[6 * p + 3] - this.bounds[6 * p]);
+            }
+        }
+
+        for (int axis = 0; axis < 3; axis++) {
+            this.sortAxis(axis);
+        }
+        this.insertAdded();
+        this.fireChanges();
+        log.info(format("%d objects, %d added", this.proxies.size(), this.addedCount));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(GameObject object) {
+        Integer proxy = this.proxies.get(object);
+        if (proxy != null) {
+            this.removeProxy(proxy);
+            this.fireChanges();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.proxies.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void query(GameObject object, Collection<GameObject> candidates) {
+        Integer proxy = this.proxies.get(object);
+        if (proxy != null) {
+            //The partners are exactly the objects whose bounds overlap
+            for (int k = 0; k < this.partnerCounts[proxy]; k++) {
+                candidates.add(this.objects[this.partners[proxy][k]]);
+            }
+            return;
+        }
+
+        double[] query = new double[6];
+        getBounds(object, query, 0);
+        //Minimums of overlapping bounds lie in [query min - max extent, query max]
+        int[] axis = this.endpoints[0];
+        for (int k = this.lowerBound(query[0] - this.maxExtent); k < this.endpointCount; k++) {
+            int endpoint = axis[k];
+            if (this.getValue(endpoint, 0) > query[3]) {
+                break;
+            }
+            int q = endpoint >> 1;
+            if ((endpoint & 1) == 0 && this.objects[q] != object
+                    && overlap(query, 0, this.bounds, 6 * q)) {
+                candidates.add(this.objects[q]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void findPairs(PairVisitor visitor) {
+        for (int p = 0; p < this.proxyCount; p++) {
+            for (int k = 0; k < this.partnerCounts[p]; k++) {
+                int q = this.partners[p][k];
+                if (p < q) {
+                    visitor.visit(this.objects[p], this.objects[q]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test if two game objects are in this broad phase and their bounds
+     * overlap, as of the last update.
+     *
+     * @param object1 the first game object.
+     * @param object2 the second game object.
+     * @return TRUE if the bounds of both objects overlap, FALSE otherwise.
+     */
+    public boolean isOverlapping(GameObject object1, GameObject object2) {
+        Integer p = this.proxies.get(object1), q = this.proxies.get(object2);
+        return p != null && q != null && this.isPaired(p, q);
+    }
+
+    /**
+     * Restore the order of an axis with a insertion sort, pairing or
+     * unpairing the proxies whose endpoints swap.
+     */
+    private void sortAxis(int axis) {
+        int[] order = this.endpoints[axis];
+        for (int i = 1; i < this.endpointCount; i++) {
+            int endpoint = order[i];
+            double value = this.getValue(endpoint, axis);
+            int j = i - 1;
+            while (j >= 0 && this.isBefore(value, endpoint, order[j], axis)) {
+                int other = order[j];
+                boolean isMin = (endpoint & 1) == 0, otherIsMin = (other & 1) == 0;
+                if (isMin && !otherIsMin) {
+                    //A minimum passing a maximum, the intervals now overlap
+                    int p = endpoint >> 1, q = other >> 1;
+                    if (overlap(this.bounds, 6 * p, this.bounds, 6 * q)) {
+                        this.addPair(p, q);
+                    }
+                } else if (!isMin && otherIsMin) {
+                    //A maximum passing a minimum, the intervals no longer overlap
+                    this.removePair(endpoint >> 1, other >> 1);
+                }
+                order[j + 1] = other;
+                j--;
+            }
+            order[j + 1] = endpoint;
+        }
+    }
+
+    /**
+     * Sort every axis from scratch, and find all overlapping pairs by sweeping
+     * the x axis.
+     */
+    private void rebuild() {
+        for (int axis = 0; axis < 3; axis++) {
+            this.mergeSort(this.endpoints[axis], this.endpointCount, axis);
+        }
+        //Remember the pairs as they were, and forget them
+        for (int p = 0; p < this.proxyCount; p++) {
+            for (int k = 0; k < this.partnerCounts[p]; k++) {
+                if (p < this.partners[p][k]) {
+                    this.recordChange(p, this.partners[p][k], true);
+                }
+            }
+            this.partnerCounts[p] = 0;
+        }
+
+        if (this.active.length < this.proxyCount) {
+            this.active = new int[this.proxyCount];
+            this.activePositions = new int[this.proxyCount];
+        }
+        int activeCount = 0;
+        int[] order = this.endpoints[0];
+        for (int k = 0; k < this.endpointCount; k++) {
+            int p = order[k] >> 1;
+            if ((order[k] & 1) == 0) {
+                //Each pair is found once, when the second of its minimums is swept
+                for (int a = 0; a < activeCount; a++) {
+                    int q = this.active[a];
+                    if (overlap(this.bounds, 6 * p, this.bounds, 6 * q)) {
+                        this.addPartner(p, q);
+                        this.addPartner(q, p);
+                        this.recordChange(p, q, false);
+                    }
+                }
+                this.activePositions[p] = activeCount;
+                this.active[activeCount++] = p;
+            } else {
+                int last = this.active[--activeCount];
+                this.active[this.activePositions[p]] = last;
+                this.activePositions[last] = this.activePositions[p];
+            }
+        }
+    }
+
+    private void mergeSort(int[] order, int count, int axis) {
+        if (this.sortBuffer.length < count) {
+            this.sortBuffer = new int[order.length];
+        }
+        int[] source = order, destination = this.sortBuffer;
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = min(start + width, count);
+                int end = min(start + 2 * width, count);
+                int i = start, j = middle, k = start;
+                while (i < middle && j < end) {
+                    int endpoint = source[j];
+                    destination[k++] = this.isBefore(this.getValue(endpoint, axis), endpoint, source[i], axis)
+                            ? source[j++] : source[i++];
+                }
+                while (i < middle) {
+                    destination[k++] = source[i++];
+                }
+                while (j < end) {
+                    destination[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = destination;
+            destination = swap;
+        }
+        if (source != order) {
+            arraycopy(source, 0, order, 0, count);
+        }
+    }
+
+    /**
+     * Insert the endpoints of the proxies added by the last update, once the
+     * axes are sorted, into their places, and pair them with the proxies they
+     * overlap.
+     */
+    private void insertAdded() {
+        int added = this.addedCount;
+        if (added == 0) {
+            return;
+        }
+        if (this.endpointCount + 2 * added > this.endpoints[0].length) {
+            for (int axis = 0; axis < 3; axis++) {
+                this.endpoints[axis] = copyOf(this.endpoints[axis], 2 * (this.endpointCount + 2 * added));
+            }
+        }
+        if (4 * added > this.proxies.size()) {
+            //Too many to insert one by one, sort and sweep everything
+            for (int axis = 0; axis < 3; axis++) {
+                for (int k = 0; k < added; k++) {
+                    this.endpoints[axis][this.endpointCount + 2 * k] = this.addedProxies[k] << 1;
+                    this.endpoints[axis][this.endpointCount + 2 * k + 1] = this.addedProxies[k] << 1 | 1;
+                }
+            }
+            this.endpointCount += 2 * added;
+            this.rebuild();
+            return;
+        }
+
+        int[] fresh = new int[2 * added];
+        for (int axis = 0; axis < 3; axis++) {
+            for (int k = 0; k < added; k++) {
+                fresh[2 * k] = this.addedProxies[k] << 1;
+                fresh[2 * k + 1] = this.addedProxies[k] << 1 | 1;
+            }
+            this.mergeSort(fresh, fresh.length, axis);
+            //Merge from the back, so that the sorted axis can be merged in place
+            int[] order = this.endpoints[axis];
+            int i = this.endpointCount - 1, j = fresh.length - 1;
+            for (int k = this.endpointCount + fresh.length - 1; j >= 0; k--) {
+                int endpoint = fresh[j];
+                if (i >= 0 && this.isBefore(this.getValue(endpoint, axis), endpoint, order[i], axis)) {
+                    order[k] = order[i--];
+                } else {
+                    order[k] = fresh[j--];
+                }
+            }
+        }
+        this.endpointCount += fresh.length;
+
+        int[] axis = this.endpoints[0];
+        for (int a = 0; a < added; a++) {
+            int p = this.addedProxies[a];
+            for (int k = this.lowerBound(this.bounds[6 * p] - this.maxExtent); k < this.endpointCount; k++) {
+                int endpoint = axis[k];
+                if (this.getValue(endpoint, 0) > this.bounds[6 * p + 3]) {
+                    break;
+                }
+                int q = endpoint >> 1;
+                if ((endpoint & 1) == 0 && q != p && overlap(this.bounds, 6 * p, this.bounds, 6 * q)) {
+                    this.addPair(p, q);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the index of the first endpoint of the x axis not less than a given
+     * value.
+     */
+    private int lowerBound(double value) {
+        int[] axis = this.endpoints[0];
+        int low = 0, high = this.endpointCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.getValue(axis[middle], 0) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Test if a endpoint goes before another one, minimums before maximums
+     * of the same value so that touching bounds overlap.
+     */
+    private boolean isBefore(double value, int endpoint, int other, int axis) {
+        double otherValue = this.getValue(other, axis);
+        return value < otherValue
+                || (value == otherValue && (endpoint & 1) == 0 && (other & 1) == 1);
+    }
+
+    private double getValue(int endpoint, int axis) {
+        return this.bounds[6 * (endpoint >> 1) + axis + 3 * (endpoint & 1)];
+    }
+
+    private int addProxy(GameObject object) {
+        int p = this.freeCount > 0 ? this.freeProxies[--this.freeCount] : this.proxyCount++;
+        if (p >= this.objects.length) {
+            int length = 2 * this.objects.length;
+            this.objects = copyOf(this.objects, length);
+            this.bounds = copyOf(this.bounds, 6 * length);
+            this.stamps = copyOf(this.stamps, length);
+            this.partners = copyOf(this.partners, length);
+            this.partnerCounts = copyOf(this.partnerCounts, length);
+        }
+        this.objects[p] = object;
+        this.partnerCounts[p] = 0;
+        this.proxies.put(object, p);
+
+        //Its endpoints are inserted once the axes are sorted
+        if (this.addedCount == this.addedProxies.length) {
+            this.addedProxies = copyOf(this.addedProxies, 2 * this.addedCount);
+        }
+        this.addedProxies[this.addedCount++] = p;
+        return p;
+    }
+
+    private void removeProxy(int p) {
+        for (int k = this.partnerCounts[p] - 1; k >= 0; k--) {
+            this.removePair(p, this.partners[p][k]);
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            int[] order = this.endpoints[axis];
+            int kept = 0;
+            for (int k = 0; k < this.endpointCount; k++) {
+                if (order[k] >> 1 != p) {
+                    order[kept++] = order[k];
+                }
+            }
+        }
+        this.endpointCount -= 2;
+        this.proxies.remove(this.objects[p]);
+        this.objects[p] = null;
+        if (this.freeCount == this.freeProxies.length) {
+            this.freeProxies = copyOf(this.freeProxies, 2 * this.freeCount);
+        }
+        this.freeProxies[this.freeCount++] = p;
+    }
+
+    private void addPair(int p, int q) {
+        if (this.isPaired(p, q)) {
+            return;
+        }
+        this.addPartner(p, q);
+        this.addPartner(q, p);
+        this.recordChange(p, q, false);
+    }
+
+    private void removePair(int p, int q) {
+        int k = this.indexOfPartner(p, q);
+        if (k < 0) {
+            return;
+        }
+        this.removePartner(p, k);
+        this.removePartner(q, this.indexOfPartner(q, p));
+        this.recordChange(p, q, true);
+    }
+
+    private void recordChange(int p, int q, boolean wasOverlapping) {
+        long key = getPairKey(p, q);
+        if (this.listener != null && !this.changes.containsKey(key)) {
+            this.changes.put(key, new Change(p, q, this.objects[p], this.objects[q], wasOverlapping));
+        }
+    }
+
+    private boolean isPaired(int p, int q) {
+        return this.partnerCounts[p] < this.partnerCounts[q]
+                ? this.indexOfPartner(p, q) >= 0 : this.indexOfPartner(q, p) >= 0;
+    }
+
+    private int indexOfPartner(int p, int q) {
+        for (int k = 0; k < this.partnerCounts[p]; k++) {
+            if (this.partners[p][k] == q) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void addPartner(int p, int q) {
+        if (this.partners[p] == null) {
+            this.partners[p] = new int[4];
+        } else if (this.partnerCounts[p] == this.partners[p].length) {
+            this.partners[p] = copyOf(this.partners[p], 2 * this.partnerCounts[p]);
+        }
+        this.partners[p][this.partnerCounts[p]++] = q;
+    }
+
+    private void removePartner(int p, int k) {
+        this.partners[p][k] = this.partners[p][--this.partnerCounts[p]];
+    }
+
+    /**
+     * Tell the listener about the pairs whose overlap changed since the last
+     * time, comparing each pair with how it was before its first change.
+     */
+    private void fireChanges() {
+        if (this.listener != null) {
+            for (Change change : this.changes.values()) {
+                int p = change.proxy1, q = change.proxy2;
+                boolean isOverlapping = this.objects[p] == change.object1
+                        && this.objects[q] == change.object2 && this.isPaired(p, q);
+                if (isOverlapping && !change.wasOverlapping) {
+                    this.listener.beginOverlap(change.object1, change.object2);
+                } else if (!isOverlapping && change.wasOverlapping) {
+                    this.listener.endOverlap(change.object1, change.object2);
+                }
+            }
+        }
+        this.changes.clear();
+    }
+
+    /**
+     * The first change of the overlap of a pair since the last time listeners
+     * were told.
+     */
+    private static class Change {
+
+        final int proxy1, proxy2;
+        final GameObject object1, object2;
+        final boolean wasOverlapping;
+
+        Change(int proxy1, int proxy2, GameObject object1, GameObject object2,
+                boolean wasOverlapping) {
+            this.proxy1 = proxy1;
+            this.proxy2 = proxy2;
+            this.object1 = object1;
+            this.object2 = object2;
+            this.wasOverlapping = wasOverlapping;
+        }
+    }
+
+    /**
+     * Listener of the pairs of game objects that start or stop overlapping.
+     */
+    public interface OverlapListener {
+
+        /**
+         * Invoked when the bounds of two game objects start overlapping.
+         *
+         * @param object1 the first game object.
+         * @param object2 the second game object.
+         */
+        void beginOverlap(GameObject object1, GameObject object2);
+
+        /**
+         * Invoked when the bounds of two game objects stop overlapping, or
+         * either is removed.
+         *
+         * @param object1 the first game object.
+         * @param object2 the second game object, which may have been removed.
+         */
+        void endOverlap(GameObject object1, GameObject object2);
+    }
+}
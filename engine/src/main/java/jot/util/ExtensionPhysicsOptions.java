@@ -52,6 +52,19 @@ public class ExtensionPhysicsOptions {
          */
         extensionPhysicsOptions.put("useNarrowPhaseCollisionDetection", false);
 
+        /**
+         * Use a spatial hash grid, rebuilt every tick, to find the mutable
+         * objects near each tested object on/off.
+         */
+        extensionPhysicsOptions.put("useSpatialHashBroadPhase", true);
+
+        /**
+         * Use a sweep and prune, kept sorted between ticks, instead of the
+         * spatial hash grid to find the mutable objects near each tested
+         * object on/off.
+         */
+        extensionPhysicsOptions.put("useSweepAndPruneBroadPhase", false);
+
         //Eulerian fluid solvers options   
         /**
          * Use Stable Fluids solver on/off.
@@ -58,6 +58,36 @@ public class FrameworkOptions {
          */
         frameworkOptions.put("useRayTracer", false);
 
+        /**
+         * Use RayTracer BVH, instead of testing every shape, on/off.
+         */
+        frameworkOptions.put("useRayTracerBVH", true);
+
+        /**
+         * Use progressive RayTracer, i.e., accumulate one pass per RayTrace
+         * invocation, on/off.
+         */
+        frameworkOptions.put("useRayTracerProgressive", false);
+
+        /**
+         * Use adaptive RayTracer sampling, i.e., stop sampling pixels whose
+         * noise is low enough and spend up to four times the samples on the
+         * noisy ones, on/off.
+         */
+        frameworkOptions.put("useRayTracerAdaptive", false);
+
+        /**
+         * Use RayTracer denoiser, guided by the normal, depth and albedo
+         * seen through each pixel, after each image or pass, on/off.
+         */
+        frameworkOptions.put("useRayTracerDenoiser", false);
+
+        /**
+         * Use iterative RayTracer path tracer, instead of the recursive
+         * material BSDFs, on/off.
+         */
+        frameworkOptions.put("useRayTracerPathTracer", true);
+
         /**
          * Use unreachable sky on/off.
          */
@@ -83,6 +113,12 @@ public class FrameworkOptions {
          */
         frameworkOptions.put("showGeometries", true);
 
+        /**
+         * Skip rendering the geometries entirely outside of the view frustum
+         * on/off.
+         */
+        frameworkOptions.put("useFrustumCulling", true);
+
         /**
          * Planar shadows usage on/off.
          */
@@ -506,8 +506,7 @@ public class GameMain extends SimpleGame {
             if (this.isMoving) {
                 Vector3D newPosition = this.translatePolar(ZERO, this.velocity, (float) rotation.getY(), this.direction, 1);
                 AbstractBoundingVolume boundingVolume = this.player1.getBoundingVolumeCopy(0);
-                boundingVolume.min = boundingVolume.min.add(newPosition);
-                boundingVolume.max = boundingVolume.max.add(newPosition);
+                boundingVolume.translate(newPosition.getX(), newPosition.getY(), newPosition.getZ());
                 GameObject temp = new GameObject(this.player1.getId());
                 temp.setBoundingVolume(0, boundingVolume);
 